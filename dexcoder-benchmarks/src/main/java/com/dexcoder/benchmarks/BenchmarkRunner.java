@@ -0,0 +1,25 @@
+package com.dexcoder.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行所有基准测试，输出ns/op及GC profiler的每次操作分配字节数(gc.alloc.rate.norm)
+ * <pre>
+ *     mvn -Pbenchmarks install -DskipTests
+ *     java -cp dexcoder-benchmarks/target/benchmarks.jar com.dexcoder.benchmarks.BenchmarkRunner [正则]
+ *     或 java -jar dexcoder-benchmarks/target/benchmarks.jar -prof gc
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(args.length > 0 ? args[0] : "com\\.dexcoder\\.benchmarks\\..*Benchmark")
+            .addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
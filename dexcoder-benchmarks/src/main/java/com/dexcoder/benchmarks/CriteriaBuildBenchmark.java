@@ -0,0 +1,111 @@
+package com.dexcoder.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.build.SqlTemplateCache;
+import com.dexcoder.dal.handler.DefaultMappingHandler;
+import com.dexcoder.dal.handler.MappingHandler;
+import com.dexcoder.test.model.Chapter;
+import com.dexcoder.test.model.User;
+
+/**
+ * Criteria.build()的耗时及内存分配，每次都新建Criteria，与实际使用一致
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CriteriaBuildBenchmark {
+
+    /** 是否开启sql模板缓存 */
+    @Param({ "true", "false" })
+    public boolean         templateCache;
+
+    private MappingHandler mappingHandler;
+
+    private User           user;
+
+    private Object[]       ids;
+
+    @Setup
+    public void setup() {
+        SqlTemplateCache.setEnabled(templateCache);
+        SqlTemplateCache.clear();
+        mappingHandler = new DefaultMappingHandler();
+        user = new User();
+        user.setUserId(1L);
+        user.setLoginName("selfly");
+        user.setPassword("123456");
+        user.setUserAge(18);
+        user.setUserType("1");
+        user.setEmail("selfly@dexcoder.com");
+        user.setGmtCreate(new Date());
+        ids = new Object[100];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (long) i;
+        }
+    }
+
+    @Benchmark
+    public BoundSql simpleSelect() {
+        return Criteria.select(User.class).mappingHandler(mappingHandler).where("userId", new Object[] { 1L })
+            .build(true);
+    }
+
+    @Benchmark
+    public BoundSql wideSelect() {
+        return Criteria.select(User.class).mappingHandler(mappingHandler).include("userId", "loginName", "email")
+            .where("loginName", new Object[] { "selfly" }).and("password", new Object[] { "123456" })
+            .and("userAge", ">", new Object[] { 18 }).and("userType", new Object[] { "1" })
+            .and("email", "like", new Object[] { "%dexcoder%" }).and("gmtCreate", "<", new Object[] { new Date() })
+            .and("userId", "in", ids).desc("gmtCreate").asc("userId").build(true);
+    }
+
+    @Benchmark
+    public BoundSql bracketSelect() {
+        return Criteria.select(User.class).mappingHandler(mappingHandler).where("userType", new Object[] { "1" })
+            .begin().and("loginName", new Object[] { "selfly" }).or("email", new Object[] { "selfly@dexcoder.com" })
+            .begin("or").and("userAge", ">", new Object[] { 18 }).and("userAge", "<", new Object[] { 60 }).end()
+            .end().and("[gmtCreate]", "<", new Object[] { "{now()}" }).desc("userId").build(true);
+    }
+
+    @Benchmark
+    public BoundSql aliasSelect() {
+        return Criteria.select(Chapter.class).mappingHandler(mappingHandler).tableAlias("t")
+            .where("bookId", "in", ids).and("chapterName", "like", new Object[] { "%java%" }).asc("chapterId")
+            .build(true);
+    }
+
+    @Benchmark
+    public BoundSql insertEntity() {
+        return Criteria.insert(User.class).mappingHandler(mappingHandler).build(user, true);
+    }
+
+    @Benchmark
+    public BoundSql updateEntity() {
+        return Criteria.update(User.class).mappingHandler(mappingHandler).build(user, true);
+    }
+
+    @Benchmark
+    public BoundSql deleteById() {
+        return Criteria.delete(User.class).mappingHandler(mappingHandler).where("userId", new Object[] { 1L })
+            .build(true);
+    }
+}
@@ -0,0 +1,88 @@
+package com.dexcoder.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.SqlFactory;
+import com.dexcoder.dal.batis.BatisSqlFactoryBean;
+import com.dexcoder.test.model.User;
+
+/**
+ * batis动态sql渲染(DynamicSqlSource.getBoundSql)，包括if及大量foreach的语句
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DynamicSqlSourceBenchmark {
+
+    /** foreach的元素个数 */
+    @Param({ "10", "1000" })
+    public int                  size;
+
+    private SqlFactory          sqlFactory;
+
+    private User                user;
+
+    private Map<String, Object> inParams;
+
+    private List<User>          users;
+
+    @Setup
+    public void setup() throws Exception {
+        BatisSqlFactoryBean factoryBean = new BatisSqlFactoryBean();
+        factoryBean.setSqlLocation("classpath:user-sql.xml,classpath:benchmark-sql.xml");
+        factoryBean.afterPropertiesSet();
+        sqlFactory = factoryBean.getObject();
+
+        user = new User();
+        user.setLoginName("selfly");
+        user.setPassword("123456");
+        user.setUserAge(18);
+        user.setUserType("1");
+        user.setEmail("selfly@dexcoder.com");
+
+        List<Long> userIds = new ArrayList<Long>(size);
+        users = new ArrayList<User>(size);
+        for (int i = 0; i < size; i++) {
+            userIds.add((long) i);
+            users.add(user);
+        }
+        inParams = new HashMap<String, Object>();
+        inParams.put("userType", "1");
+        inParams.put("userIds", userIds);
+    }
+
+    @Benchmark
+    public BoundSql ifStatement() {
+        return sqlFactory.getBoundSql("User.getUser", null, new Object[] { "1", user });
+    }
+
+    @Benchmark
+    public BoundSql foreachIn() {
+        return sqlFactory.getBoundSql("Benchmark.queryUserByIds", null, new Object[] { inParams });
+    }
+
+    @Benchmark
+    public BoundSql foreachInsert() {
+        return sqlFactory.getBoundSql("Benchmark.insertUsers", null, new Object[] { users });
+    }
+}
@@ -0,0 +1,74 @@
+package com.dexcoder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.dexcoder.dal.build.AutoField;
+import com.dexcoder.dal.build.MetaTable;
+import com.dexcoder.dal.handler.DefaultMappingHandler;
+import com.dexcoder.dal.handler.GenericTokenParser;
+import com.dexcoder.dal.handler.NativeTokenHandler;
+import com.dexcoder.test.model.User;
+
+/**
+ * native属性解析：GenericTokenParser.parse及AutoField.isNativeField
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TokenParserBenchmark {
+
+    private GenericTokenParser parser;
+
+    private AutoField          plainField;
+
+    private AutoField          bracketField;
+
+    private AutoField          braceField;
+
+    @Setup
+    public void setup() {
+        MetaTable metaTable = new MetaTable().initAutoFields().tableClass(User.class)
+            .mappingHandler(new DefaultMappingHandler());
+        parser = new GenericTokenParser("[", "]", new NativeTokenHandler(metaTable));
+        plainField = new AutoField.Builder().name("loginName").build();
+        bracketField = new AutoField.Builder().name("[loginName]").build();
+        braceField = new AutoField.Builder().name("{now()}").build();
+    }
+
+    @Benchmark
+    public String parseNoToken() {
+        return parser.parse("now()");
+    }
+
+    @Benchmark
+    public String parseOneToken() {
+        return parser.parse("[userAge]+1");
+    }
+
+    @Benchmark
+    public String parseManyTokens() {
+        return parser.parse("concat([loginName],[email],[userType]) = [password] and [userAge] > 18");
+    }
+
+    @Benchmark
+    public void isNativeField(Blackhole blackhole) {
+        blackhole.consume(plainField.isNativeField());
+        blackhole.consume(bracketField.isNativeField());
+        blackhole.consume(braceField.isNativeField());
+    }
+}
@@ -148,20 +148,44 @@ public abstract class AbstractCacheMap<K, V> implements CacheMap<K, V> {
      * @return
      */
     public V get(K key) {
-        readLock.lock();
+        return this.get(key, false);
+    }
+
+    /**
+     * 获取缓存对象
+     *
+     * @param key
+     * @param exclusive 是否使用写锁，get时会修改map(如按访问排序的LRU)的需要写锁
+     * @return
+     */
+    protected V get(K key, boolean exclusive) {
+        Lock lock = exclusive ? writeLock : readLock;
+        lock.lock();
         try {
             CacheObject<K, V> co = cacheMap.get(key);
             if (co == null) {
                 return null;
             }
-            if (co.isExpired() == true) {
+            if (!co.isExpired()) {
+                return co.getObject();
+            }
+            if (exclusive) {
                 cacheMap.remove(key);
                 return null;
             }
-
-            return co.getObject();
         } finally {
-            readLock.unlock();
+            lock.unlock();
+        }
+        //读锁中不能修改map，过期的对象在写锁中移除
+        writeLock.lock();
+        try {
+            CacheObject<K, V> co = cacheMap.get(key);
+            if (co != null && co.isExpired()) {
+                cacheMap.remove(key);
+            }
+            return null;
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -21,6 +21,17 @@ public class LFUCache<K, V> extends AbstractCacheMap<K, V> {
         cacheMap = new HashMap<K, CacheObject<K, V>>(cacheSize + 1);
     }
 
+    /**
+     * get时累加访问次数，淘汰时依据该次数，需要写锁保证计数准确
+     *
+     * @param key
+     * @return
+     */
+    @Override
+    public V get(K key) {
+        return this.get(key, true);
+    }
+
     /**
      * 实现删除过期对象 和 删除访问次数最少的对象 
      *
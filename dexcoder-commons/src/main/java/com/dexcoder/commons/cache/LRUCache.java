@@ -38,6 +38,17 @@ public class LRUCache<K, V> extends AbstractCacheMap<K, V> {
         };
     }
 
+    /**
+     * 按访问排序的linkedHashMap在get时会调整链表，需要写锁
+     *
+     * @param key
+     * @return
+     */
+    @Override
+    public V get(K key) {
+        return this.get(key, true);
+    }
+
     /**
      * 插入元素时是否需要移除最老的元素(超过缓存大小时)
      * 
@@ -88,12 +88,15 @@ public class RunBinder {
             runResult = new RunResult();
             resultHolder.set(runResult);
         }
-        runResult.setSuccess(success);
-        runResult.setCode(code);
-        if (success) {
-            runResult.addMessage(message);
-        } else {
-            runResult.addError(message);
+        //在其它线程中执行时可能共用调用线程的结果
+        synchronized (runResult) {
+            runResult.setSuccess(success);
+            runResult.setCode(code);
+            if (success) {
+                runResult.addMessage(message);
+            } else {
+                runResult.addError(message);
+            }
         }
     }
 
@@ -288,6 +291,19 @@ public class RunBinder {
         return getCode(true);
     }
 
+    /**
+     * 设置结果，在其它线程中执行时传递调用线程的结果
+     *
+     * @param runResult 为null时清除
+     */
+    public static void setRunResult(RunResult runResult) {
+        if (runResult == null) {
+            resultHolder.remove();
+        } else {
+            resultHolder.set(runResult);
+        }
+    }
+
     /**
      * 清除信息，释放资源
      */
@@ -1,62 +1,215 @@
 package com.dexcoder.dal.spring;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jdbc.support.JdbcAccessor;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.CollectionUtils;
 
 import com.dexcoder.commons.bean.BeanConverter;
 import com.dexcoder.commons.bean.LongIntegerConverter;
 import com.dexcoder.commons.pager.Pager;
 import com.dexcoder.commons.utils.ClassUtils;
+import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.RowCallback;
 import com.dexcoder.dal.SqlFactory;
+import com.dexcoder.dal.build.AutoField;
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.build.CriteriaBoundSql;
+import com.dexcoder.dal.build.EntitySnapshots;
+import com.dexcoder.dal.build.InsertBoundSql;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
 import com.dexcoder.dal.handler.DefaultMappingHandler;
 import com.dexcoder.dal.handler.KeyGenerator;
 import com.dexcoder.dal.handler.MappingHandler;
+import com.dexcoder.dal.handler.ShardingMappingHandler;
+import com.dexcoder.dal.spring.cache.EntityCache;
+import com.dexcoder.dal.spring.cache.IdentityMap;
+import com.dexcoder.dal.spring.cache.QueryCache;
+import com.dexcoder.dal.spring.datasource.DataSourceContext;
+import com.dexcoder.dal.spring.datasource.DynamicDataSourceHolder;
 import com.dexcoder.dal.spring.mapper.JdbcRowMapper;
+import com.dexcoder.dal.spring.mapper.SnapshotRowMapper;
 import com.dexcoder.dal.spring.page.PageControl;
+import com.dexcoder.dal.spring.parallel.GetCoalescer;
+import com.dexcoder.dal.spring.parallel.InTempTable;
+import com.dexcoder.dal.spring.parallel.ParallelExecutor;
+import com.dexcoder.dal.spring.parallel.ShardAggregator;
+import com.dexcoder.dal.spring.parallel.ShardFetcher;
+import com.dexcoder.dal.spring.parallel.ShardPageMerger;
+import com.dexcoder.dal.spring.parallel.SingleFlight;
+import com.dexcoder.dal.spring.parallel.SortValuesComparator;
+import com.dexcoder.dal.spring.stream.ResultSetIterator;
+import com.dexcoder.dal.spring.stream.StreamingStatementSetter;
 
 /**
  * Created by liyd on 2015-12-15.
  */
 public abstract class AbstractJdbcDaoImpl {
 
-    protected static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
+    protected static final Object[]     EMPTY_OBJECT_ARRAY = new Object[0];
+
+    /** 默认批量操作每批大小 */
+    public static final int             DEFAULT_BATCH_SIZE = 500;
+
+    /** 默认in条件最大参数个数 */
+    public static final int             DEFAULT_IN_LIMIT   = 1000;
+
+    /** 默认并行查询的最大并发数 */
+    public static final int             DEFAULT_PARALLEL   = 4;
+
+    /** 支持多行insert的数据库 */
+    protected static final String[]     MULTI_INSERT_DBS   = { "MYSQL", "MARIADB", "H2", "POSTGRESQL" };
 
     /**
      * spring jdbcTemplate 对象
      */
-    protected JdbcOperations        jdbcTemplate;
+    protected JdbcOperations            jdbcTemplate;
 
     /**
      * 名称处理器，为空按默认执行
      */
-    protected MappingHandler        mappingHandler;
+    protected MappingHandler            mappingHandler;
 
     /** 主键生成器 为空默认数据库自增 */
-    protected KeyGenerator          keyGenerator;
+    protected KeyGenerator              keyGenerator;
 
     /**
      * rowMapper，为空按默认执行
      */
-    protected String                rowMapperClass;
+    protected String                    rowMapperClass;
 
     /**
      * 自定义sql处理
      */
-    protected SqlFactory            sqlFactory;
+    protected SqlFactory                sqlFactory;
 
     /**
      * 数据库方言
      */
-    protected String                dialect;
+    protected String                    dialect;
+
+    /**
+     * 批量操作时每批提交的记录数
+     */
+    protected int                       batchSize          = DEFAULT_BATCH_SIZE;
+
+    /**
+     * in条件最大参数个数，为空按数据库方言获取
+     */
+    protected Integer                   inLimit;
+
+    /**
+     * 多行insert时一条sql的最大参数个数，postgresql限制32767，mysql限制65535
+     */
+    protected int                       maxParameters      = 30000;
+
+    /**
+     * 多行insert时一条sql的最大字节数(估算)，mysql默认max_allowed_packet为4M
+     */
+    protected int                       maxPacketSize      = 4 * 1024 * 1024;
+
+    /**
+     * 流式查询的fetchSize，mysql固定使用Integer.MIN_VALUE逐行读取
+     */
+    protected int                       streamFetchSize    = 1000;
+
+    /**
+     * 数据源，queryIterator等需要持有连接的方法使用，为空时从jdbcTemplate获取
+     */
+    protected DataSource                dataSource;
+
+    /**
+     * in列表超过该个数时拆分成多条sql并行执行，为空时为in条件最大参数个数，小于等于0时不拆分
+     */
+    protected Integer                   largeInThreshold;
+
+    /**
+     * in列表超过该个数时使用临时表代替拆分，小于等于0时不使用
+     */
+    protected int                       largeInTempTableThreshold;
+
+    /**
+     * 大in列表使用的临时表名前缀
+     */
+    protected String                    largeInTempTable   = "DAL_TMP_IN";
+
+    /**
+     * 并行查询执行器，为空时使用parallelism创建有界线程池
+     */
+    protected volatile ParallelExecutor parallelExecutor;
+
+    /**
+     * 默认并行查询执行器的最大并发数
+     */
+    protected int                       parallelism        = DEFAULT_PARALLEL;
+
+    /**
+     * 跨物理表深度翻页时每个物理表每批获取的记录数
+     */
+    protected int                       shardPageBatchSize = 1000;
+
+    /**
+     * 是否开启脏数据跟踪，开启后get、queryList等返回的实体会保存快照，供updateChanged使用
+     * queryForEach、queryIterator等流式查询的实体不保存快照
+     */
+    protected boolean                   dirtyTracking;
+
+    /**
+     * 实体快照
+     */
+    protected EntitySnapshots           entitySnapshots    = new EntitySnapshots();
+
+    /**
+     * 查询结果缓存，为空时不缓存
+     */
+    protected QueryCache                queryCache;
+
+    /**
+     * 实体缓存，为空时不缓存，设置后@Table(cache = true)或配置的实体在get时使用
+     */
+    protected EntityCache               entityCache;
+
+    /**
+     * 是否开启事务内的实体缓存，开启后同一事务中get、querySingleResult相同的实体只查询一次
+     */
+    protected boolean                   identityMapEnabled;
+
+    /**
+     * 合并并发的get按主键查询，为空时不合并，事务中不合并
+     */
+    protected GetCoalescer              getCoalescer;
+
+    /**
+     * 合并相同的并发查询，为空时不合并
+     */
+    protected SingleFlight              singleFlight;
 
     /**
      * map转bean
@@ -102,13 +255,142 @@ public abstract class AbstractJdbcDaoImpl {
      * @param clazz
      * @return
      */
-    @SuppressWarnings("unchecked")
     protected <T> RowMapper<T> getRowMapper(Class<T> clazz) {
+        RowMapper<T> rowMapper = this.getStreamRowMapper(clazz);
+        return dirtyTracking ? new SnapshotRowMapper<T>(rowMapper, entitySnapshots) : rowMapper;
+    }
+
+    /**
+     * 获取流式查询的rowMapper对象，逐行处理的数据不保存快照
+     *
+     * @param clazz
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> RowMapper<T> getStreamRowMapper(Class<T> clazz) {
 
         if (StringUtils.isBlank(rowMapperClass)) {
             return JdbcRowMapper.newInstance(clazz);
-        } else {
-            return (RowMapper<T>) ClassUtils.newInstance(rowMapperClass);
+        }
+        return (RowMapper<T>) ClassUtils.newInstance(rowMapperClass);
+    }
+
+    protected EntitySnapshots getEntitySnapshots() {
+        return entitySnapshots;
+    }
+
+    /**
+     * 查询，设置了queryCache时先从缓存获取
+     *
+     * @param boundSql the bound sql
+     * @param mappedType 映射的类型，与rowMapper一起区分同一sql的不同结果
+     * @param rowMapper the row mapper
+     * @return the list
+     */
+    protected <T> List<T> query(final BoundSql boundSql, final Class<?> mappedType, final RowMapper<T> rowMapper) {
+        //脏数据跟踪时每次都需要新的实体并保存快照
+        if (queryCache == null || rowMapper instanceof SnapshotRowMapper) {
+            return this.querySingleFlight(boundSql, mappedType, rowMapper);
+        }
+        return queryCache.query(boundSql, Arrays.asList(rowMapper.getClass(), mappedType), new Callable<List<T>>() {
+            public List<T> call() throws Exception {
+                return querySingleFlight(boundSql, mappedType, rowMapper);
+            }
+        });
+    }
+
+    /**
+     * 执行查询，设置了singleFlight时相同的并发查询只执行一次
+     * <pre>
+     *     事务中、设置了分页时及脏数据跟踪时不合并
+     *     key包含当前线程的数据源，不同数据源的查询不会合并
+     * </pre>
+     *
+     * @param boundSql the bound sql
+     * @param mappedType the mapped type
+     * @param rowMapper the row mapper
+     * @return the list
+     */
+    protected <T> List<T> querySingleFlight(final BoundSql boundSql, Class<?> mappedType,
+                                            final RowMapper<T> rowMapper) {
+        if (singleFlight == null || rowMapper instanceof SnapshotRowMapper
+            || TransactionSynchronizationManager.isActualTransactionActive() || PageControl.LOCAL_PAGER.get() != null) {
+            return jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(), rowMapper);
+        }
+        DataSourceContext dsContext = DynamicDataSourceHolder.getDsContent();
+        List<Object> key = Arrays.asList(rowMapper.getClass(), mappedType, boundSql.getSql(),
+            new ArrayList<Object>(boundSql.getParameters()), dsContext == null ? null : dsContext.getDsKey(),
+            dsContext == null ? null : dsContext.getIsWrite());
+        return singleFlight.execute(key, new Callable<List<T>>() {
+            public List<T> call() throws Exception {
+                return jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(), rowMapper);
+            }
+        });
+    }
+
+    /**
+     * 查询单个值，设置了queryCache或singleFlight时使用query
+     *
+     * @param boundSql the bound sql
+     * @param requiredType the required type
+     * @return the t
+     */
+    protected <T> T queryForObject(BoundSql boundSql, Class<T> requiredType) {
+        if (queryCache == null && singleFlight == null) {
+            return jdbcTemplate.queryForObject(boundSql.getSql(), boundSql.getParameters().toArray(), requiredType);
+        }
+        return DataAccessUtils.requiredSingleResult(this.query(boundSql, requiredType, new SingleColumnRowMapper<T>(
+            requiredType)));
+    }
+
+    /**
+     * 获取当前事务的实体缓存
+     *
+     * @param create 不存在时是否创建
+     * @return 未开启或没有事务时返回null
+     */
+    protected IdentityMap getIdentityMap(boolean create) {
+        return identityMapEnabled ? IdentityMap.current(this, create) : null;
+    }
+
+    /**
+     * 写操作后使sql涉及的表的查询缓存、实体缓存及事务内的实体缓存失效
+     *
+     * @param boundSql the bound sql
+     * @param ids 写入的主键，为null时表的所有实体失效
+     */
+    protected void evictCaches(BoundSql boundSql, Collection<?> ids) {
+        if (queryCache != null) {
+            queryCache.evict(boundSql);
+        }
+        if (entityCache != null) {
+            entityCache.evict(boundSql, ids);
+        }
+        IdentityMap identityMap = this.getIdentityMap(false);
+        if (identityMap != null) {
+            identityMap.evict(boundSql, ids);
+        }
+    }
+
+    /**
+     * 写操作后使sql涉及的表的所有缓存失效
+     *
+     * @param sql 为null时所有缓存失效
+     */
+    protected void evictCaches(String sql) {
+        if (sql != null) {
+            this.evictCaches(new CriteriaBoundSql(sql, null), null);
+            return;
+        }
+        if (queryCache != null) {
+            queryCache.evictAll();
+        }
+        if (entityCache != null) {
+            entityCache.evictAll();
+        }
+        IdentityMap identityMap = this.getIdentityMap(false);
+        if (identityMap != null) {
+            identityMap.clear();
         }
     }
 
@@ -125,6 +407,68 @@ public abstract class AbstractJdbcDaoImpl {
         return this.mappingHandler;
     }
 
+    /**
+     * 按batchSize分批执行jdbc batch
+     *
+     * @param sql the sql
+     * @param batchArgs the batch args
+     * @return 每条记录影响的行数
+     */
+    protected int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+        int[] rows = new int[batchArgs.size()];
+        for (int from = 0; from < batchArgs.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, batchArgs.size());
+            int[] result = jdbcTemplate.batchUpdate(sql, batchArgs.subList(from, to));
+            System.arraycopy(result, 0, rows, from, result.length);
+        }
+        this.evictCaches(sql);
+        return rows;
+    }
+
+    /**
+     * 按batchSize分批执行jdbc batch，并获取数据库生成的主键
+     *
+     * @param sql the sql
+     * @param pkColumn the pk column
+     * @param batchArgs the batch args
+     * @return 主键列表，顺序与batchArgs一致
+     */
+    protected List<Long> batchUpdateForKeys(final String sql, final String pkColumn, final List<Object[]> batchArgs) {
+        List<Long> generatedKeys = jdbcTemplate.execute(new ConnectionCallback<List<Long>>() {
+            public List<Long> doInConnection(Connection con) throws SQLException, DataAccessException {
+                List<Long> keys = new ArrayList<Long>(batchArgs.size());
+                PreparedStatement ps = con.prepareStatement(sql, new String[] { pkColumn });
+                try {
+                    for (int from = 0; from < batchArgs.size(); from += batchSize) {
+                        int to = Math.min(from + batchSize, batchArgs.size());
+                        for (Object[] args : batchArgs.subList(from, to)) {
+                            new ArgumentPreparedStatementSetter(args).setValues(ps);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                        ResultSet rs = ps.getGeneratedKeys();
+                        try {
+                            while (rs.next()) {
+                                keys.add(rs.getLong(1));
+                            }
+                        } finally {
+                            JdbcUtils.closeResultSet(rs);
+                        }
+                    }
+                } finally {
+                    JdbcUtils.closeStatement(ps);
+                }
+                if (keys.size() != batchArgs.size()) {
+                    throw new JdbcAssistantException("批量插入返回的主键数量不正确,数据库驱动可能不支持批量获取主键,sql:"
+                                                     + sql);
+                }
+                return keys;
+            }
+        });
+        this.evictCaches(sql);
+        return generatedKeys;
+    }
+
     public KeyGenerator getKeyGenerator() {
         return keyGenerator;
     }
@@ -140,6 +484,487 @@ public abstract class AbstractJdbcDaoImpl {
         return dialect;
     }
 
+    /**
+     * 获取in条件最大参数个数，oracle限制1000，sql server限制2100个参数
+     *
+     * @return
+     */
+    protected int getInLimit() {
+        if (inLimit == null) {
+            inLimit = StringUtils.indexOf(getDialect(), "SQL SERVER") != -1 ? 2000 : DEFAULT_IN_LIMIT;
+        }
+        return inLimit;
+    }
+
+    /**
+     * 当前数据库是否支持多行insert
+     *
+     * @return
+     */
+    protected boolean isMultiInsertSupported() {
+        return StringUtils.indexOfAny(getDialect(), MULTI_INSERT_DBS) != -1;
+    }
+
+    /**
+     * 按最大参数个数及最大包大小分批执行多行insert
+     *
+     * @param insertBoundSql 单行insert
+     * @param batchArgs the batch args
+     * @return 插入的行数
+     */
+    protected int multiInsert(InsertBoundSql insertBoundSql, List<Object[]> batchArgs) {
+        String sql = insertBoundSql.getSql();
+        //每行values部分的长度，包括分隔的逗号
+        int valuesLength = insertBoundSql.getValuesSql().length() + 1;
+        int rows = 0;
+        int from = 0;
+        while (from < batchArgs.size()) {
+            int paramCount = 0;
+            long packetSize = sql.length();
+            int to = from;
+            while (to < batchArgs.size()) {
+                Object[] args = batchArgs.get(to);
+                long argsSize = this.estimateSize(args) + valuesLength;
+                //至少一行
+                if (to > from && (paramCount + args.length > maxParameters || packetSize + argsSize > maxPacketSize)) {
+                    break;
+                }
+                paramCount += args.length;
+                packetSize += argsSize;
+                to++;
+            }
+            List<Object> params = new ArrayList<Object>(paramCount);
+            for (Object[] args : batchArgs.subList(from, to)) {
+                Collections.addAll(params, args);
+            }
+            rows += jdbcTemplate.update(insertBoundSql.multiValuesSql(to - from), params.toArray());
+            from = to;
+        }
+        this.evictCaches(sql);
+        return rows;
+    }
+
+    /**
+     * 估算参数的字节数
+     *
+     * @param args the args
+     * @return
+     */
+    protected long estimateSize(Object[] args) {
+        long size = 0;
+        for (Object arg : args) {
+            if (arg instanceof CharSequence) {
+                //utf8最多3个字节，还有转义
+                size += ((CharSequence) arg).length() * 3 + 2;
+            } else if (arg instanceof byte[]) {
+                size += ((byte[]) arg).length * 2 + 2;
+            } else {
+                size += 32;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 获取流式查询的fetchSize
+     *
+     * @return
+     */
+    protected int getStreamFetchSize() {
+        //mysql只有Integer.MIN_VALUE时才会逐行读取，否则一次读取所有数据
+        if (StringUtils.indexOfAny(getDialect(), "MYSQL", "MARIADB") != -1) {
+            return Integer.MIN_VALUE;
+        }
+        return streamFetchSize;
+    }
+
+    /**
+     * 流式查询，逐行映射并回调，不会将结果放入list
+     *
+     * @param sql the sql
+     * @param args the args
+     * @param rowMapper the row mapper
+     * @param rowCallback the row callback
+     */
+    protected <T> void queryForEach(String sql, Object[] args, final RowMapper<T> rowMapper,
+                                    final RowCallback<T> rowCallback) {
+        jdbcTemplate.query(sql, new StreamingStatementSetter(args, getStreamFetchSize()), new RowCallbackHandler() {
+            private int rowNum = 0;
+
+            public void processRow(ResultSet rs) throws SQLException {
+                rowCallback.processRow(rowMapper.mapRow(rs, rowNum++));
+            }
+        });
+    }
+
+    /**
+     * 流式查询迭代器，遍历完或调用close()时释放连接
+     *
+     * @param sql the sql
+     * @param args the args
+     * @param rowMapper the row mapper
+     * @return
+     */
+    protected <T> ResultSetIterator<T> queryIterator(String sql, Object[] args, RowMapper<T> rowMapper) {
+        //迭代器直接从数据源获取连接，不经过jdbcTemplate切面，这里设置为读
+        //连接在创建迭代器时获取，获取后恢复调用线程原有的设置，不影响之后的写操作
+        DataSourceContext originalDsContext = DynamicDataSourceHolder.getDsContent();
+        DynamicDataSourceHolder.setIsWrite(false);
+        try {
+            DataSource ds = this.getDataSource();
+            return new ResultSetIterator<T>(ds, sql, args, getStreamFetchSize(), rowMapper,
+                this.getExceptionTranslator(ds));
+        } finally {
+            DynamicDataSourceHolder.setDsContent(originalDsContext);
+        }
+    }
+
+    /**
+     * 获取需要拆分执行的大in条件，分页时不拆分
+     *
+     * @param criteria the criteria
+     * @return 条件key，不需要拆分时返回null
+     */
+    protected String getLargeInCondition(Criteria criteria) {
+        if (PageControl.LOCAL_PAGER.get() != null) {
+            return null;
+        }
+        int threshold = this.getLargeInThreshold();
+        return threshold <= 0 ? null : criteria.getLargeInCondition(threshold);
+    }
+
+    protected int getLargeInThreshold() {
+        return largeInThreshold == null ? this.getInLimit() : largeInThreshold;
+    }
+
+    /**
+     * 按in列表拆分构建BoundSql，in的值会去重，保证各条sql的结果不重复
+     *
+     * @param criteria the criteria
+     * @param conditionKey the condition key
+     * @param isCount 是否count查询
+     * @return the list
+     */
+    protected List<BoundSql> buildSplitBoundSqls(Criteria criteria, String conditionKey, boolean isCount) {
+        AutoField autoField = criteria.getCondition(conditionKey);
+        Object[] values = new LinkedHashSet<Object>(Arrays.asList((Object[]) autoField.getValue())).toArray();
+        int threshold = this.getLargeInThreshold();
+        List<BoundSql> boundSqls = new ArrayList<BoundSql>();
+        try {
+            for (int from = 0; from < values.length; from += threshold) {
+                Object[] chunk = Arrays.copyOfRange(values, from, Math.min(from + threshold, values.length));
+                criteria.condition(conditionKey, this.copyCondition(autoField, autoField.getName(), chunk));
+                if (isCount) {
+                    criteria.addSelectFunc("count(*)", true, false, true);
+                }
+                boundSqls.add(criteria.build(true));
+            }
+        } finally {
+            criteria.condition(conditionKey, autoField);
+        }
+        return boundSqls;
+    }
+
+    /**
+     * 并行执行查询，返回结果顺序与boundSqls一致
+     *
+     * @param boundSqls the bound sqls
+     * @param rowMapper the row mapper
+     * @return the list
+     */
+    protected <T> List<List<T>> queryParallel(List<BoundSql> boundSqls, final RowMapper<T> rowMapper) {
+        List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>(boundSqls.size());
+        for (final BoundSql boundSql : boundSqls) {
+            tasks.add(new Callable<List<T>>() {
+                public List<T> call() throws Exception {
+                    return jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(), rowMapper);
+                }
+            });
+        }
+        return this.getParallelExecutor().invokeAll(tasks);
+    }
+
+    /**
+     * 水平分表时获取需要访问的物理表
+     *
+     * @param criteria the criteria
+     * @return 没有分表或只访问一个物理表时返回null
+     */
+    protected List<String> getShardTables(Criteria criteria) {
+        MappingHandler handler = this.getMappingHandler();
+        if (!(handler instanceof ShardingMappingHandler)) {
+            return null;
+        }
+        List<String> tables = ((ShardingMappingHandler) handler).route(criteria.getEntityClass(),
+            criteria.getConditions());
+        return tables == null || tables.size() <= 1 ? null : tables;
+    }
+
+    /**
+     * 按每个物理表构建BoundSql，用于并行查询后合并
+     *
+     * @param criteria the criteria
+     * @param tables 物理表
+     * @param isCount 是否count查询
+     * @return the list
+     */
+    protected List<BoundSql> buildShardBoundSqls(Criteria criteria, List<String> tables, boolean isCount) {
+        if (PageControl.LOCAL_PAGER.get() != null) {
+            throw new JdbcAssistantException("跨物理表分页只支持queryList、queryRowMapList:" + tables);
+        }
+        List<BoundSql> boundSqls = new ArrayList<BoundSql>(tables.size());
+        try {
+            for (String table : tables) {
+                ShardingMappingHandler.setTargetTable(criteria.getEntityClass(), table);
+                if (isCount) {
+                    criteria.addSelectFunc("count(*)", true, false, true);
+                }
+                boundSqls.add(criteria.build(true));
+            }
+        } finally {
+            ShardingMappingHandler.clearTargetTable();
+        }
+        return boundSqls;
+    }
+
+    /**
+     * 跨物理表聚合，count、sum、min、max及group by下推到各物理表并行执行后合并
+     *
+     * @param criteria the criteria
+     * @param tables 物理表
+     * @return 与单表查询相同结构的结果
+     */
+    protected List<Map<String, Object>> queryAggregateByShards(Criteria criteria, List<String> tables) {
+        if (PageControl.LOCAL_PAGER.get() != null) {
+            throw new JdbcAssistantException("跨物理表聚合不支持分页:" + tables);
+        }
+        ShardAggregator aggregator = new ShardAggregator(criteria, this.newSortValuesComparator(criteria));
+        List<AutoField> funcs = criteria.getSelectFuncs();
+        List<BoundSql> boundSqls = new ArrayList<BoundSql>(tables.size());
+        try {
+            for (String table : tables) {
+                ShardingMappingHandler.setTargetTable(criteria.getEntityClass(), table);
+                boundSqls.add(criteria.selectFuncs(aggregator.getPushdownFuncs()).build(true));
+            }
+        } finally {
+            ShardingMappingHandler.clearTargetTable();
+            //恢复原有函数，只使用一次的函数用完就删
+            List<AutoField> remainFuncs = new ArrayList<AutoField>(funcs.size());
+            for (AutoField func : funcs) {
+                if (func.getValue() == null || !Boolean.valueOf(func.getValue().toString())) {
+                    remainFuncs.add(func);
+                }
+            }
+            criteria.selectFuncs(remainFuncs);
+        }
+        return aggregator.merge(this.queryParallel(boundSqls, aggregator.getRowMapper()));
+    }
+
+    /**
+     * 跨物理表分页，各物理表取前 offset+n 条(深度翻页时按keyset分批)后归并
+     *
+     * @param criteria the criteria
+     * @param tables 物理表
+     * @param rowMapper the row mapper
+     * @return 当前页的数据，同时设置到pager
+     */
+    protected <T> List<T> queryPageByShards(final Criteria criteria, List<String> tables,
+                                            final RowMapper<T> rowMapper) {
+        boolean isGetItemsTotal = PageControl.isGetItemsTotal();
+        //取出后清除，各物理表的查询不再经过分页拦截器
+        Pager pager = PageControl.getPager();
+        if (isGetItemsTotal) {
+            int itemsTotal = 0;
+            List<List<Integer>> counts = this.queryParallel(this.buildShardBoundSqls(criteria, tables, true),
+                new SingleColumnRowMapper<Integer>(Integer.class));
+            for (List<Integer> count : counts) {
+                itemsTotal += count.iterator().next();
+            }
+            pager.setItemsTotal(itemsTotal);
+        }
+        //归并及分批keyset获取需要唯一的排序值，临时追加主键排序
+        boolean isAppendPkOrder = criteria.isAppendPkOrder();
+        criteria.appendPkOrder(true);
+        try {
+            return this.mergeShardPage(criteria, tables, rowMapper, pager);
+        } finally {
+            criteria.appendPkOrder(isAppendPkOrder);
+        }
+    }
+
+    /**
+     * 归并各物理表的数据获取一页
+     *
+     * @param criteria the criteria
+     * @param tables 物理表
+     * @param rowMapper the row mapper
+     * @param pager the pager
+     * @return 当前页的数据，同时设置到pager
+     */
+    protected <T> List<T> mergeShardPage(final Criteria criteria, List<String> tables, final RowMapper<T> rowMapper,
+                                         Pager pager) {
+        List<ShardFetcher<T>> fetchers = new ArrayList<ShardFetcher<T>>(tables.size());
+        for (final String table : tables) {
+            fetchers.add(new ShardFetcher<T>() {
+                public Callable<List<T>> prepare(Object[] afterValues, int limit) {
+                    final BoundSql boundSql = buildShardPageBoundSql(criteria, table, afterValues, limit);
+                    return new Callable<List<T>>() {
+                        public List<T> call() throws Exception {
+                            return jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(),
+                                rowMapper);
+                        }
+                    };
+                }
+            });
+        }
+        ShardPageMerger<T> merger = new ShardPageMerger<T>(criteria, this.newSortValuesComparator(criteria),
+            this.getParallelExecutor(), shardPageBatchSize);
+        List<T> list = merger.merge(fetchers, pager.getOffset(), pager.getItemsPerPage());
+        pager.setList(list);
+        PageControl.setPager(pager);
+        return list;
+    }
+
+    /**
+     * 构建单个物理表排序后取前limit条的sql
+     *
+     * @param criteria the criteria
+     * @param table 物理表
+     * @param afterValues keyset分页的值，为null时使用criteria原有的
+     * @param limit the limit
+     * @return bound sql
+     */
+    protected BoundSql buildShardPageBoundSql(Criteria criteria, String table, Object[] afterValues, int limit) {
+        Object[] originalAfterValues = criteria.getAfterValues();
+        BoundSql boundSql;
+        try {
+            ShardingMappingHandler.setTargetTable(criteria.getEntityClass(), table);
+            if (afterValues != null) {
+                criteria.after(afterValues);
+            }
+            boundSql = criteria.build(true);
+        } finally {
+            ShardingMappingHandler.clearTargetTable();
+            criteria.after(originalAfterValues);
+        }
+        return new CriteriaBoundSql(this.getLimitSql(boundSql.getSql(), limit), boundSql.getParameters());
+    }
+
+    /**
+     * 只取前limit条的sql
+     *
+     * @param sql 已排序的sql
+     * @param limit the limit
+     * @return the string
+     */
+    protected String getLimitSql(String sql, int limit) {
+        String dialect = getDialect();
+        if (StringUtils.indexOf(dialect, "ORACLE") != -1) {
+            return "SELECT * FROM (" + sql + ") WHERE ROWNUM <= " + limit;
+        } else if (StringUtils.indexOf(dialect, "SQL SERVER") != -1) {
+            return sql + " OFFSET 0 ROWS FETCH NEXT " + limit + " ROWS ONLY";
+        } else if (StringUtils.indexOf(dialect, "DB2") != -1) {
+            return sql + " FETCH FIRST " + limit + " ROWS ONLY";
+        }
+        return sql + " LIMIT " + limit;
+    }
+
+    /**
+     * 按数据库的null排序规则比较排序值，跨物理表归并时使用
+     *
+     * @param criteria the criteria
+     * @return the sort values comparator
+     */
+    protected SortValuesComparator newSortValuesComparator(Criteria criteria) {
+        return new SortValuesComparator(criteria, SortValuesComparator.isNullsLow(getDialect()));
+    }
+
+    /**
+     * 是否使用临时表执行大in条件
+     *
+     * @param criteria the criteria
+     * @param conditionKey the condition key
+     * @return the boolean
+     */
+    protected boolean isUseInTempTable(Criteria criteria, String conditionKey) {
+        Object[] values = (Object[]) criteria.getCondition(conditionKey).getValue();
+        return largeInTempTableThreshold > 0 && values.length > largeInTempTableThreshold
+               && InTempTable.isSupportedValues(values) && InTempTable.isSupported(getDialect());
+    }
+
+    /**
+     * 将in的值写入临时表，以子查询代替in列表后执行，临时表与查询在同一连接中
+     *
+     * @param criteria the criteria
+     * @param conditionKey the condition key
+     * @param isCount 是否count查询
+     * @param action the action
+     * @return the t
+     */
+    protected <T> T executeWithInTempTable(Criteria criteria, String conditionKey, boolean isCount,
+                                           final PreparedStatementCallback<T> action) {
+        AutoField autoField = criteria.getCondition(conditionKey);
+        final Object[] values = new LinkedHashSet<Object>(Arrays.asList((Object[]) autoField.getValue())).toArray();
+        final InTempTable inTempTable = new InTempTable(getDialect(), largeInTempTable);
+        final BoundSql boundSql;
+        try {
+            criteria.condition(conditionKey,
+                this.copyCondition(autoField, "[" + autoField.getName() + "]", inTempTable.getSubQuery(values)));
+            if (isCount) {
+                criteria.addSelectFunc("count(*)", true, false, true);
+            }
+            boundSql = criteria.build(true);
+        } finally {
+            criteria.condition(conditionKey, autoField);
+        }
+        return jdbcTemplate.execute(new ConnectionCallback<T>() {
+            public T doInConnection(Connection con) throws SQLException, DataAccessException {
+                inTempTable.fill(con, values, batchSize);
+                PreparedStatement ps = con.prepareStatement(boundSql.getSql());
+                try {
+                    new ArgumentPreparedStatementSetter(boundSql.getParameters().toArray()).setValues(ps);
+                    return action.doInPreparedStatement(ps);
+                } finally {
+                    JdbcUtils.closeStatement(ps);
+                    inTempTable.clear(con, values);
+                }
+            }
+        });
+    }
+
+    private AutoField copyCondition(AutoField autoField, String name, Object value) {
+        return new AutoField.Builder().name(name).logicalOperator(autoField.getLogicalOperator())
+            .fieldOperator(autoField.getFieldOperator()).type(autoField.getType()).value(value).build();
+    }
+
+    protected ParallelExecutor getParallelExecutor() {
+        if (parallelExecutor == null) {
+            synchronized (this) {
+                if (parallelExecutor == null) {
+                    parallelExecutor = ParallelExecutor.newBounded(parallelism);
+                }
+            }
+        }
+        return parallelExecutor;
+    }
+
+    protected DataSource getDataSource() {
+        if (dataSource == null) {
+            if (!(jdbcTemplate instanceof JdbcAccessor)) {
+                throw new JdbcAssistantException("jdbcTemplate被代理时无法获取数据源，请设置dataSource属性");
+            }
+            dataSource = ((JdbcAccessor) jdbcTemplate).getDataSource();
+        }
+        return dataSource;
+    }
+
+    protected SQLExceptionTranslator getExceptionTranslator(DataSource ds) {
+        if (jdbcTemplate instanceof JdbcAccessor) {
+            return ((JdbcAccessor) jdbcTemplate).getExceptionTranslator();
+        }
+        return new SQLErrorCodeSQLExceptionTranslator(ds);
+    }
+
     public void setJdbcTemplate(JdbcOperations jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
@@ -164,4 +989,80 @@ public abstract class AbstractJdbcDaoImpl {
         this.sqlFactory = sqlFactory;
     }
 
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setInLimit(Integer inLimit) {
+        this.inLimit = inLimit;
+    }
+
+    public void setMaxParameters(int maxParameters) {
+        this.maxParameters = maxParameters;
+    }
+
+    public void setMaxPacketSize(int maxPacketSize) {
+        this.maxPacketSize = maxPacketSize;
+    }
+
+    public void setStreamFetchSize(int streamFetchSize) {
+        this.streamFetchSize = streamFetchSize;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void setLargeInThreshold(Integer largeInThreshold) {
+        this.largeInThreshold = largeInThreshold;
+    }
+
+    public void setLargeInTempTableThreshold(int largeInTempTableThreshold) {
+        this.largeInTempTableThreshold = largeInTempTableThreshold;
+    }
+
+    public void setLargeInTempTable(String largeInTempTable) {
+        this.largeInTempTable = largeInTempTable;
+    }
+
+    public void setParallelExecutor(ParallelExecutor parallelExecutor) {
+        this.parallelExecutor = parallelExecutor;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public void setShardPageBatchSize(int shardPageBatchSize) {
+        this.shardPageBatchSize = shardPageBatchSize;
+    }
+
+    public void setDirtyTracking(boolean dirtyTracking) {
+        this.dirtyTracking = dirtyTracking;
+    }
+
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    public void setIdentityMapEnabled(boolean identityMapEnabled) {
+        this.identityMapEnabled = identityMapEnabled;
+    }
+
+    public void setEntityCache(EntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    public EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    public void setGetCoalescer(GetCoalescer getCoalescer) {
+        this.getCoalescer = getCoalescer;
+    }
+
+    public void setSingleFlight(SingleFlight singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
 }
@@ -3,21 +3,54 @@ package com.dexcoder.dal.spring;
 import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.CollectionUtils;
 
 import com.dexcoder.dal.BoundSql;
 import com.dexcoder.dal.JdbcDao;
+import com.dexcoder.dal.ResultIterator;
+import com.dexcoder.dal.RowCallback;
 import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.build.EntityMetadata;
+import com.dexcoder.dal.build.InsertBoundSql;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
 import com.dexcoder.dal.handler.KeyGenerator;
+import com.dexcoder.dal.spring.cache.IdentityMap;
+import com.dexcoder.dal.spring.datasource.DataSourceContext;
+import com.dexcoder.dal.spring.datasource.DynamicDataSourceHolder;
+import com.dexcoder.dal.spring.page.PageControl;
+import com.dexcoder.dal.spring.parallel.ShardAggregator;
+import com.dexcoder.dal.spring.parallel.SortedListMerger;
 
 /**
  * jdbc操作dao
@@ -60,9 +93,11 @@ public class JdbcDaoImpl extends AbstractJdbcDaoImpl implements JdbcDao {
                     return ps;
                 }
             }, keyHolder);
+            //新增的记录不影响已缓存的实体，只使按条件缓存的失效
+            this.evictCaches(boundSql, Collections.emptyList());
             return (T) (Long) keyHolder.getKey().longValue();
         } else {
-            jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+            this.update(boundSql, Collections.emptyList());
             return (T) pkValue;
         }
     }
@@ -70,104 +105,630 @@ public class JdbcDaoImpl extends AbstractJdbcDaoImpl implements JdbcDao {
     public void save(Serializable entity) {
         final BoundSql boundSql = Criteria.insert(entity.getClass()).mappingHandler(getMappingHandler())
             .build(entity, true);
-        jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+        this.update(boundSql, Collections.emptyList());
     }
 
     public void save(Criteria criteria) {
         final BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
-        jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+        this.update(boundSql, Collections.emptyList());
+    }
+
+    public <T> List<T> batchInsert(List<? extends Serializable> entities) {
+        List<Object> keys = new ArrayList<Object>();
+        if (CollectionUtils.isEmpty(entities)) {
+            return (List<T>) keys;
+        }
+        KeyGenerator keyGenerator = this.getKeyGenerator();
+        //sql相同的记录分为一组，表名也在sql中，水平分表时同一物理表的记录在一组
+        Map<String, List<Object[]>> sqlArgs = new LinkedHashMap<String, List<Object[]>>();
+        Map<String, List<Integer>> sqlIndexes = new HashMap<String, List<Integer>>();
+        Map<String, String> sqlPkColumns = new HashMap<String, String>();
+        for (int i = 0; i < entities.size(); i++) {
+            Serializable entity = entities.get(i);
+            Criteria criteria = Criteria.insert(entity.getClass()).mappingHandler(getMappingHandler());
+            String pkFieldName = criteria.getPkField();
+            String pkColumn = criteria.getColumnName(pkFieldName);
+            Serializable pkValue = null;
+            if (keyGenerator != null) {
+                pkFieldName = keyGenerator.handlePkFieldName(pkFieldName, getDialect());
+                pkValue = keyGenerator.generateKeyValue(criteria.getEntityClass(), getDialect());
+                criteria.into(pkFieldName, pkValue);
+            }
+            keys.add(pkValue);
+            BoundSql boundSql = criteria.build(entity, true);
+            List<Object[]> batchArgs = sqlArgs.get(boundSql.getSql());
+            if (batchArgs == null) {
+                batchArgs = new ArrayList<Object[]>();
+                sqlArgs.put(boundSql.getSql(), batchArgs);
+                sqlIndexes.put(boundSql.getSql(), new ArrayList<Integer>());
+                sqlPkColumns.put(boundSql.getSql(), pkColumn);
+            }
+            batchArgs.add(boundSql.getParameters().toArray());
+            sqlIndexes.get(boundSql.getSql()).add(i);
+        }
+        for (Map.Entry<String, List<Object[]>> entry : sqlArgs.entrySet()) {
+            if (keyGenerator == null || keyGenerator.isPkValueBySql()) {
+                List<Long> generatedKeys = this.batchUpdateForKeys(entry.getKey(), sqlPkColumns.get(entry.getKey()),
+                    entry.getValue());
+                List<Integer> indexes = sqlIndexes.get(entry.getKey());
+                for (int i = 0; i < indexes.size(); i++) {
+                    keys.set(indexes.get(i), generatedKeys.get(i));
+                }
+            } else {
+                this.batchUpdate(entry.getKey(), entry.getValue());
+            }
+        }
+        return (List<T>) keys;
+    }
+
+    public void batchSave(List<? extends Serializable> entities) {
+        if (CollectionUtils.isEmpty(entities)) {
+            return;
+        }
+        List<BoundSql> boundSqls = new ArrayList<BoundSql>(entities.size());
+        for (Serializable entity : entities) {
+            boundSqls.add(Criteria.insert(entity.getClass()).mappingHandler(getMappingHandler()).build(entity, true));
+        }
+        this.batchUpdateBoundSql(boundSqls);
+    }
+
+    public int upsert(Serializable entity) {
+        return this.upsert(Criteria.upsert(entity.getClass()), entity);
+    }
+
+    public int upsert(Criteria criteria, Serializable entity) {
+        criteria.mappingHandler(getMappingHandler()).dialect(getDialect());
+        this.generateKeyIfAbsent(criteria, entity);
+        BoundSql boundSql = criteria.build(entity, true);
+        return this.update(boundSql);
+    }
+
+    public int[] batchUpsert(List<? extends Serializable> entities) {
+        return this.batchUpsert(entities, new String[0]);
+    }
+
+    public int[] batchUpsert(List<? extends Serializable> entities, String... conflictUpdateFields) {
+        if (CollectionUtils.isEmpty(entities)) {
+            return new int[0];
+        }
+        List<BoundSql> boundSqls = new ArrayList<BoundSql>(entities.size());
+        for (Serializable entity : entities) {
+            Criteria criteria = Criteria.upsert(entity.getClass()).onConflictUpdate(conflictUpdateFields)
+                .mappingHandler(getMappingHandler()).dialect(getDialect());
+            this.generateKeyIfAbsent(criteria, entity);
+            boundSqls.add(criteria.build(entity, true));
+        }
+        return this.batchUpdateBoundSql(boundSqls);
+    }
+
+    /**
+     * 实体没有主键值时和insert一样使用keyGenerator生成主键
+     *
+     * @param criteria the criteria
+     * @param entity the entity
+     */
+    protected void generateKeyIfAbsent(Criteria criteria, Serializable entity) {
+        KeyGenerator keyGenerator = this.getKeyGenerator();
+        if (keyGenerator == null || entity == null) {
+            return;
+        }
+        String pkFieldName = criteria.getPkField();
+        if (EntityMetadata.forClass(entity.getClass()).getFieldValue(entity, pkFieldName) != null) {
+            return;
+        }
+        pkFieldName = keyGenerator.handlePkFieldName(pkFieldName, getDialect());
+        criteria.into(pkFieldName, keyGenerator.generateKeyValue(criteria.getEntityClass(), getDialect()));
     }
 
     public int update(Criteria criteria) {
         BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
-        return jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+        return this.update(boundSql);
     }
 
     public int update(Serializable entity) {
-        BoundSql boundSql = Criteria.update(entity.getClass()).mappingHandler(getMappingHandler()).build(entity, true);
-        return jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+        return this.update(entity, true);
     }
 
     public int update(Serializable entity, boolean isIgnoreNull) {
-        BoundSql boundSql = Criteria.update(entity.getClass()).mappingHandler(getMappingHandler())
-            .build(entity, isIgnoreNull);
-        return jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+        Criteria criteria = Criteria.update(entity.getClass()).mappingHandler(getMappingHandler());
+        BoundSql boundSql = criteria.build(entity, isIgnoreNull);
+        return this.update(boundSql, this.getPkValues(criteria, entity));
+    }
+
+    public int updateChanged(Serializable entity) {
+        List<String> changedFields = this.getEntitySnapshots().getChangedFields(entity);
+        if (changedFields == null) {
+            throw new JdbcAssistantException("实体没有快照，需要开启dirtyTracking并使用get、queryList等方法返回的实体");
+        }
+        if (changedFields.isEmpty()) {
+            return 0;
+        }
+        Criteria criteria = Criteria.update(entity.getClass()).mappingHandler(getMappingHandler());
+        if (changedFields.contains(criteria.getPkField())) {
+            throw new JdbcAssistantException("主键不能修改:" + criteria.getPkField());
+        }
+        BoundSql boundSql = criteria.changed(changedFields.toArray(new String[changedFields.size()])).build(entity,
+            false);
+        int rows = this.update(boundSql, this.getPkValues(criteria, entity));
+        this.getEntitySnapshots().snapshot(entity);
+        return rows;
+    }
+
+    public int insertMulti(List<? extends Serializable> entities) {
+        if (CollectionUtils.isEmpty(entities)) {
+            return 0;
+        }
+        KeyGenerator keyGenerator = this.getKeyGenerator();
+        //主键由sql生成(例如oracle序列)或数据库不支持多行insert时，使用jdbc batch
+        if ((keyGenerator != null && keyGenerator.isPkValueBySql()) || !this.isMultiInsertSupported()) {
+            return this.batchInsert(entities).size();
+        }
+        Map<String, InsertBoundSql> insertSqls = new LinkedHashMap<String, InsertBoundSql>();
+        Map<String, List<Object[]>> sqlArgs = new HashMap<String, List<Object[]>>();
+        for (Serializable entity : entities) {
+            Criteria criteria = Criteria.insert(entity.getClass()).mappingHandler(getMappingHandler());
+            if (keyGenerator != null) {
+                String pkFieldName = keyGenerator.handlePkFieldName(criteria.getPkField(), getDialect());
+                criteria.into(pkFieldName, keyGenerator.generateKeyValue(criteria.getEntityClass(), getDialect()));
+            }
+            InsertBoundSql boundSql = (InsertBoundSql) criteria.build(entity, true);
+            List<Object[]> batchArgs = sqlArgs.get(boundSql.getSql());
+            if (batchArgs == null) {
+                batchArgs = new ArrayList<Object[]>();
+                sqlArgs.put(boundSql.getSql(), batchArgs);
+                insertSqls.put(boundSql.getSql(), boundSql);
+            }
+            batchArgs.add(boundSql.getParameters().toArray());
+        }
+        int rows = 0;
+        for (Map.Entry<String, InsertBoundSql> entry : insertSqls.entrySet()) {
+            rows += this.multiInsert(entry.getValue(), sqlArgs.get(entry.getKey()));
+        }
+        return rows;
+    }
+
+    public <T extends Serializable> int[] batchUpdate(List<T> entities) {
+        return this.batchUpdate(entities, true);
+    }
+
+    public <T extends Serializable> int[] batchUpdate(List<T> entities, boolean isIgnoreNull) {
+        if (CollectionUtils.isEmpty(entities)) {
+            return new int[0];
+        }
+        List<BoundSql> boundSqls = new ArrayList<BoundSql>(entities.size());
+        for (T entity : entities) {
+            boundSqls.add(Criteria.update(entity.getClass()).mappingHandler(getMappingHandler())
+                .build(entity, isIgnoreNull));
+        }
+        return this.batchUpdateBoundSql(boundSqls);
     }
 
     public int delete(Criteria criteria) {
-        BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
-        return jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+        criteria.mappingHandler(getMappingHandler());
+        String largeInKey = this.getLargeInCondition(criteria);
+        if (largeInKey != null) {
+            return this.deleteByLargeIn(criteria, largeInKey);
+        }
+        BoundSql boundSql = criteria.build(true);
+        return this.update(boundSql);
+    }
+
+    /**
+     * 大in列表拆分删除，写操作在当前线程顺序执行，保证在同一事务中
+     *
+     * @param criteria the criteria
+     * @param largeInKey the large in key
+     * @return the int
+     */
+    protected int deleteByLargeIn(Criteria criteria, String largeInKey) {
+        if (this.isUseInTempTable(criteria, largeInKey)) {
+            try {
+                return this.executeWithInTempTable(criteria, largeInKey, false,
+                    new PreparedStatementCallback<Integer>() {
+                        public Integer doInPreparedStatement(PreparedStatement ps) throws SQLException,
+                                                                                  DataAccessException {
+                            return ps.executeUpdate();
+                        }
+                    });
+            } finally {
+                //执行的sql在临时表处理中构建，使所有缓存失效
+                this.evictCaches((String) null);
+            }
+        }
+        int rows = 0;
+        for (BoundSql boundSql : this.buildSplitBoundSqls(criteria, largeInKey, false)) {
+            rows += this.update(boundSql);
+        }
+        return rows;
     }
 
     public int delete(Serializable entity) {
-        BoundSql boundSql = Criteria.delete(entity.getClass()).mappingHandler(getMappingHandler()).build(entity, true);
-        return jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+        Criteria criteria = Criteria.delete(entity.getClass()).mappingHandler(getMappingHandler());
+        BoundSql boundSql = criteria.build(entity, true);
+        return this.update(boundSql, this.getPkValues(criteria, entity));
     }
 
     public int delete(Class<?> clazz, Serializable id) {
         Criteria criteria = Criteria.delete(clazz).mappingHandler(getMappingHandler());
         BoundSql boundSql = criteria.where(criteria.getPkField(), new Object[] { id }).build(true);
-        return jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+        return this.update(boundSql, Collections.singletonList(id));
+    }
+
+    public int[] batchDelete(Class<?> clazz, Collection<? extends Serializable> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return new int[0];
+        }
+        //去重，1与1L为同一个id
+        Map<Object, Serializable> distinctIds = new LinkedHashMap<Object, Serializable>();
+        for (Serializable id : ids) {
+            if (!distinctIds.containsKey(IdentityMap.normalizeId(id))) {
+                distinctIds.put(IdentityMap.normalizeId(id), id);
+            }
+        }
+        List<Serializable> idList = new ArrayList<Serializable>(distinctIds.values());
+        int inLimit = this.getInLimit();
+        int[] rows = new int[idList.size()];
+        for (int from = 0; from < idList.size(); from += inLimit) {
+            List<Serializable> chunk = idList.subList(from, Math.min(from + inLimit, idList.size()));
+            //先查询存在的id，in删除只能得到总行数，无法对应到每个id
+            Set<Object> existIds = this.queryExistIds(clazz, chunk);
+            List<Serializable> deleteIds = new ArrayList<Serializable>(existIds.size());
+            for (Serializable id : chunk) {
+                if (existIds.contains(IdentityMap.normalizeId(id))) {
+                    deleteIds.add(id);
+                }
+            }
+            if (deleteIds.isEmpty()) {
+                continue;
+            }
+            Criteria criteria = Criteria.delete(clazz).mappingHandler(getMappingHandler());
+            BoundSql boundSql = criteria.where(criteria.getPkField(), "in", deleteIds.toArray()).build(true);
+            //并发删除时影响行数与存在的记录数不一致，无法确定每个id的结果
+            int row = this.update(boundSql, deleteIds) == deleteIds.size() ? 1 : Statement.SUCCESS_NO_INFO;
+            for (int i = 0; i < chunk.size(); i++) {
+                if (existIds.contains(IdentityMap.normalizeId(chunk.get(i)))) {
+                    rows[from + i] = row;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 查询存在的主键
+     *
+     * @param clazz the clazz
+     * @param ids 不超过in条件参数个数限制的id
+     * @return IdentityMap.normalizeId后的主键
+     */
+    protected Set<Object> queryExistIds(Class<?> clazz, List<Serializable> ids) {
+        Criteria criteria = Criteria.select(clazz).mappingHandler(getMappingHandler());
+        String pkField = criteria.getPkField();
+        BoundSql boundSql = criteria.include(pkField).where(pkField, "in", ids.toArray()).build(true);
+        EntityMetadata metadata = EntityMetadata.forClass(clazz);
+        Set<Object> existIds = new HashSet<Object>();
+        for (Object entity : jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(),
+            this.getStreamRowMapper(clazz))) {
+            existIds.add(IdentityMap.normalizeId(metadata.getFieldValue(entity, pkField)));
+        }
+        return existIds;
     }
 
     public <T> List<T> queryList(Criteria criteria) {
-        BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
-        List<?> list = jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(),
-            this.getRowMapper(criteria.getEntityClass()));
+        criteria.mappingHandler(getMappingHandler());
+        List<String> shardTables = this.getShardTables(criteria);
+        if (shardTables != null) {
+            return this.queryListByShards(criteria, shardTables,
+                (RowMapper<T>) this.getRowMapper(criteria.getEntityClass()));
+        }
+        String largeInKey = this.getLargeInCondition(criteria);
+        if (largeInKey != null) {
+            return this.queryListByLargeIn(criteria, largeInKey);
+        }
+        BoundSql boundSql = criteria.build(true);
+        List<?> list = this.query(boundSql, criteria.getEntityClass(), this.getRowMapper(criteria.getEntityClass()));
         return (List<T>) list;
     }
 
+    /**
+     * 大in列表拆分后并行查询，各条sql的结果已排序，归并后保持criteria的排序
+     *
+     * @param criteria the criteria
+     * @param largeInKey the large in key
+     * @return the list
+     */
+    protected <T> List<T> queryListByLargeIn(Criteria criteria, String largeInKey) {
+        final RowMapper<T> rowMapper = (RowMapper<T>) this.getRowMapper(criteria.getEntityClass());
+        if (this.isUseInTempTable(criteria, largeInKey)) {
+            return this.executeWithInTempTable(criteria, largeInKey, false, new PreparedStatementCallback<List<T>>() {
+                public List<T> doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
+                    ResultSet rs = ps.executeQuery();
+                    try {
+                        return new RowMapperResultSetExtractor<T>(rowMapper).extractData(rs);
+                    } finally {
+                        JdbcUtils.closeResultSet(rs);
+                    }
+                }
+            });
+        }
+        List<List<T>> results = this.queryParallel(this.buildSplitBoundSqls(criteria, largeInKey, false), rowMapper);
+        return SortedListMerger.merge(results, this.newSortValuesComparator(criteria));
+    }
+
+    /**
+     * 并行查询所有物理表，各物理表的结果已排序，归并后保持criteria的排序，分页时只取当前页
+     *
+     * @param criteria the criteria
+     * @param shardTables the shard tables
+     * @param rowMapper the row mapper
+     * @return the list
+     */
+    protected <T> List<T> queryListByShards(Criteria criteria, List<String> shardTables, RowMapper<T> rowMapper) {
+        if (PageControl.LOCAL_PAGER.get() != null) {
+            return this.queryPageByShards(criteria, shardTables, rowMapper);
+        }
+        List<List<T>> results = this.queryParallel(this.buildShardBoundSqls(criteria, shardTables, false), rowMapper);
+        return SortedListMerger.merge(results, this.newSortValuesComparator(criteria));
+    }
+
     public <T> List<T> queryList(Class<?> clazz) {
         BoundSql boundSql = Criteria.select(clazz).mappingHandler(getMappingHandler()).build(true);
-        List<?> list = jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(),
-            this.getRowMapper(clazz));
+        List<?> list = this.query(boundSql, clazz, this.getRowMapper(clazz));
         return (List<T>) list;
     }
 
     public <T> List<T> queryList(T entity) {
         BoundSql boundSql = Criteria.select(entity.getClass()).mappingHandler(getMappingHandler()).build(entity, true);
-        List<?> list = jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(),
-            this.getRowMapper(entity.getClass()));
+        List<?> list = this.query(boundSql, entity.getClass(), this.getRowMapper(entity.getClass()));
         return (List<T>) list;
     }
 
     public <T> List<T> queryList(T entity, Criteria criteria) {
         BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(entity, true);
-        List<?> list = jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(),
-            this.getRowMapper(entity.getClass()));
+        List<?> list = this.query(boundSql, entity.getClass(), this.getRowMapper(entity.getClass()));
         return (List<T>) list;
     }
 
+    public <T> void queryForEach(Criteria criteria, RowCallback<T> rowCallback) {
+        BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
+        RowMapper<T> rowMapper = (RowMapper<T>) this.getStreamRowMapper(criteria.getEntityClass());
+        this.queryForEach(boundSql.getSql(), boundSql.getParameters().toArray(), rowMapper, rowCallback);
+    }
+
+    public <T> ResultIterator<T> queryIterator(Criteria criteria) {
+        BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
+        RowMapper<T> rowMapper = (RowMapper<T>) this.getStreamRowMapper(criteria.getEntityClass());
+        return this.queryIterator(boundSql.getSql(), boundSql.getParameters().toArray(), rowMapper);
+    }
+
+    public <T> Stream<T> queryStream(Criteria criteria) {
+        BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
+        RowMapper<T> rowMapper = (RowMapper<T>) this.getStreamRowMapper(criteria.getEntityClass());
+        return this.queryIterator(boundSql.getSql(), boundSql.getParameters().toArray(), rowMapper).stream();
+    }
+
     public int queryCount(Class<?> clazz) {
         BoundSql boundSql = Criteria.select(clazz).addSelectFunc("count(*)").mappingHandler(getMappingHandler())
             .build(null, true);
-        return jdbcTemplate.queryForObject(boundSql.getSql(), boundSql.getParameters().toArray(), Integer.class);
+        return this.queryForObject(boundSql, Integer.class);
     }
 
     public int queryCount(Serializable entity, Criteria criteria) {
         BoundSql boundSql = criteria.addSelectFunc("count(*)", true, false, true).mappingHandler(getMappingHandler())
             .build(entity, true);
-        return jdbcTemplate.queryForObject(boundSql.getSql(), boundSql.getParameters().toArray(), Integer.class);
+        return this.queryForObject(boundSql, Integer.class);
     }
 
     public int queryCount(Serializable entity) {
         BoundSql boundSql = Criteria.select(entity.getClass()).mappingHandler(getMappingHandler())
             .addSelectFunc("count(*)").build(entity, true);
-        return jdbcTemplate.queryForObject(boundSql.getSql(), boundSql.getParameters().toArray(), Integer.class);
+        return this.queryForObject(boundSql, Integer.class);
     }
 
     public int queryCount(Criteria criteria) {
-        BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).addSelectFunc("count(*)", true, false, true)
-            .build(true);
-        return jdbcTemplate.queryForObject(boundSql.getSql(), boundSql.getParameters().toArray(), Integer.class);
+        criteria.mappingHandler(getMappingHandler());
+        List<String> shardTables = this.getShardTables(criteria);
+        if (shardTables != null) {
+            List<BoundSql> boundSqls = this.buildShardBoundSqls(criteria, shardTables, true);
+            return this.sumCount(this.queryParallel(boundSqls, new SingleColumnRowMapper<Integer>(Integer.class)));
+        }
+        String largeInKey = this.getLargeInCondition(criteria);
+        if (largeInKey != null) {
+            return this.queryCountByLargeIn(criteria, largeInKey);
+        }
+        BoundSql boundSql = criteria.addSelectFunc("count(*)", true, false, true).build(true);
+        return this.queryForObject(boundSql, Integer.class);
+    }
+
+    /**
+     * 大in列表拆分后并行count，结果相加
+     *
+     * @param criteria the criteria
+     * @param largeInKey the large in key
+     * @return the int
+     */
+    protected int queryCountByLargeIn(Criteria criteria, String largeInKey) {
+        if (this.isUseInTempTable(criteria, largeInKey)) {
+            return this.executeWithInTempTable(criteria, largeInKey, true, new PreparedStatementCallback<Integer>() {
+                public Integer doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
+                    ResultSet rs = ps.executeQuery();
+                    try {
+                        rs.next();
+                        return rs.getInt(1);
+                    } finally {
+                        JdbcUtils.closeResultSet(rs);
+                    }
+                }
+            });
+        }
+        List<List<Integer>> results = this.queryParallel(this.buildSplitBoundSqls(criteria, largeInKey, true),
+            new SingleColumnRowMapper<Integer>(Integer.class));
+        return this.sumCount(results);
+    }
+
+    private int sumCount(List<List<Integer>> results) {
+        int count = 0;
+        for (List<Integer> result : results) {
+            count += result.iterator().next();
+        }
+        return count;
     }
 
-    public <T> T get(Class<T> clazz, Serializable id) {
+    public <T> T get(final Class<T> clazz, final Serializable id) {
+        IdentityMap identityMap = this.getIdentityMap(true);
+        if (identityMap != null) {
+            T entity = (T) identityMap.get(IdentityMap.idKey(clazz, id));
+            if (entity != null) {
+                return entity;
+            }
+        }
         Criteria criteria = Criteria.select(clazz).mappingHandler(getMappingHandler());
-        BoundSql boundSql = criteria.where(criteria.getPkField(), new Object[] { id }).build(true);
+        final BoundSql boundSql = criteria.where(criteria.getPkField(), new Object[] { id }).build(true);
+        T entity;
+        if (entityCache != null && entityCache.isCacheable(clazz)) {
+            entity = entityCache.get(boundSql, clazz, id, new Callable<T>() {
+                public T call() throws Exception {
+                    return loadById(boundSql, clazz, id);
+                }
+            });
+            //缓存中获取的是新创建的实体，需要保存快照
+            if (dirtyTracking && entity != null) {
+                this.getEntitySnapshots().snapshot(entity);
+            }
+        } else {
+            entity = this.loadById(boundSql, clazz, id);
+        }
+        return identityMap == null || entity == null ? entity : (T) identityMap.putById(boundSql, clazz, id, entity);
+    }
+
+    public <T> Map<Serializable, T> getAll(final Class<T> clazz, Collection<? extends Serializable> ids) {
+        Map<Serializable, T> result = new LinkedHashMap<Serializable, T>();
+        if (CollectionUtils.isEmpty(ids)) {
+            return result;
+        }
+        //去重，保持传入的顺序
+        Set<Serializable> idSet = new LinkedHashSet<Serializable>(ids);
+        IdentityMap identityMap = this.getIdentityMap(true);
+        boolean isEntityCache = entityCache != null && entityCache.isCacheable(clazz);
+        //缓存需要按主键查询的sql获取表名，水平分表时每个id的物理表可能不同
+        Map<Serializable, BoundSql> idBoundSqls = new LinkedHashMap<Serializable, BoundSql>();
+        Map<Object, T> cached = new HashMap<Object, T>();
+        for (Serializable id : idSet) {
+            T entity = identityMap == null ? null : (T) identityMap.get(IdentityMap.idKey(clazz, id));
+            if (entity != null) {
+                cached.put(IdentityMap.normalizeId(id), entity);
+            } else if (identityMap != null || isEntityCache) {
+                Criteria criteria = Criteria.select(clazz).mappingHandler(getMappingHandler());
+                idBoundSqls.put(id, criteria.where(criteria.getPkField(), new Object[] { id }).build(true));
+            } else {
+                idBoundSqls.put(id, null);
+            }
+        }
+        Map<Object, T> loaded;
+        if (idBoundSqls.isEmpty()) {
+            loaded = Collections.emptyMap();
+        } else if (isEntityCache) {
+            loaded = entityCache.getAll(clazz, idBoundSqls, new Function<List<Object>, Map<Object, T>>() {
+                public Map<Object, T> apply(List<Object> missIds) {
+                    return queryByIds(clazz, missIds);
+                }
+            });
+            //缓存中获取的是新创建的实体，需要保存快照
+            if (dirtyTracking) {
+                for (T entity : loaded.values()) {
+                    this.getEntitySnapshots().snapshot(entity);
+                }
+            }
+        } else {
+            loaded = this.queryByIds(clazz, new ArrayList<Object>(idBoundSqls.keySet()));
+        }
+        for (Serializable id : idSet) {
+            Object normalizedId = IdentityMap.normalizeId(id);
+            T entity = cached.get(normalizedId);
+            if (entity == null) {
+                entity = loaded.get(normalizedId);
+                if (entity != null && identityMap != null) {
+                    entity = (T) identityMap.putById(idBoundSqls.get(id), clazz, id, entity);
+                }
+            }
+            if (entity != null) {
+                result.put(id, entity);
+            }
+        }
+        return result;
+    }
+
+    public <T> List<T> getList(Class<T> clazz, Collection<? extends Serializable> ids) {
+        return new ArrayList<T>(this.getAll(clazz, ids).values());
+    }
+
+    /**
+     * 按主键in查询，按in条件的参数个数限制分批并行执行
+     *
+     * @param clazz the clazz
+     * @param ids 不重复的id
+     * @return 以IdentityMap.normalizeId后的主键为key的实体
+     */
+    protected <T> Map<Object, T> queryByIds(Class<T> clazz, List<?> ids) {
+        List<BoundSql> boundSqls = new ArrayList<BoundSql>();
+        String pkField = null;
+        int inLimit = this.getInLimit();
+        for (int from = 0; from < ids.size(); from += inLimit) {
+            List<?> chunk = ids.subList(from, Math.min(from + inLimit, ids.size()));
+            Criteria criteria = Criteria.select(clazz).mappingHandler(getMappingHandler());
+            pkField = criteria.getPkField();
+            criteria.where(pkField, "in", chunk.toArray());
+            List<String> shardTables = this.getShardTables(criteria);
+            if (shardTables == null) {
+                boundSqls.add(criteria.build(true));
+            } else {
+                boundSqls.addAll(this.buildShardBoundSqls(criteria, shardTables, false));
+            }
+        }
+        Map<Object, T> entities = new HashMap<Object, T>();
+        EntityMetadata metadata = EntityMetadata.forClass(clazz);
+        for (List<T> list : this.queryParallel(boundSqls, this.getRowMapper(clazz))) {
+            for (T entity : list) {
+                entities.put(IdentityMap.normalizeId(metadata.getFieldValue(entity, pkField)), entity);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * 按主键查询，设置了getCoalescer时与其它线程并发的查询合并成in查询
+     * <pre>
+     *     事务中需要使用当前线程的连接，不合并
+     *     批次按实体类及当前线程的数据源区分，不同数据源的查询不会合并
+     * </pre>
+     *
+     * @param boundSql 按主键查询的sql
+     * @param clazz the clazz
+     * @param id the id
+     * @return the t
+     */
+    private <T> T loadById(BoundSql boundSql, final Class<T> clazz, Serializable id) {
+        if (getCoalescer == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return this.queryById(boundSql, clazz);
+        }
+        DataSourceContext dsContext = DynamicDataSourceHolder.getDsContent();
+        List<Object> batchKey = dsContext == null ? Arrays.<Object> asList(clazz) : Arrays.<Object> asList(clazz,
+            dsContext.getDsKey(), dsContext.getIsWrite());
+        T entity = getCoalescer.get(batchKey, clazz, id, new Function<List<Object>, Map<Object, T>>() {
+            public Map<Object, T> apply(List<Object> ids) {
+                return queryByIds(clazz, ids);
+            }
+        });
+        //在其它线程中加载或为拷贝的实体，需要在当前线程保存快照
+        if (dirtyTracking && entity != null) {
+            this.getEntitySnapshots().snapshot(entity);
+        }
+        return entity;
+    }
+
+    private <T> T queryById(BoundSql boundSql, Class<T> clazz) {
         //采用list方式查询，当记录不存在时返回null而不会抛出异常
-        List<T> list = jdbcTemplate.query(boundSql.getSql(), this.getRowMapper(clazz), boundSql.getParameters()
-            .toArray());
+        List<T> list = this.query(boundSql, clazz, this.getRowMapper(clazz));
         if (CollectionUtils.isEmpty(list)) {
             return null;
         }
@@ -188,47 +749,80 @@ public class JdbcDaoImpl extends AbstractJdbcDaoImpl implements JdbcDao {
 
     public <T> T querySingleResult(T entity) {
         BoundSql boundSql = Criteria.select(entity.getClass()).mappingHandler(getMappingHandler()).build(entity, true);
-        //采用list方式查询，当记录不存在时返回null而不会抛出异常
-        List<T> list = (List<T>) jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(),
-            this.getRowMapper(entity.getClass()));
-        return DataAccessUtils.singleResult(list);
+        return (T) this.querySingleResult(boundSql, entity.getClass());
     }
 
     public <T> T querySingleResult(Criteria criteria) {
         BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
+        return (T) this.querySingleResult(boundSql, criteria.getEntityClass());
+    }
+
+    /**
+     * 查询单个实体，开启了事务内的实体缓存时同一事务中相同条件只查询一次
+     *
+     * @param boundSql the bound sql
+     * @param clazz the clazz
+     * @return the t
+     */
+    protected <T> T querySingleResult(BoundSql boundSql, Class<T> clazz) {
+        IdentityMap identityMap = this.getIdentityMap(true);
+        if (identityMap != null) {
+            T entity = (T) identityMap.get(IdentityMap.queryKey(clazz, boundSql));
+            if (entity != null) {
+                return entity;
+            }
+        }
         //采用list方式查询，当记录不存在时返回null而不会抛出异常
-        List<T> list = (List<T>) jdbcTemplate.query(boundSql.getSql(), boundSql.getParameters().toArray(),
-            this.getRowMapper(criteria.getEntityClass()));
-        return DataAccessUtils.singleResult(list);
+        List<T> list = this.query(boundSql, clazz, this.getRowMapper(clazz));
+        T entity = DataAccessUtils.singleResult(list);
+        return identityMap == null ? entity : (T) identityMap.putByQuery(boundSql, clazz, entity);
     }
 
     public <T> T queryObject(Criteria criteria) {
-        final BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
-        return (T) jdbcTemplate.queryForObject(boundSql.getSql(), boundSql.getParameters().toArray(), Object.class);
+        criteria.mappingHandler(getMappingHandler());
+        List<String> shardTables = this.getShardTables(criteria);
+        if (shardTables != null && ShardAggregator.isAggregate(criteria)) {
+            Map<String, Object> rowMap = DataAccessUtils.requiredSingleResult(this.queryAggregateByShards(criteria,
+                shardTables));
+            return (T) rowMap.values().iterator().next();
+        }
+        final BoundSql boundSql = criteria.build(true);
+        return (T) this.queryForObject(boundSql, Object.class);
     }
 
     public <T> List<T> queryObjectList(Criteria criteria, Class<T> elementType) {
         final BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
-        return jdbcTemplate.queryForList(boundSql.getSql(), elementType, boundSql.getParameters().toArray());
+        return this.query(boundSql, elementType, new SingleColumnRowMapper<T>(elementType));
     }
 
     public <T> List<T> queryObjectList(Criteria criteria, Serializable entity, Class<T> elementType) {
         BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(entity, true);
-        return jdbcTemplate.queryForList(boundSql.getSql(), elementType, boundSql.getParameters().toArray());
+        return this.query(boundSql, elementType, new SingleColumnRowMapper<T>(elementType));
     }
 
     public Map<String, Object> queryRowMap(Criteria criteria) {
-        BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
-        List<Map<String, Object>> mapList = jdbcTemplate.queryForList(boundSql.getSql(), boundSql.getParameters()
-            .toArray());
+        criteria.mappingHandler(getMappingHandler());
+        List<String> shardTables = this.getShardTables(criteria);
+        List<Map<String, Object>> mapList;
+        if (shardTables != null && ShardAggregator.isAggregate(criteria)) {
+            mapList = this.queryAggregateByShards(criteria, shardTables);
+        } else {
+            BoundSql boundSql = criteria.build(true);
+            mapList = this.query(boundSql, Map.class, new ColumnMapRowMapper());
+        }
         return mapList == null || mapList.isEmpty() ? null : mapList.iterator().next();
     }
 
     public List<Map<String, Object>> queryRowMapList(Criteria criteria) {
-        BoundSql boundSql = criteria.mappingHandler(getMappingHandler()).build(true);
-        List<Map<String, Object>> mapList = jdbcTemplate.queryForList(boundSql.getSql(), boundSql.getParameters()
-            .toArray());
-        return mapList;
+        criteria.mappingHandler(getMappingHandler());
+        List<String> shardTables = this.getShardTables(criteria);
+        if (shardTables != null && ShardAggregator.isAggregate(criteria)) {
+            return this.queryAggregateByShards(criteria, shardTables);
+        } else if (shardTables != null) {
+            return this.queryListByShards(criteria, shardTables, new ColumnMapRowMapper());
+        }
+        BoundSql boundSql = criteria.build(true);
+        return this.query(boundSql, Map.class, new ColumnMapRowMapper());
     }
 
     public Object queryObjectForSql(String refSql) {
@@ -241,7 +835,7 @@ public class JdbcDaoImpl extends AbstractJdbcDaoImpl implements JdbcDao {
 
     public Object queryObjectForSql(String refSql, String expectParamKey, Object[] params) {
         BoundSql boundSql = this.sqlFactory.getBoundSql(refSql, expectParamKey, params);
-        return jdbcTemplate.queryForObject(boundSql.getSql(), boundSql.getParameters().toArray(), Object.class);
+        return this.queryForObject(boundSql, Object.class);
     }
 
     public Map<String, Object> querySingleResultForSql(String refSql) {
@@ -264,8 +858,7 @@ public class JdbcDaoImpl extends AbstractJdbcDaoImpl implements JdbcDao {
 
     public Map<String, Object> querySingleResultForSql(String refSql, String expectParamKey, Object[] params) {
         BoundSql boundSql = this.sqlFactory.getBoundSql(refSql, expectParamKey, params);
-        List<Map<String, Object>> maps = jdbcTemplate.queryForList(boundSql.getSql(), boundSql.getParameters()
-            .toArray());
+        List<Map<String, Object>> maps = this.query(boundSql, Map.class, new ColumnMapRowMapper());
         return DataAccessUtils.singleResult(maps);
     }
 
@@ -294,9 +887,7 @@ public class JdbcDaoImpl extends AbstractJdbcDaoImpl implements JdbcDao {
 
     public List<Map<String, Object>> queryListForSql(String refSql, String expectParamKey, Object[] params) {
         BoundSql boundSql = this.sqlFactory.getBoundSql(refSql, expectParamKey, params);
-        List<Map<String, Object>> mapList = jdbcTemplate.queryForList(boundSql.getSql(), boundSql.getParameters()
-            .toArray());
-        return mapList;
+        return this.query(boundSql, Map.class, new ColumnMapRowMapper());
     }
 
     public <T> List<T> queryListForSql(String refSql, String expectParamKey, Object[] params, Class<T> elementType) {
@@ -304,6 +895,42 @@ public class JdbcDaoImpl extends AbstractJdbcDaoImpl implements JdbcDao {
         return mapToBean(mapList, elementType);
     }
 
+    public void queryForEachForSql(String refSql, Object[] params, RowCallback<Map<String, Object>> rowCallback) {
+        BoundSql boundSql = this.sqlFactory.getBoundSql(refSql, "", params);
+        this.queryForEach(boundSql.getSql(), boundSql.getParameters().toArray(), new ColumnMapRowMapper(),
+            rowCallback);
+    }
+
+    public <T> void queryForEachForSql(String refSql, Object[] params, Class<T> elementType,
+                                       RowCallback<T> rowCallback) {
+        BoundSql boundSql = this.sqlFactory.getBoundSql(refSql, "", params);
+        this.queryForEach(boundSql.getSql(), boundSql.getParameters().toArray(), this.getStreamRowMapper(elementType),
+            rowCallback);
+    }
+
+    public ResultIterator<Map<String, Object>> queryIteratorForSql(String refSql, Object[] params) {
+        BoundSql boundSql = this.sqlFactory.getBoundSql(refSql, "", params);
+        return this.queryIterator(boundSql.getSql(), boundSql.getParameters().toArray(), new ColumnMapRowMapper());
+    }
+
+    public <T> ResultIterator<T> queryIteratorForSql(String refSql, Object[] params, Class<T> elementType) {
+        BoundSql boundSql = this.sqlFactory.getBoundSql(refSql, "", params);
+        return this.queryIterator(boundSql.getSql(), boundSql.getParameters().toArray(),
+            this.getStreamRowMapper(elementType));
+    }
+
+    public Stream<Map<String, Object>> queryStreamForSql(String refSql, Object[] params) {
+        BoundSql boundSql = this.sqlFactory.getBoundSql(refSql, "", params);
+        return this.queryIterator(boundSql.getSql(), boundSql.getParameters().toArray(), new ColumnMapRowMapper())
+            .stream();
+    }
+
+    public <T> Stream<T> queryStreamForSql(String refSql, Object[] params, Class<T> elementType) {
+        BoundSql boundSql = this.sqlFactory.getBoundSql(refSql, "", params);
+        return this.queryIterator(boundSql.getSql(), boundSql.getParameters().toArray(),
+            this.getStreamRowMapper(elementType)).stream();
+    }
+
     public int updateForSql(String refSql) {
         return this.updateForSql(refSql, "", EMPTY_OBJECT_ARRAY);
     }
@@ -314,7 +941,72 @@ public class JdbcDaoImpl extends AbstractJdbcDaoImpl implements JdbcDao {
 
     public int updateForSql(String refSql, String expectParamKey, Object[] params) {
         BoundSql boundSql = this.sqlFactory.getBoundSql(refSql, expectParamKey, params);
-        return jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+        return this.update(boundSql);
+    }
+
+    /**
+     * 执行单条写操作，执行后使表的缓存失效
+     *
+     * @param boundSql the bound sql
+     * @return 影响的行数
+     */
+    protected int update(BoundSql boundSql) {
+        return this.update(boundSql, null);
+    }
+
+    /**
+     * 执行单条写操作，执行后使缓存失效
+     *
+     * @param boundSql the bound sql
+     * @param ids 写入的主键，为null时表的所有实体缓存失效
+     * @return 影响的行数
+     */
+    protected int update(BoundSql boundSql, Collection<?> ids) {
+        int rows = jdbcTemplate.update(boundSql.getSql(), boundSql.getParameters().toArray());
+        this.evictCaches(boundSql, ids);
+        return rows;
+    }
+
+    /**
+     * 实体的主键值，写操作后使该实体的缓存失效
+     *
+     * @param criteria the criteria
+     * @param entity the entity
+     * @return 主键为空时返回null
+     */
+    private List<Object> getPkValues(Criteria criteria, Serializable entity) {
+        Object pkValue = EntityMetadata.forClass(entity.getClass()).getFieldValue(entity, criteria.getPkField());
+        return pkValue == null ? null : Collections.singletonList(pkValue);
+    }
+
+    /**
+     * sql相同的分为一组按jdbc batch执行，表名也在sql中，水平分表时同一物理表的记录在一组
+     *
+     * @param boundSqls the bound sqls
+     * @return 每条记录影响的行数，顺序与boundSqls一致
+     */
+    protected int[] batchUpdateBoundSql(List<BoundSql> boundSqls) {
+        Map<String, List<Object[]>> sqlArgs = new LinkedHashMap<String, List<Object[]>>();
+        Map<String, List<Integer>> sqlIndexes = new HashMap<String, List<Integer>>();
+        for (int i = 0; i < boundSqls.size(); i++) {
+            BoundSql boundSql = boundSqls.get(i);
+            List<Object[]> batchArgs = sqlArgs.get(boundSql.getSql());
+            if (batchArgs == null) {
+                batchArgs = new ArrayList<Object[]>();
+                sqlArgs.put(boundSql.getSql(), batchArgs);
+                sqlIndexes.put(boundSql.getSql(), new ArrayList<Integer>());
+            }
+            batchArgs.add(boundSql.getParameters().toArray());
+            sqlIndexes.get(boundSql.getSql()).add(i);
+        }
+        int[] rows = new int[boundSqls.size()];
+        for (Map.Entry<String, List<Object[]>> entry : sqlArgs.entrySet()) {
+            int[] result = this.batchUpdate(entry.getKey(), entry.getValue());
+            List<Integer> indexes = sqlIndexes.get(entry.getKey());
+            for (int i = 0; i < indexes.size(); i++) {
+                rows[indexes.get(i)] = result[i];
+            }
+        }
+        return rows;
     }
-
 }
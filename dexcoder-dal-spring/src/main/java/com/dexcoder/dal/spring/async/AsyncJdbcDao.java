@@ -0,0 +1,218 @@
+package com.dexcoder.dal.spring.async;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.dexcoder.commons.pager.Pager;
+import com.dexcoder.dal.JdbcDao;
+import com.dexcoder.dal.RowCallback;
+import com.dexcoder.dal.build.Criteria;
+
+/**
+ * 异步jdbc操作dao，与JdbcDao的方法一一对应，返回CompletableFuture
+ * <pre>
+ *     多个互不依赖的查询同时提交，总耗时由各查询耗时之和变为最慢的一个
+ *     调用线程的数据源(DynamicDataSourceHolder)、分页(PageControl)传递到执行线程，分页设置提交后从调用线程移除
+ *     调用线程存在事务时在调用线程同步执行，保证使用事务的连接，返回已完成的CompletableFuture
+ *     Criteria不是线程安全的，提交后不要再修改
+ *     queryIterator、queryStream等持有游标的方法不提供异步版本
+ * </pre>
+ */
+public interface AsyncJdbcDao {
+
+    /**
+     * 分页查询，调用前使用PageControl.performPage设置分页
+     *
+     * @param criteria the criteria
+     * @return 包含总记录数及当前页数据的pager
+     */
+    CompletableFuture<Pager> queryPage(Criteria criteria);
+
+    /** @see JdbcDao#insert(Serializable) */
+    <T> CompletableFuture<T> insert(Serializable entity);
+
+    /** @see JdbcDao#insert(Criteria) */
+    <T> CompletableFuture<T> insert(Criteria criteria);
+
+    /** @see JdbcDao#insert(Criteria, Serializable) */
+    <T> CompletableFuture<T> insert(Criteria criteria, Serializable entity);
+
+    /** @see JdbcDao#save(Serializable) */
+    CompletableFuture<Void> save(Serializable entity);
+
+    /** @see JdbcDao#save(Criteria) */
+    CompletableFuture<Void> save(Criteria criteria);
+
+    /** @see JdbcDao#batchInsert(List) */
+    <T> CompletableFuture<List<T>> batchInsert(List<? extends Serializable> entities);
+
+    /** @see JdbcDao#batchSave(List) */
+    CompletableFuture<Void> batchSave(List<? extends Serializable> entities);
+
+    /** @see JdbcDao#insertMulti(List) */
+    CompletableFuture<Integer> insertMulti(List<? extends Serializable> entities);
+
+    /** @see JdbcDao#upsert(Serializable) */
+    CompletableFuture<Integer> upsert(Serializable entity);
+
+    /** @see JdbcDao#upsert(Criteria, Serializable) */
+    CompletableFuture<Integer> upsert(Criteria criteria, Serializable entity);
+
+    /** @see JdbcDao#batchUpsert(List) */
+    CompletableFuture<int[]> batchUpsert(List<? extends Serializable> entities);
+
+    /** @see JdbcDao#batchUpsert(List, String[]) */
+    CompletableFuture<int[]> batchUpsert(List<? extends Serializable> entities, String... conflictUpdateFields);
+
+    /** @see JdbcDao#update(Criteria) */
+    CompletableFuture<Integer> update(Criteria criteria);
+
+    /** @see JdbcDao#update(Serializable) */
+    CompletableFuture<Integer> update(Serializable entity);
+
+    /** @see JdbcDao#update(Serializable, boolean) */
+    CompletableFuture<Integer> update(Serializable entity, boolean isIgnoreNull);
+
+    /** @see JdbcDao#updateChanged(Serializable) */
+    CompletableFuture<Integer> updateChanged(Serializable entity);
+
+    /** @see JdbcDao#batchUpdate(List) */
+    <T extends Serializable> CompletableFuture<int[]> batchUpdate(List<T> entities);
+
+    /** @see JdbcDao#batchUpdate(List, boolean) */
+    <T extends Serializable> CompletableFuture<int[]> batchUpdate(List<T> entities, boolean isIgnoreNull);
+
+    /** @see JdbcDao#delete(Criteria) */
+    CompletableFuture<Integer> delete(Criteria criteria);
+
+    /** @see JdbcDao#delete(Serializable) */
+    CompletableFuture<Integer> delete(Serializable entity);
+
+    /** @see JdbcDao#delete(Class, Serializable) */
+    CompletableFuture<Integer> delete(Class<?> clazz, Serializable id);
+
+    /** @see JdbcDao#batchDelete(Class, Collection) */
+    CompletableFuture<int[]> batchDelete(Class<?> clazz, Collection<? extends Serializable> ids);
+
+    /** @see JdbcDao#queryList(Criteria) */
+    <T> CompletableFuture<List<T>> queryList(Criteria criteria);
+
+    /** @see JdbcDao#queryList(Class) */
+    <T> CompletableFuture<List<T>> queryList(Class<?> clazz);
+
+    /** @see JdbcDao#queryList(Object) */
+    <T> CompletableFuture<List<T>> queryList(T entity);
+
+    /** @see JdbcDao#queryList(Object, Criteria) */
+    <T> CompletableFuture<List<T>> queryList(T entity, Criteria criteria);
+
+    /** @see JdbcDao#queryForEach(Criteria, RowCallback) */
+    <T> CompletableFuture<Void> queryForEach(Criteria criteria, RowCallback<T> rowCallback);
+
+    /** @see JdbcDao#queryCount(Class) */
+    CompletableFuture<Integer> queryCount(Class<?> clazz);
+
+    /** @see JdbcDao#queryCount(Serializable) */
+    CompletableFuture<Integer> queryCount(Serializable entity);
+
+    /** @see JdbcDao#queryCount(Criteria) */
+    CompletableFuture<Integer> queryCount(Criteria criteria);
+
+    /** @see JdbcDao#queryCount(Serializable, Criteria) */
+    CompletableFuture<Integer> queryCount(Serializable entity, Criteria criteria);
+
+    /** @see JdbcDao#get(Class, Serializable) */
+    <T> CompletableFuture<T> get(Class<T> clazz, Serializable id);
+
+    /** @see JdbcDao#get(Criteria, Serializable) */
+    <T> CompletableFuture<T> get(Criteria criteria, Serializable id);
+
+    /** @see JdbcDao#querySingleResult(Object) */
+    <T> CompletableFuture<T> querySingleResult(T entity);
+
+    /** @see JdbcDao#querySingleResult(Criteria) */
+    <T> CompletableFuture<T> querySingleResult(Criteria criteria);
+
+    /** @see JdbcDao#queryObject(Criteria) */
+    <T> CompletableFuture<T> queryObject(Criteria criteria);
+
+    /** @see JdbcDao#queryObjectList(Criteria, Class) */
+    <T> CompletableFuture<List<T>> queryObjectList(Criteria criteria, Class<T> elementType);
+
+    /** @see JdbcDao#queryObjectList(Criteria, Serializable, Class) */
+    <T> CompletableFuture<List<T>> queryObjectList(Criteria criteria, Serializable entity, Class<T> elementType);
+
+    /** @see JdbcDao#queryRowMap(Criteria) */
+    CompletableFuture<Map<String, Object>> queryRowMap(Criteria criteria);
+
+    /** @see JdbcDao#queryRowMapList(Criteria) */
+    CompletableFuture<List<Map<String, Object>>> queryRowMapList(Criteria criteria);
+
+    /** @see JdbcDao#queryObjectForSql(String) */
+    CompletableFuture<Object> queryObjectForSql(String refSql);
+
+    /** @see JdbcDao#queryObjectForSql(String, Object[]) */
+    CompletableFuture<Object> queryObjectForSql(String refSql, Object[] params);
+
+    /** @see JdbcDao#queryObjectForSql(String, String, Object[]) */
+    CompletableFuture<Object> queryObjectForSql(String refSql, String expectParamKey, Object[] params);
+
+    /** @see JdbcDao#querySingleResultForSql(String) */
+    CompletableFuture<Map<String, Object>> querySingleResultForSql(String refSql);
+
+    /** @see JdbcDao#querySingleResultForSql(String, Class) */
+    <T> CompletableFuture<T> querySingleResultForSql(String refSql, Class<T> elementType);
+
+    /** @see JdbcDao#querySingleResultForSql(String, Object[]) */
+    CompletableFuture<Map<String, Object>> querySingleResultForSql(String refSql, Object[] params);
+
+    /** @see JdbcDao#querySingleResultForSql(String, Object[], Class) */
+    <T> CompletableFuture<T> querySingleResultForSql(String refSql, Object[] params, Class<T> elementType);
+
+    /** @see JdbcDao#querySingleResultForSql(String, String, Object[]) */
+    CompletableFuture<Map<String, Object>> querySingleResultForSql(String refSql, String expectParamKey,
+                                                                   Object[] params);
+
+    /** @see JdbcDao#querySingleResultForSql(String, String, Object[], Class) */
+    <T> CompletableFuture<T> querySingleResultForSql(String refSql, String expectParamKey, Object[] params,
+                                                     Class<T> elementType);
+
+    /** @see JdbcDao#queryListForSql(String) */
+    CompletableFuture<List<Map<String, Object>>> queryListForSql(String refSql);
+
+    /** @see JdbcDao#queryListForSql(String, Class) */
+    <T> CompletableFuture<List<T>> queryListForSql(String refSql, Class<T> elementType);
+
+    /** @see JdbcDao#queryListForSql(String, Object[]) */
+    CompletableFuture<List<Map<String, Object>>> queryListForSql(String refSql, Object[] params);
+
+    /** @see JdbcDao#queryListForSql(String, Object[], Class) */
+    <T> CompletableFuture<List<T>> queryListForSql(String refSql, Object[] params, Class<T> elementType);
+
+    /** @see JdbcDao#queryListForSql(String, String, Object[]) */
+    CompletableFuture<List<Map<String, Object>>> queryListForSql(String refSql, String expectParamKey, Object[] params);
+
+    /** @see JdbcDao#queryListForSql(String, String, Object[], Class) */
+    <T> CompletableFuture<List<T>> queryListForSql(String refSql, String expectParamKey, Object[] params,
+                                                   Class<T> elementType);
+
+    /** @see JdbcDao#queryForEachForSql(String, Object[], RowCallback) */
+    CompletableFuture<Void> queryForEachForSql(String refSql, Object[] params,
+                                               RowCallback<Map<String, Object>> rowCallback);
+
+    /** @see JdbcDao#queryForEachForSql(String, Object[], Class, RowCallback) */
+    <T> CompletableFuture<Void> queryForEachForSql(String refSql, Object[] params, Class<T> elementType,
+                                                   RowCallback<T> rowCallback);
+
+    /** @see JdbcDao#updateForSql(String) */
+    CompletableFuture<Integer> updateForSql(String refSql);
+
+    /** @see JdbcDao#updateForSql(String, Object[]) */
+    CompletableFuture<Integer> updateForSql(String refSql, Object[] params);
+
+    /** @see JdbcDao#updateForSql(String, String, Object[]) */
+    CompletableFuture<Integer> updateForSql(String refSql, String expectParamKey, Object[] params);
+}
@@ -0,0 +1,716 @@
+package com.dexcoder.dal.spring.async;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.dexcoder.commons.pager.Pager;
+import com.dexcoder.dal.JdbcDao;
+import com.dexcoder.dal.RowCallback;
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+import com.dexcoder.dal.spring.datasource.DataSourceContext;
+import com.dexcoder.dal.spring.datasource.DynamicDataSourceHolder;
+import com.dexcoder.dal.spring.page.PageControl;
+
+/**
+ * 异步jdbc操作dao，委托给JdbcDao在有界线程池中执行
+ * <pre>
+ *     每个数据源key一个线程池，调用线程已确定数据源时使用该数据源的线程池，否则使用默认线程池
+ *     一个数据源变慢时只占满自己的线程池，不影响其它数据源的查询
+ *     队列满时由调用线程执行，不会无限堆积任务
+ *
+ *     &lt;bean id="asyncJdbcDao" class="com.dexcoder.dal.spring.async.AsyncJdbcDaoImpl" destroy-method="shutdown"&gt;
+ *         &lt;property name="jdbcDao" ref="jdbcDao"/&gt;
+ *         &lt;property name="poolSize" value="8"/&gt;
+ *     &lt;/bean&gt;
+ * </pre>
+ */
+public class AsyncJdbcDaoImpl implements AsyncJdbcDao {
+
+    /** 调用线程未确定数据源时使用的线程池key */
+    public static final String                          DEFAULT_EXECUTOR_KEY = "default";
+
+    /** 数据源key对应的线程池 */
+    private final ConcurrentMap<String, ExecutorService> executors            = new ConcurrentHashMap<String, ExecutorService>(
+                                                                                 4);
+
+    private JdbcDao                                     jdbcDao;
+
+    /** 每个线程池的线程数 */
+    private int                                         poolSize             = 8;
+
+    /** 每个线程池的队列大小 */
+    private int                                         queueCapacity        = 256;
+
+    public AsyncJdbcDaoImpl() {
+    }
+
+    public AsyncJdbcDaoImpl(JdbcDao jdbcDao) {
+        this.jdbcDao = jdbcDao;
+    }
+
+    public CompletableFuture<Pager> queryPage(final Criteria criteria) {
+        final Pager pager = PageControl.LOCAL_PAGER.get();
+        if (pager == null) {
+            throw new JdbcAssistantException("分页查询前需要使用PageControl.performPage设置分页");
+        }
+        return this.submitQuery(new Supplier<Pager>() {
+            public Pager get() {
+                jdbcDao.queryList(criteria);
+                return pager;
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> insert(final Serializable entity) {
+        return this.submit(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.insert(entity);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> insert(final Criteria criteria) {
+        return this.submit(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.insert(criteria);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> insert(final Criteria criteria, final Serializable entity) {
+        return this.submit(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.insert(criteria, entity);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> save(final Serializable entity) {
+        return this.submit(new Supplier<Void>() {
+            public Void get() {
+                jdbcDao.save(entity);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> save(final Criteria criteria) {
+        return this.submit(new Supplier<Void>() {
+            public Void get() {
+                jdbcDao.save(criteria);
+                return null;
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> batchInsert(final List<? extends Serializable> entities) {
+        return this.submit(new Supplier<List<T>>() {
+            public List<T> get() {
+                return jdbcDao.batchInsert(entities);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> batchSave(final List<? extends Serializable> entities) {
+        return this.submit(new Supplier<Void>() {
+            public Void get() {
+                jdbcDao.batchSave(entities);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> insertMulti(final List<? extends Serializable> entities) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.insertMulti(entities);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> upsert(final Serializable entity) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.upsert(entity);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> upsert(final Criteria criteria, final Serializable entity) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.upsert(criteria, entity);
+            }
+        });
+    }
+
+    public CompletableFuture<int[]> batchUpsert(final List<? extends Serializable> entities) {
+        return this.submit(new Supplier<int[]>() {
+            public int[] get() {
+                return jdbcDao.batchUpsert(entities);
+            }
+        });
+    }
+
+    public CompletableFuture<int[]> batchUpsert(final List<? extends Serializable> entities,
+                                                final String... conflictUpdateFields) {
+        return this.submit(new Supplier<int[]>() {
+            public int[] get() {
+                return jdbcDao.batchUpsert(entities, conflictUpdateFields);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> update(final Criteria criteria) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.update(criteria);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> update(final Serializable entity) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.update(entity);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> update(final Serializable entity, final boolean isIgnoreNull) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.update(entity, isIgnoreNull);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> updateChanged(final Serializable entity) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.updateChanged(entity);
+            }
+        });
+    }
+
+    public <T extends Serializable> CompletableFuture<int[]> batchUpdate(final List<T> entities) {
+        return this.submit(new Supplier<int[]>() {
+            public int[] get() {
+                return jdbcDao.batchUpdate(entities);
+            }
+        });
+    }
+
+    public <T extends Serializable> CompletableFuture<int[]> batchUpdate(final List<T> entities,
+                                                                         final boolean isIgnoreNull) {
+        return this.submit(new Supplier<int[]>() {
+            public int[] get() {
+                return jdbcDao.batchUpdate(entities, isIgnoreNull);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> delete(final Criteria criteria) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.delete(criteria);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> delete(final Serializable entity) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.delete(entity);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> delete(final Class<?> clazz, final Serializable id) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.delete(clazz, id);
+            }
+        });
+    }
+
+    public CompletableFuture<int[]> batchDelete(final Class<?> clazz, final Collection<? extends Serializable> ids) {
+        return this.submit(new Supplier<int[]>() {
+            public int[] get() {
+                return jdbcDao.batchDelete(clazz, ids);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> queryList(final Criteria criteria) {
+        return this.submitQuery(new Supplier<List<T>>() {
+            public List<T> get() {
+                return jdbcDao.queryList(criteria);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> queryList(final Class<?> clazz) {
+        return this.submitQuery(new Supplier<List<T>>() {
+            public List<T> get() {
+                return jdbcDao.queryList(clazz);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> queryList(final T entity) {
+        return this.submitQuery(new Supplier<List<T>>() {
+            public List<T> get() {
+                return jdbcDao.queryList(entity);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> queryList(final T entity, final Criteria criteria) {
+        return this.submitQuery(new Supplier<List<T>>() {
+            public List<T> get() {
+                return jdbcDao.queryList(entity, criteria);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<Void> queryForEach(final Criteria criteria, final RowCallback<T> rowCallback) {
+        return this.submitQuery(new Supplier<Void>() {
+            public Void get() {
+                jdbcDao.queryForEach(criteria, rowCallback);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> queryCount(final Class<?> clazz) {
+        return this.submitQuery(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.queryCount(clazz);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> queryCount(final Serializable entity) {
+        return this.submitQuery(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.queryCount(entity);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> queryCount(final Criteria criteria) {
+        return this.submitQuery(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.queryCount(criteria);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> queryCount(final Serializable entity, final Criteria criteria) {
+        return this.submitQuery(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.queryCount(entity, criteria);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> get(final Class<T> clazz, final Serializable id) {
+        return this.submit(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.get(clazz, id);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> get(final Criteria criteria, final Serializable id) {
+        return this.submit(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.get(criteria, id);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> querySingleResult(final T entity) {
+        return this.submitQuery(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.querySingleResult(entity);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> querySingleResult(final Criteria criteria) {
+        return this.submitQuery(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.querySingleResult(criteria);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> queryObject(final Criteria criteria) {
+        return this.submitQuery(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.queryObject(criteria);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> queryObjectList(final Criteria criteria, final Class<T> elementType) {
+        return this.submitQuery(new Supplier<List<T>>() {
+            public List<T> get() {
+                return jdbcDao.queryObjectList(criteria, elementType);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> queryObjectList(final Criteria criteria, final Serializable entity,
+                                                          final Class<T> elementType) {
+        return this.submitQuery(new Supplier<List<T>>() {
+            public List<T> get() {
+                return jdbcDao.queryObjectList(criteria, entity, elementType);
+            }
+        });
+    }
+
+    public CompletableFuture<Map<String, Object>> queryRowMap(final Criteria criteria) {
+        return this.submitQuery(new Supplier<Map<String, Object>>() {
+            public Map<String, Object> get() {
+                return jdbcDao.queryRowMap(criteria);
+            }
+        });
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> queryRowMapList(final Criteria criteria) {
+        return this.submitQuery(new Supplier<List<Map<String, Object>>>() {
+            public List<Map<String, Object>> get() {
+                return jdbcDao.queryRowMapList(criteria);
+            }
+        });
+    }
+
+    public CompletableFuture<Object> queryObjectForSql(final String refSql) {
+        return this.submitQuery(new Supplier<Object>() {
+            public Object get() {
+                return jdbcDao.queryObjectForSql(refSql);
+            }
+        });
+    }
+
+    public CompletableFuture<Object> queryObjectForSql(final String refSql, final Object[] params) {
+        return this.submitQuery(new Supplier<Object>() {
+            public Object get() {
+                return jdbcDao.queryObjectForSql(refSql, params);
+            }
+        });
+    }
+
+    public CompletableFuture<Object> queryObjectForSql(final String refSql, final String expectParamKey,
+                                                       final Object[] params) {
+        return this.submitQuery(new Supplier<Object>() {
+            public Object get() {
+                return jdbcDao.queryObjectForSql(refSql, expectParamKey, params);
+            }
+        });
+    }
+
+    public CompletableFuture<Map<String, Object>> querySingleResultForSql(final String refSql) {
+        return this.submitQuery(new Supplier<Map<String, Object>>() {
+            public Map<String, Object> get() {
+                return jdbcDao.querySingleResultForSql(refSql);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> querySingleResultForSql(final String refSql, final Class<T> elementType) {
+        return this.submitQuery(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.querySingleResultForSql(refSql, elementType);
+            }
+        });
+    }
+
+    public CompletableFuture<Map<String, Object>> querySingleResultForSql(final String refSql, final Object[] params) {
+        return this.submitQuery(new Supplier<Map<String, Object>>() {
+            public Map<String, Object> get() {
+                return jdbcDao.querySingleResultForSql(refSql, params);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> querySingleResultForSql(final String refSql, final Object[] params,
+                                                            final Class<T> elementType) {
+        return this.submitQuery(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.querySingleResultForSql(refSql, params, elementType);
+            }
+        });
+    }
+
+    public CompletableFuture<Map<String, Object>> querySingleResultForSql(final String refSql,
+                                                                          final String expectParamKey,
+                                                                          final Object[] params) {
+        return this.submitQuery(new Supplier<Map<String, Object>>() {
+            public Map<String, Object> get() {
+                return jdbcDao.querySingleResultForSql(refSql, expectParamKey, params);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> querySingleResultForSql(final String refSql, final String expectParamKey,
+                                                            final Object[] params, final Class<T> elementType) {
+        return this.submitQuery(new Supplier<T>() {
+            public T get() {
+                return jdbcDao.querySingleResultForSql(refSql, expectParamKey, params, elementType);
+            }
+        });
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> queryListForSql(final String refSql) {
+        return this.submitQuery(new Supplier<List<Map<String, Object>>>() {
+            public List<Map<String, Object>> get() {
+                return jdbcDao.queryListForSql(refSql);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> queryListForSql(final String refSql, final Class<T> elementType) {
+        return this.submitQuery(new Supplier<List<T>>() {
+            public List<T> get() {
+                return jdbcDao.queryListForSql(refSql, elementType);
+            }
+        });
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> queryListForSql(final String refSql, final Object[] params) {
+        return this.submitQuery(new Supplier<List<Map<String, Object>>>() {
+            public List<Map<String, Object>> get() {
+                return jdbcDao.queryListForSql(refSql, params);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> queryListForSql(final String refSql, final Object[] params,
+                                                          final Class<T> elementType) {
+        return this.submitQuery(new Supplier<List<T>>() {
+            public List<T> get() {
+                return jdbcDao.queryListForSql(refSql, params, elementType);
+            }
+        });
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> queryListForSql(final String refSql,
+                                                                        final String expectParamKey,
+                                                                        final Object[] params) {
+        return this.submitQuery(new Supplier<List<Map<String, Object>>>() {
+            public List<Map<String, Object>> get() {
+                return jdbcDao.queryListForSql(refSql, expectParamKey, params);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> queryListForSql(final String refSql, final String expectParamKey,
+                                                          final Object[] params, final Class<T> elementType) {
+        return this.submitQuery(new Supplier<List<T>>() {
+            public List<T> get() {
+                return jdbcDao.queryListForSql(refSql, expectParamKey, params, elementType);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> queryForEachForSql(final String refSql, final Object[] params,
+                                                      final RowCallback<Map<String, Object>> rowCallback) {
+        return this.submitQuery(new Supplier<Void>() {
+            public Void get() {
+                jdbcDao.queryForEachForSql(refSql, params, rowCallback);
+                return null;
+            }
+        });
+    }
+
+    public <T> CompletableFuture<Void> queryForEachForSql(final String refSql, final Object[] params,
+                                                          final Class<T> elementType,
+                                                          final RowCallback<T> rowCallback) {
+        return this.submitQuery(new Supplier<Void>() {
+            public Void get() {
+                jdbcDao.queryForEachForSql(refSql, params, elementType, rowCallback);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> updateForSql(final String refSql) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.updateForSql(refSql);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> updateForSql(final String refSql, final Object[] params) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.updateForSql(refSql, params);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> updateForSql(final String refSql, final String expectParamKey,
+                                                   final Object[] params) {
+        return this.submit(new Supplier<Integer>() {
+            public Integer get() {
+                return jdbcDao.updateForSql(refSql, expectParamKey, params);
+            }
+        });
+    }
+
+    /**
+     * 提交任务，传递调用线程的数据源，调用线程存在事务时同步执行
+     *
+     * @param task the task
+     * @return the completable future
+     */
+    protected <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return this.submit(task, false);
+    }
+
+    /**
+     * 提交查询任务，同时传递调用线程的分页，调用线程不再持有
+     *
+     * @param task the task
+     * @return the completable future
+     */
+    protected <T> CompletableFuture<T> submitQuery(Supplier<T> task) {
+        return this.submit(task, true);
+    }
+
+    /**
+     * 提交任务，传递调用线程的数据源，查询时传递分页，调用线程存在事务时同步执行
+     *
+     * @param task the task
+     * @param isQuery 是否查询，只有查询会取走调用线程的分页
+     * @return the completable future
+     */
+    protected <T> CompletableFuture<T> submit(final Supplier<T> task, final boolean isQuery) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            //事务绑定在调用线程的连接上，只能在调用线程执行
+            CompletableFuture<T> future = new CompletableFuture<T>();
+            try {
+                future.complete(task.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+        final DataSourceContext dsContext = copyDsContext(DynamicDataSourceHolder.getDsContent());
+        final boolean isGetItemsTotal = isQuery && PageControl.isGetItemsTotal();
+        //分页设置交给执行线程，调用线程不再持有
+        final Pager pager = isQuery ? PageControl.getPager() : null;
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            public T get() {
+                //队列满时在调用线程执行，执行完需要恢复调用线程原有的状态
+                DataSourceContext originalDsContext = DynamicDataSourceHolder.getDsContent();
+                boolean originalIsGetItemsTotal = PageControl.isGetItemsTotal();
+                Pager originalPager = PageControl.getPager();
+                DynamicDataSourceHolder.setDsContent(copyDsContext(dsContext));
+                if (pager != null) {
+                    PageControl.setPager(pager, isGetItemsTotal);
+                }
+                try {
+                    return task.get();
+                } finally {
+                    PageControl.clear();
+                    if (originalPager != null) {
+                        PageControl.setPager(originalPager, originalIsGetItemsTotal);
+                    }
+                    DynamicDataSourceHolder.setDsContent(originalDsContext);
+                }
+            }
+        }, this.getExecutor(dsContext));
+    }
+
+    /**
+     * 获取数据源对应的线程池
+     *
+     * @param dsContext 调用线程的数据源
+     * @return the executor
+     */
+    protected ExecutorService getExecutor(DataSourceContext dsContext) {
+        String key = dsContext == null || StringUtils.isBlank(dsContext.getDsKey()) ? DEFAULT_EXECUTOR_KEY
+            : dsContext.getDsKey();
+        ExecutorService executor = executors.get(key);
+        if (executor == null) {
+            ExecutorService newExecutor = this.newExecutor(key);
+            executor = executors.putIfAbsent(key, newExecutor);
+            if (executor == null) {
+                executor = newExecutor;
+            } else {
+                newExecutor.shutdown();
+            }
+        }
+        return executor;
+    }
+
+    protected ExecutorService newExecutor(final String key) {
+        final AtomicInteger threadNum = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "dal-async-" + key + "-" + threadNum.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 复制数据源设置，执行线程可能会修改(例如切换到写库)，不能与调用线程共用
+     *
+     * @param dsContext the ds context
+     * @return the data source context
+     */
+    private static DataSourceContext copyDsContext(DataSourceContext dsContext) {
+        if (dsContext == null) {
+            return null;
+        }
+        DataSourceContext copy = new DataSourceContext();
+        copy.setDsKey(dsContext.getDsKey());
+        copy.setIsWrite(dsContext.getIsWrite());
+        return copy;
+    }
+
+    public void shutdown() {
+        for (ExecutorService executor : executors.values()) {
+            executor.shutdown();
+        }
+    }
+
+    public void setJdbcDao(JdbcDao jdbcDao) {
+        this.jdbcDao = jdbcDao;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+}
@@ -0,0 +1,497 @@
+package com.dexcoder.dal.spring.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.dexcoder.commons.cache.CacheMap;
+import com.dexcoder.commons.cache.LRUCache;
+import com.dexcoder.commons.utils.ClassUtils;
+import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.build.EntityMetadata;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+
+/**
+ * 实体缓存(二级缓存)，按表及主键缓存get(Class, id)的结果，多个线程共享
+ * <pre>
+ *     实体类注解@Table(cache = true)或设置entityClasses的实体才缓存
+ *     缓存的是实体属性值的副本，每次获取都创建新的实体，修改返回的实体不影响缓存
+ *     dao中按主键的写操作移除该主键的实体，其它写操作使整个表的实体失效，无法解析表名的写操作使所有实体失效
+ *     加载期间表有写操作时不放入缓存，避免放入旧数据
+ *     事务中可以读取缓存但不放入，事务中写过的表不使用缓存，事务结束后再失效一次
+ *     命中率、加载耗时、淘汰数等通过getHitRatio、getAverageLoadMillis、getEvictionCount等获取
+ *
+ *     &lt;bean id="jdbcDao" class="com.dexcoder.dal.spring.JdbcDaoImpl"&gt;
+ *         &lt;property name="entityCache"&gt;
+ *             &lt;bean class="com.dexcoder.dal.spring.cache.EntityCache"&gt;
+ *                 &lt;constructor-arg name="cacheSize" value="100000"/&gt;
+ *                 &lt;constructor-arg name="expire" value="300000"/&gt;
+ *                 &lt;property name="entityClasses" value="com.xxx.User,com.xxx.Book"/&gt;
+ *             &lt;/bean&gt;
+ *         &lt;/property&gt;
+ *     &lt;/bean&gt;
+ * </pre>
+ */
+public class EntityCache {
+
+    /** 默认缓存的实体数 */
+    public static final int                         DEFAULT_CACHE_SIZE = 10000;
+
+    /** 默认过期时间(毫秒) */
+    public static final long                        DEFAULT_EXPIRE     = 5 * 60 * 1000;
+
+    /** 事务中写过所有表的标识 */
+    private static final String                     ALL_TABLES         = "*";
+
+    /** 缓存的实体，key为表名及主键 */
+    private final CacheMap<Object, Object>          cacheMap;
+
+    /** 表的版本 */
+    private final ConcurrentMap<String, TableState> tableStates        = new ConcurrentHashMap<String, TableState>();
+
+    /** 所有表的版本，无法解析表名的写操作时加1 */
+    private final AtomicLong                        globalGeneration   = new AtomicLong();
+
+    /** 配置的缓存实体类，与@Table(cache = true)的一起缓存 */
+    private Set<Class<?>>                           entityClasses      = Collections.emptySet();
+
+    /** 命中次数 */
+    private final AtomicLong                        hitCount           = new AtomicLong();
+
+    /** 未命中次数 */
+    private final AtomicLong                        missCount          = new AtomicLong();
+
+    /** 从数据库加载的次数 */
+    private final AtomicLong                        loadCount          = new AtomicLong();
+
+    /** 加载总耗时(纳秒) */
+    private final AtomicLong                        totalLoadTime      = new AtomicLong();
+
+    /** 缓存满时淘汰的实体数 */
+    private final AtomicLong                        evictionCount      = new AtomicLong();
+
+    /** 写操作使实体失效的次数 */
+    private final AtomicLong                        invalidationCount  = new AtomicLong();
+
+    public EntityCache() {
+        this(DEFAULT_CACHE_SIZE, DEFAULT_EXPIRE);
+    }
+
+    public EntityCache(int cacheSize, long expire) {
+        this(new LRUCache<Object, Object>(cacheSize, expire));
+    }
+
+    public EntityCache(CacheMap<Object, Object> cacheMap) {
+        this.cacheMap = cacheMap;
+    }
+
+    /**
+     * 实体类是否缓存
+     *
+     * @param clazz the clazz
+     * @return the boolean
+     */
+    public boolean isCacheable(Class<?> clazz) {
+        return entityClasses.contains(clazz) || EntityMetadata.forClass(clazz).isAnnotationCache();
+    }
+
+    /**
+     * 按主键获取实体，缓存中没有时加载并放入缓存
+     *
+     * @param boundSql 按主键查询的sql，获取表名，水平分表时为物理表
+     * @param clazz the clazz
+     * @param id the id
+     * @param loader 从数据库加载
+     * @return 新创建的实体，不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(BoundSql boundSql, Class<T> clazz, Object id, Callable<T> loader) {
+        Set<String> tableNames = SqlTables.getTables(boundSql);
+        if (tableNames == null || tableNames.size() != 1) {
+            return call(loader);
+        }
+        String tableName = tableNames.iterator().next();
+        if (this.isWrittenInTransaction(tableName)) {
+            return call(loader);
+        }
+        List<Object> key = Arrays.asList(tableName, IdentityMap.normalizeId(id));
+        TableState tableState = this.getTableState(tableName);
+        Entry entry = (Entry) cacheMap.get(key);
+        if (entry != null && entry.entityClass == clazz && entry.isValid(tableState)) {
+            hitCount.incrementAndGet();
+            return (T) entry.newEntity();
+        }
+        missCount.incrementAndGet();
+        Loading loading = new Loading(key, tableState, entry == null);
+        long start = System.nanoTime();
+        T entity = call(loader);
+        loadCount.incrementAndGet();
+        totalLoadTime.addAndGet(System.nanoTime() - start);
+        loading.store(clazz, entity);
+        return entity;
+    }
+
+    /**
+     * 按主键批量获取实体，缓存中没有的一次加载并放入缓存
+     *
+     * @param clazz the clazz
+     * @param idBoundSqls 主键及按该主键查询的sql，获取表名
+     * @param loader 批量加载缓存中没有的实体，返回的map以IdentityMap.normalizeId后的主键为key
+     * @return 以IdentityMap.normalizeId后的主键为key的实体，不存在的不包含
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Map<Object, T> getAll(Class<T> clazz, Map<?, BoundSql> idBoundSqls,
+                                     Function<List<Object>, Map<Object, T>> loader) {
+        Map<Object, T> result = new HashMap<Object, T>();
+        List<Object> missIds = new ArrayList<Object>();
+        Map<Object, Loading> loadings = new HashMap<Object, Loading>();
+        for (Map.Entry<?, BoundSql> idBoundSql : idBoundSqls.entrySet()) {
+            Object id = IdentityMap.normalizeId(idBoundSql.getKey());
+            Set<String> tableNames = SqlTables.getTables(idBoundSql.getValue());
+            if (tableNames == null || tableNames.size() != 1
+                || this.isWrittenInTransaction(tableNames.iterator().next())) {
+                missIds.add(idBoundSql.getKey());
+                continue;
+            }
+            String tableName = tableNames.iterator().next();
+            List<Object> key = Arrays.asList(tableName, id);
+            TableState tableState = this.getTableState(tableName);
+            Entry entry = (Entry) cacheMap.get(key);
+            if (entry != null && entry.entityClass == clazz && entry.isValid(tableState)) {
+                hitCount.incrementAndGet();
+                result.put(id, (T) entry.newEntity());
+                continue;
+            }
+            missCount.incrementAndGet();
+            missIds.add(idBoundSql.getKey());
+            loadings.put(id, new Loading(key, tableState, entry == null));
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        long start = System.nanoTime();
+        Map<Object, T> loaded = loader.apply(missIds);
+        loadCount.incrementAndGet();
+        totalLoadTime.addAndGet(System.nanoTime() - start);
+        result.putAll(loaded);
+        for (Map.Entry<Object, Loading> loading : loadings.entrySet()) {
+            loading.getValue().store(clazz, loaded.get(loading.getKey()));
+        }
+        return result;
+    }
+
+    /**
+     * 写操作后使实体失效，事务中时事务结束后再失效一次
+     *
+     * @param boundSql 写操作的sql
+     * @param ids 写入的主键，为null时使表的所有实体失效
+     */
+    public void evict(BoundSql boundSql, Collection<?> ids) {
+        this.evict(SqlTables.getTables(boundSql), ids);
+    }
+
+    /**
+     * 使所有实体失效，事务中时事务结束后再失效一次
+     */
+    public void evictAll() {
+        this.evict((Set<String>) null, null);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        globalGeneration.incrementAndGet();
+        cacheMap.clear();
+    }
+
+    /**
+     * 命中率
+     *
+     * @return 没有获取过时返回0
+     */
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 平均加载耗时(毫秒)
+     *
+     * @return 没有加载过时返回0
+     */
+    public double getAverageLoadMillis() {
+        long loads = loadCount.get();
+        return loads == 0 ? 0 : totalLoadTime.get() / 1000000d / loads;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public int getSize() {
+        return cacheMap.size();
+    }
+
+    /**
+     * 重置统计
+     */
+    public void resetStats() {
+        hitCount.set(0);
+        missCount.set(0);
+        loadCount.set(0);
+        totalLoadTime.set(0);
+        evictionCount.set(0);
+        invalidationCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EntityCache[size=%d, hitRatio=%.4f, hits=%d, misses=%d, averageLoadMillis=%.3f, "
+                             + "evictions=%d, invalidations=%d]", getSize(), getHitRatio(), getHitCount(),
+            getMissCount(), getAverageLoadMillis(), getEvictionCount(), getInvalidationCount());
+    }
+
+    /**
+     * 使表的实体失效，事务中时记录写过的表，事务结束后再失效一次
+     *
+     * @param tableNames 表名，为null时所有实体失效
+     * @param ids 写入的主键，为null时使表的所有实体失效
+     */
+    private void evict(final Set<String> tableNames, final Collection<?> ids) {
+        this.invalidate(tableNames, ids);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Set<String> writtenTables = this.getWrittenTables(true);
+        if (tableNames == null) {
+            writtenTables.add(ALL_TABLES);
+        } else {
+            writtenTables.addAll(tableNames);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                invalidate(tableNames, ids);
+            }
+        });
+    }
+
+    private void invalidate(Set<String> tableNames, Collection<?> ids) {
+        if (tableNames == null) {
+            globalGeneration.incrementAndGet();
+            invalidationCount.incrementAndGet();
+            return;
+        }
+        for (String tableName : tableNames) {
+            TableState tableState = this.getTableState(tableName);
+            tableState.writes.incrementAndGet();
+            if (ids == null) {
+                tableState.generation.incrementAndGet();
+                invalidationCount.incrementAndGet();
+                continue;
+            }
+            for (Object id : ids) {
+                cacheMap.remove(Arrays.asList(tableName, IdentityMap.normalizeId(id)));
+                invalidationCount.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean isWrittenInTransaction(String tableName) {
+        Set<String> writtenTables = this.getWrittenTables(false);
+        return writtenTables != null && (writtenTables.contains(tableName) || writtenTables.contains(ALL_TABLES));
+    }
+
+    /**
+     * 当前事务中写过的表
+     *
+     * @param create 不存在时是否创建
+     * @return the set
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> getWrittenTables(boolean create) {
+        Set<String> writtenTables = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (writtenTables != null || !create) {
+            return writtenTables;
+        }
+        writtenTables = new HashSet<String>();
+        TransactionSynchronizationManager.bindResource(this, writtenTables);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(EntityCache.this);
+            }
+        });
+        return writtenTables;
+    }
+
+    private TableState getTableState(String tableName) {
+        TableState tableState = tableStates.get(tableName);
+        if (tableState == null) {
+            TableState newTableState = new TableState();
+            tableState = tableStates.putIfAbsent(tableName, newTableState);
+            if (tableState == null) {
+                tableState = newTableState;
+            }
+        }
+        return tableState;
+    }
+
+    private static <T> T call(Callable<T> loader) {
+        try {
+            return loader.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new JdbcAssistantException(e);
+        }
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        } else if (value instanceof Object[]) {
+            return ((Object[]) value).clone();
+        }
+        return value;
+    }
+
+    /**
+     * 配置缓存的实体类
+     *
+     * @param entityClasses the entity classes
+     */
+    public void setEntityClasses(Class<?>... entityClasses) {
+        this.entityClasses = new HashSet<Class<?>>(Arrays.asList(entityClasses));
+    }
+
+    /**
+     * 表的版本
+     */
+    private static class TableState {
+
+        /** 写操作次数，包括按主键的 */
+        private final AtomicLong writes     = new AtomicLong();
+
+        /** 整表失效的次数 */
+        private final AtomicLong generation = new AtomicLong();
+    }
+
+    /**
+     * 缓存中没有的实体，加载前记录表的版本，加载期间有写操作时不放入缓存
+     */
+    private class Loading {
+
+        private final List<Object> key;
+
+        private final TableState   tableState;
+
+        private final boolean      isNew;
+
+        private final long         writes;
+
+        private final long         generation;
+
+        private final long         global;
+
+        Loading(List<Object> key, TableState tableState, boolean isNew) {
+            this.key = key;
+            this.tableState = tableState;
+            this.isNew = isNew;
+            this.writes = tableState.writes.get();
+            this.generation = tableState.generation.get();
+            this.global = globalGeneration.get();
+        }
+
+        void store(Class<?> clazz, Object entity) {
+            //事务中读到的可能是未提交或快照中的旧数据
+            if (entity == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+                return;
+            }
+            if (isNew && cacheMap.isFull()) {
+                evictionCount.incrementAndGet();
+            }
+            cacheMap.put(key, new Entry(clazz, generation, global, entity));
+            //写操作可能发生在放入之前或之后，放入后再检查一次
+            if (tableState.writes.get() != writes || globalGeneration.get() != global) {
+                cacheMap.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 缓存的实体属性值
+     */
+    private class Entry {
+
+        private final Class<?> entityClass;
+
+        private final long     entryGeneration;
+
+        private final long     entryGlobalGeneration;
+
+        private final Object[] values;
+
+        Entry(Class<?> entityClass, long generation, long globalGeneration, Object entity) {
+            this.entityClass = entityClass;
+            this.entryGeneration = generation;
+            this.entryGlobalGeneration = globalGeneration;
+            EntityMetadata metadata = EntityMetadata.forClass(entityClass);
+            List<String> fieldNames = metadata.getColumnFieldNames();
+            this.values = new Object[fieldNames.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = copyValue(metadata.getFieldValue(entity, fieldNames.get(i)));
+            }
+        }
+
+        boolean isValid(TableState tableState) {
+            return entryGeneration == tableState.generation.get()
+                   && entryGlobalGeneration == globalGeneration.get();
+        }
+
+        Object newEntity() {
+            Object entity = ClassUtils.newInstance(entityClass);
+            EntityMetadata metadata = EntityMetadata.forClass(entityClass);
+            List<String> fieldNames = metadata.getColumnFieldNames();
+            for (int i = 0; i < values.length; i++) {
+                metadata.setFieldValue(entity, fieldNames.get(i), copyValue(values[i]));
+            }
+            return entity;
+        }
+    }
+}
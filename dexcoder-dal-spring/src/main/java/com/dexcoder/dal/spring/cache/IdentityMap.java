@@ -0,0 +1,221 @@
+package com.dexcoder.dal.spring.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.dexcoder.dal.BoundSql;
+
+/**
+ * 事务内的实体缓存(一级缓存)，同一事务中多次按主键获取同一实体时只查询一次，返回同一个对象
+ * <pre>
+ *     绑定在spring事务上，事务结束后清除，不同事务之间不共享，没有事务时不使用
+ *     REQUIRES_NEW等挂起外层事务时同时挂起，内层事务使用自己的缓存
+ *     按主键缓存的实体，在dao中按主键写操作时移除该实体，其它写操作移除整个表的实体
+ *     按条件缓存的查询结果，表有任何写操作时都移除
+ *     返回的是缓存中的同一个对象，修改后未保存时同一事务中再次获取到的是修改后的对象
+ *     只在当前线程中使用，不需要同步
+ * </pre>
+ */
+public class IdentityMap {
+
+    /** 实体，key为按主键或按条件的key */
+    private final Map<Object, Object>      entities  = new HashMap<Object, Object>();
+
+    /** 表按主键缓存的key */
+    private final Map<String, Set<Object>> idKeys    = new HashMap<String, Set<Object>>();
+
+    /** 表按条件缓存的key */
+    private final Map<String, Set<Object>> queryKeys = new HashMap<String, Set<Object>>();
+
+    /**
+     * 获取当前事务的缓存
+     *
+     * @param owner 绑定到事务的key，一般为dao本身，不同dao(数据源)使用不同的缓存
+     * @param create 不存在时是否创建
+     * @return 没有事务或不存在且不创建时返回null
+     */
+    public static IdentityMap current(final Object owner, boolean create) {
+        IdentityMap identityMap = (IdentityMap) TransactionSynchronizationManager.getResource(owner);
+        if (identityMap != null || !create || !TransactionSynchronizationManager.isSynchronizationActive()
+            || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return identityMap;
+        }
+        final IdentityMap newIdentityMap = new IdentityMap();
+        TransactionSynchronizationManager.bindResource(owner, newIdentityMap);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResourceIfPossible(owner);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(owner, newIdentityMap);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(owner);
+            }
+        });
+        return newIdentityMap;
+    }
+
+    /**
+     * 按主键缓存的key
+     *
+     * @param clazz the clazz
+     * @param id the id
+     * @return the object
+     */
+    public static Object idKey(Class<?> clazz, Object id) {
+        return Arrays.asList(clazz, normalizeId(id));
+    }
+
+    /**
+     * 按条件缓存的key
+     *
+     * @param clazz the clazz
+     * @param boundSql the bound sql
+     * @return the object
+     */
+    public static Object queryKey(Class<?> clazz, BoundSql boundSql) {
+        return Arrays.asList(clazz, boundSql.getSql(), new ArrayList<Object>(boundSql.getParameters()));
+    }
+
+    /**
+     * 获取缓存的实体
+     *
+     * @param key idKey或queryKey
+     * @return 不存在时返回null
+     */
+    public Object get(Object key) {
+        return entities.get(key);
+    }
+
+    /**
+     * 按主键缓存实体，已存在时返回已缓存的对象
+     *
+     * @param boundSql 查询的sql，获取表名，不是单表查询时不缓存
+     * @param clazz the clazz
+     * @param id the id
+     * @param entity the entity
+     * @return 缓存中的实体
+     */
+    public Object putById(BoundSql boundSql, Class<?> clazz, Object id, Object entity) {
+        return this.put(idKeys, boundSql, idKey(clazz, id), entity);
+    }
+
+    /**
+     * 按条件缓存实体，已存在时返回已缓存的对象
+     *
+     * @param boundSql 查询的sql，获取表名，不是单表查询时不缓存
+     * @param clazz the clazz
+     * @param entity the entity
+     * @return 缓存中的实体
+     */
+    public Object putByQuery(BoundSql boundSql, Class<?> clazz, Object entity) {
+        return this.put(queryKeys, boundSql, queryKey(clazz, boundSql), entity);
+    }
+
+    /**
+     * 写操作后移除实体
+     *
+     * @param boundSql 写操作的sql，无法解析表名时移除所有实体
+     * @param ids 写入的主键，只移除这些主键的实体及表按条件缓存的实体，为null时移除表的所有实体
+     */
+    public void evict(BoundSql boundSql, Collection<?> ids) {
+        Set<String> tableNames = SqlTables.getTables(boundSql);
+        if (tableNames == null) {
+            this.clear();
+            return;
+        }
+        for (String tableName : tableNames) {
+            this.evict(tableName, ids);
+        }
+    }
+
+    /**
+     * 移除所有实体
+     */
+    public void clear() {
+        entities.clear();
+        idKeys.clear();
+        queryKeys.clear();
+    }
+
+    private void evict(String tableName, Collection<?> ids) {
+        this.removeKeys(queryKeys.remove(tableName));
+        Set<Object> tableIdKeys = idKeys.get(tableName);
+        if (tableIdKeys == null) {
+            return;
+        }
+        if (ids == null) {
+            this.removeKeys(tableIdKeys);
+            idKeys.remove(tableName);
+            return;
+        }
+        //按表中的主键移除，不区分实体类，同一个表可能映射了多个类
+        Set<Object> evictIds = new HashSet<Object>();
+        for (Object id : ids) {
+            evictIds.add(normalizeId(id));
+        }
+        Iterator<Object> iterator = tableIdKeys.iterator();
+        while (iterator.hasNext()) {
+            Object key = iterator.next();
+            if (evictIds.contains(((List<?>) key).get(1))) {
+                entities.remove(key);
+                iterator.remove();
+            }
+        }
+    }
+
+    private Object put(Map<String, Set<Object>> tableKeys, BoundSql boundSql, Object key, Object entity) {
+        Set<String> tableNames = SqlTables.getTables(boundSql);
+        if (tableNames == null || tableNames.size() != 1 || entity == null) {
+            return entity;
+        }
+        String tableName = tableNames.iterator().next();
+        Object cached = entities.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        entities.put(key, entity);
+        Set<Object> keys = tableKeys.get(tableName);
+        if (keys == null) {
+            keys = new HashSet<Object>();
+            tableKeys.put(tableName, keys);
+        }
+        keys.add(key);
+        return entity;
+    }
+
+    private void removeKeys(Set<Object> keys) {
+        if (keys != null) {
+            entities.keySet().removeAll(keys);
+        }
+    }
+
+    /**
+     * 整数类型的主键统一为Long，get(User.class, 1)与delete(User.class, 1L)为同一实体
+     *
+     * @param id the id
+     * @return the object
+     */
+    public static Object normalizeId(Object id) {
+        if (id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        return id;
+    }
+}
@@ -0,0 +1,243 @@
+package com.dexcoder.dal.spring.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.dexcoder.commons.cache.CacheMap;
+import com.dexcoder.commons.cache.LRUCache;
+import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+import com.dexcoder.dal.spring.page.PageControl;
+
+/**
+ * 查询结果缓存，key为最终执行的sql、参数及结果类型，写操作后按表名失效
+ * <pre>
+ *     每个表有一个版本号，写操作时加1，缓存结果时记录涉及的表的版本号，获取时版本号有变化即失效
+ *     查询执行期间发生的写操作也会使结果失效，不会把旧数据放入缓存
+ *     Criteria构建的sql使用构建时的表名，自定义sql使用jsqlparser解析表名，无法解析的写操作使所有缓存失效
+ *     事务中及设置了分页时不使用缓存，事务中的写操作在事务结束后再失效一次，避免其它线程在提交前缓存了旧数据
+ *     返回的list是复制的，但其中的实体与缓存共用，不要修改返回的实体
+ *
+ *     &lt;bean id="jdbcDao" class="com.dexcoder.dal.spring.JdbcDaoImpl"&gt;
+ *         &lt;property name="queryCache"&gt;
+ *             &lt;bean class="com.dexcoder.dal.spring.cache.QueryCache"&gt;
+ *                 &lt;constructor-arg name="cacheSize" value="10000"/&gt;
+ *                 &lt;constructor-arg name="expire" value="60000"/&gt;
+ *                 &lt;property name="tables" value="REGION,DICT"/&gt;
+ *             &lt;/bean&gt;
+ *         &lt;/property&gt;
+ *     &lt;/bean&gt;
+ * </pre>
+ */
+public class QueryCache {
+
+    /** 默认缓存的查询数 */
+    public static final int                         DEFAULT_CACHE_SIZE = 1000;
+
+    /** 默认过期时间(毫秒) */
+    public static final long                        DEFAULT_EXPIRE     = 60 * 1000;
+
+    /** 查询结果 */
+    private final CacheMap<Object, Object>          cacheMap;
+
+    /** 表的版本号 */
+    private final ConcurrentMap<String, AtomicLong> tableVersions      = new ConcurrentHashMap<String, AtomicLong>();
+
+    /** 所有表的版本号，无法解析表名的写操作时加1 */
+    private final AtomicLong                        globalVersion      = new AtomicLong();
+
+    /** 缓存的表，为空时缓存所有表的查询 */
+    private Set<String>                             tables             = Collections.emptySet();
+
+    public QueryCache() {
+        this(DEFAULT_CACHE_SIZE, DEFAULT_EXPIRE);
+    }
+
+    public QueryCache(int cacheSize, long expire) {
+        this(new LRUCache<Object, Object>(cacheSize, expire));
+    }
+
+    public QueryCache(CacheMap<Object, Object> cacheMap) {
+        this.cacheMap = cacheMap;
+    }
+
+    /**
+     * 查询，有缓存时直接返回
+     *
+     * @param boundSql 最终执行的sql
+     * @param resultType 结果类型，同一sql映射成不同类型时区分
+     * @param loader 执行查询
+     * @return 复制的list
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> query(BoundSql boundSql, Object resultType, Callable<List<T>> loader) {
+        Set<String> queryTables = this.getTables(boundSql);
+        if (!this.isCacheable(queryTables)) {
+            return call(loader);
+        }
+        List<Object> key = Arrays.asList(resultType, boundSql.getSql(),
+            new ArrayList<Object>(boundSql.getParameters()));
+        Entry entry = (Entry) cacheMap.get(key);
+        if (entry != null && entry.isValid()) {
+            return new ArrayList<T>((List<T>) entry.result);
+        }
+        //查询前获取版本号，查询期间有写操作时缓存的结果即失效
+        Entry newEntry = new Entry(queryTables);
+        List<T> result = call(loader);
+        newEntry.result = result == null ? new ArrayList<T>() : result;
+        cacheMap.put(key, newEntry);
+        return new ArrayList<T>((List<T>) newEntry.result);
+    }
+
+    /**
+     * 写操作后使sql涉及的表的缓存失效
+     *
+     * @param boundSql 执行的sql
+     */
+    public void evict(BoundSql boundSql) {
+        this.evict(this.getTables(boundSql));
+    }
+
+    /**
+     * 使表的缓存失效，事务中时事务结束后再失效一次
+     *
+     * @param tableNames 表名，为null时所有缓存失效
+     */
+    public void evict(final Collection<String> tableNames) {
+        this.incrementVersions(tableNames);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    incrementVersions(tableNames);
+                }
+            });
+        }
+    }
+
+    /**
+     * 使所有缓存失效，事务中时事务结束后再失效一次
+     */
+    public void evictAll() {
+        this.evict((Collection<String>) null);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        globalVersion.incrementAndGet();
+        cacheMap.clear();
+    }
+
+    /**
+     * 获取sql涉及的表
+     *
+     * @param boundSql the bound sql
+     * @return 无法解析时返回null
+     */
+    protected Set<String> getTables(BoundSql boundSql) {
+        return SqlTables.getTables(boundSql);
+    }
+
+    private boolean isCacheable(Set<String> queryTables) {
+        if (queryTables == null || queryTables.isEmpty()
+            || TransactionSynchronizationManager.isActualTransactionActive()
+            || PageControl.LOCAL_PAGER.get() != null) {
+            return false;
+        }
+        return tables.isEmpty() || tables.containsAll(queryTables);
+    }
+
+    private void incrementVersions(Collection<String> tableNames) {
+        if (tableNames == null) {
+            globalVersion.incrementAndGet();
+            return;
+        }
+        for (String tableName : tableNames) {
+            this.getVersion(SqlTables.normalize(tableName)).incrementAndGet();
+        }
+    }
+
+    private AtomicLong getVersion(String tableName) {
+        AtomicLong version = tableVersions.get(tableName);
+        if (version == null) {
+            AtomicLong newVersion = new AtomicLong();
+            version = tableVersions.putIfAbsent(tableName, newVersion);
+            if (version == null) {
+                version = newVersion;
+            }
+        }
+        return version;
+    }
+
+    private static <T> T call(Callable<T> loader) {
+        try {
+            return loader.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new JdbcAssistantException(e);
+        }
+    }
+
+    /**
+     * 缓存的表，为空时缓存所有表的查询，不为空时只缓存涉及的表都在其中的查询
+     *
+     * @param tables the tables
+     */
+    public void setTables(String... tables) {
+        Set<String> normalized = new HashSet<String>();
+        for (String table : tables) {
+            normalized.add(SqlTables.normalize(table));
+        }
+        this.tables = normalized;
+    }
+
+    /**
+     * 缓存的结果及缓存时各表的版本号
+     */
+    private class Entry {
+
+        private final String[] entryTables;
+
+        private final long[]   versions;
+
+        private final long     entryGlobalVersion;
+
+        private Object         result;
+
+        Entry(Set<String> queryTables) {
+            this.entryGlobalVersion = globalVersion.get();
+            this.entryTables = queryTables.toArray(new String[queryTables.size()]);
+            this.versions = new long[entryTables.length];
+            for (int i = 0; i < entryTables.length; i++) {
+                versions[i] = getVersion(entryTables[i]).get();
+            }
+        }
+
+        boolean isValid() {
+            if (entryGlobalVersion != globalVersion.get()) {
+                return false;
+            }
+            for (int i = 0; i < entryTables.length; i++) {
+                if (versions[i] != getVersion(entryTables[i]).get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.dexcoder.dal.spring.cache;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.delete.Delete;
+import net.sf.jsqlparser.statement.insert.Insert;
+import net.sf.jsqlparser.statement.replace.Replace;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.update.Update;
+import net.sf.jsqlparser.util.TablesNamesFinder;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.dexcoder.commons.cache.CacheMap;
+import com.dexcoder.commons.cache.LRUCache;
+import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.build.CriteriaBoundSql;
+
+/**
+ * 获取sql涉及的表，缓存失效时使用
+ * <pre>
+ *     Criteria构建的sql使用构建时的表名，自定义sql使用jsqlparser解析，解析结果按sql缓存
+ *     表名统一为大写，去掉引号及schema
+ * </pre>
+ */
+public final class SqlTables {
+
+    /** 缓存的解析结果数 */
+    private static final int                      PARSED_CACHE_SIZE = 1000;
+
+    /** 自定义sql解析出的表名，无法解析的为Boolean.FALSE */
+    private static final CacheMap<String, Object> PARSED_TABLES     = new LRUCache<String, Object>(
+                                                                          PARSED_CACHE_SIZE, 0);
+
+    private SqlTables() {
+    }
+
+    /**
+     * 获取sql涉及的表
+     *
+     * @param boundSql the bound sql
+     * @return 无法解析时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static Set<String> getTables(BoundSql boundSql) {
+        if (boundSql instanceof CriteriaBoundSql && ((CriteriaBoundSql) boundSql).getTableName() != null) {
+            return Collections.singleton(normalize(((CriteriaBoundSql) boundSql).getTableName()));
+        }
+        if (boundSql.getSql() == null) {
+            return null;
+        }
+        Object parsed = PARSED_TABLES.get(boundSql.getSql());
+        if (parsed == null) {
+            Set<String> parsedTables = parseTables(boundSql.getSql());
+            //无法解析的也记录，避免重复解析
+            parsed = parsedTables == null ? Boolean.FALSE : parsedTables;
+            PARSED_TABLES.put(boundSql.getSql(), parsed);
+        }
+        return parsed instanceof Set ? (Set<String>) parsed : null;
+    }
+
+    /**
+     * 使用jsqlparser解析sql中的表名
+     *
+     * @param sql the sql
+     * @return 无法解析时返回null
+     */
+    public static Set<String> parseTables(String sql) {
+        Statement statement;
+        try {
+            statement = CCJSqlParserUtil.parse(sql);
+        } catch (JSQLParserException e) {
+            return null;
+        }
+        TablesNamesFinder finder = new TablesNamesFinder();
+        List<String> tableList;
+        if (statement instanceof Select) {
+            tableList = finder.getTableList((Select) statement);
+        } else if (statement instanceof Update) {
+            tableList = finder.getTableList((Update) statement);
+        } else if (statement instanceof Insert) {
+            tableList = finder.getTableList((Insert) statement);
+        } else if (statement instanceof Delete) {
+            tableList = finder.getTableList((Delete) statement);
+        } else if (statement instanceof Replace) {
+            tableList = finder.getTableList((Replace) statement);
+        } else {
+            return null;
+        }
+        Set<String> result = new HashSet<String>();
+        for (String table : tableList) {
+            result.add(normalize(table));
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * 表名统一为大写，去掉引号及schema
+     *
+     * @param tableName the table name
+     * @return the string
+     */
+    public static String normalize(String tableName) {
+        String name = StringUtils.substringAfterLast(tableName, ".");
+        if (StringUtils.isEmpty(name)) {
+            name = tableName;
+        }
+        return StringUtils.upperCase(StringUtils.strip(StringUtils.trim(name), "`\"[]"));
+    }
+}
@@ -37,6 +37,19 @@ public class DynamicDataSourceHolder {
         return DATASOURCE_LOCAL.get();
     }
 
+    /**
+     * 设置dsKey，在其它线程中执行时传递调用线程的数据源
+     *
+     * @param dsContext 为null时清除
+     */
+    public static void setDsContent(DataSourceContext dsContext) {
+        if (dsContext == null) {
+            DATASOURCE_LOCAL.remove();
+        } else {
+            DATASOURCE_LOCAL.set(dsContext);
+        }
+    }
+
 
     /**
      * 清除
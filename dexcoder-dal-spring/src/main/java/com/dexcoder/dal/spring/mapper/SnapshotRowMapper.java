@@ -0,0 +1,29 @@
+package com.dexcoder.dal.spring.mapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import com.dexcoder.dal.build.EntitySnapshots;
+
+/**
+ * 映射后保存实体的快照，updateChanged时用来判断修改过的属性
+ */
+public class SnapshotRowMapper<T> implements RowMapper<T> {
+
+    private final RowMapper<T>    rowMapper;
+
+    private final EntitySnapshots entitySnapshots;
+
+    public SnapshotRowMapper(RowMapper<T> rowMapper, EntitySnapshots entitySnapshots) {
+        this.rowMapper = rowMapper;
+        this.entitySnapshots = entitySnapshots;
+    }
+
+    public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+        T entity = rowMapper.mapRow(rs, rowNum);
+        entitySnapshots.snapshot(entity);
+        return entity;
+    }
+}
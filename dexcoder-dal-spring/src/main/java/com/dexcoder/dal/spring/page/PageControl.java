@@ -75,6 +75,16 @@ public class PageControl {
         LOCAL_PAGER.set(pager);
     }
 
+    /**
+     * keyset分页，配合Criteria.after使用，只取前itemsPerPage条且不查询总数
+     * 深度翻页时与第一页的开销相同
+     *
+     * @param itemsPerPage
+     */
+    public static void performSeek(int itemsPerPage) {
+        performPage(1, itemsPerPage, false);
+    }
+
     /**
      * 获取Pager对象
      * 
@@ -88,6 +98,24 @@ public class PageControl {
         return pager;
     }
 
+    /**
+     * 清除分页及是否查询总记录数
+     */
+    public static void clear() {
+        LOCAL_PAGER.remove();
+        GET_ITEMS_TOTAL.remove();
+    }
+
+    /**
+     * 当前分页是否需要查询总记录数
+     *
+     * @return
+     */
+    public static boolean isGetItemsTotal() {
+        Boolean isGetCount = GET_ITEMS_TOTAL.get();
+        return isGetCount != null && isGetCount;
+    }
+
     /**
      * 设置pager对象
      */
@@ -95,6 +123,17 @@ public class PageControl {
         LOCAL_PAGER.set(pager);
     }
 
+    /**
+     * 设置pager对象及是否查询总记录数，在其它线程中执行时传递调用线程的分页
+     *
+     * @param pager
+     * @param isGetItemsTotal
+     */
+    public static void setPager(Pager pager, boolean isGetItemsTotal) {
+        GET_ITEMS_TOTAL.set(isGetItemsTotal);
+        LOCAL_PAGER.set(pager);
+    }
+
     @Pointcut("execution(* org.springframework.jdbc.core.JdbcOperations.query*(..))")
     public void queryMethod() {
         //该方法没实际作用，只是切面声明对象，声明一个切面的表达式
@@ -0,0 +1,263 @@
+package com.dexcoder.dal.spring.parallel;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.dexcoder.commons.utils.ClassUtils;
+import com.dexcoder.dal.build.EntityMetadata;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+import com.dexcoder.dal.spring.cache.IdentityMap;
+
+/**
+ * 合并并发的按主键查询，将短时间内同一实体类的多个查询合并成一个in查询
+ * <pre>
+ *     第一个到达的线程等待窗口时间或批次满后执行查询，其它线程加入批次并等待结果，不需要额外的调度线程
+ *     同一批次中重复的主键只查询一次，重复的调用者获得实体的浅拷贝，不会共享同一个实例
+ * </pre>
+ */
+public class GetCoalescer {
+
+    /** 默认等待窗口，微秒 */
+    public static final long                   DEFAULT_WINDOW_MICROS  = 1000;
+
+    /** 默认批次最大主键数 */
+    public static final int                    DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /** 正在收集的批次 */
+    private final ConcurrentMap<Object, Batch> batches                = new ConcurrentHashMap<Object, Batch>();
+
+    /** 等待窗口，纳秒 */
+    private final long                         windowNanos;
+
+    /** 批次最大主键数 */
+    private final int                          maxBatchSize;
+
+    /** 执行的查询次数 */
+    private final AtomicLong                   batchCount             = new AtomicLong();
+
+    /** 合并的调用次数 */
+    private final AtomicLong                   requestCount           = new AtomicLong();
+
+    public GetCoalescer() {
+        this(DEFAULT_WINDOW_MICROS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param windowMicros 第一个调用者等待其它调用者加入的时间，微秒
+     * @param maxBatchSize 批次最大主键数，达到后立即执行
+     */
+    public GetCoalescer(long windowMicros, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new JdbcAssistantException("maxBatchSize必须大于0");
+        }
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * 按主键获取实体，与同一批次的其它调用者合并查询
+     *
+     * @param batchKey 批次key，相同的才合并，需要包含实体类及数据源等影响查询的信息
+     * @param clazz the clazz
+     * @param id the id
+     * @param loader 批量加载，返回的map以IdentityMap.normalizeId后的主键为key
+     * @return 不存在时返回null
+     */
+    public <T> T get(Object batchKey, Class<T> clazz, Object id, Function<List<Object>, Map<Object, T>> loader) {
+        requestCount.incrementAndGet();
+        while (true) {
+            Batch batch = batches.get(batchKey);
+            if (batch == null) {
+                //创建时就加入自己的调用，批次不会在创建者加入前被其它调用者填满
+                Batch created = new Batch(id);
+                batch = batches.putIfAbsent(batchKey, created);
+                if (batch == null) {
+                    created.awaitClose();
+                    batches.remove(batchKey, created);
+                    this.execute(clazz, created, loader);
+                    return clazz.cast(created.requests.get(0).await());
+                }
+            }
+            Request request = batch.add(id);
+            if (request == null) {
+                //批次已满或已开始执行，移除后重新创建
+                batches.remove(batchKey, batch);
+                continue;
+            }
+            return clazz.cast(request.await());
+        }
+    }
+
+    /**
+     * 执行批次的查询，完成批次中所有调用
+     */
+    private <T> void execute(Class<T> clazz, Batch batch, Function<List<Object>, Map<Object, T>> loader) {
+        batchCount.incrementAndGet();
+        Map<Object, Object> distinctIds = new LinkedHashMap<Object, Object>();
+        for (Request request : batch.requests) {
+            if (!distinctIds.containsKey(request.normalizedId)) {
+                distinctIds.put(request.normalizedId, request.id);
+            }
+        }
+        try {
+            Map<Object, T> loaded = loader.apply(new ArrayList<Object>(distinctIds.values()));
+            Set<Object> assignedIds = new HashSet<Object>();
+            for (Request request : batch.requests) {
+                T entity = loaded.get(request.normalizedId);
+                if (entity != null && !assignedIds.add(request.normalizedId)) {
+                    entity = copy(clazz, entity);
+                }
+                request.complete(entity, null);
+            }
+        } catch (RuntimeException e) {
+            batch.fail(e);
+        } catch (Error e) {
+            batch.fail(e);
+            throw e;
+        }
+    }
+
+    private static <T> T copy(Class<T> clazz, T entity) {
+        T copy = clazz.cast(ClassUtils.newInstance(clazz));
+        EntityMetadata metadata = EntityMetadata.forClass(clazz);
+        for (String fieldName : metadata.getColumnFieldNames()) {
+            metadata.setFieldValue(copy, fieldName, metadata.getFieldValue(entity, fieldName));
+        }
+        return copy;
+    }
+
+    /**
+     * 平均每次查询合并的调用数
+     *
+     * @return the double
+     */
+    public double getAverageBatchSize() {
+        long count = batchCount.get();
+        return count == 0 ? 0 : (double) requestCount.get() / count;
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * 收集中的批次
+     */
+    private class Batch {
+
+        private final List<Request> requests = new ArrayList<Request>();
+
+        /** 关闭后不能再加入 */
+        private boolean             closed;
+
+        /**
+         * 创建批次，创建者的调用为第一个
+         *
+         * @param id 创建者的主键
+         */
+        Batch(Object id) {
+            requests.add(new Request(id));
+            closed = requests.size() >= maxBatchSize;
+        }
+
+        synchronized Request add(Object id) {
+            if (closed) {
+                return null;
+            }
+            Request request = new Request(id);
+            requests.add(request);
+            if (requests.size() >= maxBatchSize) {
+                closed = true;
+                this.notifyAll();
+            }
+            return request;
+        }
+
+        /**
+         * 等待窗口时间或批次满，被中断时立即执行，保留中断状态
+         */
+        synchronized void awaitClose() {
+            long deadline = System.nanoTime() + windowNanos;
+            long remaining = windowNanos;
+            try {
+                while (!closed && remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    remaining = deadline - System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            closed = true;
+        }
+
+        /**
+         * 执行失败时所有未完成的调用抛出同一个异常
+         */
+        void fail(Throwable throwable) {
+            for (Request request : requests) {
+                if (request.latch.getCount() > 0) {
+                    request.complete(null, throwable);
+                }
+            }
+        }
+    }
+
+    /**
+     * 批次中的一个调用
+     */
+    private static class Request {
+
+        private final Object         id;
+
+        private final Object         normalizedId;
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private volatile Object      entity;
+
+        private volatile Throwable   throwable;
+
+        Request(Object id) {
+            this.id = id;
+            this.normalizedId = IdentityMap.normalizeId(id);
+        }
+
+        void complete(Object entity, Throwable throwable) {
+            this.entity = entity;
+            this.throwable = throwable;
+            latch.countDown();
+        }
+
+        Object await() {
+            try {
+                //已完成时不检查中断状态，执行查询的线程在等待窗口中被中断时仍返回结果
+                if (latch.getCount() > 0) {
+                    latch.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JdbcAssistantException("等待合并查询结果被中断", e);
+            }
+            if (throwable instanceof RuntimeException) {
+                throw (RuntimeException) throwable;
+            } else if (throwable instanceof Error) {
+                throw (Error) throwable;
+            }
+            return entity;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.dexcoder.dal.spring.parallel;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * 大in列表使用的临时表，将in的值写入临时表后以子查询代替in列表
+ * <pre>
+ *     整数类型的值使用 表名_NUM(ID BIGINT)，其它使用 表名_STR(ID VARCHAR(255))，小数等其它数字不支持
+ *     mysql、mariadb、postgresql、h2 使用会话级临时表，不存在时自动创建
+ *     oracle需要预先创建全局临时表，并且必须是 ON COMMIT PRESERVE ROWS，例如：
+ *     CREATE GLOBAL TEMPORARY TABLE DAL_TMP_IN_NUM (ID NUMBER(19)) ON COMMIT PRESERVE ROWS
+ * </pre>
+ */
+public class InTempTable {
+
+    /** 支持临时表的数据库 */
+    private static final String[] SUPPORTED_DBS = { "MYSQL", "MARIADB", "POSTGRESQL", "H2", "ORACLE" };
+
+    private final String          dialect;
+
+    private final String          tableName;
+
+    public InTempTable(String dialect, String tableName) {
+        this.dialect = dialect;
+        this.tableName = tableName;
+    }
+
+    /**
+     * 数据库是否支持
+     *
+     * @param dialect the dialect
+     * @return the boolean
+     */
+    public static boolean isSupported(String dialect) {
+        return StringUtils.indexOfAny(dialect, SUPPORTED_DBS) != -1;
+    }
+
+    /**
+     * 值是否可以写入临时表，全部为BIGINT范围内的整数或全部不是数字
+     * 小数写入BIGINT会被截断，写入VARCHAR后按字符串比较，都不能使用临时表
+     *
+     * @param values the values
+     * @return the boolean
+     */
+    public static boolean isSupportedValues(Object[] values) {
+        boolean hasNumber = false;
+        boolean hasOther = false;
+        for (Object value : values) {
+            if (value instanceof Number) {
+                if (!isIntegral((Number) value)) {
+                    return false;
+                }
+                hasNumber = true;
+            } else if (value != null) {
+                hasOther = true;
+            }
+        }
+        return !(hasNumber && hasOther);
+    }
+
+    /**
+     * 根据值的类型获取临时表名，整数使用_NUM表
+     *
+     * @param values the values
+     * @return the table name
+     */
+    public String getTableName(Object[] values) {
+        return tableName + (isIntegralValues(values) ? "_NUM" : "_STR");
+    }
+
+    /**
+     * 代替in列表的子查询
+     *
+     * @param values the values
+     * @return the string
+     */
+    public String getSubQuery(Object[] values) {
+        return "(SELECT ID FROM " + this.getTableName(values) + ")";
+    }
+
+    /**
+     * 创建临时表(需要时)并写入值，必须与后续查询使用同一连接
+     *
+     * @param con the con
+     * @param values the values
+     * @param batchSize the batch size
+     * @throws SQLException the sQL exception
+     */
+    public void fill(Connection con, Object[] values, int batchSize) throws SQLException {
+        String table = this.getTableName(values);
+        String createSql = this.getCreateSql(table, isIntegralValues(values));
+        if (createSql != null) {
+            this.execute(con, createSql);
+        }
+        //会话级临时表可能残留上次的数据
+        this.execute(con, "DELETE FROM " + table);
+        PreparedStatement ps = con.prepareStatement("INSERT INTO " + table + " (ID) VALUES (?)");
+        try {
+            for (int i = 0; i < values.length; i++) {
+                StatementCreatorUtils.setParameterValue(ps, 1, SqlTypeValue.TYPE_UNKNOWN, values[i]);
+                ps.addBatch();
+                if ((i + 1) % batchSize == 0 || i == values.length - 1) {
+                    ps.executeBatch();
+                }
+            }
+        } finally {
+            JdbcUtils.closeStatement(ps);
+        }
+    }
+
+    /**
+     * 清空临时表
+     *
+     * @param con the con
+     * @param values the values
+     * @throws SQLException the sQL exception
+     */
+    public void clear(Connection con, Object[] values) throws SQLException {
+        this.execute(con, "DELETE FROM " + this.getTableName(values));
+    }
+
+    /**
+     * 获取创建临时表的sql，oracle需要预先创建返回null
+     *
+     * @param table the table
+     * @param isNumber the is number
+     * @return the create sql
+     */
+    protected String getCreateSql(String table, boolean isNumber) {
+        String columnType = isNumber ? "BIGINT" : "VARCHAR(255)";
+        if (StringUtils.indexOf(dialect, "ORACLE") != -1) {
+            return null;
+        } else if (StringUtils.indexOf(dialect, "H2") != -1) {
+            return "CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS " + table + " (ID " + columnType + ")";
+        }
+        return "CREATE TEMPORARY TABLE IF NOT EXISTS " + table + " (ID " + columnType + ")";
+    }
+
+    private static boolean isIntegralValues(Object[] values) {
+        boolean hasNumber = false;
+        for (Object value : values) {
+            if (value instanceof Number && isIntegral((Number) value)) {
+                hasNumber = true;
+            } else if (value != null) {
+                return false;
+            }
+        }
+        return hasNumber;
+    }
+
+    private static boolean isIntegral(Number number) {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short
+            || number instanceof Byte || number instanceof AtomicLong || number instanceof AtomicInteger) {
+            return true;
+        } else if (number instanceof BigInteger) {
+            return ((BigInteger) number).bitLength() < Long.SIZE;
+        } else if (number instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) number;
+            return decimal.signum() == 0
+                   || (decimal.stripTrailingZeros().scale() <= 0 && decimal.toBigInteger().bitLength() < Long.SIZE);
+        }
+        return false;
+    }
+
+    private void execute(Connection con, String sql) throws SQLException {
+        Statement stmt = con.createStatement();
+        try {
+            stmt.execute(sql);
+        } finally {
+            JdbcUtils.closeStatement(stmt);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.dexcoder.dal.spring.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+import com.dexcoder.dal.spring.datasource.DataSourceContext;
+import com.dexcoder.dal.spring.datasource.DynamicDataSourceHolder;
+
+/**
+ * 并行执行器，使用有界线程池并发执行多个查询
+ * <pre>
+ *     当前线程存在事务时顺序在当前线程执行，保证使用同一连接
+ *     队列满时由调用线程执行，不会无限堆积任务
+ * </pre>
+ */
+public class ParallelExecutor {
+
+    /** 标识当前线程是否为工作线程，工作线程内嵌套调用时直接顺序执行，避免占满线程池后互相等待 */
+    private static final ThreadLocal<Boolean> IN_WORKER = new ThreadLocal<Boolean>();
+
+    private final ExecutorService             executorService;
+
+    public ParallelExecutor(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * 创建有界线程池的执行器
+     *
+     * @param parallelism 最大并发数
+     * @return parallel executor
+     */
+    public static ParallelExecutor newBounded(int parallelism) {
+        final AtomicInteger threadNum = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(parallelism * 16), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "dal-parallel-" + threadNum.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return new ParallelExecutor(executor);
+    }
+
+    /**
+     * 执行所有任务，返回结果顺序与任务顺序一致，任一任务失败时取消其它任务并抛出异常
+     *
+     * @param tasks the tasks
+     * @return the list
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (!isParallelAvailable(tasks.size())) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(executorService.submit(this.wrap(task)));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JdbcAssistantException("并行执行被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new JdbcAssistantException("并行执行失败", e.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 包装在工作线程执行的任务，在调用线程中调用，传递调用线程的状态
+     *
+     * @param task the task
+     * @return the callable
+     */
+    protected <T> Callable<T> wrap(final Callable<T> task) {
+        final Thread callerThread = Thread.currentThread();
+        final DataSourceContext dsContext = DynamicDataSourceHolder.getDsContent();
+        return new Callable<T>() {
+            public T call() throws Exception {
+                //队列满时在调用线程执行，不能清除调用线程的状态
+                if (Thread.currentThread() == callerThread) {
+                    return task.call();
+                }
+                IN_WORKER.set(Boolean.TRUE);
+                //调用线程已使用写库时保持写库，保证能读到刚写入的数据
+                if (dsContext != null && dsContext.getIsWrite() != null && dsContext.getIsWrite()) {
+                    DynamicDataSourceHolder.setIsWrite(true);
+                }
+                try {
+                    return task.call();
+                } finally {
+                    DynamicDataSourceHolder.clear();
+                    IN_WORKER.remove();
+                }
+            }
+        };
+    }
+
+    /**
+     * 当前线程是否为工作线程
+     *
+     * @return the boolean
+     */
+    protected static boolean isInWorker() {
+        return IN_WORKER.get() != null;
+    }
+
+    /**
+     * 标识当前线程是否为工作线程
+     *
+     * @param inWorker the in worker
+     */
+    protected static void setInWorker(boolean inWorker) {
+        if (inWorker) {
+            IN_WORKER.set(Boolean.TRUE);
+        } else {
+            IN_WORKER.remove();
+        }
+    }
+
+    /**
+     * 是否可以并行执行，事务中需要使用同一个连接，只能顺序执行
+     *
+     * @param taskSize the task size
+     * @return the boolean
+     */
+    protected boolean isParallelAvailable(int taskSize) {
+        return taskSize > 1 && !isInWorker() && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    private <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new JdbcAssistantException(e);
+        }
+    }
+
+    public void shutdown() {
+        executorService.shutdown();
+    }
+}
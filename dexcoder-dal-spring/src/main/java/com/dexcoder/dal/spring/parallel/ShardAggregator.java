@@ -0,0 +1,316 @@
+package com.dexcoder.dal.spring.parallel;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import com.dexcoder.dal.build.AutoField;
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+
+/**
+ * 跨物理表聚合，count、sum、min、max及group by下推到各物理表执行后合并部分结果
+ * <pre>
+ *     count、sum相加，min、max取最值，分组按分组列的值合并
+ *     avg下推时改写成 sum(x),count(x)，合并后再相除
+ *     count(distinct x)等不能由部分结果合并的函数不支持
+ * </pre>
+ * 各物理表的结果按列的位置合并，列名可能重复(例如没有别名的avg改写后)
+ */
+public class ShardAggregator {
+
+    private static final Pattern       AGGREGATE_PATTERN  = Pattern.compile(
+                                                              "^(count|sum|min|max|avg)\\s*\\((.*)\\)(\\s+.+)?$",
+                                                              Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern       DISTINCT_PATTERN   = Pattern.compile("^\\s*distinct\\s",
+                                                              Pattern.CASE_INSENSITIVE);
+
+    private static final String        COUNT              = "count";
+
+    private static final String        SUM                = "sum";
+
+    private static final String        MIN                = "min";
+
+    private static final String        MAX                = "max";
+
+    private static final String        AVG                = "avg";
+
+    /** 分组列数，分组列在函数列之前 */
+    private final int                  groupColumns;
+
+    /** 下推到各物理表的函数，与原函数一一对应 */
+    private final List<AutoField>      pushdownFuncs      = new ArrayList<AutoField>();
+
+    /** 下推后每个函数列的合并方式 */
+    private final List<String>         pushdownAggregates = new ArrayList<String>();
+
+    /** 结果中每个函数列对应的下推列位置(不含分组列)，avg时为sum列，count列在其后 */
+    private final List<Integer>        outputColumns      = new ArrayList<Integer>();
+
+    /** 结果中每个函数列是否avg */
+    private final List<Boolean>        outputAvgs         = new ArrayList<Boolean>();
+
+    /** 按criteria的排序字段排序合并后的结果，没有排序时为null */
+    private final SortValuesComparator comparator;
+
+    /** 下推后的列名，在第一条记录时获取 */
+    private volatile String[]          labels;
+
+    public ShardAggregator(Criteria criteria) {
+        this(criteria, null);
+    }
+
+    /**
+     * @param criteria the criteria
+     * @param comparator 有排序时合并后的排序方式，为null时null值作为最小值
+     */
+    public ShardAggregator(Criteria criteria, SortValuesComparator comparator) {
+        this.groupColumns = criteria.getGroupByFields().size();
+        boolean isOrderBy = false;
+        for (AutoField func : criteria.getSelectFuncs()) {
+            isOrderBy = Boolean.valueOf(func.getLogicalOperator());
+            if (func.getFieldOperator() != null && !Boolean.valueOf(func.getFieldOperator())) {
+                throw new JdbcAssistantException("跨物理表聚合时函数必须与列互斥:" + func.getName());
+            }
+            StringBuilder pushdown = new StringBuilder();
+            for (String expression : splitExpressions(func.getName())) {
+                Matcher matcher = matchAggregate(expression);
+                if (matcher == null || DISTINCT_PATTERN.matcher(matcher.group(2)).find()) {
+                    throw new JdbcAssistantException("跨物理表聚合不支持的函数:" + expression);
+                }
+                String aggregate = matcher.group(1).toLowerCase();
+                outputColumns.add(pushdownAggregates.size());
+                outputAvgs.add(AVG.equals(aggregate));
+                if (pushdown.length() > 0) {
+                    pushdown.append(",");
+                }
+                if (AVG.equals(aggregate)) {
+                    String alias = matcher.group(3) == null ? "" : matcher.group(3);
+                    pushdown.append(SUM).append("(").append(matcher.group(2)).append(")").append(alias).append(",")
+                        .append(COUNT).append("(").append(matcher.group(2)).append(")");
+                    pushdownAggregates.add(SUM);
+                    pushdownAggregates.add(COUNT);
+                } else {
+                    pushdown.append(expression);
+                    pushdownAggregates.add(COUNT.equals(aggregate) ? SUM : aggregate);
+                }
+            }
+            pushdownFuncs.add(new AutoField.Builder().name(pushdown.toString())
+                .logicalOperator(func.getLogicalOperator()).fieldOperator(func.getFieldOperator())
+                .type(func.getType()).value(func.getValue()).build());
+        }
+        if (isOrderBy) {
+            this.comparator = comparator == null ? new SortValuesComparator(criteria) : comparator;
+        } else {
+            this.comparator = null;
+        }
+    }
+
+    /**
+     * 是否需要按聚合方式合并，有分组或聚合函数时需要
+     *
+     * @param criteria the criteria
+     * @return the boolean
+     */
+    public static boolean isAggregate(Criteria criteria) {
+        if (!criteria.getGroupByFields().isEmpty()) {
+            return true;
+        }
+        for (AutoField func : criteria.getSelectFuncs()) {
+            for (String expression : splitExpressions(func.getName())) {
+                if (matchAggregate(expression) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 下推到各物理表执行的函数
+     *
+     * @return the list
+     */
+    public List<AutoField> getPushdownFuncs() {
+        return pushdownFuncs;
+    }
+
+    /**
+     * 按列的位置获取各物理表的结果
+     *
+     * @return the row mapper
+     */
+    public RowMapper<Object[]> getRowMapper() {
+        return new RowMapper<Object[]>() {
+            public Object[] mapRow(ResultSet rs, int rowNum) throws SQLException {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                if (labels == null) {
+                    String[] columnLabels = new String[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        columnLabels[i] = JdbcUtils.lookupColumnName(metaData, i + 1);
+                    }
+                    labels = columnLabels;
+                }
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = JdbcUtils.getResultSetValue(rs, i + 1);
+                }
+                return row;
+            }
+        };
+    }
+
+    /**
+     * 合并各物理表的部分结果，有排序时按criteria的排序字段重新排序，否则分组按各物理表中第一次出现的顺序
+     *
+     * @param shardRows 各物理表getRowMapper的结果
+     * @return 与单表查询queryRowMapList相同结构的结果
+     */
+    public List<Map<String, Object>> merge(List<List<Object[]>> shardRows) {
+        Map<List<Object>, Object[]> groups = new LinkedHashMap<List<Object>, Object[]>();
+        for (List<Object[]> rows : shardRows) {
+            for (Object[] row : rows) {
+                List<Object> key = new ArrayList<Object>(Arrays.asList(row).subList(0, groupColumns));
+                Object[] merged = groups.get(key);
+                if (merged == null) {
+                    groups.put(key, row.clone());
+                    continue;
+                }
+                for (int i = 0; i < pushdownAggregates.size(); i++) {
+                    int column = groupColumns + i;
+                    merged[column] = combine(pushdownAggregates.get(i), merged[column], row[column]);
+                }
+            }
+        }
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(groups.size());
+        for (Object[] merged : groups.values()) {
+            Map<String, Object> rowMap = new LinkedCaseInsensitiveMap<Object>(groupColumns + outputColumns.size());
+            for (int i = 0; i < groupColumns; i++) {
+                rowMap.put(labels[i], merged[i]);
+            }
+            for (int i = 0; i < outputColumns.size(); i++) {
+                int column = groupColumns + outputColumns.get(i);
+                Object value = outputAvgs.get(i) ? divide(merged[column], merged[column + 1]) : merged[column];
+                rowMap.put(labels[column], value);
+            }
+            result.add(rowMap);
+        }
+        if (comparator != null) {
+            //各物理表的排序只在表内有效，合并后的值(例如count)也可能改变顺序
+            Collections.sort(result, comparator);
+        }
+        return result;
+    }
+
+    private static Object combine(String aggregate, Object merged, Object value) {
+        if (merged == null) {
+            return value;
+        } else if (value == null) {
+            return merged;
+        }
+        if (SUM.equals(aggregate)) {
+            return add((Number) merged, (Number) value);
+        }
+        //各物理表返回的数字类型可能不同，按数值比较
+        int result = SortValuesComparator.compareValues(merged, value);
+        if (MIN.equals(aggregate)) {
+            return result <= 0 ? merged : value;
+        }
+        return result >= 0 ? merged : value;
+    }
+
+    private static Number add(Number a, Number b) {
+        if (isIntegral(a) && isIntegral(b)) {
+            return a.longValue() + b.longValue();
+        } else if (isFloating(a) || isFloating(b)) {
+            return a.doubleValue() + b.doubleValue();
+        }
+        return toBigDecimal(a).add(toBigDecimal(b));
+    }
+
+    private static Object divide(Object sum, Object count) {
+        if (sum == null || count == null || ((Number) count).longValue() == 0) {
+            return null;
+        }
+        if (isFloating((Number) sum)) {
+            return ((Number) sum).doubleValue() / ((Number) count).longValue();
+        }
+        return toBigDecimal((Number) sum).divide(toBigDecimal((Number) count), MathContext.DECIMAL64);
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short
+               || number instanceof Byte;
+    }
+
+    private static boolean isFloating(Number number) {
+        return number instanceof Double || number instanceof Float;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        return number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+    }
+
+    /**
+     * 匹配单个聚合函数，括号内不平衡时(例如 "sum(a) / count(b)")不是单个聚合函数
+     *
+     * @param expression the expression
+     * @return 不是聚合函数时返回null
+     */
+    private static Matcher matchAggregate(String expression) {
+        Matcher matcher = AGGREGATE_PATTERN.matcher(expression);
+        if (!matcher.matches()) {
+            return null;
+        }
+        int depth = 0;
+        for (char c : matcher.group(2).toCharArray()) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth < 0) {
+                return null;
+            }
+        }
+        return depth == 0 ? matcher : null;
+    }
+
+    /**
+     * 按最外层的逗号拆分，一个函数中可以写多个列，例如 "sum([a]) a,max([b]) b"
+     *
+     * @param func the func
+     * @return the list
+     */
+    private static List<String> splitExpressions(String func) {
+        List<String> expressions = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < func.length(); i++) {
+            char c = func.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                expressions.add(func.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        expressions.add(func.substring(start).trim());
+        return expressions;
+    }
+}
@@ -0,0 +1,19 @@
+package com.dexcoder.dal.spring.parallel;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * 跨物理表分页时获取单个物理表的一批有序数据
+ */
+public interface ShardFetcher<T> {
+
+    /**
+     * 构建查询，在调用线程中执行(Criteria不是线程安全的)，返回的任务可以在其它线程执行
+     *
+     * @param afterValues keyset分页的值，为null时使用criteria中原有的after
+     * @param limit 最多返回的记录数
+     * @return 查询任务
+     */
+    Callable<List<T>> prepare(Object[] afterValues, int limit);
+}
@@ -0,0 +1,151 @@
+package com.dexcoder.dal.spring.parallel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+
+/**
+ * 跨物理表分页，各物理表按criteria排序取前 offset+n 条，堆归并后跳过offset条取n条
+ * <pre>
+ *     排序字段包含主键时各物理表按batchSize分批获取，下一批使用keyset(after)从该表上一批的最后一条之后开始
+ *     深度翻页时每个物理表不需要排序、传输 offset+n 条，内存中最多保存 物理表数*batchSize 条
+ *     排序字段不包含主键时排序值可能重复，keyset会跳过记录，只能一次获取 offset+n 条
+ * </pre>
+ */
+public class ShardPageMerger<T> {
+
+    private final Criteria           criteria;
+
+    /** 排序比较 */
+    private final Comparator<Object> comparator;
+
+    private final ParallelExecutor   parallelExecutor;
+
+    /** keyset分批时每批的大小 */
+    private final int                batchSize;
+
+    public ShardPageMerger(Criteria criteria, ParallelExecutor parallelExecutor, int batchSize) {
+        this(criteria, new SortValuesComparator(criteria), parallelExecutor, batchSize);
+    }
+
+    public ShardPageMerger(Criteria criteria, Comparator<Object> comparator, ParallelExecutor parallelExecutor,
+                           int batchSize) {
+        this.criteria = criteria;
+        this.comparator = comparator;
+        this.parallelExecutor = parallelExecutor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 获取一页数据
+     *
+     * @param fetchers 各物理表
+     * @param offset 跳过的记录数
+     * @param limit 每页记录数
+     * @return the list
+     */
+    public List<T> merge(List<ShardFetcher<T>> fetchers, int offset, int limit) {
+        int need = offset + limit;
+        final boolean isKeyset = need > batchSize && criteria.isSortByPk();
+        final int fetchSize = isKeyset ? batchSize : need;
+
+        //第一批并行获取
+        List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>(fetchers.size());
+        for (ShardFetcher<T> fetcher : fetchers) {
+            tasks.add(fetcher.prepare(null, fetchSize));
+        }
+        List<List<T>> firstBatches = parallelExecutor.invokeAll(tasks);
+
+        PriorityQueue<Cursor<T>> heap = new PriorityQueue<Cursor<T>>(Math.max(fetchers.size(), 1),
+            new Comparator<Cursor<T>>() {
+                public int compare(Cursor<T> o1, Cursor<T> o2) {
+                    int result = comparator.compare(o1.current(), o2.current());
+                    return result != 0 ? result : o1.index - o2.index;
+                }
+            });
+        for (int i = 0; i < fetchers.size(); i++) {
+            Cursor<T> cursor = new Cursor<T>(i, fetchers.get(i));
+            cursor.reset(firstBatches.get(i), !isKeyset || firstBatches.get(i).size() < fetchSize);
+            if (cursor.hasCurrent()) {
+                heap.add(cursor);
+            }
+        }
+
+        List<T> page = new ArrayList<T>(limit);
+        int skipped = 0;
+        while (!heap.isEmpty() && page.size() < limit) {
+            Cursor<T> cursor = heap.poll();
+            T row = cursor.current();
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                page.add(row);
+            }
+            cursor.advance();
+            if (!cursor.hasCurrent() && !cursor.exhausted) {
+                //该物理表这一批已用完，从最后一条之后获取下一批
+                List<T> batch = call(cursor.fetcher.prepare(criteria.getSortValues(row), fetchSize));
+                cursor.reset(batch, batch.size() < fetchSize);
+            }
+            if (cursor.hasCurrent()) {
+                heap.add(cursor);
+            }
+        }
+        return page;
+    }
+
+    private static <T> List<T> call(Callable<List<T>> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new JdbcAssistantException(e);
+        }
+    }
+
+    /**
+     * 单个物理表当前批次的游标
+     */
+    private static class Cursor<T> {
+
+        private final int             index;
+
+        private final ShardFetcher<T> fetcher;
+
+        private List<T>               rows;
+
+        private int                   position;
+
+        /** 该物理表是否已没有更多数据 */
+        private boolean               exhausted;
+
+        Cursor(int index, ShardFetcher<T> fetcher) {
+            this.index = index;
+            this.fetcher = fetcher;
+        }
+
+        void reset(List<T> rows, boolean exhausted) {
+            this.rows = rows;
+            this.position = 0;
+            this.exhausted = exhausted;
+        }
+
+        boolean hasCurrent() {
+            return rows != null && position < rows.size();
+        }
+
+        T current() {
+            return rows.get(position);
+        }
+
+        void advance() {
+            position++;
+        }
+    }
+}
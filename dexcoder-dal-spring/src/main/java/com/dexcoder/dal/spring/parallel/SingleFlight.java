@@ -0,0 +1,222 @@
+package com.dexcoder.dal.spring.parallel;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import com.dexcoder.commons.utils.ClassUtils;
+import com.dexcoder.dal.build.EntityMetadata;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+
+/**
+ * 合并相同的并发查询，同一时刻相同的查询只执行一次
+ * <pre>
+ *     第一个调用者执行查询，执行期间到达的相同查询等待并共享其结果，不缓存已完成的结果
+ *     等待者各自复制共享的结果，其中的Map及实体也是复制的(浅拷贝)，不会与其它调用者共用同一个实例
+ *     没有等待者时不复制，第一个调用者直接获得查询结果
+ *     查询失败时所有等待者抛出同一个异常
+ * </pre>
+ */
+public class SingleFlight {
+
+    /** 执行中的查询 */
+    private final ConcurrentMap<Object, Call> calls         = new ConcurrentHashMap<Object, Call>();
+
+    /** 实际执行的查询次数 */
+    private final AtomicLong                  executeCount  = new AtomicLong();
+
+    /** 共享结果的查询次数 */
+    private final AtomicLong                  sharedCount   = new AtomicLong();
+
+    /** 行的类是否可以作为实体复制 */
+    private final Map<Class<?>, Boolean>      entityClasses = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    /**
+     * 执行查询，有相同的查询正在执行时等待其结果
+     *
+     * @param key 查询的key，包含最终执行的sql、参数及结果类型等
+     * @param loader 执行查询
+     * @return the list
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> execute(Object key, Callable<List<T>> loader) {
+        Call call = new Call();
+        while (true) {
+            Call existing = calls.putIfAbsent(key, call);
+            if (existing == null) {
+                break;
+            }
+            if (existing.join()) {
+                sharedCount.incrementAndGet();
+                return this.copyRows((List<T>) existing.await());
+            }
+            //已关闭的查询已从map中移除，重新尝试
+        }
+        executeCount.incrementAndGet();
+        List<T> result;
+        try {
+            result = loader.call();
+        } catch (RuntimeException e) {
+            this.finish(key, call, null, e);
+            throw e;
+        } catch (Error e) {
+            this.finish(key, call, null, e);
+            throw e;
+        } catch (Exception e) {
+            JdbcAssistantException exception = new JdbcAssistantException(e);
+            this.finish(key, call, null, exception);
+            throw exception;
+        }
+        //没有等待者时直接返回原结果，有等待者时自己也使用复制的结果，修改实体不影响等待者复制
+        if (this.finish(key, call, result == null ? new ArrayList<T>() : result, null) && result != null) {
+            return this.copyRows(result);
+        }
+        return result;
+    }
+
+    /**
+     * 移除并关闭查询，之后不能再加入等待者，完成结果
+     *
+     * @return 是否有等待者
+     */
+    private boolean finish(Object key, Call call, Object result, Throwable throwable) {
+        calls.remove(key, call);
+        boolean shared = call.close() > 0;
+        call.complete(result, throwable);
+        return shared;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> copyRows(List<T> rows) {
+        List<T> copy = new ArrayList<T>(rows.size());
+        for (T row : rows) {
+            copy.add((T) this.copyRow(row));
+        }
+        return copy;
+    }
+
+    /**
+     * 复制共享结果中的一行，子类可以覆盖自定义复制方式
+     * <pre>
+     *     Map及Date、byte[]复制，有无参构造方法的实体按列属性复制，其它类型(LocalDate、UUID等)认为不可变直接返回
+     * </pre>
+     *
+     * @param row the row
+     * @return the object
+     */
+    @SuppressWarnings("unchecked")
+    protected Object copyRow(Object row) {
+        if (row instanceof Date) {
+            return ((Date) row).clone();
+        } else if (row instanceof byte[]) {
+            return ((byte[]) row).clone();
+        } else if (row instanceof Map) {
+            Map<String, Object> map = new LinkedCaseInsensitiveMap<Object>();
+            map.putAll((Map<String, Object>) row);
+            return map;
+        } else if (row == null || !this.isEntity(row.getClass())) {
+            return row;
+        }
+        Object copy = ClassUtils.newInstance(row.getClass());
+        EntityMetadata metadata = EntityMetadata.forClass(row.getClass());
+        for (String fieldName : metadata.getColumnFieldNames()) {
+            metadata.setFieldValue(copy, fieldName, metadata.getFieldValue(row, fieldName));
+        }
+        return copy;
+    }
+
+    /**
+     * 是否可以复制的实体，jdk中的类及没有public无参构造方法的类不复制
+     *
+     * @param clazz the clazz
+     * @return the boolean
+     */
+    protected boolean isEntity(Class<?> clazz) {
+        Boolean entity = entityClasses.get(clazz);
+        if (entity == null) {
+            entity = !clazz.isEnum() && !clazz.isArray() && !clazz.getName().startsWith("java.")
+                     && !clazz.getName().startsWith("javax.") && hasDefaultConstructor(clazz)
+                     && !EntityMetadata.forClass(clazz).getColumnFieldNames().isEmpty();
+            entityClasses.put(clazz, entity);
+        }
+        return entity;
+    }
+
+    private static boolean hasDefaultConstructor(Class<?> clazz) {
+        try {
+            clazz.getConstructor();
+            return !Modifier.isAbstract(clazz.getModifiers());
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public long getExecuteCount() {
+        return executeCount.get();
+    }
+
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    /**
+     * 执行中的查询
+     */
+    private static class Call {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private volatile Object      result;
+
+        private volatile Throwable   throwable;
+
+        /** 加入的等待者数 */
+        private int                  waiters;
+
+        /** 关闭后不能再加入 */
+        private boolean              closed;
+
+        synchronized boolean join() {
+            if (closed) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        synchronized int close() {
+            closed = true;
+            return waiters;
+        }
+
+        void complete(Object result, Throwable throwable) {
+            this.result = result;
+            this.throwable = throwable;
+            latch.countDown();
+        }
+
+        Object await() {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JdbcAssistantException("等待相同查询的结果被中断", e);
+            }
+            if (throwable instanceof RuntimeException) {
+                throw (RuntimeException) throwable;
+            } else if (throwable instanceof Error) {
+                throw (Error) throwable;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.dexcoder.dal.spring.parallel;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.dexcoder.dal.build.Criteria;
+
+/**
+ * 按Criteria的排序字段(asc、desc，未设置时为主键降序)比较实体
+ * <pre>
+ *     null值需要与数据库默认规则一致，mysql、h2、sql server中null最小(升序在前)，oracle、postgresql中null最大
+ *     字符串按String.compareTo比较，与数据库不区分大小写等的排序规则不一致时归并结果的顺序可能不同，
+ *     跨物理表合并排序时建议使用数字、日期或二进制排序规则的列
+ * </pre>
+ */
+public class SortValuesComparator implements Comparator<Object> {
+
+    /** null作为最大值的数据库 */
+    private static final String[] NULLS_HIGH_DBS = { "ORACLE", "POSTGRESQL" };
+
+    private final Criteria        criteria;
+
+    private final boolean[]       ascending;
+
+    /** null是否作为最小值 */
+    private final boolean         nullsLow;
+
+    public SortValuesComparator(Criteria criteria) {
+        this(criteria, true);
+    }
+
+    /**
+     * @param criteria the criteria
+     * @param nullsLow null是否作为最小值，可由isNullsLow按数据库获取
+     */
+    public SortValuesComparator(Criteria criteria, boolean nullsLow) {
+        this.criteria = criteria;
+        this.ascending = criteria.getSortAscending();
+        this.nullsLow = nullsLow;
+    }
+
+    /**
+     * 数据库中null是否作为最小值
+     *
+     * @param dialect the dialect
+     * @return the boolean
+     */
+    public static boolean isNullsLow(String dialect) {
+        return StringUtils.indexOfAny(StringUtils.upperCase(dialect), NULLS_HIGH_DBS) == -1;
+    }
+
+    public int compare(Object o1, Object o2) {
+        Object[] values1 = criteria.getSortValues(o1);
+        Object[] values2 = criteria.getSortValues(o2);
+        for (int i = 0; i < ascending.length; i++) {
+            int result;
+            if (values1[i] == values2[i]) {
+                result = 0;
+            } else if (values1[i] == null) {
+                result = nullsLow ? -1 : 1;
+            } else if (values2[i] == null) {
+                result = nullsLow ? 1 : -1;
+            } else {
+                result = compareValues(values1[i], values2[i]);
+            }
+            if (result != 0) {
+                return ascending[i] ? result : -result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 比较两个非null的值，不同类型的数字(例如各物理表返回的Long与BigDecimal)按数值比较，不可比较时认为相等
+     *
+     * @param value1 the value 1
+     * @param value2 the value 2
+     * @return the int
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static int compareValues(Object value1, Object value2) {
+        if (value1 instanceof Number && value2 instanceof Number && value1.getClass() != value2.getClass()) {
+            Number number1 = (Number) value1;
+            Number number2 = (Number) value2;
+            if (isFloating(number1) || isFloating(number2)) {
+                return Double.compare(number1.doubleValue(), number2.doubleValue());
+            }
+            return toBigDecimal(number1).compareTo(toBigDecimal(number2));
+        } else if (value1 instanceof Comparable) {
+            return ((Comparable) value1).compareTo(value2);
+        }
+        return 0;
+    }
+
+    private static boolean isFloating(Number number) {
+        return number instanceof Double || number instanceof Float;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        return number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+    }
+}
@@ -0,0 +1,80 @@
+package com.dexcoder.dal.spring.parallel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 多路归并，将多个已排序的list合并成一个有序list
+ * 使用堆每次取出各路当前最小的元素，复杂度 n*log(k)
+ */
+public class SortedListMerger {
+
+    /**
+     * 归并多个有序list，排序值相同时保持list的先后顺序
+     *
+     * @param lists 已按comparator排好序的list
+     * @param comparator the comparator
+     * @return the list
+     */
+    public static <T> List<T> merge(List<List<T>> lists, final Comparator<? super T> comparator) {
+        int size = 0;
+        for (List<T> list : lists) {
+            size += list.size();
+        }
+        List<T> result = new ArrayList<T>(size);
+        if (lists.size() == 1) {
+            result.addAll(lists.get(0));
+            return result;
+        }
+        PriorityQueue<Cursor<T>> heap = new PriorityQueue<Cursor<T>>(Math.max(lists.size(), 1),
+            new Comparator<Cursor<T>>() {
+                public int compare(Cursor<T> o1, Cursor<T> o2) {
+                    int result = comparator.compare(o1.current, o2.current);
+                    return result != 0 ? result : o1.index - o2.index;
+                }
+            });
+        for (int i = 0; i < lists.size(); i++) {
+            Iterator<T> iterator = lists.get(i).iterator();
+            if (iterator.hasNext()) {
+                heap.add(new Cursor<T>(i, iterator));
+            }
+        }
+        while (!heap.isEmpty()) {
+            Cursor<T> cursor = heap.poll();
+            result.add(cursor.current);
+            if (cursor.next()) {
+                heap.add(cursor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 每一路的当前位置
+     */
+    private static class Cursor<T> {
+
+        private final int         index;
+
+        private final Iterator<T> iterator;
+
+        private T                 current;
+
+        Cursor(int index, Iterator<T> iterator) {
+            this.index = index;
+            this.iterator = iterator;
+            this.current = iterator.next();
+        }
+
+        boolean next() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            current = iterator.next();
+            return true;
+        }
+    }
+}
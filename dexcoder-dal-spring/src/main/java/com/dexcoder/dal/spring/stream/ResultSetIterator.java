@@ -0,0 +1,142 @@
+package com.dexcoder.dal.spring.stream;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import com.dexcoder.dal.ResultIterator;
+
+/**
+ * 基于forward-only、read-only ResultSet的迭代器，每次只映射一行
+ * <pre>
+ *     连接通过DataSourceUtils获取，存在spring事务时使用事务中的连接
+ *     遍历完或调用close()时释放
+ * </pre>
+ */
+public class ResultSetIterator<T> implements ResultIterator<T> {
+
+    private final DataSource             dataSource;
+
+    private final String                 sql;
+
+    private final RowMapper<T>           rowMapper;
+
+    private final SQLExceptionTranslator exceptionTranslator;
+
+    private Connection                   con;
+
+    private PreparedStatement            ps;
+
+    private ResultSet                    rs;
+
+    /**
+     * 当前行号
+     */
+    private int                          rowNum;
+
+    /**
+     * 是否已经移动到下一行
+     */
+    private boolean                      fetched;
+
+    /**
+     * 是否有下一行
+     */
+    private boolean                      hasNextRow;
+
+    private boolean                      closed;
+
+    public ResultSetIterator(DataSource dataSource, String sql, Object[] args, int fetchSize,
+                             RowMapper<T> rowMapper, SQLExceptionTranslator exceptionTranslator) {
+        this.dataSource = dataSource;
+        this.sql = sql;
+        this.rowMapper = rowMapper;
+        this.exceptionTranslator = exceptionTranslator;
+        this.con = DataSourceUtils.getConnection(dataSource);
+        try {
+            this.ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            new StreamingStatementSetter(args, fetchSize).setValues(ps);
+            this.rs = ps.executeQuery();
+        } catch (SQLException e) {
+            this.close();
+            throw exceptionTranslator.translate("ResultSetIterator", sql, e);
+        }
+    }
+
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!fetched) {
+            try {
+                hasNextRow = rs.next();
+            } catch (SQLException e) {
+                this.close();
+                throw exceptionTranslator.translate("ResultSetIterator", sql, e);
+            }
+            fetched = true;
+            if (!hasNextRow) {
+                this.close();
+            }
+        }
+        return hasNextRow;
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        try {
+            return rowMapper.mapRow(rs, rowNum++);
+        } catch (SQLException e) {
+            this.close();
+            throw exceptionTranslator.translate("ResultSetIterator", sql, e);
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("ResultSetIterator不支持remove");
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        hasNextRow = false;
+        JdbcUtils.closeResultSet(rs);
+        JdbcUtils.closeStatement(ps);
+        DataSourceUtils.releaseConnection(con, dataSource);
+        rs = null;
+        ps = null;
+        con = null;
+    }
+
+    /**
+     * 转换成Stream，Stream关闭时关闭迭代器
+     *
+     * @return stream
+     */
+    public Stream<T> stream() {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            public void run() {
+                close();
+            }
+        });
+    }
+}
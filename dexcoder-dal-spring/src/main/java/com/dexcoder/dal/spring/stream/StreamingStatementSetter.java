@@ -0,0 +1,29 @@
+package com.dexcoder.dal.spring.stream;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+
+/**
+ * 流式查询参数设置
+ * <pre>
+ *     jdbcTemplate在设置参数之前会应用自身的fetchSize，这里设置参数时覆盖为流式查询的fetchSize
+ *     PreparedStatement默认即为forward-only、read-only
+ * </pre>
+ */
+public class StreamingStatementSetter extends ArgumentPreparedStatementSetter {
+
+    private final int fetchSize;
+
+    public StreamingStatementSetter(Object[] args, int fetchSize) {
+        super(args);
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void setValues(PreparedStatement ps) throws SQLException {
+        ps.setFetchSize(fetchSize);
+        super.setValues(ps);
+    }
+}
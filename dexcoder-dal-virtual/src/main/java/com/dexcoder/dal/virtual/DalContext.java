@@ -0,0 +1,64 @@
+package com.dexcoder.dal.virtual;
+
+import com.dexcoder.commons.result.RunBinder;
+import com.dexcoder.commons.result.RunResult;
+import com.dexcoder.dal.spring.datasource.DataSourceContext;
+import com.dexcoder.dal.spring.datasource.DynamicDataSourceHolder;
+
+/**
+ * dal线程状态的载体，在调用线程中获取后显式传递到执行线程
+ * <pre>
+ *     包含数据源(DynamicDataSourceHolder)及执行结果(RunBinder)
+ *     虚拟线程不复用，不能依赖线程池线程上残留的ThreadLocal，需要在执行前设置、执行后清除
+ *     调用线程有执行结果时与执行线程共用同一个RunResult，执行线程中添加的信息调用线程可以获取到
+ *     分页(PageControl)不传递，与ParallelExecutor一致，扇出的每个查询不能各自分页、查询总数
+ * </pre>
+ */
+public final class DalContext {
+
+    /** 数据源，复制后传递，执行线程修改读写标识时不影响调用线程 */
+    private final DataSourceContext dsContext;
+
+    /** 执行结果 */
+    private final RunResult         runResult;
+
+    private DalContext(DataSourceContext dsContext, RunResult runResult) {
+        this.dsContext = dsContext;
+        this.runResult = runResult;
+    }
+
+    /**
+     * 获取当前线程的状态，不修改调用线程，调用线程没有执行结果时执行线程中添加的信息不返回
+     *
+     * @return the dal context
+     */
+    public static DalContext capture() {
+        return new DalContext(copy(DynamicDataSourceHolder.getDsContent()), RunBinder.getRunResult(false));
+    }
+
+    /**
+     * 设置到当前线程
+     */
+    public void attach() {
+        DynamicDataSourceHolder.setDsContent(copy(dsContext));
+        RunBinder.setRunResult(runResult);
+    }
+
+    /**
+     * 清除当前线程的状态
+     */
+    public static void clear() {
+        DynamicDataSourceHolder.clear();
+        RunBinder.clear();
+    }
+
+    private static DataSourceContext copy(DataSourceContext dsContext) {
+        if (dsContext == null) {
+            return null;
+        }
+        DataSourceContext copy = new DataSourceContext();
+        copy.setDsKey(dsContext.getDsKey());
+        copy.setIsWrite(dsContext.getIsWrite());
+        return copy;
+    }
+}
@@ -0,0 +1,57 @@
+package com.dexcoder.dal.virtual;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+import com.dexcoder.dal.spring.parallel.ParallelExecutor;
+
+/**
+ * 使用虚拟线程的并行执行器，每个任务一个虚拟线程，需要JDK21及以上
+ * <pre>
+ *     分表并行查询、大in拆分、分表分页的count及取数等并行任务都可以使用，设置到jdbcDao即可
+ *         jdbcDao.setParallelExecutor(new VirtualThreadParallelExecutor(maxConcurrency));
+ *     虚拟线程阻塞在jdbc调用上时不占用平台线程，并发数由maxConcurrency控制，一般与连接池大小一致
+ *     调用线程的状态通过DalContext显式传递，执行完清除
+ * </pre>
+ */
+public class VirtualThreadParallelExecutor extends ParallelExecutor {
+
+    /** 默认最大并发数 */
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+
+    /** 同时执行的任务数，超过时虚拟线程等待，避免超过连接池大小后阻塞在获取连接上 */
+    private final Semaphore permits;
+
+    public VirtualThreadParallelExecutor() {
+        this(DEFAULT_MAX_CONCURRENCY);
+    }
+
+    public VirtualThreadParallelExecutor(int maxConcurrency) {
+        super(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dal-virtual-", 1).factory()));
+        if (maxConcurrency <= 0) {
+            throw new JdbcAssistantException("maxConcurrency必须大于0");
+        }
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    @Override
+    protected <T> Callable<T> wrap(final Callable<T> task) {
+        final DalContext context = DalContext.capture();
+        return new Callable<T>() {
+            public T call() throws Exception {
+                permits.acquire();
+                context.attach();
+                setInWorker(true);
+                try {
+                    return task.call();
+                } finally {
+                    setInWorker(false);
+                    DalContext.clear();
+                    permits.release();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,116 @@
+package com.dexcoder.dal.virtual;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.dexcoder.dal.spring.parallel.ParallelExecutor;
+
+/**
+ * 有界线程池与虚拟线程执行分表并行查询的对比，H2内存库中每个查询sleep latency毫秒模拟MySQL的网络及执行耗时
+ * <pre>
+ *     多个调用线程同时扇出tasks个查询，与多个请求同时查询分表一致
+ *     mvn -Pvirtual-threads test-compile 后运行main方法
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ParallelExecutorBenchmark {
+
+    /** bounded为ParallelExecutor.newBounded，virtual为VirtualThreadParallelExecutor */
+    @Param({ "bounded", "virtual" })
+    public String              executor;
+
+    /** 每次扇出的查询数，即分表数 */
+    @Param({ "8", "64" })
+    public int                 tasks;
+
+    /** 线程池大小及虚拟线程的最大并发数，与连接池大小一致 */
+    @Param({ "32" })
+    public int                 parallelism;
+
+    /** 每个查询的耗时(毫秒) */
+    @Param({ "2" })
+    public int                 latency;
+
+    private JdbcConnectionPool dataSource;
+
+    private JdbcTemplate       jdbcTemplate;
+
+    private ParallelExecutor   parallelExecutor;
+
+    /**
+     * H2中调用的函数，模拟查询耗时
+     *
+     * @param millis the millis
+     * @return the int
+     * @throws InterruptedException the interrupted exception
+     */
+    public static int latency(int millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return millis;
+    }
+
+    @Setup
+    public void setup() {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1", "sa", "");
+        dataSource.setMaxConnections(parallelism);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE ALIAS IF NOT EXISTS LATENCY FOR \""
+                             + ParallelExecutorBenchmark.class.getName() + ".latency\"");
+        parallelExecutor = "virtual".equals(executor) ? new VirtualThreadParallelExecutor(parallelism)
+            : ParallelExecutor.newBounded(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        parallelExecutor.shutdown();
+        dataSource.dispose();
+    }
+
+    @Benchmark
+    public int scatterGather() {
+        List<Callable<Integer>> callables = new ArrayList<Callable<Integer>>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            callables.add(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    return jdbcTemplate.queryForObject("SELECT LATENCY(?)", Integer.class, latency);
+                }
+            });
+        }
+        int total = 0;
+        for (Integer result : parallelExecutor.invokeAll(callables)) {
+            total += result;
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ParallelExecutorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -1,8 +1,10 @@
 package com.dexcoder.dal;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import com.dexcoder.dal.build.Criteria;
 
@@ -52,6 +54,69 @@ public interface JdbcDao {
      */
     void save(Criteria criteria);
 
+    /**
+     * 批量插入 自动处理主键
+     * 非null属性相同且表名相同的记录使用同一条sql按jdbc batch执行
+     *
+     * @param entities the entities
+     * @return 主键列表，顺序与entities一致
+     */
+    <T> List<T> batchInsert(List<? extends Serializable> entities);
+
+    /**
+     * 批量保存，不处理主键
+     * 非null属性相同且表名相同的记录使用同一条sql按jdbc batch执行
+     *
+     * @param entities the entities
+     */
+    void batchSave(List<? extends Serializable> entities);
+
+    /**
+     * 多行insert批量保存 INSERT INTO t (a,b) VALUES (?,?),(?,?),...
+     * 按最大参数个数及最大包大小分批，只支持mysql、h2、postgresql，其它数据库使用jdbc batch单行插入
+     * 主键由数据库sql生成时(例如oracle序列)也使用jdbc batch单行插入
+     *
+     * @param entities the entities
+     * @return 插入的行数
+     */
+    int insertMulti(List<? extends Serializable> entities);
+
+    /**
+     * upsert 主键冲突时更新除主键外所有不为null的属性，否则插入
+     * 实体没有主键值时和insert一样使用keyGenerator生成
+     * mysql使用ON DUPLICATE KEY UPDATE，postgresql使用ON CONFLICT，oracle、h2使用MERGE INTO
+     *
+     * @param entity the entity
+     * @return 影响的行数
+     */
+    int upsert(Serializable entity);
+
+    /**
+     * upsert 可通过Criteria.onConflictUpdate设置主键冲突时更新的属性
+     *
+     * @param criteria the criteria
+     * @param entity the entity
+     * @return 影响的行数
+     */
+    int upsert(Criteria criteria, Serializable entity);
+
+    /**
+     * 批量upsert，生成的sql相同的记录按jdbc batch执行
+     *
+     * @param entities the entities
+     * @return 每条记录影响的行数，顺序与entities一致
+     */
+    int[] batchUpsert(List<? extends Serializable> entities);
+
+    /**
+     * 批量upsert，生成的sql相同的记录按jdbc batch执行
+     *
+     * @param entities the entities
+     * @param conflictUpdateFields 主键冲突时更新的属性
+     * @return 每条记录影响的行数，顺序与entities一致
+     */
+    int[] batchUpsert(List<? extends Serializable> entities, String... conflictUpdateFields);
+
     /**
      * 根据Criteria更新
      *
@@ -75,6 +140,32 @@ public interface JdbcDao {
      */
     int update(Serializable entity, boolean isIgnoreNull);
 
+    /**
+     * 只更新与加载时相比修改过的属性(包括修改成null的)，没有修改时不执行sql
+     * 需要开启dirtyTracking，实体必须是get、queryList等方法返回的
+     *
+     * @param entity the entity
+     * @return 影响的行数，没有修改时返回0
+     */
+    int updateChanged(Serializable entity);
+
+    /**
+     * 批量更新，生成的sql相同的记录按jdbc batch执行
+     *
+     * @param entities the entities
+     * @return 每条记录影响的行数，顺序与entities一致
+     */
+    <T extends Serializable> int[] batchUpdate(List<T> entities);
+
+    /**
+     * 批量更新，生成的sql相同的记录按jdbc batch执行
+     *
+     * @param entities the entities
+     * @param isIgnoreNull 是否忽略null值的属性
+     * @return 每条记录影响的行数，顺序与entities一致，驱动不返回行数时为Statement.SUCCESS_NO_INFO
+     */
+    <T extends Serializable> int[] batchUpdate(List<T> entities, boolean isIgnoreNull);
+
     /**
      * 根据Criteria删除
      *
@@ -97,6 +188,15 @@ public interface JdbcDao {
      */
     int delete(Class<?> clazz, Serializable id);
 
+    /**
+     * 根据主键批量删除，id去重后按数据库in条件的参数个数限制分批，先查询存在的id再执行in删除
+     *
+     * @param clazz the clazz
+     * @param ids the ids
+     * @return 与去重后的id一一对应的删除行数，记录不存在时为0，并发删除无法确定时为Statement.SUCCESS_NO_INFO
+     */
+    int[] batchDelete(Class<?> clazz, Collection<? extends Serializable> ids);
+
     /**
      * 按设置的条件查询
      *
@@ -133,6 +233,30 @@ public interface JdbcDao {
      */
     <T> List<T> queryList(T entity, Criteria criteria);
 
+    /**
+     * 流式查询，逐行映射后回调，不会将全部结果放入内存
+     *
+     * @param criteria the criteria
+     * @param rowCallback the row callback
+     */
+    <T> void queryForEach(Criteria criteria, RowCallback<T> rowCallback);
+
+    /**
+     * 流式查询迭代器，遍历完或调用close()时释放连接
+     *
+     * @param criteria the criteria
+     * @return result iterator
+     */
+    <T> ResultIterator<T> queryIterator(Criteria criteria);
+
+    /**
+     * 流式查询Stream，使用完必须关闭(try-with-resources)
+     *
+     * @param criteria the criteria
+     * @return stream
+     */
+    <T> Stream<T> queryStream(Criteria criteria);
+
     /**
      * 查询记录数
      *
@@ -176,6 +300,26 @@ public interface JdbcDao {
      */
     <T> T get(Class<T> clazz, Serializable id);
 
+    /**
+     * 根据主键批量得到记录，id去重后按数据库in条件的参数个数限制分批并行查询
+     *
+     * @param <T>  the type parameter
+     * @param clazz the clazz
+     * @param ids the ids
+     * @return 以传入的id为key，顺序与ids一致，不存在的记录不包含
+     */
+    <T> Map<Serializable, T> getAll(Class<T> clazz, Collection<? extends Serializable> ids);
+
+    /**
+     * 根据主键批量得到记录，同getAll
+     *
+     * @param <T>  the type parameter
+     * @param clazz the clazz
+     * @param ids the ids
+     * @return 顺序与ids一致，不存在的记录及重复的id不包含
+     */
+    <T> List<T> getList(Class<T> clazz, Collection<? extends Serializable> ids);
+
     /**
      * 根据主键得到记录
      * 
@@ -206,6 +350,7 @@ public interface JdbcDao {
 
     /**
      * 查询单个对象,例如count(*) max(id)这类只有一个结果的sql
+     * 水平分表访问多个物理表时聚合函数下推到各物理表执行后合并
      * 
      * @param criteria
      * @param <T>
@@ -244,6 +389,7 @@ public interface JdbcDao {
 
     /**
      * 查询列表 例如使用函数后和列不排斥的情况
+     * 水平分表访问多个物理表时count、sum、min、max、avg及group by下推到各物理表执行后合并
      *
      * @param criteria
      * @return
@@ -397,6 +543,63 @@ public interface JdbcDao {
      */
     <T> List<T> queryListForSql(String refSql, String expectParamKey, Object[] params, Class<T> elementType);
 
+    /**
+     * 流式查询，逐行回调
+     *
+     * @param refSql the ref sql
+     * @param params the params
+     * @param rowCallback the row callback
+     */
+    void queryForEachForSql(String refSql, Object[] params, RowCallback<Map<String, Object>> rowCallback);
+
+    /**
+     * 流式查询，逐行映射成elementType后回调
+     *
+     * @param refSql the ref sql
+     * @param params the params
+     * @param elementType the element type
+     * @param rowCallback the row callback
+     */
+    <T> void queryForEachForSql(String refSql, Object[] params, Class<T> elementType, RowCallback<T> rowCallback);
+
+    /**
+     * 流式查询迭代器，遍历完或调用close()时释放连接
+     *
+     * @param refSql the ref sql
+     * @param params the params
+     * @return result iterator
+     */
+    ResultIterator<Map<String, Object>> queryIteratorForSql(String refSql, Object[] params);
+
+    /**
+     * 流式查询迭代器，遍历完或调用close()时释放连接
+     *
+     * @param refSql the ref sql
+     * @param params the params
+     * @param elementType the element type
+     * @return result iterator
+     */
+    <T> ResultIterator<T> queryIteratorForSql(String refSql, Object[] params, Class<T> elementType);
+
+    /**
+     * 流式查询Stream，使用完必须关闭(try-with-resources)
+     *
+     * @param refSql the ref sql
+     * @param params the params
+     * @return stream
+     */
+    Stream<Map<String, Object>> queryStreamForSql(String refSql, Object[] params);
+
+    /**
+     * 流式查询Stream，使用完必须关闭(try-with-resources)
+     *
+     * @param refSql the ref sql
+     * @param params the params
+     * @param elementType the element type
+     * @return stream
+     */
+    <T> Stream<T> queryStreamForSql(String refSql, Object[] params, Class<T> elementType);
+
     /**
      * 执行sql
      *
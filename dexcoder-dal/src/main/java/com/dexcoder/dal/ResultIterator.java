@@ -0,0 +1,20 @@
+package com.dexcoder.dal;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * 流式查询结果迭代器，持有数据库连接直到遍历完成或关闭
+ * <pre>
+ *     遍历完所有数据后会自动关闭，未遍历完时必须调用close()释放连接
+ * </pre>
+ *
+ * @param <T> the type parameter
+ */
+public interface ResultIterator<T> extends Iterator<T>, Closeable {
+
+    /**
+     * 关闭结果集、Statement并释放连接，可多次调用
+     */
+    void close();
+}
@@ -0,0 +1,16 @@
+package com.dexcoder.dal;
+
+/**
+ * 流式查询时逐行处理结果
+ *
+ * @param <T> the type parameter
+ */
+public interface RowCallback<T> {
+
+    /**
+     * 处理一行数据
+     *
+     * @param row 当前行映射后的对象
+     */
+    void processRow(T row);
+}
@@ -13,11 +13,19 @@ import java.lang.annotation.Target;
 @Retention(RUNTIME)
 public @interface Table {
 
-    String name();
+    /**
+     * 表名，为空时由MappingHandler获取，alias、pkField、mappingHandler不依赖表名可以单独设置
+     */
+    String name() default "";
 
     String alias() default "";
 
     String pkField() default "";
 
     Class<?> mappingHandler() default Object.class;
+
+    /**
+     * 是否使用实体缓存(二级缓存)，需要jdbcDao设置了entityCache
+     */
+    boolean cache() default false;
 }
@@ -1,8 +1,12 @@
 package com.dexcoder.dal.build;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.lang3.StringUtils;
+
 import com.dexcoder.commons.utils.AssertUtils;
 import com.dexcoder.dal.BoundSql;
 import com.dexcoder.dal.handler.GenericTokenParser;
@@ -17,7 +21,17 @@ public abstract class AbstractSqlBuilder implements SqlBuilder {
     /**
      * 符号中内容会被转换(field -> column)
      */
-    public static final String[]      NATIVE_TOKENS = { "{", "}", "[", "]" };
+    public static final String[]      NATIVE_TOKENS         = { "{", "}", "[", "]" };
+
+    /**
+     * sql结构中的分隔符
+     */
+    protected static final char       SHAPE_SEPARATOR       = '\u0001';
+
+    /**
+     * sql结构中的字段分隔符
+     */
+    protected static final char       SHAPE_FIELD_SEPARATOR = '\u0002';
 
     /**
      * 表信息
@@ -40,6 +54,113 @@ public abstract class AbstractSqlBuilder implements SqlBuilder {
 
     public abstract BoundSql buildBoundSql(Object entity, boolean isIgnoreNull);
 
+    /**
+     * 使用sql模板构建BoundSql，结构相同时直接使用缓存的模板只收集参数
+     *
+     * @param tableName 实时获取的表名
+     * @param entity the entity
+     * @param isIgnoreNull the is ignore null
+     * @return bound sql
+     */
+    protected BoundSql buildTemplateBoundSql(String tableName, Object entity, boolean isIgnoreNull) {
+        SqlTemplateCache.Key key = null;
+        List<Object> params = new ArrayList<Object>();
+        if (SqlTemplateCache.isEnabled()) {
+            StringBuilder shape = new StringBuilder(128).append(this.getClass().getName()).append(SHAPE_SEPARATOR)
+                .append(metaTable.getTableClass().getName()).append(SHAPE_SEPARATOR).append(isIgnoreNull)
+                .append(SHAPE_SEPARATOR);
+            this.appendShape(shape);
+            key = new SqlTemplateCache.Key(shape.toString(), metaTable.getMappingHandler());
+            SqlTemplate sqlTemplate = SqlTemplateCache.get(key);
+            if (sqlTemplate != null) {
+                this.collectParameters(params, isIgnoreNull);
+                return this.newBoundSql(sqlTemplate, tableName, params);
+            }
+        }
+        SqlTemplate sqlTemplate = this.compileTemplate(entity, isIgnoreNull, params);
+        if (key != null) {
+            SqlTemplateCache.put(key, sqlTemplate);
+        }
+        return this.newBoundSql(sqlTemplate, tableName, params);
+    }
+
+    /**
+     * 根据sql模板生成BoundSql，子类可以覆盖返回带有更多sql结构信息的BoundSql
+     *
+     * @param sqlTemplate the sql template
+     * @param tableName 实时获取的表名
+     * @param params the params
+     * @return bound sql
+     */
+    protected BoundSql newBoundSql(SqlTemplate sqlTemplate, String tableName, List<Object> params) {
+        return new CriteriaBoundSql(sqlTemplate.render(tableName), params, this.getTableName(tableName));
+    }
+
+    /**
+     * 去掉表别名
+     *
+     * @param tableAndAliasName the table and alias name
+     * @return the string
+     */
+    protected String getTableName(String tableAndAliasName) {
+        return StringUtils.substringBefore(tableAndAliasName, " ");
+    }
+
+    /**
+     * 拼装sql模板，同时收集参数，sql中没有表名时整个sql作为模板的prefix
+     *
+     * @param entity the entity
+     * @param isIgnoreNull the is ignore null
+     * @param params 参数
+     * @return sql template
+     */
+    protected abstract SqlTemplate compileTemplate(Object entity, boolean isIgnoreNull, List<Object> params);
+
+    /**
+     * 追加sql结构，结构相同生成的sql(表名除外)一定相同
+     *
+     * @param shape the shape
+     */
+    protected void appendShape(StringBuilder shape) {
+        shape.append(metaTable.getTableAlias()).append(SHAPE_SEPARATOR);
+        for (AutoField autoField : metaTable.getAutoFields().values()) {
+            this.appendShape(shape, autoField);
+        }
+        shape.append(SHAPE_FIELD_SEPARATOR);
+    }
+
+    /**
+     * 追加属性的sql结构，值只区分null、数组长度，native属性的值会出现在sql中需要完整追加
+     *
+     * @param shape the shape
+     * @param autoField the auto field
+     */
+    protected void appendShape(StringBuilder shape, AutoField autoField) {
+        shape.append(autoField.getType()).append(SHAPE_SEPARATOR).append(autoField.getName())
+            .append(SHAPE_SEPARATOR).append(autoField.getLogicalOperator()).append(SHAPE_SEPARATOR)
+            .append(autoField.getFieldOperator()).append(SHAPE_SEPARATOR);
+        Object value = autoField.getValue();
+        if (autoField.isNativeField()) {
+            shape.append('#').append(value);
+        } else if (value == null) {
+            shape.append('N');
+        } else if (value instanceof Object[]) {
+            shape.append('A').append(((Object[]) value).length);
+        } else {
+            shape.append('P');
+        }
+        shape.append(SHAPE_FIELD_SEPARATOR);
+    }
+
+    /**
+     * 按拼装sql时的顺序收集参数，使用缓存的sql模板时调用
+     *
+     * @param params the params
+     * @param isIgnoreNull the is ignore null
+     */
+    protected void collectParameters(List<Object> params, boolean isIgnoreNull) {
+    }
+
     public MetaTable getMetaTable() {
         return metaTable;
     }
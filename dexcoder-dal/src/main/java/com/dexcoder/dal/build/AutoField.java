@@ -1,5 +1,7 @@
 package com.dexcoder.dal.build;
 
+import java.util.regex.Pattern;
+
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -14,6 +16,11 @@ public class AutoField {
      */
     public static final String REGEX_NATIVE_FIELD = "(^[\\[].+[\\]]$)|(^[{].+[}]$)";
 
+    /**
+     * native field 正则，预编译避免每次调用都编译
+     */
+    private static final Pattern NATIVE_FIELD_PATTERN = Pattern.compile(REGEX_NATIVE_FIELD);
+
     /**
      * 名称
      */
@@ -50,7 +57,7 @@ public class AutoField {
      * @return
      */
     public boolean isNativeField() {
-        return name.matches(REGEX_NATIVE_FIELD);
+        return NATIVE_FIELD_PATTERN.matcher(name).matches();
     }
 
     /**
@@ -1,7 +1,5 @@
 package com.dexcoder.dal.build;
 
-import org.omg.CORBA.TRANSIENT;
-
 /**
  * Created by liyd on 2015-12-4.
  */
@@ -31,5 +29,17 @@ public enum AutoFieldType {
     FUNC,
 
     /** 拼装sql时忽略 */
-    TRANSIENT
+    TRANSIENT,
+
+    /** keyset分页，上一页最后一条记录的排序值 */
+    SEEK,
+
+    /** upsert主键冲突时更新的属性 */
+    CONFLICT_UPDATE,
+
+    /** update时只更新修改过的属性 */
+    CHANGED,
+
+    /** group by 分组属性 */
+    GROUP_BY
 }
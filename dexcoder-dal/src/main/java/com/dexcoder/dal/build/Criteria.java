@@ -1,6 +1,12 @@
 package com.dexcoder.dal.build;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
 import com.dexcoder.dal.handler.MappingHandler;
 
 /**
@@ -70,6 +76,16 @@ public class Criteria {
         return new Criteria(clazz, new DeleteBuilder(clazz));
     }
 
+    /**
+     * upsert init，主键冲突时更新，否则插入
+     *
+     * @param clazz
+     * @return
+     */
+    public static Criteria upsert(Class<?> clazz) {
+        return new Criteria(clazz, new UpsertBuilder(clazz));
+    }
+
     /**
      * 设置mappingHandler
      * 
@@ -92,6 +108,43 @@ public class Criteria {
         return this;
     }
 
+    /**
+     * 设置数据库方言，upsert时根据方言生成sql
+     *
+     * @param dialect
+     * @return
+     */
+    public Criteria dialect(String dialect) {
+        this.sqlBuilder.getMetaTable().dialect(dialect);
+        return this;
+    }
+
+    /**
+     * upsert主键冲突时更新的属性，不设置时更新除主键外所有插入的属性
+     *
+     * @param field
+     * @return
+     */
+    public Criteria onConflictUpdate(String... field) {
+        for (String f : field) {
+            this.sqlBuilder.addField(f, null, null, AutoFieldType.CONFLICT_UPDATE, null);
+        }
+        return this;
+    }
+
+    /**
+     * update时只更新实体中修改过的属性(包括修改成null的)，set的属性不受影响
+     *
+     * @param field
+     * @return
+     */
+    public Criteria changed(String... field) {
+        for (String f : field) {
+            this.sqlBuilder.addField(f, null, null, AutoFieldType.CHANGED, null);
+        }
+        return this;
+    }
+
     /**
      * 添加白名单
      *
@@ -144,6 +197,19 @@ public class Criteria {
         return this;
     }
 
+    /**
+     * group by 分组属性，与列互斥时分组列在函数之前查出
+     *
+     * @param field the field
+     * @return
+     */
+    public Criteria groupBy(String... field) {
+        for (String f : field) {
+            this.sqlBuilder.addField(f, null, null, AutoFieldType.GROUP_BY, null);
+        }
+        return this;
+    }
+
     /**
      * insert into属性
      *
@@ -243,6 +309,157 @@ public class Criteria {
         return this;
     }
 
+    /**
+     * keyset分页，从上一页最后一条记录之后开始查询
+     * 值的顺序与asc、desc设置的排序字段一致，排序字段不包含主键时最后追加主键，未设置排序时为主键(降序)，为空时从第一条开始
+     * 调用后(包括第一页为空时)排序及getSortValues都会追加主键，排序字段需要为非空列，值为null时抛出异常
+     *
+     * @param lastSortValues 上一页最后一条记录的排序值，可由getSortValues获取
+     * @return
+     */
+    public Criteria after(Object... lastSortValues) {
+        this.sqlBuilder.addField("after", null, null, AutoFieldType.SEEK, lastSortValues);
+        return this;
+    }
+
+    /**
+     * 获取记录的排序字段值，作为下一页after的参数(continuation token)
+     *
+     * @param entity 当前页最后一条记录
+     * @return sort values
+     */
+    public Object[] getSortValues(Object entity) {
+        if (!(this.sqlBuilder instanceof SelectBuilder)) {
+            throw new JdbcAssistantException("只有select支持获取排序值");
+        }
+        return ((SelectBuilder) this.sqlBuilder).getSortValues(entity);
+    }
+
+    /**
+     * 获取排序字段是否升序，与getSortValues的值一一对应
+     *
+     * @return the boolean [ ]
+     */
+    public boolean[] getSortAscending() {
+        if (!(this.sqlBuilder instanceof SelectBuilder)) {
+            throw new JdbcAssistantException("只有select支持获取排序");
+        }
+        return ((SelectBuilder) this.sqlBuilder).getSortAscending();
+    }
+
+    /**
+     * 获取keyset分页的值
+     *
+     * @return after设置的值，没有时返回null
+     */
+    public Object[] getAfterValues() {
+        if (!(this.sqlBuilder instanceof SelectBuilder)) {
+            return null;
+        }
+        return ((SelectBuilder) this.sqlBuilder).getSeekValues();
+    }
+
+    /**
+     * 排序字段是否包含主键(未设置排序或追加了主键时为true)，包含时可以安全的使用keyset分页
+     *
+     * @return the boolean
+     */
+    public boolean isSortByPk() {
+        if (!(this.sqlBuilder instanceof SelectBuilder)) {
+            throw new JdbcAssistantException("只有select支持获取排序");
+        }
+        return ((SelectBuilder) this.sqlBuilder).isSortByPk();
+    }
+
+    /**
+     * 排序字段不包含主键时是否在最后追加主键，默认不追加，after会开启
+     * 追加后排序值唯一，keyset分页及跨表分页归并不会跳过排序值相同的记录
+     *
+     * @param appendPkOrder the append pk order
+     * @return
+     */
+    public Criteria appendPkOrder(boolean appendPkOrder) {
+        if (!(this.sqlBuilder instanceof SelectBuilder)) {
+            throw new JdbcAssistantException("只有select支持设置排序");
+        }
+        ((SelectBuilder) this.sqlBuilder).appendPkOrder(appendPkOrder);
+        return this;
+    }
+
+    /**
+     * 排序字段不包含主键时是否在最后追加主键
+     *
+     * @return the boolean
+     */
+    public boolean isAppendPkOrder() {
+        return this.sqlBuilder instanceof SelectBuilder && ((SelectBuilder) this.sqlBuilder).isAppendPkOrder();
+    }
+
+    /**
+     * 获取元素个数超过threshold的in条件key，只有select(没有函数)、delete并且所有条件都是and时才会返回
+     *
+     * @param threshold the threshold
+     * @return 条件key，没有时返回null
+     */
+    public String getLargeInCondition(int threshold) {
+        //有函数(例如sum、distinct)或分组时拆分执行的结果不能简单合并
+        if (this.sqlBuilder instanceof SelectBuilder
+            && (!this.sqlBuilder.getMetaTable().getFuncAutoFields().isEmpty() || !this.getGroupByFields().isEmpty())) {
+            return null;
+        }
+        WhereBuilder whereBuilder = this.getWhereBuilder();
+        return whereBuilder == null ? null : whereBuilder.getLargeInCondition(threshold);
+    }
+
+    /**
+     * 获取where条件
+     *
+     * @param key 条件key
+     * @return auto field
+     */
+    public AutoField getCondition(String key) {
+        WhereBuilder whereBuilder = this.getWhereBuilder();
+        return whereBuilder == null ? null : whereBuilder.getCondition(key);
+    }
+
+    /**
+     * 替换where条件，条件位置不变，in列表拆分执行时使用
+     *
+     * @param key 条件key
+     * @param autoField the auto field
+     * @return criteria
+     */
+    public Criteria condition(String key, AutoField autoField) {
+        WhereBuilder whereBuilder = this.getWhereBuilder();
+        if (whereBuilder == null) {
+            throw new JdbcAssistantException("只有select、delete支持替换条件");
+        }
+        whereBuilder.replaceCondition(key, autoField);
+        return this;
+    }
+
+    /**
+     * 获取所有where条件，水平分表计算物理表时使用
+     *
+     * @return 条件key及条件，不是select、delete时返回空
+     */
+    public Map<String, AutoField> getConditions() {
+        WhereBuilder whereBuilder = this.getWhereBuilder();
+        if (whereBuilder == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(whereBuilder.getMetaTable().getAutoFields());
+    }
+
+    private WhereBuilder getWhereBuilder() {
+        if (this.sqlBuilder instanceof SelectBuilder) {
+            return ((SelectBuilder) this.sqlBuilder).getWhereBuilder();
+        } else if (this.sqlBuilder instanceof DeleteBuilder) {
+            return ((DeleteBuilder) this.sqlBuilder).getWhereBuilder();
+        }
+        return null;
+    }
+
     /**
      * 开始左括号
      *
@@ -312,6 +529,44 @@ public class Criteria {
         return this;
     }
 
+    /**
+     * 获取group by 分组属性
+     *
+     * @return 不是select时返回空
+     */
+    public List<String> getGroupByFields() {
+        if (!(this.sqlBuilder instanceof SelectBuilder)) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(((SelectBuilder) this.sqlBuilder).getGroupByFields());
+    }
+
+    /**
+     * 获取添加的函数
+     *
+     * @return 不是select时返回空
+     */
+    public List<AutoField> getSelectFuncs() {
+        if (!(this.sqlBuilder instanceof SelectBuilder)) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<AutoField>(this.sqlBuilder.getMetaTable().getFuncAutoFields());
+    }
+
+    /**
+     * 替换所有函数，跨物理表聚合时下推改写后的函数(例如avg改写成sum和count)
+     *
+     * @param funcs the funcs
+     * @return criteria
+     */
+    public Criteria selectFuncs(List<AutoField> funcs) {
+        if (!(this.sqlBuilder instanceof SelectBuilder)) {
+            throw new JdbcAssistantException("只有select支持替换函数");
+        }
+        ((SelectBuilder) this.sqlBuilder).replaceFuncAutoFields(funcs);
+        return this;
+    }
+
     /**
      * 将设置的信息构建成BoundSql
      *
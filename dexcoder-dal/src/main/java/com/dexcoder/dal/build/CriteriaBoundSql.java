@@ -19,6 +19,11 @@ public class CriteriaBoundSql implements BoundSql {
      */
     private List<Object> parameters;
 
+    /**
+     * 构建sql时使用的表名，水平分表时为物理表，不是由Criteria构建时为null
+     */
+    private String       tableName;
+
     /**
      * Constructor
      *
@@ -30,6 +35,19 @@ public class CriteriaBoundSql implements BoundSql {
         this.parameters = parameters;
     }
 
+    /**
+     * Constructor
+     *
+     * @param sql
+     * @param parameters
+     * @param tableName
+     */
+    public CriteriaBoundSql(String sql, List<Object> parameters, String tableName) {
+        this.sql = sql;
+        this.parameters = parameters;
+        this.tableName = tableName;
+    }
+
     public String getSql() {
         return this.sql;
     }
@@ -37,4 +55,8 @@ public class CriteriaBoundSql implements BoundSql {
     public List<Object> getParameters() {
         return this.parameters;
     }
+
+    public String getTableName() {
+        return this.tableName;
+    }
 }
@@ -1,5 +1,7 @@
 package com.dexcoder.dal.build;
 
+import java.util.List;
+
 import com.dexcoder.dal.BoundSql;
 
 /**
@@ -12,7 +14,7 @@ public class DeleteBuilder extends AbstractSqlBuilder {
     /**
      * whereBuilder
      */
-    private SqlBuilder            whereBuilder;
+    private WhereBuilder          whereBuilder;
 
     public DeleteBuilder(Class<?> clazz) {
         super(clazz);
@@ -35,10 +37,27 @@ public class DeleteBuilder extends AbstractSqlBuilder {
             .entity(entity, isIgnoreNull);
         //这里必须从whereBuilder的MetaTable中获取表名，以便水平分表时能使用正确的表名
         String tableName = whereBuilder.getMetaTable().getTableAndAliasName();
-        StringBuilder sb = new StringBuilder(COMMAND_OPEN);
-        sb.append(tableName);
+        return this.buildTemplateBoundSql(tableName, entity, isIgnoreNull);
+    }
+
+    @Override
+    protected SqlTemplate compileTemplate(Object entity, boolean isIgnoreNull, List<Object> params) {
         BoundSql boundSql = whereBuilder.build(entity, isIgnoreNull);
-        sb.append(boundSql.getSql());
-        return new CriteriaBoundSql(sb.toString(), boundSql.getParameters());
+        params.addAll(boundSql.getParameters());
+        return new SqlTemplate(COMMAND_OPEN, boundSql.getSql());
+    }
+
+    @Override
+    protected void appendShape(StringBuilder shape) {
+        whereBuilder.appendShape(shape);
+    }
+
+    @Override
+    protected void collectParameters(List<Object> params, boolean isIgnoreNull) {
+        whereBuilder.collectParameters(params, isIgnoreNull);
+    }
+
+    public WhereBuilder getWhereBuilder() {
+        return whereBuilder;
     }
 }
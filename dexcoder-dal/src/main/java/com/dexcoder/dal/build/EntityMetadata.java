@@ -0,0 +1,285 @@
+package com.dexcoder.dal.build;
+
+import java.beans.BeanInfo;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.dexcoder.commons.utils.ClassUtils;
+import com.dexcoder.dal.annotation.Column;
+import com.dexcoder.dal.annotation.Table;
+import com.dexcoder.dal.annotation.Transient;
+import com.dexcoder.dal.handler.MappingHandler;
+
+/**
+ * 实体类元数据，每个类只解析一次，解析后不可变，可在多线程间共享
+ * <pre>
+ *     原先每个Criteria中的各个Builder都会重新解析BeanInfo和注解，
+ *     这里统一解析并缓存，MetaTable、SelectBuilder等直接读取
+ * </pre>
+ */
+public final class EntityMetadata {
+
+    /**
+     * 元数据缓存
+     */
+    private static final ConcurrentMap<Class<?>, EntityMetadata> METADATA_CACHE =
+        new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+    /**
+     * 实体类
+     */
+    private final Class<?>                                       entityClass;
+
+    /**
+     * 注解表名
+     */
+    private final String                                         annotationTableName;
+
+    /**
+     * 注解表别名
+     */
+    private final String                                         annotationTableAlias;
+
+    /**
+     * 注解主键属性名
+     */
+    private final String                                         annotationPkFieldName;
+
+    /**
+     * 注解指定的名称处理器
+     */
+    private final MappingHandler                                 annotationMappingHandler;
+
+    /**
+     * 注解是否使用实体缓存
+     */
+    private final boolean                                        annotationCache;
+
+    /**
+     * 所有可读属性，按BeanInfo中的顺序
+     */
+    private final List<String>                                   fieldNames;
+
+    /**
+     * 所有可读属性
+     */
+    private final Set<String>                                    fieldNameSet;
+
+    /**
+     * 非Transient的属性，即对应列的属性
+     */
+    private final List<String>                                   columnFieldNames;
+
+    /**
+     * 对应列属性的AutoField，select时使用
+     */
+    private final List<AutoField>                                columnAutoFields;
+
+    /**
+     * Transient属性
+     */
+    private final Set<String>                                    transientFieldNames;
+
+    /**
+     * read方法
+     */
+    private final Map<String, Method>                            readMethods;
+
+    /**
+     * write方法
+     */
+    private final Map<String, Method>                            writeMethods;
+
+    /**
+     * field -> column 注解映射
+     */
+    private final Map<String, String>                            annotationColumnNames;
+
+    private EntityMetadata(Class<?> entityClass) {
+        this.entityClass = entityClass;
+        Table aTable = entityClass.getAnnotation(Table.class);
+        if (aTable != null) {
+            this.annotationTableName = aTable.name();
+            this.annotationTableAlias = aTable.alias();
+            this.annotationPkFieldName = aTable.pkField();
+            this.annotationMappingHandler = Object.class.equals(aTable.mappingHandler()) ? null
+                : (MappingHandler) ClassUtils.newInstance(aTable.mappingHandler());
+            this.annotationCache = aTable.cache();
+        } else {
+            this.annotationTableName = null;
+            this.annotationTableAlias = null;
+            this.annotationPkFieldName = null;
+            this.annotationMappingHandler = null;
+            this.annotationCache = false;
+        }
+
+        List<String> fieldNames = new ArrayList<String>();
+        List<String> columnFieldNames = new ArrayList<String>();
+        List<AutoField> columnAutoFields = new ArrayList<AutoField>();
+        Set<String> transientFieldNames = new HashSet<String>();
+        Map<String, Method> readMethods = new HashMap<String, Method>();
+        Map<String, Method> writeMethods = new HashMap<String, Method>();
+        Map<String, String> annotationColumnNames = new HashMap<String, String>();
+
+        BeanInfo selfBeanInfo = ClassUtils.getSelfBeanInfo(entityClass);
+        PropertyDescriptor[] propertyDescriptors = selfBeanInfo.getPropertyDescriptors();
+        for (PropertyDescriptor pd : propertyDescriptors) {
+            Method readMethod = pd.getReadMethod();
+            if (readMethod == null) {
+                continue;
+            }
+            String fieldName = pd.getName();
+            fieldNames.add(fieldName);
+            readMethods.put(fieldName, readMethod);
+            if (pd.getWriteMethod() != null) {
+                writeMethods.put(fieldName, pd.getWriteMethod());
+            }
+            Column column = readMethod.getAnnotation(Column.class);
+            if (column != null) {
+                annotationColumnNames.put(fieldName, column.value());
+            }
+            if (readMethod.getAnnotation(Transient.class) != null) {
+                transientFieldNames.add(fieldName);
+                continue;
+            }
+            columnFieldNames.add(fieldName);
+            columnAutoFields.add(new AutoField.Builder().name(fieldName).build());
+        }
+        this.fieldNames = Collections.unmodifiableList(fieldNames);
+        this.fieldNameSet = Collections.unmodifiableSet(new HashSet<String>(fieldNames));
+        this.columnFieldNames = Collections.unmodifiableList(columnFieldNames);
+        this.columnAutoFields = Collections.unmodifiableList(columnAutoFields);
+        this.transientFieldNames = Collections.unmodifiableSet(transientFieldNames);
+        this.readMethods = Collections.unmodifiableMap(readMethods);
+        this.writeMethods = Collections.unmodifiableMap(writeMethods);
+        this.annotationColumnNames = Collections.unmodifiableMap(annotationColumnNames);
+    }
+
+    /**
+     * 获取类的元数据，不存在时解析
+     *
+     * @param clazz
+     * @return
+     */
+    public static EntityMetadata forClass(Class<?> clazz) {
+        EntityMetadata metadata = METADATA_CACHE.get(clazz);
+        if (metadata == null) {
+            metadata = new EntityMetadata(clazz);
+            EntityMetadata exists = METADATA_CACHE.putIfAbsent(clazz, metadata);
+            if (exists != null) {
+                metadata = exists;
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * 获取属性值
+     *
+     * @param entity
+     * @param fieldName
+     * @return
+     */
+    public Object getFieldValue(Object entity, String fieldName) {
+        Method readMethod = this.readMethods.get(fieldName);
+        if (readMethod == null) {
+            return null;
+        }
+        return ClassUtils.invokeMethod(readMethod, entity);
+    }
+
+    /**
+     * 设置属性值
+     *
+     * @param entity
+     * @param fieldName
+     * @param value
+     */
+    public void setFieldValue(Object entity, String fieldName, Object value) {
+        Method writeMethod = this.writeMethods.get(fieldName);
+        if (writeMethod == null) {
+            return;
+        }
+        ClassUtils.invokeMethod(writeMethod, entity, value);
+    }
+
+    /**
+     * 是否Transient属性
+     *
+     * @param fieldName
+     * @return
+     */
+    public boolean isTransientField(String fieldName) {
+        return this.transientFieldNames.contains(fieldName);
+    }
+
+    /**
+     * 是否有注解表名，pkField、alias、mappingHandler与表名无关，各自判断是否设置
+     *
+     * @return
+     */
+    public boolean hasAnnotationTableName() {
+        return StringUtils.isNotBlank(this.annotationTableName);
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getAnnotationTableName() {
+        return annotationTableName;
+    }
+
+    public String getAnnotationTableAlias() {
+        return annotationTableAlias;
+    }
+
+    public String getAnnotationPkFieldName() {
+        return annotationPkFieldName;
+    }
+
+    public MappingHandler getAnnotationMappingHandler() {
+        return annotationMappingHandler;
+    }
+
+    public boolean isAnnotationCache() {
+        return annotationCache;
+    }
+
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    public Set<String> getFieldNameSet() {
+        return fieldNameSet;
+    }
+
+    public List<String> getColumnFieldNames() {
+        return columnFieldNames;
+    }
+
+    public List<AutoField> getColumnAutoFields() {
+        return columnAutoFields;
+    }
+
+    public Set<String> getTransientFieldNames() {
+        return transientFieldNames;
+    }
+
+    public Method getReadMethod(String fieldName) {
+        return readMethods.get(fieldName);
+    }
+
+    public Method getWriteMethod(String fieldName) {
+        return writeMethods.get(fieldName);
+    }
+
+    public String getAnnotationColumnName(String fieldName) {
+        return annotationColumnNames.get(fieldName);
+    }
+}
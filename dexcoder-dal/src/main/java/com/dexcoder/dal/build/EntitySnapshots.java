@@ -0,0 +1,149 @@
+package com.dexcoder.dal.build;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体加载时的属性值快照，用于判断实体哪些属性被修改过
+ * <pre>
+ *     按实体对象本身(不是equals)保存，使用弱引用，实体不再使用后快照自动清除
+ *     快照为按EntityMetadata列属性顺序排列的值数组，Date、数组会复制一份防止被原地修改
+ *     可以多线程并发使用，同一个实体不应在多个线程中同时修改
+ * </pre>
+ */
+public class EntitySnapshots {
+
+    private final ReferenceQueue<Object>     queue     = new ReferenceQueue<Object>();
+
+    /** 不同实体的快照互不影响，不使用全局锁 */
+    private final Map<IdentityKey, Object[]> snapshots = new ConcurrentHashMap<IdentityKey, Object[]>();
+
+    /**
+     * 保存实体当前的属性值，已存在时覆盖
+     *
+     * @param entity the entity
+     */
+    public void snapshot(Object entity) {
+        if (entity == null) {
+            return;
+        }
+        this.expungeStaleEntries();
+        EntityMetadata metadata = EntityMetadata.forClass(entity.getClass());
+        List<String> fieldNames = metadata.getColumnFieldNames();
+        Object[] values = new Object[fieldNames.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = copyValue(metadata.getFieldValue(entity, fieldNames.get(i)));
+        }
+        snapshots.put(new IdentityKey(entity, queue), values);
+    }
+
+    /**
+     * 获取与快照相比修改过的属性，包括修改成null的
+     *
+     * @param entity the entity
+     * @return 修改过的属性，没有快照时返回null
+     */
+    public List<String> getChangedFields(Object entity) {
+        this.expungeStaleEntries();
+        Object[] values = snapshots.get(new IdentityKey(entity, null));
+        if (values == null) {
+            return null;
+        }
+        EntityMetadata metadata = EntityMetadata.forClass(entity.getClass());
+        List<String> fieldNames = metadata.getColumnFieldNames();
+        List<String> changedFields = new ArrayList<String>();
+        for (int i = 0; i < values.length; i++) {
+            if (!Objects.deepEquals(values[i], metadata.getFieldValue(entity, fieldNames.get(i)))) {
+                changedFields.add(fieldNames.get(i));
+            }
+        }
+        return changedFields;
+    }
+
+    /**
+     * 是否有快照
+     *
+     * @param entity the entity
+     * @return the boolean
+     */
+    public boolean contains(Object entity) {
+        return snapshots.containsKey(new IdentityKey(entity, null));
+    }
+
+    /**
+     * 移除快照
+     *
+     * @param entity the entity
+     */
+    public void remove(Object entity) {
+        snapshots.remove(new IdentityKey(entity, null));
+        this.expungeStaleEntries();
+    }
+
+    public int size() {
+        this.expungeStaleEntries();
+        return snapshots.size();
+    }
+
+    public void clear() {
+        snapshots.clear();
+    }
+
+    /**
+     * 清除已被回收实体的快照
+     */
+    private void expungeStaleEntries() {
+        Reference<?> reference;
+        while ((reference = queue.poll()) != null) {
+            snapshots.remove(reference);
+        }
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        } else if (value instanceof Object[]) {
+            return ((Object[]) value).clone();
+        }
+        return value;
+    }
+
+    /**
+     * 按对象标识比较的弱引用key
+     */
+    private static class IdentityKey extends WeakReference<Object> {
+
+        private final int hash;
+
+        IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof IdentityKey)) {
+                return false;
+            }
+            Object referent = this.get();
+            return referent != null && referent == ((IdentityKey) obj).get();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.dexcoder.dal.build;
+
+import java.util.List;
+
+/**
+ * insert的BoundSql，分别保存列部分及values部分，可以直接扩展成多行insert
+ * <pre>
+ *     sql = columnsSql + " VALUES " + valuesSql
+ *     columnsSql: INSERT INTO t (a,b)
+ *     valuesSql:  (?,?)
+ * </pre>
+ */
+public class InsertBoundSql extends CriteriaBoundSql {
+
+    /**
+     * values之前的sql
+     */
+    private final String columnsSql;
+
+    /**
+     * 一行的values
+     */
+    private final String valuesSql;
+
+    public InsertBoundSql(String columnsSql, String valuesSql, List<Object> parameters, String tableName) {
+        super(columnsSql + InsertBuilder.VALUES + valuesSql, parameters, tableName);
+        this.columnsSql = columnsSql;
+        this.valuesSql = valuesSql;
+    }
+
+    /**
+     * 扩展成多行insert INSERT INTO t (a,b) VALUES (?,?),(?,?),...
+     *
+     * @param rowCount 行数
+     * @return 多行insert sql
+     */
+    public String multiValuesSql(int rowCount) {
+        StringBuilder sb = new StringBuilder(columnsSql.length() + InsertBuilder.VALUES.length()
+                                             + (valuesSql.length() + 1) * rowCount);
+        sb.append(columnsSql).append(InsertBuilder.VALUES).append(valuesSql);
+        for (int i = 1; i < rowCount; i++) {
+            sb.append(",").append(valuesSql);
+        }
+        return sb.toString();
+    }
+
+    public String getColumnsSql() {
+        return columnsSql;
+    }
+
+    public String getValuesSql() {
+        return valuesSql;
+    }
+}
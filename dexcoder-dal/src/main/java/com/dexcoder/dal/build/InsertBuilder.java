@@ -1,6 +1,5 @@
 package com.dexcoder.dal.build;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -14,6 +13,8 @@ public class InsertBuilder extends AbstractSqlBuilder {
 
     protected static final String COMMAND_OPEN = "INSERT INTO ";
 
+    protected static final String VALUES       = " VALUES ";
+
     public InsertBuilder(Class<?> clazz) {
         super(clazz);
     }
@@ -32,11 +33,14 @@ public class InsertBuilder extends AbstractSqlBuilder {
 
     public BoundSql buildBoundSql(Object entity, boolean isIgnoreNull) {
         metaTable.entity(entity, isIgnoreNull);
-        StringBuilder sql = new StringBuilder(COMMAND_OPEN);
-        StringBuilder args = new StringBuilder("(");
-        List<Object> params = new ArrayList<Object>();
-        sql.append(metaTable.getTableAndAliasName()).append(" (");
+        String tableName = metaTable.getTableAndAliasName();
+        return this.buildTemplateBoundSql(tableName, entity, isIgnoreNull);
+    }
 
+    @Override
+    protected SqlTemplate compileTemplate(Object entity, boolean isIgnoreNull, List<Object> params) {
+        StringBuilder sql = new StringBuilder(" (");
+        StringBuilder args = new StringBuilder("(");
         for (Map.Entry<String, AutoField> entry : metaTable.getAutoFields().entrySet()) {
             AutoField autoField = entry.getValue();
             //忽略null值
@@ -59,7 +63,63 @@ public class InsertBuilder extends AbstractSqlBuilder {
         }
         sql.deleteCharAt(sql.length() - 1);
         args.deleteCharAt(args.length() - 1);
-        sql.append(")").append(" VALUES ").append(args.append(")"));
-        return new CriteriaBoundSql(sql.toString(), params);
+        return new InsertSqlTemplate(COMMAND_OPEN, sql.append(")").toString(), args.append(")").toString());
+    }
+
+    @Override
+    protected BoundSql newBoundSql(SqlTemplate sqlTemplate, String tableName, List<Object> params) {
+        if (!(sqlTemplate instanceof InsertSqlTemplate)) {
+            return super.newBoundSql(sqlTemplate, tableName, params);
+        }
+        InsertSqlTemplate insertSqlTemplate = (InsertSqlTemplate) sqlTemplate;
+        return new InsertBoundSql(insertSqlTemplate.renderColumns(tableName), insertSqlTemplate.getValues(), params,
+            this.getTableName(tableName));
+    }
+
+    @Override
+    protected void collectParameters(List<Object> params, boolean isIgnoreNull) {
+        for (AutoField autoField : metaTable.getAutoFields().values()) {
+            if (autoField.getValue() == null && isIgnoreNull) {
+                continue;
+            }
+            if (!autoField.isNativeField()) {
+                params.add(autoField.getValue());
+            }
+        }
+    }
+
+    /**
+     * insert的sql模板，values部分单独保存，多行insert时不用再从sql中拆分
+     */
+    protected static class InsertSqlTemplate extends SqlTemplate {
+
+        /**
+         * 一行的values
+         */
+        private final String values;
+
+        public InsertSqlTemplate(String prefix, String suffix, String values) {
+            super(prefix, suffix);
+            this.values = values;
+        }
+
+        /**
+         * 生成values之前的sql
+         *
+         * @param tableName the table name
+         * @return sql
+         */
+        public String renderColumns(String tableName) {
+            return super.render(tableName);
+        }
+
+        @Override
+        public String render(String tableName) {
+            return this.renderColumns(tableName) + VALUES + values;
+        }
+
+        public String getValues() {
+            return values;
+        }
     }
 }
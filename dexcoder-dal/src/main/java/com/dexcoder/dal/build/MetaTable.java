@@ -1,16 +1,9 @@
 package com.dexcoder.dal.build;
 
-import java.beans.BeanInfo;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Method;
 import java.util.*;
 
 import org.apache.commons.lang3.StringUtils;
 
-import com.dexcoder.commons.utils.ClassUtils;
-import com.dexcoder.dal.annotation.Column;
-import com.dexcoder.dal.annotation.Table;
-import com.dexcoder.dal.annotation.Transient;
 import com.dexcoder.dal.handler.MappingHandler;
 
 /**
@@ -83,10 +76,17 @@ public class MetaTable {
     /**
      * 类的属性
      */
-    private Set<String>              classFields;
+    private Set<String>            classFields;
 
-    /** field -> column 映射 名称不一样时 */
-    private Map<String, String>    mappedFieldColumns;
+    /**
+     * 类的元数据
+     */
+    private EntityMetadata         entityMetadata;
+
+    /**
+     * 数据库方言，upsert等与数据库相关的sql使用
+     */
+    private String                 dialect;
 
     public MetaTable() {
     }
@@ -118,6 +118,14 @@ public class MetaTable {
         return tableClass;
     }
 
+    public EntityMetadata getEntityMetadata() {
+        return entityMetadata;
+    }
+
+    public String getDialect() {
+        return dialect;
+    }
+
     public List<AutoField> getColumnAutoFields() {
         return columnAutoFields;
     }
@@ -129,7 +137,7 @@ public class MetaTable {
      * @return
      */
     public String getColumnName(String fieldName) {
-        String annColumnName = this.mappedFieldColumns.get(fieldName);
+        String annColumnName = this.entityMetadata.getAnnotationColumnName(fieldName);
         return this.mappingHandler.getColumnName(tableClass, fieldName, annColumnName);
     }
 
@@ -181,7 +189,7 @@ public class MetaTable {
     }
 
     public String getColumnAndTableAliasName(String fieldName) {
-        String annColumnName = this.mappedFieldColumns.get(fieldName);
+        String annColumnName = this.entityMetadata.getAnnotationColumnName(fieldName);
         String columnName = mappingHandler.getColumnName(tableClass, fieldName, annColumnName);
         if (StringUtils.isBlank(this.tableAlias)) {
             return columnName;
@@ -281,33 +289,21 @@ public class MetaTable {
     }
 
     public MetaTable tableClass(Class<?> tableClass) {
-        this.classFields = new HashSet<String>();
-        this.mappedFieldColumns = new HashMap<String, String>();
         this.tableClass = tableClass;
-        Table aTable = tableClass.getAnnotation(Table.class);
-        if (aTable != null) {
-            this.annotationTableName = aTable.name();
-            this.pkFieldName = aTable.pkField();
-            if (StringUtils.isBlank(this.tableAlias)) {
-                this.tableAlias = aTable.alias();
-            }
-            if (!Object.class.equals(aTable.mappingHandler())) {
-                this.mappingHandler = ((MappingHandler) ClassUtils.newInstance(aTable.mappingHandler()));
-            }
+        this.entityMetadata = EntityMetadata.forClass(tableClass);
+        this.classFields = entityMetadata.getFieldNameSet();
+        //@Table的各项独立生效，只设置pkField、alias等而name为空时也使用
+        if (entityMetadata.hasAnnotationTableName()) {
+            this.annotationTableName = entityMetadata.getAnnotationTableName();
         }
-        BeanInfo selfBeanInfo = ClassUtils.getSelfBeanInfo(tableClass);
-        PropertyDescriptor[] propertyDescriptors = selfBeanInfo.getPropertyDescriptors();
-        for (PropertyDescriptor pd : propertyDescriptors) {
-            Method readMethod = pd.getReadMethod();
-            if (readMethod == null) {
-                continue;
-            }
-            classFields.add(pd.getName());
-            Column column = readMethod.getAnnotation(Column.class);
-            if (column == null) {
-                continue;
-            }
-            this.mappedFieldColumns.put(pd.getName(), column.value());
+        if (StringUtils.isNotBlank(entityMetadata.getAnnotationPkFieldName())) {
+            this.pkFieldName = entityMetadata.getAnnotationPkFieldName();
+        }
+        if (StringUtils.isBlank(this.tableAlias)) {
+            this.tableAlias = entityMetadata.getAnnotationTableAlias();
+        }
+        if (entityMetadata.getAnnotationMappingHandler() != null) {
+            this.mappingHandler = entityMetadata.getAnnotationMappingHandler();
         }
         return this;
     }
@@ -321,18 +317,8 @@ public class MetaTable {
         if (entity == null) {
             return this;
         }
-        BeanInfo selfBeanInfo = ClassUtils.getSelfBeanInfo(entity.getClass());
-        PropertyDescriptor[] propertyDescriptors = selfBeanInfo.getPropertyDescriptors();
-        for (PropertyDescriptor pd : propertyDescriptors) {
-            Method readMethod = pd.getReadMethod();
-            if (readMethod == null) {
-                continue;
-            }
-            Transient aTransient = readMethod.getAnnotation(Transient.class);
-            if (aTransient != null) {
-                continue;
-            }
-            String fieldName = pd.getName();
+        EntityMetadata metadata = EntityMetadata.forClass(entity.getClass());
+        for (String fieldName : metadata.getColumnFieldNames()) {
             if (this.columnAutoFields != null) {
                 AutoField autoField = new AutoField.Builder().name(fieldName).build();
                 this.columnAutoFields.add(autoField);
@@ -341,7 +327,7 @@ public class MetaTable {
             if (this.hasAutoField(fieldName)) {
                 continue;
             }
-            Object value = ClassUtils.invokeMethod(readMethod, entity);
+            Object value = metadata.getFieldValue(entity, fieldName);
 
             //忽略掉null
             if (value == null && isIgnoreNull) {
@@ -369,4 +355,9 @@ public class MetaTable {
         return this;
     }
 
+    public MetaTable dialect(String dialect) {
+        this.dialect = dialect;
+        return this;
+    }
+
 }
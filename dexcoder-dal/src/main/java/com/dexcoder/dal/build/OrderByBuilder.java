@@ -1,7 +1,12 @@
 package com.dexcoder.dal.build;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
+
 import com.dexcoder.dal.BoundSql;
 import com.dexcoder.dal.exceptions.JdbcAssistantException;
 
@@ -12,6 +17,11 @@ public class OrderByBuilder extends AbstractSqlBuilder {
 
     protected static final String COMMAND_OPEN = " ORDER BY ";
 
+    /**
+     * 排序字段不包含主键时是否在最后追加主键
+     */
+    protected boolean             appendPk;
+
     public OrderByBuilder(Class<?> clazz) {
         super(clazz);
     }
@@ -28,19 +38,153 @@ public class OrderByBuilder extends AbstractSqlBuilder {
     }
 
     public BoundSql buildBoundSql(Object entity, boolean isIgnoreNull) {
+        SqlTemplate sqlTemplate = this.compileTemplate(entity, isIgnoreNull, null);
+        return new CriteriaBoundSql(sqlTemplate.getPrefix(), null);
+    }
+
+    @Override
+    protected SqlTemplate compileTemplate(Object entity, boolean isIgnoreNull, List<Object> params) {
         StringBuilder sb = new StringBuilder(COMMAND_OPEN);
-        if (metaTable.getAutoFields().isEmpty()) {
-            sb.append(metaTable.applyColumnTableAlias(metaTable.getColumnName(metaTable.getPkFieldName()))).append(
-                " DESC");
-        } else {
-            for (Map.Entry<String, AutoField> entry : metaTable.getAutoFields().entrySet()) {
-                String columnName = metaTable.getColumnAndTableAliasName(entry.getValue());
-                sb.append(columnName).append(" ").append(entry.getValue().getFieldOperator()).append(",");
+        for (Map.Entry<String, Boolean> entry : this.getSortFields().entrySet()) {
+            sb.append(metaTable.getColumnAndTableAliasName(entry.getKey())).append(entry.getValue() ? " ASC" : " DESC")
+                .append(",");
+        }
+        sb.deleteCharAt(sb.length() - 1);
+        return new SqlTemplate(sb.toString(), "");
+    }
+
+    @Override
+    protected void appendShape(StringBuilder shape) {
+        super.appendShape(shape);
+        shape.append(appendPk).append(SHAPE_SEPARATOR);
+    }
+
+    /**
+     * 设置排序字段不包含主键时是否在最后追加主键，追加后排序值唯一，keyset分页不会跳过排序值相同的记录
+     * 分组、聚合查询不能按主键排序，不追加
+     *
+     * @param appendPk the append pk
+     * @return the order by builder
+     */
+    public OrderByBuilder appendPk(boolean appendPk) {
+        this.appendPk = appendPk;
+        return this;
+    }
+
+    /**
+     * 获取排序字段及是否升序
+     * 未设置排序时为主键降序，设置了appendPk且不包含主键时最后追加主键，方向与最后一个排序字段相同
+     *
+     * @return the sort fields
+     */
+    protected Map<String, Boolean> getSortFields() {
+        Map<String, Boolean> sortFields = new LinkedHashMap<String, Boolean>();
+        boolean ascending = false;
+        for (AutoField autoField : metaTable.getAutoFields().values()) {
+            ascending = !StringUtils.equalsIgnoreCase("DESC", autoField.getFieldOperator());
+            sortFields.put(autoField.getName(), ascending);
+        }
+        String pkFieldName = metaTable.getPkFieldName();
+        if (sortFields.isEmpty() || (appendPk && !sortFields.containsKey(pkFieldName))) {
+            sortFields.put(pkFieldName, ascending);
+        }
+        return sortFields;
+    }
+
+    /**
+     * 生成keyset分页条件，展开成 (k1 > ?) OR (k1 = ? AND k2 > ?) ... 的形式，降序时为 <
+     * 不使用 (k1,k2) > (?,?) 是因为升降序混合时无法使用且部分数据库不支持
+     *
+     * @param seekValues 上一页最后一条记录的排序值
+     * @param params the params
+     * @return seek sql
+     */
+    public String buildSeekSql(Object[] seekValues, List<Object> params) {
+        List<String> columns = new ArrayList<String>();
+        List<String> operators = new ArrayList<String>();
+        for (Map.Entry<String, Boolean> entry : this.getSortFields().entrySet()) {
+            columns.add(metaTable.getColumnAndTableAliasName(entry.getKey()));
+            operators.add(entry.getValue() ? " > ?" : " < ?");
+        }
+        if (seekValues.length != columns.size()) {
+            throw new JdbcAssistantException("keyset分页的值个数[" + seekValues.length + "]与排序字段个数[" + columns.size()
+                                             + "]不一致，排序字段不包含主键时会追加主键");
+        }
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(" OR ");
+            }
+            sb.append("(");
+            for (int j = 0; j < i; j++) {
+                sb.append(columns.get(j)).append(" = ? AND ");
+            }
+            sb.append(columns.get(i)).append(operators.get(i)).append(")");
+        }
+        sb.append(") ");
+        collectSeekParameters(seekValues, params);
+        return sb.toString();
+    }
+
+    /**
+     * 获取实体的排序字段值，作为下一页keyset分页的值
+     *
+     * @param entity the entity
+     * @return sort values
+     */
+    public Object[] getSortValues(Object entity) {
+        Map<String, Boolean> sortFields = this.getSortFields();
+        Object[] sortValues = new Object[sortFields.size()];
+        int i = 0;
+        if (entity instanceof Map) {
+            //queryRowMap的结果按列名获取
+            for (String fieldName : sortFields.keySet()) {
+                sortValues[i++] = ((Map<?, ?>) entity).get(metaTable.getColumnName(fieldName));
             }
-            if (sb.length() > 10) {
-                sb.deleteCharAt(sb.length() - 1);
+            return sortValues;
+        }
+        EntityMetadata entityMetadata = EntityMetadata.forClass(entity.getClass());
+        for (String fieldName : sortFields.keySet()) {
+            sortValues[i++] = entityMetadata.getFieldValue(entity, fieldName);
+        }
+        return sortValues;
+    }
+
+    /**
+     * 排序字段是否包含主键，包含时排序值唯一，keyset分页不会跳过排序值相同的记录
+     *
+     * @return the boolean
+     */
+    public boolean isSortByPk() {
+        return this.getSortFields().containsKey(metaTable.getPkFieldName());
+    }
+
+    /**
+     * 获取排序字段是否升序，与getSortValues的值一一对应
+     *
+     * @return the boolean [ ]
+     */
+    public boolean[] getSortAscending() {
+        Map<String, Boolean> sortFields = this.getSortFields();
+        boolean[] ascending = new boolean[sortFields.size()];
+        int i = 0;
+        for (Boolean value : sortFields.values()) {
+            ascending[i++] = value;
+        }
+        return ascending;
+    }
+
+    /**
+     * 按keyset分页条件的顺序收集参数
+     *
+     * @param seekValues the seek values
+     * @param params the params
+     */
+    public static void collectSeekParameters(Object[] seekValues, List<Object> params) {
+        for (int i = 0; i < seekValues.length; i++) {
+            for (int j = 0; j <= i; j++) {
+                params.add(seekValues[j]);
             }
         }
-        return new CriteriaBoundSql(sb.toString(), null);
     }
 }
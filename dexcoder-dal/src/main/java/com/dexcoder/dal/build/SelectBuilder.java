@@ -1,15 +1,12 @@
 package com.dexcoder.dal.build;
 
-import java.beans.BeanInfo;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-import com.dexcoder.commons.utils.ClassUtils;
+import org.apache.commons.lang3.StringUtils;
+
 import com.dexcoder.dal.BoundSql;
-import com.dexcoder.dal.annotation.Transient;
 import com.dexcoder.dal.exceptions.JdbcAssistantException;
 
 /**
@@ -19,8 +16,23 @@ public class SelectBuilder extends AbstractSqlBuilder {
 
     protected static final String COMMAND_OPEN = "SELECT ";
 
-    protected SqlBuilder          whereBuilder;
-    protected SqlBuilder          orderByBuilder;
+    protected WhereBuilder        whereBuilder;
+    protected OrderByBuilder      orderByBuilder;
+
+    /**
+     * keyset分页，上一页最后一条记录的排序值
+     */
+    protected Object[]            seekValues;
+
+    /**
+     * 排序字段不包含主键时是否在最后追加主键，keyset分页及跨表分页归并需要唯一的排序值
+     */
+    protected boolean             appendPkOrder;
+
+    /**
+     * group by 分组属性
+     */
+    protected List<String>        groupByFields = new ArrayList<String>();
 
     public SelectBuilder(Class<?> clazz) {
         super(clazz);
@@ -39,11 +51,25 @@ public class SelectBuilder extends AbstractSqlBuilder {
             orderByBuilder.addField(fieldName, logicalOperator, "ASC", type, value);
         } else if (type == AutoFieldType.ORDER_BY_DESC) {
             orderByBuilder.addField(fieldName, logicalOperator, "DESC", type, value);
+        } else if (type == AutoFieldType.SEEK) {
+            Object[] values = (Object[]) value;
+            if (values != null) {
+                for (int i = 0; i < values.length; i++) {
+                    //(k1 = ? AND k2 > ?)无法比较null，keyset分页的排序字段需要为非空列
+                    if (values[i] == null) {
+                        throw new JdbcAssistantException("keyset分页的第" + (i + 1) + "个排序值为null，排序字段需要为非空列");
+                    }
+                }
+            }
+            this.seekValues = values == null || values.length == 0 ? null : values;
+            this.appendPkOrder = true;
         } else if (type == AutoFieldType.FUNC) {
             metaTable.isFieldExclusion(Boolean.valueOf(fieldOperator)).isOrderBy(Boolean.valueOf(logicalOperator));
             AutoField autoField = new AutoField.Builder().name(fieldName).logicalOperator(logicalOperator)
                 .fieldOperator(fieldOperator).type(type).value(value).build();
             metaTable.getFuncAutoFields().add(autoField);
+        } else if (type == AutoFieldType.GROUP_BY) {
+            groupByFields.add(fieldName);
         } else {
             throw new JdbcAssistantException("不支持的字段设置类型");
         }
@@ -58,23 +84,46 @@ public class SelectBuilder extends AbstractSqlBuilder {
         //构建到whereBuilder
         whereBuilder.getMetaTable().mappingHandler(metaTable.getMappingHandler()).tableAlias(metaTable.getTableAlias())
             .entity(entity, isIgnoreNull);
-        //表名从whereBuilder获取
-        String tableName = whereBuilder.getMetaTable().getTableAndAliasName();
-        StringBuilder sb = new StringBuilder(COMMAND_OPEN);
+        this.prepareOrderBy().getMetaTable().tableAlias(metaTable.getTableAlias());
         if (!metaTable.hasColumnFields() && !metaTable.isFieldExclusion()) {
             this.fetchClassFields(metaTable.getTableClass());
         }
+        //表名从whereBuilder获取
+        String tableName = whereBuilder.getMetaTable().getTableAndAliasName();
+        BoundSql boundSql = this.buildTemplateBoundSql(tableName, entity, isIgnoreNull);
+
+        //只使用一次的函数用完就删
         if (metaTable.hasFuncAutoField()) {
             Iterator<AutoField> iterator = metaTable.getFuncAutoFields().iterator();
             while (iterator.hasNext()) {
                 AutoField autoField = iterator.next();
-                String nativeFieldName = tokenParse(autoField, metaTable);
-                sb.append(nativeFieldName).append(",");
                 if (autoField.getValue() != null && Boolean.valueOf(autoField.getValue().toString())) {
                     iterator.remove();
                 }
             }
         }
+        //恢复criteria,可能会多次使用,例如queryCount使用的count(*)函数
+        if (!metaTable.hasFuncAutoField()) {
+            metaTable.isFieldExclusion(false).isOrderBy(true);
+        }
+        return boundSql;
+    }
+
+    @Override
+    protected SqlTemplate compileTemplate(Object entity, boolean isIgnoreNull, List<Object> params) {
+        StringBuilder sb = new StringBuilder(COMMAND_OPEN);
+        //与列互斥时分组列放在函数之前
+        if (metaTable.isFieldExclusion()) {
+            for (String groupByField : groupByFields) {
+                sb.append(metaTable.applyColumnTableAlias(metaTable.getColumnName(groupByField))).append(",");
+            }
+        }
+        if (metaTable.hasFuncAutoField()) {
+            for (AutoField autoField : metaTable.getFuncAutoFields()) {
+                String nativeFieldName = tokenParse(autoField, metaTable);
+                sb.append(nativeFieldName).append(",");
+            }
+        }
         if (!metaTable.isFieldExclusion()) {
             for (AutoField columnAutoField : metaTable.getColumnAutoFields()) {
                 //白名单 黑名单
@@ -89,20 +138,138 @@ public class SelectBuilder extends AbstractSqlBuilder {
             }
         }
         sb.deleteCharAt(sb.length() - 1);
-        sb.append(" FROM ").append(tableName);
+        sb.append(" FROM ");
+        StringBuilder suffix = new StringBuilder();
         BoundSql whereBoundSql = whereBuilder.build(entity, isIgnoreNull);
-        sb.append(whereBoundSql.getSql());
+        params.addAll(whereBoundSql.getParameters());
+        if (seekValues == null) {
+            suffix.append(whereBoundSql.getSql());
+        } else {
+            //原有条件可能含有or，需要加括号后再and keyset条件
+            String conditions = StringUtils.substringAfter(whereBoundSql.getSql(), WhereBuilder.COMMAND_OPEN);
+            suffix.append(WhereBuilder.COMMAND_OPEN);
+            if (StringUtils.isNotBlank(conditions)) {
+                suffix.append("(").append(conditions).append(") AND ");
+            }
+            suffix.append(orderByBuilder.buildSeekSql(seekValues, params));
+        }
+        if (!groupByFields.isEmpty()) {
+            suffix.append(" GROUP BY ");
+            for (String groupByField : groupByFields) {
+                suffix.append(metaTable.applyColumnTableAlias(metaTable.getColumnName(groupByField))).append(",");
+            }
+            suffix.deleteCharAt(suffix.length() - 1).append(" ");
+        }
         if (metaTable.isOrderBy()) {
-            orderByBuilder.getMetaTable().mappingHandler(metaTable.getMappingHandler())
-                .tableAlias(metaTable.getTableAlias());
             BoundSql orderByBoundSql = orderByBuilder.build(entity, isIgnoreNull);
-            sb.append(orderByBoundSql.getSql());
+            suffix.append(orderByBoundSql.getSql());
+        }
+        return new SqlTemplate(sb.toString(), suffix.toString());
+    }
+
+    @Override
+    protected void appendShape(StringBuilder shape) {
+        shape.append(metaTable.getTableAlias()).append(SHAPE_SEPARATOR).append(metaTable.isFieldExclusion())
+            .append(SHAPE_SEPARATOR).append(metaTable.isOrderBy()).append(SHAPE_SEPARATOR)
+            .append(metaTable.getColumnAutoFields().size()).append(SHAPE_SEPARATOR)
+            .append(metaTable.getIncludeFields()).append(SHAPE_SEPARATOR).append(metaTable.getExcludeFields())
+            .append(SHAPE_SEPARATOR);
+        for (AutoField autoField : metaTable.getFuncAutoFields()) {
+            shape.append(autoField.getName()).append(SHAPE_SEPARATOR);
+        }
+        shape.append(groupByFields).append(SHAPE_FIELD_SEPARATOR);
+        whereBuilder.appendShape(shape);
+        shape.append(seekValues == null ? 0 : seekValues.length).append(SHAPE_SEPARATOR);
+        if (metaTable.isOrderBy() || seekValues != null) {
+            orderByBuilder.appendShape(shape);
+        }
+    }
+
+    @Override
+    protected void collectParameters(List<Object> params, boolean isIgnoreNull) {
+        whereBuilder.collectParameters(params, isIgnoreNull);
+        if (seekValues != null) {
+            OrderByBuilder.collectSeekParameters(seekValues, params);
+        }
+    }
+
+    /**
+     * 获取实体的排序字段值
+     *
+     * @param entity the entity
+     * @return sort values
+     */
+    public Object[] getSortValues(Object entity) {
+        return this.prepareOrderBy().getSortValues(entity);
+    }
+
+    /**
+     * 获取排序字段是否升序，与getSortValues的值一一对应
+     *
+     * @return the boolean [ ]
+     */
+    public boolean[] getSortAscending() {
+        return this.prepareOrderBy().getSortAscending();
+    }
+
+    /**
+     * 排序字段是否包含主键
+     *
+     * @return the boolean
+     */
+    public boolean isSortByPk() {
+        return this.prepareOrderBy().isSortByPk();
+    }
+
+    /**
+     * 设置orderByBuilder的mappingHandler，设置了appendPkOrder的非分组、聚合查询在排序最后追加主键
+     *
+     * @return the order by builder
+     */
+    protected OrderByBuilder prepareOrderBy() {
+        orderByBuilder.getMetaTable().mappingHandler(metaTable.getMappingHandler());
+        return orderByBuilder.appendPk(appendPkOrder && groupByFields.isEmpty() && !metaTable.isFieldExclusion());
+    }
+
+    /**
+     * 设置排序字段不包含主键时是否在最后追加主键
+     *
+     * @param appendPkOrder the append pk order
+     */
+    public void appendPkOrder(boolean appendPkOrder) {
+        this.appendPkOrder = appendPkOrder;
+    }
+
+    public boolean isAppendPkOrder() {
+        return appendPkOrder;
+    }
+
+    public List<String> getGroupByFields() {
+        return groupByFields;
+    }
+
+    /**
+     * 替换所有函数，跨物理表聚合时下推改写后的函数
+     *
+     * @param funcAutoFields the func auto fields
+     */
+    public void replaceFuncAutoFields(List<AutoField> funcAutoFields) {
+        metaTable.getFuncAutoFields().clear();
+        for (AutoField autoField : funcAutoFields) {
+            this.addField(autoField.getName(), autoField.getLogicalOperator(), autoField.getFieldOperator(),
+                AutoFieldType.FUNC, autoField.getValue());
         }
-        //恢复criteria,可能会多次使用,例如queryCount使用的count(*)函数
         if (!metaTable.hasFuncAutoField()) {
             metaTable.isFieldExclusion(false).isOrderBy(true);
         }
-        return new CriteriaBoundSql(sb.toString(), whereBoundSql.getParameters());
+    }
+
+    public Object[] getSeekValues() {
+        return seekValues;
+    }
+
+    public WhereBuilder getWhereBuilder() {
+        return whereBuilder;
     }
 
     /**
@@ -111,23 +278,8 @@ public class SelectBuilder extends AbstractSqlBuilder {
      * @param clazz
      */
     protected void fetchClassFields(Class<?> clazz) {
-        //ClassUtils已经使用了缓存，此处就不用了
-        BeanInfo selfBeanInfo = ClassUtils.getSelfBeanInfo(clazz);
-        PropertyDescriptor[] propertyDescriptors = selfBeanInfo.getPropertyDescriptors();
-        List<AutoField> columnAutoFields = new ArrayList<AutoField>();
-        for (PropertyDescriptor pd : propertyDescriptors) {
-            Method readMethod = pd.getReadMethod();
-            if (readMethod == null) {
-                continue;
-            }
-            Transient aTransient = readMethod.getAnnotation(Transient.class);
-            if (aTransient != null) {
-                continue;
-            }
-            AutoField autoField = new AutoField.Builder().name(pd.getName()).build();
-            columnAutoFields.add(autoField);
-        }
-        metaTable.getColumnAutoFields().addAll(columnAutoFields);
+        //EntityMetadata已经缓存，此处就不用了
+        metaTable.getColumnAutoFields().addAll(EntityMetadata.forClass(clazz).getColumnAutoFields());
     }
 
 }
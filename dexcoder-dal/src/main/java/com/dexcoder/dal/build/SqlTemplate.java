@@ -0,0 +1,45 @@
+package com.dexcoder.dal.build;
+
+/**
+ * 编译后的sql模板，表名之外的sql文本
+ * <pre>
+ *     sql = prefix + tableName + suffix
+ *     表名需要每次构建时实时获取，以便水平分表时能正确处理表名，所以不在模板中
+ * </pre>
+ */
+public class SqlTemplate {
+
+    /**
+     * 表名之前的sql
+     */
+    private final String prefix;
+
+    /**
+     * 表名之后的sql
+     */
+    private final String suffix;
+
+    public SqlTemplate(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    /**
+     * 根据表名生成sql
+     *
+     * @param tableName the table name
+     * @return sql
+     */
+    public String render(String tableName) {
+        return new StringBuilder(prefix.length() + tableName.length() + suffix.length()).append(prefix)
+            .append(tableName).append(suffix).toString();
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+}
@@ -0,0 +1,135 @@
+package com.dexcoder.dal.build;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.dexcoder.commons.cache.CacheMap;
+import com.dexcoder.commons.cache.FIFOCache;
+import com.dexcoder.dal.handler.MappingHandler;
+
+/**
+ * sql模板缓存
+ * <pre>
+ *     Criteria生成的sql文本只跟它的结构有关：实体类、白名单黑名单、操作符、括号、值是否为null、in参数的个数等
+ *     结构相同时直接使用缓存的模板，只需要收集参数，不用再拼装sql
+ * </pre>
+ */
+public class SqlTemplateCache {
+
+    /** 默认缓存大小 */
+    public static final int                          DEFAULT_CACHE_SIZE = 2000;
+
+    /** 模板缓存 */
+    private static volatile CacheMap<Key, SqlTemplate> templateCache      = new FIFOCache<Key, SqlTemplate>(
+                                                                            DEFAULT_CACHE_SIZE, 0);
+
+    /** 是否启用 */
+    private static volatile boolean                  enabled            = true;
+
+    /** 命中次数 */
+    private static final AtomicLong                  HIT_COUNT          = new AtomicLong();
+
+    /** 未命中次数 */
+    private static final AtomicLong                  MISS_COUNT         = new AtomicLong();
+
+    /**
+     * 获取模板
+     *
+     * @param key
+     * @return
+     */
+    public static SqlTemplate get(Key key) {
+        SqlTemplate sqlTemplate = templateCache.get(key);
+        if (sqlTemplate == null) {
+            MISS_COUNT.incrementAndGet();
+        } else {
+            HIT_COUNT.incrementAndGet();
+        }
+        return sqlTemplate;
+    }
+
+    /**
+     * 添加模板
+     *
+     * @param key
+     * @param sqlTemplate
+     */
+    public static void put(Key key, SqlTemplate sqlTemplate) {
+        templateCache.put(key, sqlTemplate);
+    }
+
+    /**
+     * 设置缓存大小，会清空已有缓存
+     *
+     * @param cacheSize
+     */
+    public static void setCacheSize(int cacheSize) {
+        templateCache = new FIFOCache<Key, SqlTemplate>(cacheSize, 0);
+    }
+
+    /**
+     * 清空缓存及计数
+     */
+    public static void clear() {
+        templateCache.clear();
+        HIT_COUNT.set(0);
+        MISS_COUNT.set(0);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        SqlTemplateCache.enabled = enabled;
+    }
+
+    public static long getHitCount() {
+        return HIT_COUNT.get();
+    }
+
+    public static long getMissCount() {
+        return MISS_COUNT.get();
+    }
+
+    public static int size() {
+        return templateCache.size();
+    }
+
+    /**
+     * 缓存key，sql结构加上名称处理器
+     * 名称处理器决定了列名，按类及equals比较，每次新建的无状态处理器也能命中
+     * 没有覆盖equals的处理器按实例比较
+     */
+    public static class Key {
+
+        private final String         shape;
+
+        private final MappingHandler mappingHandler;
+
+        private final int            hashCode;
+
+        public Key(String shape, MappingHandler mappingHandler) {
+            this.shape = shape;
+            this.mappingHandler = mappingHandler;
+            this.hashCode = 31 * shape.hashCode() + mappingHandler.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mappingHandler.getClass() == key.mappingHandler.getClass()
+                   && mappingHandler.equals(key.mappingHandler) && shape.equals(key.shape);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package com.dexcoder.dal.build;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -19,7 +20,12 @@ public class UpdateBuilder extends AbstractSqlBuilder {
     /**
      * whereBuilder
      */
-    private SqlBuilder            whereBuilder;
+    private WhereBuilder          whereBuilder;
+
+    /**
+     * 修改过的属性，不为空时实体中其它属性不更新
+     */
+    private Set<String>           changedFields;
 
     public UpdateBuilder(Class<?> clazz) {
         super(clazz);
@@ -28,6 +34,13 @@ public class UpdateBuilder extends AbstractSqlBuilder {
 
     public void addField(String fieldName, String logicalOperator, String fieldOperator, AutoFieldType type,
                          Object value) {
+        if (type == AutoFieldType.CHANGED) {
+            if (changedFields == null) {
+                changedFields = new HashSet<String>();
+            }
+            changedFields.add(fieldName);
+            return;
+        }
         AutoField autoField = new AutoField.Builder().name(fieldName).logicalOperator(logicalOperator)
             .fieldOperator(fieldOperator).type(type).value(value).build();
         metaTable.getAutoFields().put(fieldName, autoField);
@@ -53,16 +66,24 @@ public class UpdateBuilder extends AbstractSqlBuilder {
             } else {
                 this.whereBuilder.addCondition(pkAutoField.getName(), pkAutoField.getLogicalOperator(),
                     pkAutoField.getFieldOperator(), AutoFieldType.TRANSIENT, pkAutoField.getValue());
+                //实体中未修改的属性不更新，仍保留在where中供水平分表使用
+                if (changedFields != null && pkAutoField.getType() == AutoFieldType.NORMAL
+                    && !changedFields.contains(entry.getKey())) {
+                    iterator.remove();
+                }
             }
         }
 
         //whereBuilder的metaTable
         whereBuilder.getMetaTable().mappingHandler(metaTable.getMappingHandler()).tableAlias(metaTable.getTableAlias());
-
-        StringBuilder sql = new StringBuilder(COMMAND_OPEN);
-        List<Object> params = new ArrayList<Object>();
         //tableName必须从whereBuilder中获取，以便水平分表时能正确获取表名
-        sql.append(whereBuilder.getMetaTable().getTableAndAliasName()).append(" SET ");
+        String tableName = whereBuilder.getMetaTable().getTableAndAliasName();
+        return this.buildTemplateBoundSql(tableName, entity, isIgnoreNull);
+    }
+
+    @Override
+    protected SqlTemplate compileTemplate(Object entity, boolean isIgnoreNull, List<Object> params) {
+        StringBuilder sql = new StringBuilder(" SET ");
         for (Map.Entry<String, AutoField> entry : metaTable.getAutoFields().entrySet()) {
             String columnName = metaTable.getColumnAndTableAliasName(entry.getValue());
             AutoField autoField = entry.getValue();
@@ -81,6 +102,22 @@ public class UpdateBuilder extends AbstractSqlBuilder {
         BoundSql boundSql = whereBuilder.build(entity, isIgnoreNull);
         sql.append(boundSql.getSql());
         params.addAll(boundSql.getParameters());
-        return new CriteriaBoundSql(sql.toString(), params);
+        return new SqlTemplate(COMMAND_OPEN, sql.toString());
+    }
+
+    @Override
+    protected void appendShape(StringBuilder shape) {
+        super.appendShape(shape);
+        whereBuilder.appendShape(shape);
+    }
+
+    @Override
+    protected void collectParameters(List<Object> params, boolean isIgnoreNull) {
+        for (AutoField autoField : metaTable.getAutoFields().values()) {
+            if (!autoField.isNativeField() && autoField.getValue() != null) {
+                params.add(autoField.getValue());
+            }
+        }
+        whereBuilder.collectParameters(params, isIgnoreNull);
     }
 }
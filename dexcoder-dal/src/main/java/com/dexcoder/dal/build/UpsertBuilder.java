@@ -0,0 +1,167 @@
+package com.dexcoder.dal.build;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+
+/**
+ * upsert，主键冲突时更新，否则插入
+ * <pre>
+ *     mysql:      INSERT INTO t (a,b) VALUES (?,?) ON DUPLICATE KEY UPDATE b = VALUES(b)
+ *     postgresql: INSERT INTO t (a,b) VALUES (?,?) ON CONFLICT (a) DO UPDATE SET b = EXCLUDED.b
+ *     oracle、h2: MERGE INTO t T1 USING (SELECT ? a,? b FROM DUAL) T2 ON (T1.a = T2.a)
+ *                 WHEN MATCHED THEN UPDATE SET T1.b = T2.b WHEN NOT MATCHED THEN INSERT (a,b) VALUES (T2.a,T2.b)
+ * </pre>
+ */
+public class UpsertBuilder extends InsertBuilder {
+
+    protected static final String MERGE_OPEN = "MERGE INTO ";
+
+    /**
+     * 主键冲突时更新的属性，为空时更新除主键外所有插入的属性
+     */
+    private List<String>          conflictUpdateFields;
+
+    public UpsertBuilder(Class<?> clazz) {
+        super(clazz);
+        conflictUpdateFields = new ArrayList<String>();
+    }
+
+    @Override
+    public void addField(String fieldName, String logicalOperator, String fieldOperator, AutoFieldType type,
+                         Object value) {
+        if (type == AutoFieldType.CONFLICT_UPDATE) {
+            conflictUpdateFields.add(fieldName);
+        } else {
+            super.addField(fieldName, logicalOperator, fieldOperator, type, value);
+        }
+    }
+
+    /**
+     * 使用不带别名的表名，merge使用固定的T1、T2别名，insert ... on duplicate/conflict不能带别名
+     */
+    @Override
+    public BoundSql buildBoundSql(Object entity, boolean isIgnoreNull) {
+        metaTable.entity(entity, isIgnoreNull);
+        return this.buildTemplateBoundSql(metaTable.getTableName(), entity, isIgnoreNull);
+    }
+
+    @Override
+    protected SqlTemplate compileTemplate(Object entity, boolean isIgnoreNull, List<Object> params) {
+        String dialect = StringUtils.upperCase(metaTable.getDialect());
+        if (StringUtils.isBlank(dialect)) {
+            throw new JdbcAssistantException("upsert必须设置数据库方言");
+        }
+        String pkColumn = metaTable.getColumnName(metaTable.getPkFieldName());
+        List<String> columns = new ArrayList<String>();
+        List<String> values = new ArrayList<String>();
+        List<String> updateColumns = new ArrayList<String>();
+        boolean hasPk = false;
+        for (Map.Entry<String, AutoField> entry : metaTable.getAutoFields().entrySet()) {
+            AutoField autoField = entry.getValue();
+            if (autoField.getValue() == null && isIgnoreNull) {
+                continue;
+            }
+            String columnName;
+            if (autoField.isNativeField()) {
+                columnName = tokenParse(autoField, metaTable);
+                values.add(tokenParse(String.valueOf(autoField.getValue()), metaTable));
+            } else {
+                columnName = metaTable.getColumnName(autoField.getName());
+                values.add("?");
+                params.add(autoField.getValue());
+            }
+            columns.add(columnName);
+            if (StringUtils.equals(pkColumn, columnName)) {
+                hasPk = !autoField.isNativeField();
+            } else if (conflictUpdateFields.isEmpty() || conflictUpdateFields.contains(autoField.getName())) {
+                updateColumns.add(columnName);
+            }
+        }
+        if (StringUtils.indexOfAny(dialect, "MYSQL", "MARIADB") != -1) {
+            return this.compileMysql(columns, values, updateColumns, pkColumn);
+        } else if (StringUtils.indexOf(dialect, "POSTGRESQL") != -1) {
+            return this.compilePostgresql(columns, values, updateColumns, pkColumn);
+        } else if (StringUtils.indexOfAny(dialect, "ORACLE", "H2") != -1) {
+            if (!hasPk) {
+                throw new JdbcAssistantException("merge时主键值不能为空");
+            }
+            return this.compileMerge(columns, values, updateColumns, pkColumn);
+        }
+        throw new JdbcAssistantException("不支持upsert的数据库:" + dialect);
+    }
+
+    protected SqlTemplate compileMysql(List<String> columns, List<String> values, List<String> updateColumns,
+                                       String pkColumn) {
+        StringBuilder sql = new StringBuilder(" (").append(StringUtils.join(columns, ",")).append(")")
+            .append(VALUES).append("(").append(StringUtils.join(values, ",")).append(")")
+            .append(" ON DUPLICATE KEY UPDATE ");
+        if (updateColumns.isEmpty()) {
+            //没有需要更新的列时，主键冲突忽略
+            sql.append(pkColumn).append(" = ").append(pkColumn);
+        } else {
+            for (int i = 0; i < updateColumns.size(); i++) {
+                String column = updateColumns.get(i);
+                sql.append(i == 0 ? "" : ",").append(column).append(" = VALUES(").append(column).append(")");
+            }
+        }
+        return new SqlTemplate(COMMAND_OPEN, sql.toString());
+    }
+
+    protected SqlTemplate compilePostgresql(List<String> columns, List<String> values, List<String> updateColumns,
+                                            String pkColumn) {
+        StringBuilder sql = new StringBuilder(" (").append(StringUtils.join(columns, ",")).append(")")
+            .append(VALUES).append("(").append(StringUtils.join(values, ",")).append(")").append(" ON CONFLICT (")
+            .append(pkColumn).append(") ");
+        if (updateColumns.isEmpty()) {
+            sql.append("DO NOTHING");
+        } else {
+            sql.append("DO UPDATE SET ");
+            for (int i = 0; i < updateColumns.size(); i++) {
+                String column = updateColumns.get(i);
+                sql.append(i == 0 ? "" : ",").append(column).append(" = EXCLUDED.").append(column);
+            }
+        }
+        return new SqlTemplate(COMMAND_OPEN, sql.toString());
+    }
+
+    protected SqlTemplate compileMerge(List<String> columns, List<String> values, List<String> updateColumns,
+                                       String pkColumn) {
+        StringBuilder using = new StringBuilder();
+        //T2中的列或native值，序列等native值不能放在子查询中
+        List<String> sourceValues = new ArrayList<String>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            if ("?".equals(values.get(i))) {
+                using.append(using.length() == 0 ? "" : ",").append("? ").append(columns.get(i));
+                sourceValues.add("T2." + columns.get(i));
+            } else {
+                sourceValues.add(values.get(i));
+            }
+        }
+        StringBuilder sql = new StringBuilder(" T1 USING (SELECT ").append(using).append(" FROM DUAL) T2 ON (T1.")
+            .append(pkColumn).append(" = T2.").append(pkColumn).append(")");
+        if (!updateColumns.isEmpty()) {
+            sql.append(" WHEN MATCHED THEN UPDATE SET ");
+            for (int i = 0; i < updateColumns.size(); i++) {
+                String column = updateColumns.get(i);
+                sql.append(i == 0 ? "" : ",").append("T1.").append(column).append(" = ")
+                    .append(sourceValues.get(columns.indexOf(column)));
+            }
+        }
+        sql.append(" WHEN NOT MATCHED THEN INSERT (").append(StringUtils.join(columns, ",")).append(")")
+            .append(VALUES).append("(").append(StringUtils.join(sourceValues, ",")).append(")");
+        return new SqlTemplate(MERGE_OPEN, sql.toString());
+    }
+
+    @Override
+    protected void appendShape(StringBuilder shape) {
+        shape.append(metaTable.getDialect()).append(SHAPE_SEPARATOR).append(conflictUpdateFields)
+            .append(SHAPE_SEPARATOR);
+        super.appendShape(shape);
+    }
+}
@@ -2,12 +2,14 @@ package com.dexcoder.dal.build;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 
 import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
 
 /**
  * Created by liyd on 2015-12-4.
@@ -16,6 +18,11 @@ public class WhereBuilder extends AbstractSqlBuilder {
 
     protected static final String COMMAND_OPEN = " WHERE ";
 
+    /**
+     * 单个in列表的最大元素个数，超过时拆分成多个in(oracle限制1000)
+     */
+    public static final int       MAX_IN_SIZE  = 1000;
+
     private int                   fieldNum     = 0;
 
     public WhereBuilder(Class<?> clazz) {
@@ -44,11 +51,17 @@ public class WhereBuilder extends AbstractSqlBuilder {
     }
 
     public BoundSql buildBoundSql(Object entity, boolean isIgnoreNull) {
+        List<Object> params = new ArrayList<Object>();
+        SqlTemplate sqlTemplate = this.compileTemplate(entity, isIgnoreNull, params);
+        return new CriteriaBoundSql(sqlTemplate.getPrefix(), params);
+    }
+
+    @Override
+    protected SqlTemplate compileTemplate(Object entity, boolean isIgnoreNull, List<Object> params) {
         StringBuilder sb = new StringBuilder();
         if (metaTable.hasAutoFields()) {
             sb.append(COMMAND_OPEN);
         }
-        List<Object> params = new ArrayList<Object>();
         AutoField preAutoFile = null;
         for (Map.Entry<String, AutoField> entry : metaTable.getAutoFields().entrySet()) {
             AutoField autoField = entry.getValue();
@@ -79,7 +92,22 @@ public class WhereBuilder extends AbstractSqlBuilder {
             }
             preAutoFile = autoField;
         }
-        return new CriteriaBoundSql(sb.toString(), params);
+        return new SqlTemplate(sb.toString(), "");
+    }
+
+    @Override
+    protected void collectParameters(List<Object> params, boolean isIgnoreNull) {
+        for (AutoField autoField : metaTable.getAutoFields().values()) {
+            if (autoField.getType() == AutoFieldType.TRANSIENT || autoField.isNativeField() || autoField.isBracket()
+                || autoField.getValue() == null) {
+                continue;
+            }
+            if (autoField.getValue() instanceof Object[]) {
+                Collections.addAll(params, (Object[]) autoField.getValue());
+            } else {
+                params.add(autoField.getValue());
+            }
+        }
     }
 
     /**
@@ -91,16 +119,27 @@ public class WhereBuilder extends AbstractSqlBuilder {
      */
     protected void processArrayArgs(StringBuilder sb, List<Object> params, String columnName, AutoField autoField) {
         Object[] args = (Object[]) autoField.getValue();
-        if (autoField.isFieldOperatorNeedBracket()) {
-            sb.append(columnName).append(" ").append(autoField.getFieldOperator()).append(" (");
-            for (int i = 0; i < args.length; i++) {
-                sb.append("?");
-                if (i != args.length - 1) {
-                    sb.append(",");
+        if (autoField.isFieldOperatorNeedBracket() && args.length > MAX_IN_SIZE) {
+            //超过限制拆分成 (col IN (...) OR col IN (...))，not in 时为 AND
+            String joiner = StringUtils.containsIgnoreCase(autoField.getFieldOperator(), "NOT") ? "AND " : "OR ";
+            sb.append("(");
+            for (int from = 0; from < args.length; from += MAX_IN_SIZE) {
+                if (from > 0) {
+                    sb.append(joiner);
                 }
-                params.add(args[i]);
+                this.appendInArgs(sb, params, columnName, autoField, args, from,
+                    Math.min(from + MAX_IN_SIZE, args.length));
             }
             sb.append(") ");
+        } else if (autoField.isFieldOperatorNeedBracket()) {
+            this.appendInArgs(sb, params, columnName, autoField, args, 0, args.length);
+        } else if (StringUtils.equalsIgnoreCase("between", StringUtils.trim(autoField.getFieldOperator()))) {
+            if (args.length != 2) {
+                throw new JdbcAssistantException("between条件必须且只能有两个值:" + autoField.getName());
+            }
+            sb.append(columnName).append(" BETWEEN ? AND ? ");
+            params.add(args[0]);
+            params.add(args[1]);
         } else {
             sb.append(" (");
             for (int i = 0; i < args.length; i++) {
@@ -114,6 +153,79 @@ public class WhereBuilder extends AbstractSqlBuilder {
         }
     }
 
+    /**
+     * 拼装in条件
+     *
+     * @param sb
+     * @param params
+     * @param columnName
+     * @param autoField
+     * @param args
+     * @param from 开始下标(包含)
+     * @param to 结束下标(不包含)
+     */
+    protected void appendInArgs(StringBuilder sb, List<Object> params, String columnName, AutoField autoField,
+                                Object[] args, int from, int to) {
+        sb.append(columnName).append(" ").append(autoField.getFieldOperator()).append(" (");
+        for (int i = from; i < to; i++) {
+            sb.append("?");
+            if (i != to - 1) {
+                sb.append(",");
+            }
+            params.add(args[i]);
+        }
+        sb.append(") ");
+    }
+
+    /**
+     * 获取元素个数超过threshold的in条件，只有所有条件都是and时才返回，这样按in拆分后合并的结果才与原结果一致
+     * not in不能拆分执行，不会返回
+     *
+     * @param threshold the threshold
+     * @return 条件的key，没有时返回null
+     */
+    public String getLargeInCondition(int threshold) {
+        String key = null;
+        for (Map.Entry<String, AutoField> entry : metaTable.getAutoFields().entrySet()) {
+            AutoField autoField = entry.getValue();
+            if (autoField.getType() == AutoFieldType.TRANSIENT) {
+                continue;
+            }
+            if (autoField.isBracket() || StringUtils.equalsIgnoreCase("or", autoField.getLogicalOperator())) {
+                return null;
+            }
+            if (key == null && !autoField.isNativeField()
+                && StringUtils.equalsIgnoreCase("in", StringUtils.trim(autoField.getFieldOperator()))
+                && autoField.getValue() instanceof Object[] && ((Object[]) autoField.getValue()).length > threshold) {
+                key = entry.getKey();
+            }
+        }
+        return key;
+    }
+
+    /**
+     * 获取条件
+     *
+     * @param key the key
+     * @return auto field
+     */
+    public AutoField getCondition(String key) {
+        return metaTable.getAutoFields().get(key);
+    }
+
+    /**
+     * 替换条件，位置不变
+     *
+     * @param key the key
+     * @param autoField the auto field
+     */
+    public void replaceCondition(String key, AutoField autoField) {
+        if (!metaTable.getAutoFields().containsKey(key)) {
+            throw new JdbcAssistantException("条件不存在:" + key);
+        }
+        metaTable.getAutoFields().put(key, autoField);
+    }
+
     /**
      * 是否括号类型开始
      *
@@ -0,0 +1,85 @@
+package com.dexcoder.dal.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.dexcoder.dal.build.AutoField;
+import com.dexcoder.dal.build.AutoFieldType;
+
+/**
+ * 分表策略基类，提供分片键条件的提取
+ */
+public abstract class AbstractShardingStrategy implements ShardingStrategy {
+
+    /** 分片键属性名 */
+    protected String shardField;
+
+    /**
+     * 获取分片键上可以用来缩小物理表范围的条件
+     * <pre>
+     *     只取最外层并且都是and连接的条件，括号中的条件不使用
+     *     最外层有or时条件不能用来缩小范围，返回null
+     * </pre>
+     *
+     * @param fieldMap the field map
+     * @return 分片键的条件，最外层有or时返回null
+     */
+    protected List<AutoField> getShardConditions(Map<String, AutoField> fieldMap) {
+        List<AutoField> conditions = new ArrayList<AutoField>();
+        if (fieldMap == null) {
+            return conditions;
+        }
+        int depth = 0;
+        for (AutoField autoField : fieldMap.values()) {
+            if (depth == 0 && StringUtils.equalsIgnoreCase("or", autoField.getLogicalOperator())) {
+                return null;
+            }
+            if (autoField.getType() == AutoFieldType.BRACKET_BEGIN) {
+                depth++;
+            } else if (autoField.getType() == AutoFieldType.BRACKET_END) {
+                depth--;
+            } else if (depth == 0 && StringUtils.equals(shardField, autoField.getName())
+                       && isValueType(autoField.getType()) && autoField.getValue() != null) {
+                conditions.add(autoField);
+            }
+        }
+        return conditions;
+    }
+
+    /**
+     * 是否等值条件(insert、update的属性没有操作符)
+     *
+     * @param autoField the auto field
+     * @return the boolean
+     */
+    protected boolean isEqualCondition(AutoField autoField) {
+        return StringUtils.isBlank(autoField.getFieldOperator()) || "=".equals(autoField.getFieldOperator().trim());
+    }
+
+    /**
+     * 是否in条件
+     *
+     * @param autoField the auto field
+     * @return the boolean
+     */
+    protected boolean isInCondition(AutoField autoField) {
+        return autoField.getValue() instanceof Object[]
+               && StringUtils.equalsIgnoreCase("in", StringUtils.trim(autoField.getFieldOperator()));
+    }
+
+    private static boolean isValueType(AutoFieldType type) {
+        return type == AutoFieldType.NORMAL || type == AutoFieldType.INSERT || type == AutoFieldType.UPDATE
+               || type == AutoFieldType.WHERE || type == AutoFieldType.TRANSIENT;
+    }
+
+    public String getShardField() {
+        return shardField;
+    }
+
+    public void setShardField(String shardField) {
+        this.shardField = shardField;
+    }
+}
@@ -41,4 +41,18 @@ public class DefaultMappingHandler implements MappingHandler {
         return NameUtils.getUnderlineName(fieldName);
     }
 
+    /**
+     * 没有状态，同一个类的实例映射规则相同，sql模板缓存可以共用
+     * 有影响列名、主键的状态的子类需要覆盖
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o != null && o.getClass() == this.getClass());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.getClass().hashCode();
+    }
+
 }
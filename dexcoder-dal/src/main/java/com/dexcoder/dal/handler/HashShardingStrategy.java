@@ -0,0 +1,130 @@
+package com.dexcoder.dal.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.dexcoder.dal.build.AutoField;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+
+/**
+ * 按分片键取模或hash的分表策略，物理表名为 逻辑表名_序号，序号从0开始
+ * <pre>
+ *     mod：分片键为数字时按值取模，与 bookId % 3 的手写分表相同
+ *     hash：按值的hashCode取模，适用于字符串等非数字的分片键
+ *     分片键为 = 或 in 条件时只访问对应的物理表，没有分片键或最外层有or时访问所有物理表
+ * </pre>
+ */
+public class HashShardingStrategy extends AbstractShardingStrategy {
+
+    /** 取模 */
+    public static final String ALGORITHM_MOD  = "mod";
+
+    /** hash */
+    public static final String ALGORITHM_HASH = "hash";
+
+    /** 分表数 */
+    private int                shardCount;
+
+    /** 分片算法 */
+    private String             algorithm      = ALGORITHM_MOD;
+
+    /** 物理表名格式，参数为逻辑表名和序号 */
+    private String             tableFormat    = "%s_%d";
+
+    public HashShardingStrategy() {
+    }
+
+    public HashShardingStrategy(String shardField, int shardCount) {
+        this.shardField = shardField;
+        this.shardCount = shardCount;
+    }
+
+    public List<String> route(String logicTableName, Map<String, AutoField> fieldMap) {
+        List<AutoField> conditions = this.getShardConditions(fieldMap);
+        if (conditions == null) {
+            return this.getAllTables(logicTableName);
+        }
+        TreeSet<Integer> shards = null;
+        for (AutoField autoField : conditions) {
+            TreeSet<Integer> conditionShards = new TreeSet<Integer>();
+            if (this.isInCondition(autoField)) {
+                for (Object value : (Object[]) autoField.getValue()) {
+                    conditionShards.add(this.shard(value));
+                }
+            } else if (this.isEqualCondition(autoField) && !(autoField.getValue() instanceof Object[])) {
+                conditionShards.add(this.shard(autoField.getValue()));
+            } else {
+                continue;
+            }
+            //多个条件时取交集
+            if (shards == null) {
+                shards = conditionShards;
+            } else {
+                shards.retainAll(conditionShards);
+            }
+        }
+        if (shards == null) {
+            return this.getAllTables(logicTableName);
+        }
+        List<String> tables = new ArrayList<String>(shards.size());
+        for (Integer shard : shards) {
+            tables.add(this.getTableName(logicTableName, shard));
+        }
+        return tables;
+    }
+
+    public List<String> getAllTables(String logicTableName) {
+        this.assertShardCount();
+        List<String> tables = new ArrayList<String>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            tables.add(this.getTableName(logicTableName, i));
+        }
+        return tables;
+    }
+
+    /**
+     * 计算分片键值对应的分表序号
+     *
+     * @param value 分片键的值
+     * @return 分表序号
+     */
+    protected int shard(Object value) {
+        this.assertShardCount();
+        if (StringUtils.equalsIgnoreCase(ALGORITHM_MOD, algorithm) && value instanceof Number) {
+            return (int) Math.floorMod(((Number) value).longValue(), (long) shardCount);
+        }
+        int hash = value instanceof Number ? Long.hashCode(((Number) value).longValue()) : String.valueOf(value)
+            .hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    protected String getTableName(String logicTableName, int shard) {
+        return String.format(tableFormat, logicTableName, shard);
+    }
+
+    private void assertShardCount() {
+        if (shardCount <= 0) {
+            throw new JdbcAssistantException("分表数shardCount必须大于0");
+        }
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public void setTableFormat(String tableFormat) {
+        this.tableFormat = tableFormat;
+    }
+}
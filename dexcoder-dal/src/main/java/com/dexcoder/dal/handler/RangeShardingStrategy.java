@@ -0,0 +1,261 @@
+package com.dexcoder.dal.handler;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.apache.commons.lang3.time.DateUtils;
+
+import com.dexcoder.dal.build.AutoField;
+import com.dexcoder.dal.build.AutoFieldType;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+
+/**
+ * 按时间范围分表(分区)的策略，物理表名为 逻辑表名_时间后缀，例如按月分表的 ORDER_202601、ORDER_202602
+ * <pre>
+ *     分区从start开始，共partitionCount个，按unit(year、month、day)递增
+ *     根据分片键的 =、in、&gt;、&gt;=、&lt;、&lt;=、between 条件计算最小的分区范围，只访问这些分区
+ *     条件对应的范围不在任何分区内时访问最近的一个分区(条件本身会过滤掉所有记录)，insert的值不在分区内时抛出异常
+ *     没有分片键或最外层有or时访问所有分区
+ * </pre>
+ */
+public class RangeShardingStrategy extends AbstractShardingStrategy {
+
+    public static final String    UNIT_YEAR      = "year";
+
+    public static final String    UNIT_MONTH     = "month";
+
+    public static final String    UNIT_DAY       = "day";
+
+    /** 分片键为字符串时支持的日期格式 */
+    private static final String[] DATE_PATTERNS  = { "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss",
+            "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd", "yyyy-MM", "yyyyMMdd", "yyyyMM", "yyyy" };
+
+    private static final long     MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /** 分区单位 */
+    private String                unit           = UNIT_MONTH;
+
+    /** 第一个分区的开始时间 */
+    private Date                  start;
+
+    /** 分区数 */
+    private int                   partitionCount;
+
+    /** 物理表名格式，参数为逻辑表名和时间后缀 */
+    private String                tableFormat    = "%s_%s";
+
+    /** 时间后缀格式，不设置时按unit为 yyyy、yyyyMM、yyyyMMdd */
+    private String                suffixPattern;
+
+    public RangeShardingStrategy() {
+    }
+
+    public RangeShardingStrategy(String shardField, String start, int partitionCount) {
+        this.shardField = shardField;
+        this.setStart(start);
+        this.partitionCount = partitionCount;
+    }
+
+    public List<String> route(String logicTableName, Map<String, AutoField> fieldMap) {
+        List<AutoField> conditions = this.getShardConditions(fieldMap);
+        if (conditions == null) {
+            return this.getAllTables(logicTableName);
+        }
+        this.assertPartitions();
+        int lower = 0;
+        int upper = partitionCount - 1;
+        TreeSet<Integer> partitions = null;
+        for (AutoField autoField : conditions) {
+            String operator = StringUtils.lowerCase(StringUtils.trim(autoField.getFieldOperator()));
+            Object value = autoField.getValue();
+            if (this.isInCondition(autoField)) {
+                TreeSet<Integer> inPartitions = new TreeSet<Integer>();
+                for (Object v : (Object[]) value) {
+                    inPartitions.add(this.partition(v));
+                }
+                partitions = this.retain(partitions, inPartitions);
+            } else if ("between".equals(operator) && value instanceof Object[] && ((Object[]) value).length == 2) {
+                lower = Math.max(lower, this.partition(((Object[]) value)[0]));
+                upper = Math.min(upper, this.partition(((Object[]) value)[1]));
+            } else if (value instanceof Object[]) {
+                //多个值时是or的关系，不用来缩小范围
+                continue;
+            } else if (this.isEqualCondition(autoField)) {
+                int partition = this.partition(value);
+                if ((autoField.getType() == AutoFieldType.INSERT || autoField.getType() == AutoFieldType.NORMAL)
+                    && (partition < 0 || partition >= partitionCount)) {
+                    throw new JdbcAssistantException(shardField + "的值[" + value + "]不在分区范围内");
+                }
+                TreeSet<Integer> equalPartitions = new TreeSet<Integer>();
+                equalPartitions.add(partition);
+                partitions = this.retain(partitions, equalPartitions);
+            } else if (">".equals(operator) || ">=".equals(operator)) {
+                lower = Math.max(lower, this.partition(value));
+            } else if ("<=".equals(operator)) {
+                upper = Math.min(upper, this.partition(value));
+            } else if ("<".equals(operator)) {
+                //小于某个分区的开始时间时不包含该分区
+                int partition = this.partition(value);
+                upper = Math.min(upper, this.isPartitionStart(value) ? partition - 1 : partition);
+            }
+        }
+        List<String> tables = new ArrayList<String>();
+        for (int i = lower; i <= upper; i++) {
+            if (partitions == null || partitions.contains(i)) {
+                tables.add(this.getTableName(logicTableName, i));
+            }
+        }
+        if (tables.isEmpty()) {
+            //条件不会匹配任何记录，访问一个实际存在的分区保证sql能正常执行
+            int nearest = Math.min(Math.max(lower, 0), partitionCount - 1);
+            tables.add(this.getTableName(logicTableName, nearest));
+        }
+        return tables;
+    }
+
+    public List<String> getAllTables(String logicTableName) {
+        this.assertPartitions();
+        List<String> tables = new ArrayList<String>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            tables.add(this.getTableName(logicTableName, i));
+        }
+        return tables;
+    }
+
+    /**
+     * 计算分片键值对应的分区序号，可能小于0或大于等于分区数
+     *
+     * @param value 分片键的值
+     * @return 分区序号
+     */
+    protected int partition(Object value) {
+        this.assertPartitions();
+        Calendar startCalendar = Calendar.getInstance();
+        startCalendar.setTime(start);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(this.toDate(value));
+        int years = calendar.get(Calendar.YEAR) - startCalendar.get(Calendar.YEAR);
+        if (StringUtils.equalsIgnoreCase(UNIT_YEAR, unit)) {
+            return years;
+        } else if (StringUtils.equalsIgnoreCase(UNIT_DAY, unit)) {
+            return (int) (this.localDays(calendar.getTime()) - this.localDays(start));
+        }
+        return years * 12 + calendar.get(Calendar.MONTH) - startCalendar.get(Calendar.MONTH);
+    }
+
+    protected String getTableName(String logicTableName, int partition) {
+        Date partitionStart = DateUtils.truncate(start, this.getCalendarField());
+        if (StringUtils.equalsIgnoreCase(UNIT_YEAR, unit)) {
+            partitionStart = DateUtils.addYears(partitionStart, partition);
+        } else if (StringUtils.equalsIgnoreCase(UNIT_DAY, unit)) {
+            partitionStart = DateUtils.addDays(partitionStart, partition);
+        } else {
+            partitionStart = DateUtils.addMonths(partitionStart, partition);
+        }
+        return String.format(tableFormat, logicTableName,
+            DateFormatUtils.format(partitionStart, this.getSuffixPattern()));
+    }
+
+    /**
+     * 值是否正好是某个分区的开始时间
+     *
+     * @param value the value
+     * @return the boolean
+     */
+    private boolean isPartitionStart(Object value) {
+        Date date = this.toDate(value);
+        return DateUtils.truncate(date, this.getCalendarField()).getTime() == date.getTime();
+    }
+
+    private long localDays(Date date) {
+        long millis = date.getTime() + TimeZone.getDefault().getOffset(date.getTime());
+        return Math.floorDiv(millis, MILLIS_PER_DAY);
+    }
+
+    private Date toDate(Object value) {
+        if (value instanceof Date) {
+            return (Date) value;
+        } else if (value instanceof Calendar) {
+            return ((Calendar) value).getTime();
+        } else if (value instanceof Number) {
+            return new Date(((Number) value).longValue());
+        }
+        try {
+            return DateUtils.parseDateStrictly(String.valueOf(value), DATE_PATTERNS);
+        } catch (ParseException e) {
+            throw new JdbcAssistantException(shardField + "的值[" + value + "]不是有效的时间", e);
+        }
+    }
+
+    private TreeSet<Integer> retain(TreeSet<Integer> partitions, TreeSet<Integer> conditionPartitions) {
+        //多个条件时取交集
+        if (partitions == null) {
+            return conditionPartitions;
+        }
+        partitions.retainAll(conditionPartitions);
+        return partitions;
+    }
+
+    private int getCalendarField() {
+        if (StringUtils.equalsIgnoreCase(UNIT_YEAR, unit)) {
+            return Calendar.YEAR;
+        } else if (StringUtils.equalsIgnoreCase(UNIT_DAY, unit)) {
+            return Calendar.DATE;
+        }
+        return Calendar.MONTH;
+    }
+
+    private String getSuffixPattern() {
+        if (suffixPattern != null) {
+            return suffixPattern;
+        } else if (StringUtils.equalsIgnoreCase(UNIT_YEAR, unit)) {
+            return "yyyy";
+        } else if (StringUtils.equalsIgnoreCase(UNIT_DAY, unit)) {
+            return "yyyyMMdd";
+        }
+        return "yyyyMM";
+    }
+
+    private void assertPartitions() {
+        if (start == null || partitionCount <= 0) {
+            throw new JdbcAssistantException("分区开始时间start不能为空，分区数partitionCount必须大于0");
+        }
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * 第一个分区的开始时间，例如 2024-01
+     *
+     * @param start the start
+     */
+    public void setStart(String start) {
+        this.start = this.toDate(start);
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public void setPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    public void setTableFormat(String tableFormat) {
+        this.tableFormat = tableFormat;
+    }
+
+    public void setSuffixPattern(String suffixPattern) {
+        this.suffixPattern = suffixPattern;
+    }
+}
@@ -0,0 +1,377 @@
+package com.dexcoder.dal.handler;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.dexcoder.dal.build.AutoField;
+import com.dexcoder.dal.build.EntityMetadata;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+
+/**
+ * 号段(hi/lo)主键生成器，每个实体一次从数据库获取step个主键，在内存中分配
+ * <pre>
+ *     主键值在插入前生成，不需要每条记录都访问序列，也不需要获取数据库生成的主键，可以批量插入
+ *     当前号段剩余比例低于refillRatio时异步获取下一号段(双缓冲)，当前号段用完时直接切换
+ *
+ *     号段来源：
+ *     sequence：序列 SEQ_表名，序列的INCREMENT BY必须等于step，每次取NEXTVAL作为号段起始值
+ *     table：主键表，一个事务中 MAX_ID = MAX_ID + step 后读取，表结构：
+ *     CREATE TABLE DAL_KEY_SEGMENT (KEY_NAME VARCHAR(64) PRIMARY KEY, MAX_ID BIGINT NOT NULL)
+ *
+ *     dataSource需要使用写库，获取号段使用独立的连接和事务，不受业务事务回滚影响
+ *     主键名为实体的表名，与sql的表名一样按@Table、mappingHandler获取，mappingHandler需要和JdbcDao的一致
+ *     分表的实体所有物理表使用逻辑表名的号段，保证主键不重复
+ * </pre>
+ */
+public class SegmentKeyGenerator implements KeyGenerator {
+
+    /** 号段来源：序列 */
+    public static final String                   STRATEGY_SEQUENCE = "sequence";
+
+    /** 号段来源：主键表 */
+    public static final String                   STRATEGY_TABLE    = "table";
+
+    private final ConcurrentMap<String, Buffer>  buffers           = new ConcurrentHashMap<String, Buffer>();
+
+    private DataSource                           dataSource;
+
+    /** 获取主键名的表名处理 */
+    private MappingHandler                       mappingHandler    = new DefaultMappingHandler();
+
+    /** 号段来源 */
+    private String                               strategy          = STRATEGY_SEQUENCE;
+
+    /** 每个号段的主键个数 */
+    private int                                  step              = 1000;
+
+    /** 当前号段剩余比例低于该值时异步获取下一号段 */
+    private double                               refillRatio       = 0.2;
+
+    /** 主键表名 */
+    private String                               keyTable          = "DAL_KEY_SEGMENT";
+
+    /** 异步获取号段的线程 */
+    private volatile ExecutorService             refillExecutor;
+
+    public boolean isPkValueBySql() {
+        return false;
+    }
+
+    public String handlePkFieldName(String pkFieldName, String dialect) {
+        return pkFieldName;
+    }
+
+    public Serializable generateKeyValue(Class<?> clazz, String dialect) {
+        return this.nextId(this.getKeyName(clazz), dialect);
+    }
+
+    /**
+     * 获取实体的主键名，@Table有表名时直接使用，否则用mappingHandler获取
+     *
+     * @param clazz the clazz
+     * @return 表名
+     */
+    protected String getKeyName(Class<?> clazz) {
+        EntityMetadata metadata = EntityMetadata.forClass(clazz);
+        if (metadata.hasAnnotationTableName()) {
+            return metadata.getAnnotationTableName();
+        }
+        MappingHandler handler = metadata.getAnnotationMappingHandler() != null ? metadata
+            .getAnnotationMappingHandler() : this.mappingHandler;
+        if (handler instanceof ShardingMappingHandler) {
+            return ((ShardingMappingHandler) handler).getLogicTableName(clazz);
+        }
+        return handler.getTableName(clazz, new HashMap<String, AutoField>());
+    }
+
+    /**
+     * 获取下一个主键
+     *
+     * @param keyName 主键名，默认为实体对应的表名
+     * @param dialect the dialect
+     * @return long
+     */
+    public long nextId(String keyName, String dialect) {
+        Buffer buffer = buffers.get(keyName);
+        if (buffer == null) {
+            buffer = new Buffer();
+            Buffer exists = buffers.putIfAbsent(keyName, buffer);
+            if (exists != null) {
+                buffer = exists;
+            }
+        }
+        while (true) {
+            Segment segment = buffer.current;
+            if (segment != null) {
+                long id = segment.next.getAndIncrement();
+                if (id <= segment.max) {
+                    if (id >= segment.refillAt && buffer.next == null) {
+                        this.refillAsync(buffer, keyName, dialect);
+                    }
+                    return id;
+                }
+            }
+            this.switchSegment(buffer, segment, keyName, dialect);
+        }
+    }
+
+    /**
+     * 当前号段用完时切换到下一号段，下一号段正在异步获取时等待，没有时同步获取
+     */
+    private void switchSegment(Buffer buffer, Segment exhausted, String keyName, String dialect) {
+        synchronized (buffer) {
+            if (buffer.current != exhausted) {
+                return;
+            }
+            while (buffer.next == null && buffer.loading.get()) {
+                try {
+                    buffer.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JdbcAssistantException("等待获取号段被中断", e);
+                }
+            }
+            if (buffer.next != null) {
+                buffer.current = buffer.next;
+                buffer.next = null;
+            } else {
+                buffer.current = this.newSegment(keyName, dialect);
+            }
+        }
+    }
+
+    private void refillAsync(final Buffer buffer, final String keyName, final String dialect) {
+        if (!buffer.loading.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.getRefillExecutor().execute(new Runnable() {
+                public void run() {
+                    Segment segment = null;
+                    try {
+                        segment = newSegment(keyName, dialect);
+                    } finally {
+                        //获取失败时当前号段用完后会同步获取并抛出异常
+                        synchronized (buffer) {
+                            buffer.next = segment;
+                            buffer.loading.set(false);
+                            buffer.notifyAll();
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            buffer.loading.set(false);
+            throw e;
+        }
+    }
+
+    private Segment newSegment(String keyName, String dialect) {
+        long start = this.allocate(keyName, dialect);
+        return new Segment(start, start + step - 1, start + (long) (step * (1 - refillRatio)));
+    }
+
+    /**
+     * 从数据库获取一个号段
+     *
+     * @param keyName the key name
+     * @param dialect the dialect
+     * @return 号段的起始值，号段为 [起始值, 起始值 + step - 1]
+     */
+    protected long allocate(String keyName, String dialect) {
+        if (dataSource == null) {
+            throw new JdbcAssistantException("SegmentKeyGenerator需要设置dataSource");
+        }
+        Connection con = null;
+        try {
+            con = dataSource.getConnection();
+            if (StringUtils.equalsIgnoreCase(STRATEGY_TABLE, strategy)) {
+                return this.allocateFromTable(con, keyName);
+            }
+            return this.allocateFromSequence(con, "SEQ_" + keyName, dialect);
+        } catch (SQLException e) {
+            throw new JdbcAssistantException("获取主键号段失败:" + keyName, e);
+        } finally {
+            closeQuietly(con);
+        }
+    }
+
+    /**
+     * 从序列获取，序列的步长必须等于step
+     */
+    protected long allocateFromSequence(Connection con, String sequenceName, String dialect) throws SQLException {
+        String sql;
+        if (StringUtils.indexOf(dialect, "ORACLE") != -1) {
+            sql = "SELECT " + sequenceName + ".NEXTVAL FROM DUAL";
+        } else if (StringUtils.indexOf(dialect, "POSTGRESQL") != -1) {
+            sql = "SELECT nextval('" + sequenceName + "')";
+        } else {
+            sql = "SELECT NEXT VALUE FOR " + sequenceName;
+        }
+        return this.queryForLong(con, sql, null);
+    }
+
+    /**
+     * 从主键表获取，在一个事务中更新后读取，记录不存在时插入
+     */
+    protected long allocateFromTable(Connection con, String keyName) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try {
+            int rows = this.update(con, "UPDATE " + keyTable + " SET MAX_ID = MAX_ID + ? WHERE KEY_NAME = ?", step,
+                keyName);
+            if (rows == 0) {
+                try {
+                    this.update(con, "INSERT INTO " + keyTable + " (KEY_NAME, MAX_ID) VALUES (?, ?)", keyName, step);
+                } catch (SQLException e) {
+                    //并发插入时主键冲突，改为更新
+                    con.rollback();
+                    this.update(con, "UPDATE " + keyTable + " SET MAX_ID = MAX_ID + ? WHERE KEY_NAME = ?", step,
+                        keyName);
+                }
+            }
+            long maxId = this.queryForLong(con, "SELECT MAX_ID FROM " + keyTable + " WHERE KEY_NAME = ?", keyName);
+            con.commit();
+            return maxId - step + 1;
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    private int update(Connection con, String sql, Object... args) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            return ps.executeUpdate();
+        } finally {
+            ps.close();
+        }
+    }
+
+    private long queryForLong(Connection con, String sql, String arg) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql);
+        try {
+            if (arg != null) {
+                ps.setString(1, arg);
+            }
+            ResultSet rs = ps.executeQuery();
+            try {
+                if (!rs.next()) {
+                    throw new JdbcAssistantException("获取主键号段没有返回值:" + sql);
+                }
+                return rs.getLong(1);
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+    }
+
+    private static void closeQuietly(Connection con) {
+        if (con == null) {
+            return;
+        }
+        try {
+            con.close();
+        } catch (SQLException e) {
+            //ignore
+        }
+    }
+
+    private ExecutorService getRefillExecutor() {
+        if (refillExecutor == null) {
+            synchronized (this) {
+                if (refillExecutor == null) {
+                    refillExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "dal-segment-refill");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        return refillExecutor;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void setMappingHandler(MappingHandler mappingHandler) {
+        this.mappingHandler = mappingHandler;
+    }
+
+    public void setStrategy(String strategy) {
+        this.strategy = strategy;
+    }
+
+    public void setStep(int step) {
+        this.step = step;
+    }
+
+    public void setRefillRatio(double refillRatio) {
+        this.refillRatio = refillRatio;
+    }
+
+    public void setKeyTable(String keyTable) {
+        this.keyTable = keyTable;
+    }
+
+    public void setRefillExecutor(ExecutorService refillExecutor) {
+        this.refillExecutor = refillExecutor;
+    }
+
+    /**
+     * 号段
+     */
+    private static class Segment {
+
+        private final AtomicLong next;
+
+        private final long       max;
+
+        /** 分配到该值时开始获取下一号段 */
+        private final long       refillAt;
+
+        Segment(long start, long max, long refillAt) {
+            this.next = new AtomicLong(start);
+            this.max = max;
+            this.refillAt = refillAt;
+        }
+    }
+
+    /**
+     * 双缓冲，当前号段及预先获取的下一号段
+     */
+    private static class Buffer {
+
+        private final AtomicBoolean loading = new AtomicBoolean();
+
+        private volatile Segment    current;
+
+        private volatile Segment    next;
+    }
+}
@@ -0,0 +1,111 @@
+package com.dexcoder.dal.handler;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dexcoder.dal.build.AutoField;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+
+/**
+ * 声明式水平分表，按实体配置分表策略，代替手写getTableName
+ * <pre>
+ *     条件中有分片键时路由到单个物理表
+ *     没有分片键时insert、update、delete等抛出异常，queryList、queryCount、queryRowMapList由JdbcDao并行查询所有物理表后合并
+ *     按hash分表使用HashShardingStrategy，按时间范围分表使用RangeShardingStrategy(只访问条件范围内的分区)
+ *
+ *     &lt;bean class="com.dexcoder.dal.handler.ShardingMappingHandler"&gt;
+ *         &lt;property name="strategies"&gt;
+ *             &lt;map&gt;
+ *                 &lt;entry key="com.dexcoder.test.model.Book"&gt;
+ *                     &lt;bean class="com.dexcoder.dal.handler.HashShardingStrategy"&gt;
+ *                         &lt;property name="shardField" value="bookId"/&gt;
+ *                         &lt;property name="shardCount" value="3"/&gt;
+ *                     &lt;/bean&gt;
+ *                 &lt;/entry&gt;
+ *             &lt;/map&gt;
+ *         &lt;/property&gt;
+ *     &lt;/bean&gt;
+ * </pre>
+ */
+public class ShardingMappingHandler extends DefaultMappingHandler {
+
+    /** 指定物理表的实体类 */
+    private static final ThreadLocal<Class<?>> TARGET_CLASS = new ThreadLocal<Class<?>>();
+
+    /** 指定的物理表，并行查询所有物理表时构建每条sql使用 */
+    private static final ThreadLocal<String>   TARGET_TABLE = new ThreadLocal<String>();
+
+    /** 实体的分表策略 */
+    private Map<Class<?>, ShardingStrategy>    strategies   = new HashMap<Class<?>, ShardingStrategy>();
+
+    @Override
+    public String getTableName(Class<?> entityClass, Map<String, AutoField> fieldMap) {
+        ShardingStrategy strategy = strategies.get(entityClass);
+        if (strategy == null) {
+            return super.getTableName(entityClass, fieldMap);
+        }
+        //只对指定的实体类生效，同一sql中的其它分表实体仍按条件路由
+        String targetTable = TARGET_TABLE.get();
+        if (targetTable != null && entityClass.equals(TARGET_CLASS.get())) {
+            return targetTable;
+        }
+        List<String> tables = strategy.route(super.getTableName(entityClass, fieldMap), fieldMap);
+        if (tables.isEmpty()) {
+            throw new JdbcAssistantException(entityClass.getSimpleName() + "的条件没有匹配的物理表");
+        } else if (tables.size() != 1) {
+            throw new JdbcAssistantException(entityClass.getSimpleName() + "的条件对应多个物理表" + tables
+                                             + "，请设置分片键或使用queryList、queryCount、queryRowMapList查询");
+        }
+        return tables.get(0);
+    }
+
+    /**
+     * 获取分表前的逻辑表名
+     *
+     * @param entityClass the entity class
+     * @return 逻辑表名
+     */
+    public String getLogicTableName(Class<?> entityClass) {
+        return super.getTableName(entityClass, null);
+    }
+
+    /**
+     * 计算需要访问的物理表
+     *
+     * @param entityClass the entity class
+     * @param fieldMap    the field map
+     * @return 物理表名，实体没有分表时返回null
+     */
+    public List<String> route(Class<?> entityClass, Map<String, AutoField> fieldMap) {
+        ShardingStrategy strategy = strategies.get(entityClass);
+        if (strategy == null) {
+            return null;
+        }
+        return strategy.route(super.getTableName(entityClass, fieldMap), fieldMap);
+    }
+
+    /**
+     * 指定当前线程构建实体类的sql时使用的物理表，用完必须调用clearTargetTable
+     *
+     * @param entityClass 分表的实体类
+     * @param tableName 物理表名
+     */
+    public static void setTargetTable(Class<?> entityClass, String tableName) {
+        TARGET_CLASS.set(entityClass);
+        TARGET_TABLE.set(tableName);
+    }
+
+    public static void clearTargetTable() {
+        TARGET_CLASS.remove();
+        TARGET_TABLE.remove();
+    }
+
+    public void addStrategy(Class<?> entityClass, ShardingStrategy strategy) {
+        this.strategies.put(entityClass, strategy);
+    }
+
+    public void setStrategies(Map<Class<?>, ShardingStrategy> strategies) {
+        this.strategies = new HashMap<Class<?>, ShardingStrategy>(strategies);
+    }
+}
@@ -0,0 +1,29 @@
+package com.dexcoder.dal.handler;
+
+import java.util.List;
+import java.util.Map;
+
+import com.dexcoder.dal.build.AutoField;
+
+/**
+ * 水平分表策略，根据条件计算需要访问的物理表
+ */
+public interface ShardingStrategy {
+
+    /**
+     * 根据条件计算需要访问的物理表
+     *
+     * @param logicTableName 逻辑表名
+     * @param fieldMap       insert、update的属性及where条件
+     * @return 物理表名，条件中没有分片键时返回所有物理表
+     */
+    List<String> route(String logicTableName, Map<String, AutoField> fieldMap);
+
+    /**
+     * 获取所有物理表
+     *
+     * @param logicTableName 逻辑表名
+     * @return 物理表名
+     */
+    List<String> getAllTables(String logicTableName);
+}
@@ -0,0 +1,140 @@
+package com.dexcoder.dal.handler;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+
+/**
+ * snowflake算法的Long主键，按时间递增，主键值在插入前生成，不需要获取数据库生成的主键，可以批量插入
+ * <pre>
+ *     1位符号位 + 41位毫秒时间戳(相对epoch，约69年) + 10位workerId + 12位序列(每毫秒4096个)
+ *     时间戳和序列放在一个AtomicLong中CAS更新，无锁
+ *     时钟回拨不超过maxBackwardMillis时沿用上次的时间戳继续递增序列，超过时抛出异常
+ *     同一毫秒序列用完时借用下一毫秒，领先实际时间超过maxBackwardMillis时等待时钟追上
+ * </pre>
+ */
+public class SnowflakeKeyGenerator implements KeyGenerator {
+
+    /** 默认起始时间 2016-01-01 00:00:00 UTC */
+    public static final long  DEFAULT_EPOCH           = 1451606400000L;
+
+    /** workerId位数 */
+    public static final int   WORKER_ID_BITS          = 10;
+
+    /** 序列位数 */
+    public static final int   SEQUENCE_BITS           = 12;
+
+    /** 最大workerId */
+    public static final long  MAX_WORKER_ID           = (1L << WORKER_ID_BITS) - 1;
+
+    private static final long SEQUENCE_MASK           = (1L << SEQUENCE_BITS) - 1;
+
+    private static final int  TIMESTAMP_SHIFT         = WORKER_ID_BITS + SEQUENCE_BITS;
+
+    /** 默认允许的时钟回拨毫秒数 */
+    public static final long  DEFAULT_MAX_BACKWARD_MS = 5000;
+
+    /** 上次的时间戳(相对epoch)左移SEQUENCE_BITS位 + 序列 */
+    private final AtomicLong  state                   = new AtomicLong();
+
+    private long              workerId;
+
+    private long              epoch                   = DEFAULT_EPOCH;
+
+    private long              maxBackwardMillis       = DEFAULT_MAX_BACKWARD_MS;
+
+    public SnowflakeKeyGenerator() {
+    }
+
+    public SnowflakeKeyGenerator(long workerId) {
+        this.setWorkerId(workerId);
+    }
+
+    public boolean isPkValueBySql() {
+        return false;
+    }
+
+    public String handlePkFieldName(String pkFieldName, String dialect) {
+        return pkFieldName;
+    }
+
+    public Serializable generateKeyValue(Class<?> clazz, String dialect) {
+        return this.nextId();
+    }
+
+    /**
+     * 生成下一个主键
+     *
+     * @return long
+     */
+    public long nextId() {
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            long now = this.currentTimeMillis() - epoch;
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else if (lastTimestamp - now > maxBackwardMillis) {
+                throw new JdbcAssistantException("时钟回拨超过" + maxBackwardMillis + "毫秒，拒绝生成主键，回拨毫秒数:"
+                                                 + (lastTimestamp - now));
+            } else if ((current & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = current + 1;
+            } else if (lastTimestamp - now < maxBackwardMillis) {
+                //序列用完，借用下一毫秒
+                next = (lastTimestamp + 1) << SEQUENCE_BITS;
+            } else {
+                Thread.yield();
+                continue;
+            }
+            if (state.compareAndSet(current, next)) {
+                return ((next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT) | (workerId << SEQUENCE_BITS)
+                       | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 从主键中解析生成时间
+     *
+     * @param id the id
+     * @return 毫秒时间戳
+     */
+    public long getTimestamp(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + epoch;
+    }
+
+    /**
+     * 从主键中解析workerId
+     *
+     * @param id the id
+     * @return worker id
+     */
+    public long getWorkerId(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_WORKER_ID;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    public void setWorkerId(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new JdbcAssistantException("workerId必须在0到" + MAX_WORKER_ID + "之间:" + workerId);
+        }
+        this.workerId = workerId;
+    }
+
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+
+    public void setMaxBackwardMillis(long maxBackwardMillis) {
+        this.maxBackwardMillis = maxBackwardMillis;
+    }
+}
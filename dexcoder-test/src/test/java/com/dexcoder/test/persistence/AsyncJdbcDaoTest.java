@@ -0,0 +1,107 @@
+package com.dexcoder.test.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dexcoder.commons.pager.Pager;
+import com.dexcoder.dal.JdbcDao;
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.spring.async.AsyncJdbcDaoImpl;
+import com.dexcoder.dal.spring.datasource.DataSourceContext;
+import com.dexcoder.dal.spring.datasource.DynamicDataSourceHolder;
+import com.dexcoder.dal.spring.page.PageControl;
+import com.dexcoder.test.model.User;
+
+/**
+ * 异步dao测试，JdbcDao使用记录执行线程状态的代理，不需要数据库
+ */
+public class AsyncJdbcDaoTest {
+
+    private final AsyncJdbcDaoImpl asyncJdbcDao = new AsyncJdbcDaoImpl(newJdbcDao());
+
+    @After
+    public void shutdown() {
+        asyncJdbcDao.shutdown();
+        DynamicDataSourceHolder.clear();
+    }
+
+    @Test
+    public void propagateContext() throws Exception {
+        DataSourceContext dsContext = new DataSourceContext();
+        dsContext.setDsKey("read1");
+        dsContext.setIsWrite(false);
+        DynamicDataSourceHolder.setDsContent(dsContext);
+        PageControl.performPage(2, 10);
+
+        Pager pager = asyncJdbcDao.queryPage(Criteria.select(User.class)).get();
+        //分页设置已交给执行线程
+        Assert.assertNull(PageControl.LOCAL_PAGER.get());
+        Assert.assertEquals(Arrays.asList("dal-async-read1", "read1", "true"), pager.getList());
+
+        List<Object> state = asyncJdbcDao.<Object> queryList(Criteria.select(User.class)).get();
+        Assert.assertEquals("read1", state.get(1));
+        Assert.assertEquals("false", state.get(2));
+        Assert.assertEquals("read1", DynamicDataSourceHolder.getDsContent().getDsKey());
+    }
+
+    @Test
+    public void writeKeepsPager() throws Exception {
+        PageControl.performPage(1, 10);
+        try {
+            //非查询不取走调用线程的分页，执行线程中也没有分页
+            Assert.assertEquals(Integer.valueOf(0), asyncJdbcDao.update(Criteria.update(User.class)).get());
+            Assert.assertNotNull(PageControl.LOCAL_PAGER.get());
+            Assert.assertTrue(PageControl.isGetItemsTotal());
+        } finally {
+            PageControl.clear();
+        }
+    }
+
+    @Test
+    public void concurrentQueries() throws Exception {
+        //5个各耗时200ms的查询同时执行
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(asyncJdbcDao.queryCount(Criteria.select(User.class)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
+        for (CompletableFuture<Integer> future : futures) {
+            Assert.assertEquals(Integer.valueOf(1), future.get());
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 800);
+    }
+
+    private static JdbcDao newJdbcDao() {
+        return (JdbcDao) Proxy.newProxyInstance(JdbcDao.class.getClassLoader(), new Class<?>[] { JdbcDao.class },
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("queryCount".equals(method.getName())) {
+                        Thread.sleep(200);
+                        return 1;
+                    }
+                    if ("update".equals(method.getName())) {
+                        return PageControl.LOCAL_PAGER.get() == null ? 0 : 1;
+                    }
+                    //返回执行线程名、数据源key及是否有分页
+                    List<Object> state = new ArrayList<Object>();
+                    state.add(Thread.currentThread().getName().replaceAll("-\\d+$", ""));
+                    state.add(DynamicDataSourceHolder.getDsContent().getDsKey());
+                    state.add(String.valueOf(PageControl.LOCAL_PAGER.get() != null && PageControl.isGetItemsTotal()));
+                    if (PageControl.LOCAL_PAGER.get() != null) {
+                        PageControl.LOCAL_PAGER.get().setList(state);
+                    }
+                    return state;
+                }
+            });
+    }
+}
@@ -1,12 +1,31 @@
 package com.dexcoder.test.persistence;
 
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Date;
+import java.util.List;
 
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
 import org.junit.Test;
 
 import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.annotation.Table;
 import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.build.EntityMetadata;
+import com.dexcoder.dal.build.EntitySnapshots;
+import com.dexcoder.dal.build.InsertBoundSql;
+import com.dexcoder.dal.build.SqlTemplateCache;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
 import com.dexcoder.dal.handler.DefaultMappingHandler;
+import com.dexcoder.dal.handler.HashShardingStrategy;
+import com.dexcoder.dal.handler.MappingHandler;
+import com.dexcoder.dal.handler.RangeShardingStrategy;
+import com.dexcoder.dal.handler.ShardingMappingHandler;
+import com.dexcoder.dal.spring.parallel.InTempTable;
+import com.dexcoder.dal.spring.parallel.ShardAggregator;
+import com.dexcoder.test.model.Book;
 import com.dexcoder.test.model.User;
 
 /**
@@ -221,4 +240,352 @@ public class CriteriaTest {
         }
     }
 
+    @Test
+    public void entityMetadata() {
+        EntityMetadata metadata = EntityMetadata.forClass(User.class);
+        Assert.assertSame(metadata, EntityMetadata.forClass(User.class));
+        Assert.assertTrue(metadata.isTransientField("gmtBeginTime"));
+        Assert.assertFalse(metadata.getColumnFieldNames().contains("gmtBeginTime"));
+        Assert.assertEquals("`USER_AGE`", metadata.getAnnotationColumnName("userAge"));
+
+        BoundSql boundSql = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler())
+            .where("userId", new Object[] { 111 }).build(null, true);
+        Assert.assertFalse(boundSql.getSql().contains("GMT_BEGIN_TIME"));
+        Assert.assertTrue(boundSql.getSql().contains("`USER_AGE`"));
+    }
+
+    @Test
+    public void sqlTemplateCache() {
+        MappingHandler mappingHandler = new CustomMappingHandler();
+        Criteria.select(Book.class).mappingHandler(mappingHandler).where("bookId", new Object[] { 4L })
+            .and("bookName", "like", new Object[] { "%java%" }).build(null, true);
+        long hitCount = SqlTemplateCache.getHitCount();
+
+        BoundSql boundSql = Criteria.select(Book.class).mappingHandler(mappingHandler)
+            .where("bookId", new Object[] { 5L }).and("bookName", "like", new Object[] { "%c%" }).build(null, true);
+        System.out.println(boundSql.getSql());
+        Assert.assertEquals(hitCount + 1, SqlTemplateCache.getHitCount());
+        //表名每次都实时获取
+        Assert.assertTrue(boundSql.getSql().contains("FROM BOOK_2 "));
+        Assert.assertEquals(2, boundSql.getParameters().size());
+        Assert.assertEquals(5L, boundSql.getParameters().get(0));
+        Assert.assertEquals("%c%", boundSql.getParameters().get(1));
+
+        SqlTemplateCache.setEnabled(false);
+        try {
+            BoundSql noCacheBoundSql = Criteria.select(Book.class).mappingHandler(mappingHandler)
+                .where("bookId", new Object[] { 5L }).and("bookName", "like", new Object[] { "%c%" })
+                .build(null, true);
+            Assert.assertEquals(noCacheBoundSql.getSql(), boundSql.getSql());
+        } finally {
+            SqlTemplateCache.setEnabled(true);
+        }
+
+        //每次新建的同类名称处理器共用模板，不会增加缓存
+        Criteria.select(Book.class).mappingHandler(new CustomMappingHandler()).where("bookId", new Object[] { 6L })
+            .and("bookName", "like", new Object[] { "%d%" }).build(null, true);
+        Assert.assertEquals(hitCount + 2, SqlTemplateCache.getHitCount());
+    }
+
+    @Test
+    public void multiValuesInsertSql() {
+        User user = new User();
+        user.setLoginName("selfly");
+        user.setUserAge(18);
+        BoundSql boundSql = Criteria.insert(User.class).mappingHandler(new DefaultMappingHandler())
+            .into("[gmtCreate]", "now()").build(user, true);
+        String sql = ((InsertBoundSql) boundSql).multiValuesSql(3);
+        System.out.println(sql);
+        Assert.assertTrue(sql.endsWith("VALUES (now(),?,?),(now(),?,?),(now(),?,?)"));
+
+        //使用缓存的模板时同样保留values部分
+        InsertBoundSql cached = (InsertBoundSql) Criteria.insert(User.class)
+            .mappingHandler(new DefaultMappingHandler()).into("[gmtCreate]", "now()").build(user, true);
+        Assert.assertEquals("(now(),?,?)", cached.getValuesSql());
+        Assert.assertEquals(sql, cached.multiValuesSql(3));
+    }
+
+    @Test
+    public void seekSelectSql() {
+        Criteria criteria = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler())
+            .where("userType", new Object[] { "1" }).or("userType", new Object[] { "2" }).desc("gmtCreate")
+            .asc("userId");
+        User last = new User();
+        last.setUserId(100L);
+        last.setGmtCreate(new Date());
+        BoundSql boundSql = criteria.after(criteria.getSortValues(last)).build(true);
+        System.out.println(boundSql.getSql());
+        Assert.assertTrue(boundSql.getSql().contains(
+            "WHERE (USER_TYPE =  ? or USER_TYPE =  ? ) AND ((GMT_CREATE < ?) OR (GMT_CREATE = ? AND USER_ID > ?))"));
+        Assert.assertEquals(5, boundSql.getParameters().size());
+        Assert.assertEquals(100L, boundSql.getParameters().get(4));
+
+        //未设置排序时按主键降序
+        boundSql = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler()).after(100L).build(true);
+        System.out.println(boundSql.getSql());
+        Assert.assertTrue(boundSql.getSql().endsWith("WHERE ((USER_ID < ?))  ORDER BY USER_ID DESC"));
+
+        //普通查询不追加主键
+        criteria = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler()).desc("gmtCreate");
+        Assert.assertEquals(1, criteria.getSortValues(last).length);
+        Assert.assertTrue(criteria.build(true).getSql().endsWith("ORDER BY GMT_CREATE DESC"));
+
+        //keyset分页时排序字段不唯一追加主键，第一页after为空时同样追加
+        Object[] sortValues = criteria.after().getSortValues(last);
+        Assert.assertEquals(2, sortValues.length);
+        Assert.assertTrue(criteria.build(true).getSql().endsWith("ORDER BY GMT_CREATE DESC,USER_ID DESC"));
+        boundSql = criteria.after(sortValues).build(true);
+        System.out.println(boundSql.getSql());
+        Assert.assertTrue(boundSql.getSql().endsWith(
+            "WHERE ((GMT_CREATE < ?) OR (GMT_CREATE = ? AND USER_ID < ?))  ORDER BY GMT_CREATE DESC,USER_ID DESC"));
+
+        try {
+            criteria.after(null, 100L);
+            Assert.fail();
+        } catch (JdbcAssistantException e) {
+            Assert.assertTrue(e.getMessage().contains("非空列"));
+        }
+    }
+
+    @Test
+    public void tableAnnotationWithoutName() {
+        //没有设置表名时pkField、alias也生效
+        BoundSql boundSql = Criteria.select(NoNameTable.class).mappingHandler(new DefaultMappingHandler())
+            .where("code", new Object[] { "a" }).build(true);
+        Assert.assertTrue(boundSql.getSql().contains("FROM NO_NAME_TABLE n WHERE"));
+        Assert.assertTrue(boundSql.getSql().endsWith("ORDER BY n.CODE DESC"));
+    }
+
+    @Test
+    public void upsertSql() {
+        User user = new User();
+        user.setUserId(1L);
+        user.setLoginName("selfly");
+        user.setPassword("123456");
+
+        BoundSql boundSql = Criteria.upsert(User.class).mappingHandler(new DefaultMappingHandler()).dialect("MYSQL")
+            .build(user, true);
+        System.out.println(boundSql.getSql());
+        Assert.assertEquals("INSERT INTO USER (LOGIN_NAME,PASSWORD,USER_ID) VALUES (?,?,?) "
+                            + "ON DUPLICATE KEY UPDATE LOGIN_NAME = VALUES(LOGIN_NAME),PASSWORD = VALUES(PASSWORD)",
+            boundSql.getSql());
+        Assert.assertEquals(3, boundSql.getParameters().size());
+
+        boundSql = Criteria.upsert(User.class).mappingHandler(new DefaultMappingHandler()).dialect("POSTGRESQL")
+            .onConflictUpdate("password").build(user, true);
+        System.out.println(boundSql.getSql());
+        Assert.assertTrue(boundSql.getSql().endsWith("ON CONFLICT (USER_ID) DO UPDATE SET PASSWORD = EXCLUDED.PASSWORD"));
+
+        boundSql = Criteria.upsert(User.class).mappingHandler(new DefaultMappingHandler()).dialect("ORACLE")
+            .into("[gmtCreate]", "sysdate").build(user, true);
+        System.out.println(boundSql.getSql());
+        Assert.assertEquals("MERGE INTO USER T1 USING (SELECT ? LOGIN_NAME,? PASSWORD,? USER_ID FROM DUAL) T2 "
+                            + "ON (T1.USER_ID = T2.USER_ID) WHEN MATCHED THEN UPDATE SET T1.GMT_CREATE = sysdate,"
+                            + "T1.LOGIN_NAME = T2.LOGIN_NAME,T1.PASSWORD = T2.PASSWORD WHEN NOT MATCHED THEN "
+                            + "INSERT (GMT_CREATE,LOGIN_NAME,PASSWORD,USER_ID) VALUES "
+                            + "(sysdate,T2.LOGIN_NAME,T2.PASSWORD,T2.USER_ID)", boundSql.getSql());
+        Assert.assertEquals(3, boundSql.getParameters().size());
+
+        //设置了表别名时也使用不带别名的表名
+        boundSql = Criteria.upsert(User.class).mappingHandler(new DefaultMappingHandler()).dialect("ORACLE")
+            .tableAlias("t").build(user, true);
+        Assert.assertTrue(boundSql.getSql().startsWith("MERGE INTO USER T1 USING "));
+        boundSql = Criteria.upsert(User.class).mappingHandler(new DefaultMappingHandler()).dialect("MYSQL")
+            .tableAlias("t").build(user, true);
+        Assert.assertTrue(boundSql.getSql().startsWith("INSERT INTO USER (LOGIN_NAME,"));
+    }
+
+    @Test
+    public void largeInSql() {
+        Object[] ids = new Object[2500];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (long) i;
+        }
+        BoundSql boundSql = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler())
+            .where("userId", "in", ids).build(true);
+        String sql = boundSql.getSql();
+        Assert.assertTrue(sql.contains("WHERE (USER_ID in (?,"));
+        Assert.assertEquals(2, StringUtils.countMatches(sql, ") OR USER_ID in ("));
+        Assert.assertEquals(2500, boundSql.getParameters().size());
+
+        //not in 拆分后用and连接
+        boundSql = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler())
+            .where("userId", "not in", ids).build(true);
+        Assert.assertEquals(2, StringUtils.countMatches(boundSql.getSql(), ") AND USER_ID not in ("));
+
+        //只有全部是and条件时才能拆分执行
+        Criteria criteria = Criteria.select(User.class).where("userId", "in", ids).and("userType", new Object[] { "1" });
+        Assert.assertEquals("userId", criteria.getLargeInCondition(1000));
+        Assert.assertNull(criteria.or("userType", new Object[] { "2" }).getLargeInCondition(1000));
+        Assert.assertNull(Criteria.select(User.class).where("userId", "not in", ids).getLargeInCondition(1000));
+        Assert.assertNull(Criteria.select(User.class).where("userId", "in", ids).getLargeInCondition(3000));
+
+        //只有整数使用BIGINT临时表，小数不能使用临时表
+        InTempTable inTempTable = new InTempTable("MYSQL", "DAL_TMP_IN");
+        Assert.assertEquals("DAL_TMP_IN_NUM", inTempTable.getTableName(new Object[] { 1, new BigDecimal("2") }));
+        Assert.assertEquals("DAL_TMP_IN_STR", inTempTable.getTableName(new Object[] { "a", "b" }));
+        Assert.assertFalse(InTempTable.isSupportedValues(new Object[] { 1L, 1.5D }));
+        Assert.assertFalse(InTempTable.isSupportedValues(new Object[] { 1L, "a" }));
+        Assert.assertFalse(InTempTable.isSupportedValues(new Object[] { new BigInteger("99999999999999999999") }));
+    }
+
+    @Test
+    public void changedUpdateSql() {
+        User user = new User();
+        user.setUserId(-1L);
+        user.setLoginName("selfly");
+        user.setPassword("123456");
+        user.setEmail("javaer@live.com");
+        EntitySnapshots snapshots = new EntitySnapshots();
+        snapshots.snapshot(user);
+        Assert.assertTrue(snapshots.getChangedFields(user).isEmpty());
+
+        user.setPassword("654321");
+        user.setEmail(null);
+        List<String> changedFields = snapshots.getChangedFields(user);
+        Assert.assertEquals(2, changedFields.size());
+        //按快照判断，不是equals
+        Assert.assertNull(snapshots.getChangedFields(new User()));
+
+        BoundSql boundSql = Criteria.update(User.class).mappingHandler(new DefaultMappingHandler())
+            .changed(changedFields.toArray(new String[changedFields.size()])).build(user, false);
+        System.out.println(boundSql.getSql());
+        Assert.assertTrue(boundSql.getSql().contains("SET EMAIL = NULL,PASSWORD = ? WHERE USER_ID =  ?"));
+        Assert.assertEquals(2, boundSql.getParameters().size());
+    }
+
+    @Test
+    public void groupBy() {
+        Criteria criteria = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler())
+            .where("userType", new Object[] { "1" }).groupBy("userAge").addSelectFunc("count(*) total");
+        BoundSql boundSql = criteria.build(true);
+        Assert.assertTrue(boundSql.getSql().startsWith("SELECT `USER_AGE`,count(*) total FROM USER WHERE"));
+        Assert.assertTrue(boundSql.getSql().endsWith(" GROUP BY `USER_AGE` "));
+
+        //avg下推到各物理表时改写成sum和count
+        criteria = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler()).groupBy("userType")
+            .addSelectFunc("avg([userAge]) avgAge, max([userAge])");
+        Assert.assertTrue(ShardAggregator.isAggregate(criteria));
+        ShardAggregator aggregator = new ShardAggregator(criteria);
+        Assert.assertEquals("sum([userAge]) avgAge,count([userAge]),max([userAge])", aggregator.getPushdownFuncs()
+            .get(0).getName());
+        boundSql = criteria.selectFuncs(aggregator.getPushdownFuncs()).build(true);
+        Assert.assertEquals("SELECT USER_TYPE,sum(`USER_AGE`) avgAge,count(`USER_AGE`),max(`USER_AGE`) FROM USER "
+                            + "GROUP BY USER_TYPE ", boundSql.getSql());
+
+        Assert.assertFalse(ShardAggregator.isAggregate(Criteria.select(User.class).addSelectFunc(
+            "distinct [loginName]")));
+        try {
+            new ShardAggregator(Criteria.select(User.class).addSelectFunc("count(distinct [loginName])"));
+            Assert.fail();
+        } catch (JdbcAssistantException e) {
+            Assert.assertTrue(e.getMessage().contains("不支持"));
+        }
+    }
+
+    @Test
+    public void shardingRoute() {
+        ShardingMappingHandler handler = new ShardingMappingHandler();
+        handler.addStrategy(Book.class, new HashShardingStrategy("bookId", 3));
+
+        //有分片键时路由到单个物理表
+        BoundSql boundSql = Criteria.select(Book.class).mappingHandler(handler).where("bookId", new Object[] { 4L })
+            .build(true);
+        Assert.assertTrue(boundSql.getSql().contains("FROM BOOK_1 "));
+        Book book = new Book();
+        book.setBookId(5L);
+        book.setBookName("book");
+        boundSql = Criteria.insert(Book.class).mappingHandler(handler).build(book, true);
+        Assert.assertTrue(boundSql.getSql().startsWith("INSERT INTO BOOK_2 "));
+
+        //in条件只访问对应的物理表，没有分片键或最外层有or时访问所有物理表
+        Criteria criteria = Criteria.select(Book.class).where("bookId", "in", new Object[] { 3L, 6L, 7L });
+        Assert.assertEquals("[BOOK_0, BOOK_1]", handler.route(Book.class, criteria.getConditions()).toString());
+        criteria = Criteria.select(Book.class).where("bookName", new Object[] { "book" });
+        Assert.assertEquals(3, handler.route(Book.class, criteria.getConditions()).size());
+        criteria = Criteria.select(Book.class).where("bookId", new Object[] { 3L }).or("bookName", new Object[] { "b" });
+        Assert.assertEquals(3, handler.route(Book.class, criteria.getConditions()).size());
+        criteria = Criteria.select(Book.class).where("bookId", new Object[] { 3L }).begin("and")
+            .where("bookName", new Object[] { "a" }).or("bookName", new Object[] { "b" }).end();
+        Assert.assertEquals("[BOOK_0]", handler.route(Book.class, criteria.getConditions()).toString());
+        Assert.assertNull(handler.route(User.class, criteria.getConditions()));
+
+        //多个物理表时不能直接构建
+        try {
+            Criteria.select(Book.class).mappingHandler(handler).build(true);
+            Assert.fail();
+        } catch (JdbcAssistantException e) {
+            Assert.assertTrue(e.getMessage().contains("BOOK_0, BOOK_1, BOOK_2"));
+        }
+        //多个条件的物理表没有交集
+        try {
+            Criteria.select(Book.class).mappingHandler(handler).where("bookId", "in", new Object[] { 1L, 4L })
+                .and("bookId", new Object[] { 2L }).build(true);
+            Assert.fail();
+        } catch (JdbcAssistantException e) {
+            Assert.assertTrue(e.getMessage().contains("没有匹配的物理表"));
+        }
+        ShardingMappingHandler.setTargetTable(Book.class, "BOOK_2");
+        try {
+            boundSql = Criteria.select(Book.class).mappingHandler(handler).build(true);
+            Assert.assertTrue(boundSql.getSql().contains("FROM BOOK_2 "));
+            //只对指定的实体类生效
+            handler.addStrategy(User.class, new HashShardingStrategy("userId", 2));
+            boundSql = Criteria.select(User.class).mappingHandler(handler).where("userId", new Object[] { 3L })
+                .build(true);
+            Assert.assertTrue(boundSql.getSql().contains("FROM USER_1 "));
+        } finally {
+            ShardingMappingHandler.clearTargetTable();
+        }
+    }
+
+    @Test
+    public void rangeShardingRoute() {
+        //从2024-01开始按月分36个表
+        ShardingMappingHandler handler = new ShardingMappingHandler();
+        handler.addStrategy(User.class, new RangeShardingStrategy("gmtCreate", "2024-01", 36));
+        Assert.assertEquals(36, handler.route(User.class, Criteria.select(User.class).getConditions()).size());
+
+        Criteria criteria = Criteria.select(User.class).where("gmtCreate", ">=", new Object[] { "2026-01-15" })
+            .and("gmtCreate", "<", new Object[] { "2026-03-01" });
+        Assert.assertEquals("[USER_202601, USER_202602]", handler.route(User.class, criteria.getConditions())
+            .toString());
+        criteria = Criteria.select(User.class).where("gmtCreate", "between",
+            new Object[] { "2025-11-30", "2026-01-01 10:00:00" });
+        Assert.assertEquals("[USER_202511, USER_202512, USER_202601]",
+            handler.route(User.class, criteria.getConditions()).toString());
+        Assert.assertTrue(criteria.mappingHandler(new DefaultMappingHandler()).build(true).getSql()
+            .contains(" BETWEEN ? AND ? "));
+        criteria = Criteria.select(User.class).where("gmtCreate", "in",
+            new Object[] { "2024-03-02", "2024-05-01", "2025-05-01" }).and("gmtCreate", "<=",
+            new Object[] { "2024-12-31" });
+        Assert.assertEquals("[USER_202403, USER_202405]", handler.route(User.class, criteria.getConditions())
+            .toString());
+
+        //超出分区范围的查询访问最近的分区，插入时抛出异常
+        criteria = Criteria.select(User.class).where("gmtCreate", ">", new Object[] { "2030-01-01" });
+        Assert.assertEquals("[USER_202612]", handler.route(User.class, criteria.getConditions()).toString());
+        try {
+            Criteria.insert(User.class).mappingHandler(handler).into("gmtCreate", "2023-12-31").build(true);
+            Assert.fail();
+        } catch (JdbcAssistantException e) {
+            Assert.assertTrue(e.getMessage().contains("不在分区范围内"));
+        }
+    }
+
+    @Table(pkField = "code", alias = "n")
+    public static class NoNameTable implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String            code;
+
+        public String getCode() {
+            return code;
+        }
+
+        public void setCode(String code) {
+            this.code = code;
+        }
+    }
 }
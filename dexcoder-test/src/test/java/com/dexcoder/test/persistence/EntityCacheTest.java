@@ -0,0 +1,101 @@
+package com.dexcoder.test.persistence;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.dexcoder.dal.SimpleSqlFactory;
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.spring.JdbcDaoImpl;
+import com.dexcoder.dal.spring.cache.EntityCache;
+import com.dexcoder.test.model.User;
+
+/**
+ * 实体缓存测试，jdbcTemplate使用记录查询次数的代理，不需要数据库
+ */
+public class EntityCacheTest {
+
+    private final FakeJdbcOperations jdbcTemplate = new FakeJdbcOperations();
+
+    private JdbcDaoImpl              jdbcDao;
+
+    private EntityCache              entityCache;
+
+    @Before
+    public void before() {
+        jdbcTemplate.setLoginName("selfly");
+        entityCache = new EntityCache(2, 0);
+        entityCache.setEntityClasses(User.class);
+        jdbcDao = new JdbcDaoImpl();
+        jdbcDao.setJdbcTemplate(jdbcTemplate.newJdbcTemplate());
+        jdbcDao.setEntityCache(entityCache);
+        jdbcDao.setSqlFactory(new SimpleSqlFactory());
+    }
+
+    @Test
+    public void getCopies() {
+        User user = jdbcDao.get(User.class, 1L);
+        user.setLoginName("changed");
+        User cached = jdbcDao.get(User.class, 1L);
+        Assert.assertNotSame(user, cached);
+        Assert.assertEquals("selfly", cached.getLoginName());
+        Assert.assertEquals(1, jdbcTemplate.getQueryCount());
+        Assert.assertEquals(0.5, entityCache.getHitRatio(), 0.0001);
+        Assert.assertEquals(1, entityCache.getLoadCount());
+    }
+
+    @Test
+    public void evictOnWrite() {
+        jdbcDao.get(User.class, 1L);
+        jdbcDao.get(User.class, 2L);
+
+        //按主键写操作只移除该实体
+        jdbcDao.delete(User.class, 1);
+        jdbcDao.get(User.class, 1L);
+        jdbcDao.get(User.class, 2L);
+        Assert.assertEquals(3, jdbcTemplate.getQueryCount());
+
+        //按条件写操作使整个表的实体失效
+        jdbcDao.update(Criteria.update(User.class).set("loginName", "selfly").where("userAge", new Object[] { 18 }));
+        jdbcDao.get(User.class, 2L);
+        Assert.assertEquals(4, jdbcTemplate.getQueryCount());
+
+        //自定义sql解析出表名
+        jdbcDao.updateForSql("update USER set LOGIN_NAME = ? where USER_ID = ?", new Object[] { "a", 2L });
+        jdbcDao.get(User.class, 2L);
+        Assert.assertEquals(5, jdbcTemplate.getQueryCount());
+        Assert.assertEquals(3, entityCache.getInvalidationCount());
+
+        //缓存大小为2，第3个实体淘汰最久未使用的
+        jdbcDao.get(User.class, 3L);
+        Assert.assertEquals(1, entityCache.getEvictionCount());
+    }
+
+    @Test
+    public void notCachedInTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            //事务中加载的不放入缓存
+            jdbcDao.get(User.class, 1L);
+            jdbcDao.get(User.class, 1L);
+            Assert.assertEquals(2, jdbcTemplate.getQueryCount());
+            Assert.assertEquals(0, entityCache.getSize());
+        } finally {
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager
+                .getSynchronizations();
+            TransactionSynchronizationManager.clearSynchronization();
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+            for (TransactionSynchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        }
+        jdbcDao.get(User.class, 1L);
+        jdbcDao.get(User.class, 1L);
+        Assert.assertEquals(3, jdbcTemplate.getQueryCount());
+    }
+}
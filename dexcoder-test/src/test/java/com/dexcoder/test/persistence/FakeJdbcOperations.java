@@ -0,0 +1,104 @@
+package com.dexcoder.test.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.jdbc.core.JdbcOperations;
+
+import com.dexcoder.test.model.User;
+
+/**
+ * 不需要数据库的jdbcTemplate代理，记录每次查询及update的参数
+ * <p>
+ * update返回1，查询默认按参数中的主键返回User，可重写rows及beforeQuery改变返回的记录及在查询前阻塞或抛出异常
+ */
+public class FakeJdbcOperations implements InvocationHandler {
+
+    /** 每次查询的参数，查询可能并行执行 */
+    private final List<List<Object>> queries    = Collections.synchronizedList(new ArrayList<List<Object>>());
+
+    /** 每次update的参数 */
+    private final List<List<Object>> updates    = Collections.synchronizedList(new ArrayList<List<Object>>());
+
+    /** 不存在的记录主键 */
+    private final Set<Long>          missingIds = new HashSet<Long>();
+
+    /** 返回的User的loginName */
+    private String                   loginName;
+
+    public JdbcOperations newJdbcTemplate() {
+        return (JdbcOperations) Proxy.newProxyInstance(JdbcOperations.class.getClassLoader(),
+            new Class<?>[] { JdbcOperations.class }, this);
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        List<Object> params = args != null && args.length > 1 && args[1] instanceof Object[] ? Arrays
+            .asList((Object[]) args[1]) : Collections.emptyList();
+        if ("update".equals(method.getName())) {
+            updates.add(params);
+            return 1;
+        }
+        queries.add(params);
+        this.beforeQuery(params);
+        return this.rows(params);
+    }
+
+    /**
+     * 查询执行前调用，可以阻塞或抛出异常
+     *
+     * @param params 查询参数
+     * @throws Exception
+     */
+    protected void beforeQuery(List<Object> params) throws Exception {
+    }
+
+    /**
+     * 查询返回的记录，默认参数中的每个主键返回一个User，不存在的主键除外
+     *
+     * @param params 查询参数
+     * @return 记录
+     */
+    protected List<Object> rows(List<Object> params) {
+        List<Object> list = new ArrayList<Object>();
+        for (Object param : params) {
+            if (param instanceof Number && !missingIds.contains(((Number) param).longValue())) {
+                list.add(this.newUser(((Number) param).longValue()));
+            }
+        }
+        return list;
+    }
+
+    protected User newUser(Long userId) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setLoginName(loginName);
+        return user;
+    }
+
+    public int getQueryCount() {
+        return queries.size();
+    }
+
+    public List<List<Object>> getQueries() {
+        return queries;
+    }
+
+    public List<List<Object>> getUpdates() {
+        return updates;
+    }
+
+    public void setMissingIds(Long... ids) {
+        missingIds.addAll(Arrays.asList(ids));
+    }
+
+    public void setLoginName(String loginName) {
+        this.loginName = loginName;
+    }
+}
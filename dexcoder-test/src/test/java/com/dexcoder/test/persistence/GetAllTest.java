@@ -0,0 +1,69 @@
+package com.dexcoder.test.persistence;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dexcoder.dal.spring.JdbcDaoImpl;
+import com.dexcoder.dal.spring.cache.EntityCache;
+import com.dexcoder.test.model.User;
+
+/**
+ * 批量按主键获取测试，jdbcTemplate使用记录in参数的代理，不需要数据库
+ */
+public class GetAllTest {
+
+    private final FakeJdbcOperations jdbcTemplate = new FakeJdbcOperations();
+
+    /** 每次查询的in参数，分批的查询并行执行 */
+    private final List<List<Object>> queries      = jdbcTemplate.getQueries();
+
+    private JdbcDaoImpl              jdbcDao;
+
+    @Before
+    public void before() {
+        //id为5的记录不存在
+        jdbcTemplate.setMissingIds(5L);
+        jdbcDao = new JdbcDaoImpl();
+        jdbcDao.setJdbcTemplate(jdbcTemplate.newJdbcTemplate());
+        jdbcDao.setInLimit(2);
+    }
+
+    @Test
+    public void getAll() {
+        List<Long> ids = Arrays.asList(3L, 1L, 2L, 1L, 5L);
+        Map<Serializable, User> users = jdbcDao.getAll(User.class, ids);
+        Assert.assertEquals(Arrays.<Serializable> asList(3L, 1L, 2L), new ArrayList<Serializable>(users.keySet()));
+        Assert.assertEquals(Long.valueOf(3L), users.get(3L).getUserId());
+        //去重后按in限制分2批，并行执行的顺序不确定
+        Assert.assertEquals(2, queries.size());
+        Assert.assertTrue(queries.contains(Arrays.<Object> asList(3L, 1L)));
+        Assert.assertTrue(queries.contains(Arrays.<Object> asList(2L, 5L)));
+
+        List<User> list = jdbcDao.getList(User.class, ids);
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals(Long.valueOf(1L), list.get(1).getUserId());
+    }
+
+    @Test
+    public void getAllWithEntityCache() {
+        EntityCache entityCache = new EntityCache();
+        entityCache.setEntityClasses(User.class);
+        jdbcDao.setEntityCache(entityCache);
+
+        jdbcDao.getAll(User.class, Arrays.asList(1L, 2L));
+        Map<Serializable, User> users = jdbcDao.getAll(User.class, Arrays.asList(1, 2, 4));
+        Assert.assertEquals(3, users.size());
+        Assert.assertEquals(Long.valueOf(4L), users.get(4).getUserId());
+        //只加载缓存中没有的
+        Assert.assertEquals(2, queries.size());
+        Assert.assertEquals(Arrays.<Object> asList(4), queries.get(1));
+        Assert.assertEquals(2, entityCache.getHitCount());
+    }
+}
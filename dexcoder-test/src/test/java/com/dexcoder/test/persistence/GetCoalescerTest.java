@@ -0,0 +1,105 @@
+package com.dexcoder.test.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dexcoder.dal.spring.JdbcDaoImpl;
+import com.dexcoder.dal.spring.parallel.GetCoalescer;
+import com.dexcoder.test.model.User;
+
+/**
+ * 合并并发get查询测试，jdbcTemplate使用记录查询次数的代理，不需要数据库
+ */
+public class GetCoalescerTest {
+
+    private final FakeJdbcOperations jdbcTemplate    = new FakeJdbcOperations();
+
+    private final ExecutorService    executorService = Executors.newCachedThreadPool();
+
+    @Before
+    public void before() {
+        //id为5的记录不存在
+        jdbcTemplate.setMissingIds(5L);
+    }
+
+    @After
+    public void after() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void coalesce() throws Exception {
+        //窗口足够长，批次满时立即执行
+        JdbcDaoImpl jdbcDao = newJdbcDao(new GetCoalescer(10 * 1000 * 1000, 4));
+        List<Future<User>> futures = this.getConcurrently(jdbcDao, 1L, 2L, 3L, 4L);
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals(Long.valueOf(i + 1), futures.get(i).get().getUserId());
+        }
+        Assert.assertEquals(1, jdbcTemplate.getQueryCount());
+    }
+
+    @Test
+    public void coalesceSameId() throws Exception {
+        JdbcDaoImpl jdbcDao = newJdbcDao(new GetCoalescer(10 * 1000 * 1000, 2));
+        List<Future<User>> futures = this.getConcurrently(jdbcDao, 1L, 1L);
+        User user = futures.get(0).get();
+        User other = futures.get(1).get();
+        Assert.assertEquals(1, jdbcTemplate.getQueryCount());
+        Assert.assertEquals(user.getUserId(), other.getUserId());
+        Assert.assertNotSame(user, other);
+    }
+
+    @Test
+    public void singleBatchSize() throws Exception {
+        //批次创建时即已满，并发的调用者各自创建批次执行，不会等待没有执行者的批次
+        JdbcDaoImpl jdbcDao = newJdbcDao(new GetCoalescer(10 * 1000 * 1000, 1));
+        List<Future<User>> futures = this.getConcurrently(jdbcDao, 1L, 2L, 3L, 4L, 6L, 7L, 8L, 9L);
+        for (Future<User> future : futures) {
+            Assert.assertNotNull(future.get(10, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(futures.size(), jdbcTemplate.getQueryCount());
+    }
+
+    @Test
+    public void notFound() {
+        GetCoalescer getCoalescer = new GetCoalescer(0, 10);
+        JdbcDaoImpl jdbcDao = newJdbcDao(getCoalescer);
+        //等待窗口为0，单个调用直接执行
+        Assert.assertNull(jdbcDao.get(User.class, 5L));
+        Assert.assertEquals(1, getCoalescer.getBatchCount());
+    }
+
+    private List<Future<User>> getConcurrently(final JdbcDaoImpl jdbcDao, Long... ids) {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<User>> futures = new ArrayList<Future<User>>();
+        for (final Long id : ids) {
+            futures.add(executorService.submit(new Callable<User>() {
+                public User call() throws Exception {
+                    start.await();
+                    return jdbcDao.get(User.class, id);
+                }
+            }));
+        }
+        start.countDown();
+        return futures;
+    }
+
+    private JdbcDaoImpl newJdbcDao(GetCoalescer getCoalescer) {
+        JdbcDaoImpl jdbcDao = new JdbcDaoImpl();
+        jdbcDao.setJdbcTemplate(jdbcTemplate.newJdbcTemplate());
+        jdbcDao.setInLimit(100);
+        jdbcDao.setGetCoalescer(getCoalescer);
+        return jdbcDao;
+    }
+}
@@ -0,0 +1,101 @@
+package com.dexcoder.test.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.spring.JdbcDaoImpl;
+import com.dexcoder.test.model.User;
+
+/**
+ * 事务内实体缓存测试，jdbcTemplate使用记录查询次数的代理，不需要数据库
+ */
+public class IdentityMapTest {
+
+    private FakeJdbcOperations jdbcTemplate;
+
+    private JdbcDaoImpl        jdbcDao;
+
+    @Before
+    public void before() {
+        //总是返回主键为1的记录
+        jdbcTemplate = new FakeJdbcOperations() {
+            @Override
+            protected List<Object> rows(List<Object> params) {
+                List<Object> list = new ArrayList<Object>();
+                list.add(newUser(1L));
+                return list;
+            }
+        };
+        jdbcDao = new JdbcDaoImpl();
+        jdbcDao.setJdbcTemplate(jdbcTemplate.newJdbcTemplate());
+        jdbcDao.setIdentityMapEnabled(true);
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+
+    @After
+    public void after() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            this.completeTransaction();
+        }
+    }
+
+    @Test
+    public void getInTransaction() {
+        User user = jdbcDao.get(User.class, 1L);
+        Assert.assertSame(user, jdbcDao.get(User.class, 1L));
+        Assert.assertSame(user, jdbcDao.get(User.class, 1));
+        Assert.assertEquals(1, jdbcTemplate.getQueryCount());
+
+        jdbcDao.get(User.class, 2L);
+        Assert.assertEquals(2, jdbcTemplate.getQueryCount());
+
+        //按主键写操作只移除该实体
+        jdbcDao.delete(User.class, 1);
+        Assert.assertNotSame(user, jdbcDao.get(User.class, 1L));
+        jdbcDao.get(User.class, 2L);
+        Assert.assertEquals(3, jdbcTemplate.getQueryCount());
+
+        //按条件写操作移除整个表的实体
+        jdbcDao.update(Criteria.update(User.class).set("loginName", "selfly").where("userAge", new Object[] { 18 }));
+        jdbcDao.get(User.class, 2L);
+        Assert.assertEquals(4, jdbcTemplate.getQueryCount());
+
+        this.completeTransaction();
+        jdbcDao.get(User.class, 2L);
+        jdbcDao.get(User.class, 2L);
+        Assert.assertEquals(6, jdbcTemplate.getQueryCount());
+    }
+
+    @Test
+    public void querySingleResultInTransaction() {
+        Criteria criteria = Criteria.select(User.class).where("loginName", new Object[] { "selfly" });
+        User user = jdbcDao.querySingleResult(criteria);
+        Assert.assertSame(user, jdbcDao.querySingleResult(criteria));
+        Assert.assertEquals(1, jdbcTemplate.getQueryCount());
+
+        //新增记录可能满足条件
+        User newUser = new User();
+        newUser.setUserId(100L);
+        jdbcDao.save(newUser);
+        jdbcDao.querySingleResult(criteria);
+        Assert.assertEquals(2, jdbcTemplate.getQueryCount());
+    }
+
+    private void completeTransaction() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+    }
+}
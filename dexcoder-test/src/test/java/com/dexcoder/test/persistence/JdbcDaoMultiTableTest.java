@@ -1,6 +1,8 @@
 package com.dexcoder.test.persistence;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -40,6 +42,28 @@ public class JdbcDaoMultiTableTest {
         }
     }
 
+    @Test
+    public void multiTableBatchSave() {
+        //批量保存时同一物理表的记录在一组执行
+        List<Chapter> chapters = new ArrayList<Chapter>();
+        for (int i = 201; i < 221; i++) {
+            Chapter chapter = new Chapter();
+            chapter.setChapterId((long) i);
+            chapter.setBookId((long) i % 4);
+            jdbcDao.delete(chapter);
+
+            chapter.setChapterName("批量章节" + i);
+            chapter.setGmtCreate(new Date());
+            chapters.add(chapter);
+        }
+        jdbcDao.batchSave(chapters);
+        for (Chapter chapter : chapters) {
+            Criteria criteria = Criteria.select(Chapter.class).where("bookId", new Object[] { chapter.getBookId() })
+                .and("chapterId", new Object[] { chapter.getChapterId() });
+            Assert.assertNotNull(jdbcDao.querySingleResult(criteria));
+        }
+    }
+
     @Test
     public void multiTableChapter() {
         //两次插入bookId不同，根据CustomMappingHandler中的策略应该在不同的表中
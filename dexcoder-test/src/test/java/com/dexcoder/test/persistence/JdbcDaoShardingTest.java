@@ -0,0 +1,111 @@
+package com.dexcoder.test.persistence;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.dexcoder.commons.pager.Pager;
+import com.dexcoder.dal.JdbcDao;
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.spring.page.PageControl;
+import com.dexcoder.test.model.Chapter;
+
+/**
+ * 声明式水平分表测试，ShardingMappingHandler使用与CustomMappingHandler相同的分表规则
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:sharding-applicationContext.xml" })
+public class JdbcDaoShardingTest {
+
+    @Autowired
+    private JdbcDao jdbcDao;
+
+    @Before
+    public void before() {
+        //有分片键时路由到单个物理表
+        for (int i = 301; i < 331; i++) {
+            Chapter chapter = new Chapter();
+            chapter.setChapterId((long) i);
+            chapter.setBookId((long) i % 7);
+            jdbcDao.delete(chapter);
+
+            chapter.setChapterName("分表章节" + i);
+            chapter.setGmtCreate(new Date());
+            jdbcDao.save(chapter);
+        }
+    }
+
+    @Test
+    public void shardingChapterQuery() {
+        Chapter chapter = jdbcDao.querySingleResult(Criteria.select(Chapter.class).where("chapterId",
+            new Object[] { 310L }).and("bookId", new Object[] { 2L }));
+        Assert.assertEquals("分表章节310", chapter.getChapterName());
+    }
+
+    @Test
+    public void shardingChapterFanOut() {
+        //没有分片键时并行查询所有物理表后合并
+        List<Chapter> chapters = jdbcDao.queryList(Criteria.select(Chapter.class).where("chapterId", ">",
+            new Object[] { 300L }).asc("chapterId"));
+        Assert.assertFalse(chapters.isEmpty());
+        for (int i = 1; i < chapters.size(); i++) {
+            Assert.assertTrue(chapters.get(i - 1).getChapterId() < chapters.get(i).getChapterId());
+        }
+        int count = jdbcDao.queryCount(Criteria.select(Chapter.class).where("chapterId", ">", new Object[] { 300L }));
+        Assert.assertEquals(chapters.size(), count);
+        List<Map<String, Object>> rows = jdbcDao.queryRowMapList(Criteria.select(Chapter.class)
+            .include("chapterId", "bookId").where("bookId", "in", new Object[] { 5L, 6L }));
+        Assert.assertEquals(jdbcDao.queryCount(Criteria.select(Chapter.class).where("bookId", "in",
+            new Object[] { 5L, 6L })), rows.size());
+    }
+
+    @Test
+    public void shardingChapterPage() {
+        //跨物理表分页，各物理表取前 offset+n 条后归并
+        Criteria criteria = Criteria.select(Chapter.class).desc("chapterId");
+        List<Chapter> all = jdbcDao.queryList(criteria);
+        PageControl.performPage(2, 10);
+        List<Chapter> page = jdbcDao.queryList(criteria);
+        Pager pager = PageControl.getPager();
+        Assert.assertEquals(all.size(), pager.getItemsTotal());
+        Assert.assertEquals(Math.max(0, Math.min(10, all.size() - 10)), page.size());
+        for (int i = 0; i < page.size(); i++) {
+            Assert.assertEquals(all.get(i + 10).getChapterId(), page.get(i).getChapterId());
+        }
+    }
+
+    @Test
+    public void shardingChapterAggregate() {
+        //聚合函数下推到各物理表执行后合并
+        List<Chapter> all = jdbcDao.queryList(Criteria.select(Chapter.class));
+        Number count = jdbcDao.queryObject(Criteria.select(Chapter.class).addSelectFunc("count(*)"));
+        Assert.assertEquals(all.size(), count.intValue());
+        Map<String, Object> row = jdbcDao.queryRowMap(Criteria.select(Chapter.class).addSelectFunc(
+            "max([chapterId]) maxId,min([chapterId]) minId,avg([chapterId]) avgId"));
+        long max = 0;
+        long sum = 0;
+        for (Chapter chapter : all) {
+            max = Math.max(max, chapter.getChapterId());
+            sum += chapter.getChapterId();
+        }
+        Assert.assertEquals(max, ((Number) row.get("maxId")).longValue());
+        Assert.assertEquals((double) sum / all.size(), ((Number) row.get("avgId")).doubleValue(), 0.001);
+
+        //按bookId分组，每个分组的count与单独查询一致
+        List<Map<String, Object>> groups = jdbcDao.queryRowMapList(Criteria.select(Chapter.class).groupBy("bookId")
+            .addSelectFunc("count(*) chapterCount"));
+        for (Map<String, Object> group : groups) {
+            int bookCount = jdbcDao.queryCount(Criteria.select(Chapter.class).where("bookId",
+                new Object[] { group.get("BOOK_ID") }));
+            Assert.assertEquals(bookCount, ((Number) group.get("chapterCount")).intValue());
+        }
+    }
+}
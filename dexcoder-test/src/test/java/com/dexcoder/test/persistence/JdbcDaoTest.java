@@ -1,8 +1,11 @@
 package com.dexcoder.test.persistence;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import com.dexcoder.commons.utils.UUIDUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -15,6 +18,8 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.dexcoder.commons.pager.Pager;
 import com.dexcoder.dal.JdbcDao;
+import com.dexcoder.dal.ResultIterator;
+import com.dexcoder.dal.RowCallback;
 import com.dexcoder.dal.build.Criteria;
 import com.dexcoder.dal.spring.page.PageControl;
 import com.dexcoder.test.model.AnnotationUser;
@@ -30,6 +35,10 @@ public class JdbcDaoTest {
     @Autowired
     private JdbcDao jdbcDao;
 
+    /** 开启了dirtyTracking，按名称注入 */
+    @Autowired
+    private JdbcDao dirtyTrackingJdbcDao;
+
     @Test
     public void before() {
         //插入测试数据
@@ -71,6 +80,198 @@ public class JdbcDaoTest {
         System.out.println("insert:" + id);
     }
 
+    @Test
+    public void batchInsert() {
+        List<User> users = new ArrayList<User>();
+        for (int i = 0; i < 20; i++) {
+            User user = new User();
+            user.setLoginName("batch_" + i);
+            user.setPassword("123456");
+            //email为null时与其它记录的sql不同，会分到另一组
+            user.setEmail(i % 5 == 0 ? null : i + "batch@live.com");
+            user.setUserAge(20 + i);
+            user.setUserType("1");
+            user.setGmtCreate(new Date());
+            users.add(user);
+        }
+        List<Long> ids = jdbcDao.batchInsert(users);
+        Assert.assertEquals(users.size(), ids.size());
+        for (int i = 0; i < users.size(); i++) {
+            User user = jdbcDao.get(User.class, ids.get(i));
+            Assert.assertEquals(users.get(i).getLoginName(), user.getLoginName());
+        }
+    }
+
+    @Test
+    public void batchSave() {
+        List<User> users = new ArrayList<User>();
+        for (int i = 1; i <= 10; i++) {
+            jdbcDao.delete(User.class, (long) -100 - i);
+            User user = new User();
+            user.setUserId((long) -100 - i);
+            user.setLoginName("batch_save_" + i);
+            user.setPassword("123456");
+            user.setGmtCreate(new Date());
+            users.add(user);
+        }
+        jdbcDao.batchSave(users);
+        for (User u : users) {
+            Assert.assertNotNull(jdbcDao.get(User.class, u.getUserId()));
+        }
+    }
+
+    @Test
+    public void insertMulti() {
+        List<User> users = new ArrayList<User>();
+        for (int i = 0; i < 50; i++) {
+            User user = new User();
+            user.setLoginName("multi_" + i);
+            user.setPassword("123456");
+            user.setUserAge(i);
+            user.setGmtCreate(new Date());
+            users.add(user);
+        }
+        int rows = jdbcDao.insertMulti(users);
+        Assert.assertEquals(users.size(), rows);
+    }
+
+    @Test
+    public void batchUpdateAndDelete() {
+        List<User> users = new ArrayList<User>();
+        List<Long> ids = new ArrayList<Long>();
+        for (int i = 1; i <= 10; i++) {
+            User user = new User();
+            user.setUserId((long) -200 - i);
+            user.setLoginName("batch_update_" + i);
+            users.add(user);
+            ids.add(user.getUserId());
+        }
+        jdbcDao.batchDelete(User.class, ids);
+        jdbcDao.batchSave(users);
+
+        for (User user : users) {
+            user.setPassword("654321");
+        }
+        //不存在的记录影响行数为0
+        User missUser = new User();
+        missUser.setUserId(-300L);
+        missUser.setPassword("654321");
+        users.add(missUser);
+        int[] rows = jdbcDao.batchUpdate(users);
+        Assert.assertEquals(users.size(), rows.length);
+        Assert.assertEquals(0, rows[rows.length - 1]);
+
+        //重复的id会去重，每个id对应一个删除行数
+        ids.add(-201L);
+        ids.add(-300L);
+        int[] deleteRows = jdbcDao.batchDelete(User.class, ids);
+        Assert.assertEquals(11, deleteRows.length);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(1, deleteRows[i]);
+        }
+        Assert.assertEquals(0, deleteRows[10]);
+    }
+
+    @Test
+    public void queryForEach() {
+        final List<User> users = new ArrayList<User>();
+        jdbcDao.queryForEach(Criteria.select(User.class).where("userType", new Object[] { "1" }),
+            new RowCallback<User>() {
+                public void processRow(User row) {
+                    users.add(row);
+                }
+            });
+        Assert.assertEquals(jdbcDao.queryCount(Criteria.select(User.class).where("userType", new Object[] { "1" })),
+            users.size());
+    }
+
+    @Test
+    public void queryIterator() {
+        ResultIterator<User> iterator = jdbcDao.queryIterator(Criteria.select(User.class).asc("userId"));
+        try {
+            while (iterator.hasNext()) {
+                User user = iterator.next();
+                Assert.assertNotNull(user.getUserId());
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Test
+    public void queryStream() {
+        Stream<User> stream = jdbcDao.queryStream(Criteria.select(User.class));
+        try {
+            Iterator<User> iterator = stream.iterator();
+            //只取前面几条，关闭stream时释放连接
+            for (int i = 0; i < 5 && iterator.hasNext(); i++) {
+                Assert.assertNotNull(iterator.next().getUserId());
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void queryForEachForSql() {
+        final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        jdbcDao.queryForEachForSql("select * from USER where USER_TYPE = ?", new Object[] { "1" },
+            new RowCallback<Map<String, Object>>() {
+                public void processRow(Map<String, Object> row) {
+                    rows.add(row);
+                }
+            });
+        Assert.assertFalse(rows.isEmpty());
+    }
+
+    @Test
+    public void upsert() {
+        User user = new User();
+        user.setUserId(-400L);
+        user.setLoginName("upsert");
+        user.setPassword("123456");
+        jdbcDao.upsert(user);
+
+        user.setPassword("654321");
+        jdbcDao.upsert(Criteria.upsert(User.class).onConflictUpdate("password"), user);
+        Assert.assertEquals("654321", jdbcDao.get(User.class, -400L).getPassword());
+
+        List<User> users = new ArrayList<User>();
+        users.add(user);
+        int[] rows = jdbcDao.batchUpsert(users, "loginName");
+        Assert.assertEquals(1, rows.length);
+    }
+
+    @Test
+    public void queryLargeIn() {
+        Long[] ids = new Long[2500];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (long) -i;
+        }
+        Criteria criteria = Criteria.select(User.class).where("userId", "in", ids).asc("userId");
+        List<User> users = jdbcDao.queryList(criteria);
+        for (int i = 1; i < users.size(); i++) {
+            Assert.assertTrue(users.get(i).getUserId() > users.get(i - 1).getUserId());
+        }
+        Assert.assertEquals(users.size(), jdbcDao.queryCount(criteria));
+        Assert.assertEquals(users.size(), jdbcDao.delete(Criteria.delete(User.class).where("userId", "in", ids)));
+    }
+
+    @Test
+    public void updateChanged() {
+        this.save();
+        User user = dirtyTrackingJdbcDao.get(User.class, -2L);
+        //没有修改不执行sql
+        Assert.assertEquals(0, dirtyTrackingJdbcDao.updateChanged(user));
+
+        user.setEmail(null);
+        user.setUserAge(20);
+        Assert.assertEquals(1, dirtyTrackingJdbcDao.updateChanged(user));
+        user = jdbcDao.get(User.class, -2L);
+        Assert.assertNull(user.getEmail());
+        Assert.assertEquals(Integer.valueOf(20), user.getUserAge());
+    }
+
     @Test
     public void save() {
         //先删除存在的测试数据
@@ -247,6 +448,25 @@ public class JdbcDaoTest {
         Assert.assertEquals(users.size(), count);
     }
 
+    @Test
+    public void querySeek() {
+        Criteria criteria = Criteria.select(User.class).asc("userId");
+        Object[] sortValues = null;
+        List<User> users;
+        do {
+            PageControl.performSeek(5);
+            jdbcDao.queryList(criteria.after(sortValues));
+            users = PageControl.getPager().getList(User.class);
+            if (users != null && !users.isEmpty()) {
+                Object[] next = criteria.getSortValues(users.get(users.size() - 1));
+                if (sortValues != null) {
+                    Assert.assertTrue((Long) next[0] > (Long) sortValues[0]);
+                }
+                sortValues = next;
+            }
+        } while (users != null && users.size() == 5);
+    }
+
     @Test
     public void queryList2() {
         this.save();
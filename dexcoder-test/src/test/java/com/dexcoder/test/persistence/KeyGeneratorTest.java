@@ -0,0 +1,203 @@
+package com.dexcoder.test.persistence;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dexcoder.dal.build.AutoField;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+import com.dexcoder.dal.handler.DefaultMappingHandler;
+import com.dexcoder.dal.handler.HashShardingStrategy;
+import com.dexcoder.dal.handler.SegmentKeyGenerator;
+import com.dexcoder.dal.handler.ShardingMappingHandler;
+import com.dexcoder.dal.handler.SnowflakeKeyGenerator;
+import com.dexcoder.dal.spring.JdbcDaoImpl;
+import com.dexcoder.test.model.AnnotationUser;
+import com.dexcoder.test.model.Book;
+import com.dexcoder.test.model.User;
+
+/**
+ * 主键生成器测试，不需要数据库
+ */
+public class KeyGeneratorTest {
+
+    @Test
+    public void snowflake() {
+        SnowflakeKeyGenerator keyGenerator = new SnowflakeKeyGenerator(5);
+        Assert.assertFalse(keyGenerator.isPkValueBySql());
+        long pre = 0;
+        for (int i = 0; i < 100000; i++) {
+            long id = (Long) keyGenerator.generateKeyValue(null, null);
+            Assert.assertTrue(id > pre);
+            pre = id;
+        }
+        Assert.assertEquals(5, keyGenerator.getWorkerId(pre));
+        Assert.assertTrue(Math.abs(keyGenerator.getTimestamp(pre) - System.currentTimeMillis()) < 5000);
+    }
+
+    @Test
+    public void snowflakeConcurrent() throws InterruptedException {
+        final SnowflakeKeyGenerator keyGenerator = new SnowflakeKeyGenerator(1);
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final int threads = 8;
+        final int count = 50000;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        ids.add(keyGenerator.nextId());
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        Assert.assertEquals(threads * count, ids.size());
+    }
+
+    @Test
+    public void snowflakeClockBackward() {
+        final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        SnowflakeKeyGenerator keyGenerator = new SnowflakeKeyGenerator(1) {
+            @Override
+            protected long currentTimeMillis() {
+                return clock.get();
+            }
+        };
+        keyGenerator.setMaxBackwardMillis(100);
+        long id = keyGenerator.nextId();
+        //小幅回拨继续递增
+        clock.addAndGet(-50);
+        Assert.assertTrue(keyGenerator.nextId() > id);
+        //超过允许值抛出异常
+        clock.addAndGet(-100);
+        try {
+            keyGenerator.nextId();
+            Assert.fail();
+        } catch (JdbcAssistantException e) {
+            Assert.assertTrue(e.getMessage().contains("时钟回拨"));
+        }
+    }
+
+    @Test
+    public void segment() {
+        final AtomicLong allocations = new AtomicLong();
+        SegmentKeyGenerator keyGenerator = new CounterSegmentKeyGenerator(allocations);
+        keyGenerator.setStep(100);
+        Assert.assertFalse(keyGenerator.isPkValueBySql());
+        long pre = 0;
+        for (int i = 0; i < 1000; i++) {
+            long id = (Long) keyGenerator.generateKeyValue(User.class, "MYSQL");
+            Assert.assertTrue(id > pre);
+            pre = id;
+        }
+        Assert.assertEquals(1000, pre);
+        //用完10个号段，最后一个号段剩余不足时已预先获取了下一号段
+        Assert.assertTrue(allocations.get() >= 10 && allocations.get() <= 11);
+        //不同的主键名使用各自的号段
+        long allocated = allocations.get();
+        keyGenerator.nextId("OTHER", "MYSQL");
+        Assert.assertEquals(allocated + 1, allocations.get());
+    }
+
+    @Test
+    public void segmentKeyName() {
+        CounterSegmentKeyGenerator keyGenerator = new CounterSegmentKeyGenerator(new AtomicLong());
+        Assert.assertEquals("USER", keyGenerator.getKeyName(User.class));
+        //@Table指定的表名
+        Assert.assertEquals("USER_A", keyGenerator.getKeyName(AnnotationUser.class));
+        keyGenerator.setMappingHandler(new DefaultMappingHandler() {
+            @Override
+            public String getTableName(Class<?> entityClass, Map<String, AutoField> fieldMap) {
+                return "T_" + super.getTableName(entityClass, fieldMap);
+            }
+        });
+        Assert.assertEquals("T_USER", keyGenerator.getKeyName(User.class));
+        //分表的实体使用逻辑表名
+        ShardingMappingHandler mappingHandler = new ShardingMappingHandler();
+        mappingHandler.addStrategy(Book.class, new HashShardingStrategy("bookId", 3));
+        keyGenerator.setMappingHandler(mappingHandler);
+        Assert.assertEquals("BOOK", keyGenerator.getKeyName(Book.class));
+    }
+
+    @Test
+    public void upsertGenerateKey() {
+        FakeJdbcOperations jdbcTemplate = new FakeJdbcOperations();
+        JdbcDaoImpl jdbcDao = new JdbcDaoImpl();
+        jdbcDao.setJdbcTemplate(jdbcTemplate.newJdbcTemplate());
+        jdbcDao.setDialect("MYSQL");
+        jdbcDao.setKeyGenerator(new CounterSegmentKeyGenerator(new AtomicLong()));
+        User user = new User();
+        user.setLoginName("selfly");
+        jdbcDao.upsert(user);
+        //和insert一样生成主键
+        Assert.assertTrue(jdbcTemplate.getUpdates().get(0).contains(1L));
+
+        //已有主键时不生成
+        user.setUserId(100L);
+        jdbcDao.upsert(user);
+        Assert.assertFalse(jdbcTemplate.getUpdates().get(1).contains(2L));
+        Assert.assertTrue(jdbcTemplate.getUpdates().get(1).contains(100L));
+    }
+
+    @Test
+    public void segmentConcurrent() throws InterruptedException {
+        final SegmentKeyGenerator keyGenerator = new CounterSegmentKeyGenerator(new AtomicLong());
+        keyGenerator.setStep(50);
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final int threads = 8;
+        final int count = 20000;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        ids.add(keyGenerator.nextId("USER", "MYSQL"));
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        Assert.assertEquals(threads * count, ids.size());
+    }
+
+    /**
+     * 不访问数据库，按计数器分配号段
+     */
+    private static class CounterSegmentKeyGenerator extends SegmentKeyGenerator {
+
+        private final AtomicLong allocations;
+
+        private final AtomicLong max = new AtomicLong();
+
+        private int              step;
+
+        CounterSegmentKeyGenerator(AtomicLong allocations) {
+            this.allocations = allocations;
+        }
+
+        @Override
+        public void setStep(int step) {
+            super.setStep(step);
+            this.step = step;
+        }
+
+        @Override
+        protected String getKeyName(Class<?> clazz) {
+            return super.getKeyName(clazz);
+        }
+
+        @Override
+        protected long allocate(String keyName, String dialect) {
+            allocations.incrementAndGet();
+            return max.addAndGet(step) - step + 1;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.dexcoder.test.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dexcoder.dal.BoundSql;
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.build.CriteriaBoundSql;
+import com.dexcoder.dal.handler.DefaultMappingHandler;
+import com.dexcoder.dal.spring.cache.QueryCache;
+import com.dexcoder.test.model.User;
+
+/**
+ * 查询缓存测试，不需要数据库
+ */
+public class QueryCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void evictByCriteriaTable() {
+        QueryCache queryCache = new QueryCache();
+        BoundSql select = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler()).where(
+            "userId", new Object[] { 1L }).build(true);
+
+        Assert.assertEquals(Arrays.asList("1"), queryCache.query(select, User.class, loader()));
+        Assert.assertEquals(Arrays.asList("1"), queryCache.query(select, User.class, loader()));
+        Assert.assertEquals(1, loads.get());
+
+        //其它表的写操作不影响
+        queryCache.evict(new CriteriaBoundSql("update `other` set a = ?", new ArrayList<Object>()));
+        queryCache.query(select, User.class, loader());
+        Assert.assertEquals(1, loads.get());
+
+        BoundSql update = Criteria.update(User.class).mappingHandler(new DefaultMappingHandler())
+            .set("loginName", "selfly").where("userId", new Object[] { 1L }).build(true);
+        queryCache.evict(update);
+        Assert.assertEquals(Arrays.asList("2"), queryCache.query(select, User.class, loader()));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void evictByParsedSql() {
+        QueryCache queryCache = new QueryCache();
+        BoundSql select = new CriteriaBoundSql(
+            "select * from USER u left join ORDERS o on u.ID = o.USER_ID where u.ID = ?",
+            new ArrayList<Object>(Arrays.<Object> asList(1L)));
+
+        queryCache.query(select, User.class, loader());
+        queryCache.query(select, User.class, loader());
+        Assert.assertEquals(1, loads.get());
+
+        queryCache.evict(new CriteriaBoundSql("delete from `db`.`orders` where ID = ?", new ArrayList<Object>()));
+        queryCache.query(select, User.class, loader());
+        Assert.assertEquals(2, loads.get());
+
+        //无法解析的写操作使所有缓存失效
+        queryCache.evict(new CriteriaBoundSql("call clean_up()", new ArrayList<Object>()));
+        queryCache.query(select, User.class, loader());
+        Assert.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void cacheOnlyConfiguredTables() {
+        QueryCache queryCache = new QueryCache();
+        queryCache.setTables("region", " dict");
+        BoundSql region = new CriteriaBoundSql("select * from REGION", new ArrayList<Object>());
+        BoundSql user = new CriteriaBoundSql("select * from USER", new ArrayList<Object>());
+
+        queryCache.query(region, Object.class, loader());
+        queryCache.query(region, Object.class, loader());
+        Assert.assertEquals(1, loads.get());
+
+        queryCache.query(user, Object.class, loader());
+        queryCache.query(user, Object.class, loader());
+        Assert.assertEquals(3, loads.get());
+    }
+
+    private Callable<List<String>> loader() {
+        return new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                return new ArrayList<String>(Arrays.asList(String.valueOf(loads.incrementAndGet())));
+            }
+        };
+    }
+}
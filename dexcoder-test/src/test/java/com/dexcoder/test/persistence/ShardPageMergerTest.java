@@ -0,0 +1,170 @@
+package com.dexcoder.test.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.handler.DefaultMappingHandler;
+import com.dexcoder.dal.spring.parallel.ParallelExecutor;
+import com.dexcoder.dal.spring.parallel.ShardAggregator;
+import com.dexcoder.dal.spring.parallel.ShardFetcher;
+import com.dexcoder.dal.spring.parallel.ShardPageMerger;
+import com.dexcoder.dal.spring.parallel.SortValuesComparator;
+import com.dexcoder.test.model.User;
+
+/**
+ * 跨物理表分页归并及聚合合并测试，用内存中的list模拟物理表，不需要数据库
+ */
+public class ShardPageMergerTest {
+
+    private final ParallelExecutor parallelExecutor = ParallelExecutor.newBounded(2);
+
+    @Test
+    public void pushdownLimit() {
+        //排序字段不是主键，每个物理表一次取 offset+n 条
+        Criteria criteria = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler()).asc("userAge");
+        this.assertPages(criteria, 1000);
+    }
+
+    @Test
+    public void keysetBatches() {
+        //默认主键降序，深度翻页时按keyset分批获取
+        Criteria criteria = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler());
+        int fetches = this.assertPages(criteria, 7);
+        Assert.assertTrue(fetches > 3);
+
+        criteria = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler()).asc("userAge", "userId");
+        this.assertPages(criteria, 7);
+    }
+
+    @Test
+    public void nullOrdering() {
+        Criteria criteria = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler()).asc("userAge");
+        User user = new User();
+        user.setUserAge(1);
+        //mysql中null最小，oracle、postgresql中null最大
+        Assert.assertTrue(new SortValuesComparator(criteria, SortValuesComparator.isNullsLow("MySQL")).compare(
+            new User(), user) < 0);
+        Assert.assertTrue(new SortValuesComparator(criteria, SortValuesComparator.isNullsLow("Oracle")).compare(
+            new User(), user) > 0);
+    }
+
+    @Test
+    public void aggregateMerge() throws Exception {
+        Criteria criteria = Criteria.select(User.class).mappingHandler(new DefaultMappingHandler())
+            .groupBy("userType").addSelectFunc("count(*) total,min([userAge]) minAge", true, true).desc("total");
+        ShardAggregator aggregator = new ShardAggregator(criteria);
+        List<List<Object[]>> shardRows = new ArrayList<List<Object[]>>();
+        shardRows.add(mapRows(aggregator, new Object[] { "1", 5L, 20 }, new Object[] { "2", 1L, 30 }));
+        shardRows.add(mapRows(aggregator, new Object[] { "2", 6L, new BigDecimal("25") }));
+        List<Map<String, Object>> result = aggregator.merge(shardRows);
+        //合并后按count重新排序，不同类型的数字按数值取最小
+        Assert.assertEquals("2", result.get(0).get("USER_TYPE"));
+        Assert.assertEquals(7L, result.get(0).get("total"));
+        Assert.assertEquals(0, new BigDecimal("25").compareTo((BigDecimal) result.get(0).get("minAge")));
+        Assert.assertEquals("1", result.get(1).get("USER_TYPE"));
+    }
+
+    private static List<Object[]> mapRows(ShardAggregator aggregator, Object[]... rows) throws Exception {
+        final String[] labels = { "USER_TYPE", "total", "minAge" };
+        final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+            ResultSetMetaData.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class },
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("getColumnCount".equals(method.getName())) {
+                        return labels.length;
+                    }
+                    return labels[(Integer) args[0] - 1];
+                }
+            });
+        List<Object[]> result = new ArrayList<Object[]>();
+        for (final Object[] row : rows) {
+            ResultSet rs = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("getMetaData".equals(method.getName())) {
+                            return metaData;
+                        }
+                        return row[(Integer) args[0] - 1];
+                    }
+                });
+            result.add(aggregator.getRowMapper().mapRow(rs, result.size()));
+        }
+        return result;
+    }
+
+    private int assertPages(final Criteria criteria, int batchSize) {
+        final SortValuesComparator comparator = new SortValuesComparator(criteria);
+        final AtomicInteger fetches = new AtomicInteger();
+        List<User> all = new ArrayList<User>();
+        List<ShardFetcher<User>> fetchers = new ArrayList<ShardFetcher<User>>();
+        for (int shard = 0; shard < 3; shard++) {
+            final List<User> rows = new ArrayList<User>();
+            for (long id = shard; id < 100; id += 3) {
+                User user = new User();
+                user.setUserId(id);
+                user.setUserAge((int) (id % 7));
+                rows.add(user);
+            }
+            Collections.sort(rows, comparator);
+            all.addAll(rows);
+            fetchers.add(new ShardFetcher<User>() {
+                public Callable<List<User>> prepare(final Object[] afterValues, final int limit) {
+                    fetches.incrementAndGet();
+                    return new Callable<List<User>>() {
+                        public List<User> call() throws Exception {
+                            List<User> result = new ArrayList<User>();
+                            for (User user : rows) {
+                                if (afterValues != null
+                                    && comparator.compare(user, newUser(afterValues, criteria)) <= 0) {
+                                    continue;
+                                }
+                                if (result.size() == limit) {
+                                    break;
+                                }
+                                result.add(user);
+                            }
+                            return result;
+                        }
+                    };
+                }
+            });
+        }
+        Collections.sort(all, comparator);
+        for (int offset = 0; offset < 110; offset += 10) {
+            List<User> page = new ShardPageMerger<User>(criteria, parallelExecutor, batchSize).merge(fetchers,
+                offset, 10);
+            List<User> expected = all.subList(Math.min(offset, all.size()), Math.min(offset + 10, all.size()));
+            Assert.assertEquals(expected.size(), page.size());
+            for (int i = 0; i < page.size(); i++) {
+                Assert.assertEquals(0, comparator.compare(expected.get(i), page.get(i)));
+            }
+        }
+        return fetches.get();
+    }
+
+    private static User newUser(Object[] sortValues, Criteria criteria) {
+        User user = new User();
+        boolean[] ascending = criteria.getSortAscending();
+        if (ascending.length == 1) {
+            user.setUserId((Long) sortValues[0]);
+        } else {
+            user.setUserAge((Integer) sortValues[0]);
+            user.setUserId((Long) sortValues[1]);
+        }
+        return user;
+    }
+}
@@ -0,0 +1,171 @@
+package com.dexcoder.test.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dexcoder.dal.build.Criteria;
+import com.dexcoder.dal.exceptions.JdbcAssistantException;
+import com.dexcoder.dal.spring.JdbcDaoImpl;
+import com.dexcoder.dal.spring.parallel.SingleFlight;
+import com.dexcoder.test.model.User;
+
+/**
+ * 合并相同并发查询测试，jdbcTemplate使用阻塞到释放为止的代理，不需要数据库
+ */
+public class SingleFlightTest {
+
+    /** 查询已开始执行 */
+    private final CountDownLatch  entered         = new CountDownLatch(1);
+
+    /** 释放执行中的查询 */
+    private final CountDownLatch  release         = new CountDownLatch(1);
+
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+    private volatile boolean      fail;
+
+    private FakeJdbcOperations    jdbcTemplate;
+
+    private SingleFlight          singleFlight;
+
+    private JdbcDaoImpl           jdbcDao;
+
+    @Before
+    public void before() {
+        //阻塞到释放为止，总是返回主键为1的记录
+        jdbcTemplate = new FakeJdbcOperations() {
+            @Override
+            protected void beforeQuery(List<Object> params) throws Exception {
+                entered.countDown();
+                release.await();
+                if (fail) {
+                    throw new JdbcAssistantException("查询失败");
+                }
+            }
+
+            @Override
+            protected List<Object> rows(List<Object> params) {
+                List<Object> list = new ArrayList<Object>();
+                list.add(newUser(1L));
+                return list;
+            }
+        };
+        jdbcTemplate.setLoginName("selfly");
+        singleFlight = new SingleFlight();
+        jdbcDao = new JdbcDaoImpl();
+        jdbcDao.setJdbcTemplate(jdbcTemplate.newJdbcTemplate());
+        jdbcDao.setInLimit(1000);
+        jdbcDao.setSingleFlight(singleFlight);
+    }
+
+    @After
+    public void after() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void shareResult() throws Exception {
+        List<Future<List<User>>> futures = this.queryConcurrently();
+        List<User> first = futures.get(0).get();
+        List<User> second = futures.get(1).get();
+        Assert.assertEquals(1, jdbcTemplate.getQueryCount());
+        Assert.assertEquals(1, singleFlight.getExecuteCount());
+        Assert.assertEquals(2, singleFlight.getSharedCount());
+        //等待者获得复制的实体
+        Assert.assertEquals(first.get(0).getLoginName(), second.get(0).getLoginName());
+        Assert.assertNotSame(first.get(0), second.get(0));
+        Assert.assertNotSame(second.get(0), futures.get(2).get().get(0));
+
+        //执行完成后不再共享
+        jdbcDao.queryList(newCriteria());
+        Assert.assertEquals(2, jdbcTemplate.getQueryCount());
+    }
+
+    @Test
+    public void shareFailure() throws Exception {
+        fail = true;
+        for (Future<List<User>> future : this.queryConcurrently()) {
+            try {
+                future.get();
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof JdbcAssistantException);
+            }
+        }
+        Assert.assertEquals(1, jdbcTemplate.getQueryCount());
+    }
+
+    @Test
+    public void noWaiter() {
+        final User user = new User();
+        List<User> users = singleFlight.execute("key", new Callable<List<User>>() {
+            public List<User> call() throws Exception {
+                List<User> list = new ArrayList<User>();
+                list.add(user);
+                return list;
+            }
+        });
+        //没有等待者时不复制
+        Assert.assertSame(user, users.get(0));
+        Assert.assertEquals(0, singleFlight.getSharedCount());
+    }
+
+    @Test
+    public void copyRow() {
+        UUID uuid = UUID.randomUUID();
+        CopySingleFlight copySingleFlight = new CopySingleFlight();
+        //不可变及未知类型直接返回
+        Assert.assertSame(uuid, copySingleFlight.copyRow(uuid));
+        Assert.assertSame(Locale.CHINA, copySingleFlight.copyRow(Locale.CHINA));
+        User user = new User();
+        user.setLoginName("selfly");
+        User copy = (User) copySingleFlight.copyRow(user);
+        Assert.assertNotSame(user, copy);
+        Assert.assertEquals("selfly", copy.getLoginName());
+    }
+
+    private List<Future<List<User>>> queryConcurrently() throws Exception {
+        Callable<List<User>> task = new Callable<List<User>>() {
+            public List<User> call() throws Exception {
+                return jdbcDao.queryList(newCriteria());
+            }
+        };
+        List<Future<List<User>>> futures = new ArrayList<Future<List<User>>>();
+        futures.add(executorService.submit(task));
+        Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+        futures.add(executorService.submit(task));
+        futures.add(executorService.submit(task));
+        //等待相同的查询都加入后再释放
+        while (singleFlight.getSharedCount() < 2) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        return futures;
+    }
+
+    private Criteria newCriteria() {
+        return Criteria.select(User.class).where("loginName", new Object[] { "selfly" });
+    }
+
+    private static class CopySingleFlight extends SingleFlight {
+
+        @Override
+        protected Object copyRow(Object row) {
+            return super.copyRow(row);
+        }
+    }
+}